@@ -165,8 +165,10 @@ public class Config
     public volatile int batch_size_warn_threshold_in_kb = 5;
     public volatile int batch_size_fail_threshold_in_kb = 50;
     public Integer concurrent_compactors;
+    public int compaction_subrange_parallelism = 1;
     public volatile Integer compaction_throughput_mb_per_sec = 16;
     public volatile Integer compaction_large_partition_warning_threshold_mb = 100;
+    public int tombstone_sweep_interval_in_minutes = 10;
 
     public Integer max_streaming_retries = 3;
 
@@ -179,13 +181,17 @@ public class Config
 
     // Commit Log
     public String commitlog_directory;
+    public String[] commitlog_lane_directories = new String[0];
     public Integer commitlog_total_space_in_mb;
     public CommitLogSync commitlog_sync;
     public Double commitlog_sync_batch_window_in_ms;
+    public Double commitlog_sync_group_window_in_ms;
     public Integer commitlog_sync_period_in_ms;
     public int commitlog_segment_size_in_mb = 32;
     public ParameterizedClass commitlog_compression;
     public int commitlog_max_compression_buffers_in_pool = 3;
+    public boolean commitlog_direct_io = false;
+    public int commitlog_segment_pool_size = 0;
     public TransparentDataEncryptionOptions transparent_data_encryption_options = new TransparentDataEncryptionOptions();
 
     public Integer max_mutation_size_in_kb;
@@ -198,6 +204,7 @@ public class Config
     public Integer dynamic_snitch_update_interval_in_ms = 100;
     public Integer dynamic_snitch_reset_interval_in_ms = 600000;
     public Double dynamic_snitch_badness_threshold = 0.1;
+    public DynamicSnitchScoring dynamic_snitch_scoring = DynamicSnitchScoring.reservoir;
 
     public String request_scheduler;
     public RequestSchedulerId request_scheduler_id;
@@ -210,6 +217,29 @@ public class Config
 
     public InternodeCompression internode_compression = InternodeCompression.none;
 
+    /*
+     * Whether compressed connections compress each batch of messages on its own, sending small or incompressible ones
+     * as is, rather than compressing the connection as a stream.
+     */
+    public boolean internode_compression_framed = false;
+    public int internode_compression_min_frame_size_in_bytes = 512;
+
+    public InternodeTransport internode_transport = InternodeTransport.blocking;
+    public Integer internode_transport_threads;
+
+    /*
+     * Whether messages to each peer are sent on a connection chosen by their traffic class (see TrafficClass) rather
+     * than by their size alone, and the verbs whose class differs from the default one.
+     */
+    public boolean internode_traffic_classes = false;
+    public Map<String, String> internode_traffic_class_overrides;
+
+    /*
+     * Whether messages carry the time they were sent at, and the time they spend in each step between nodes is
+     * recorded per verb and per peer in the MessageLatency metrics.
+     */
+    public boolean internode_latency_tracing = false;
+
     @Deprecated
     public Integer index_interval = null;
 
@@ -284,6 +314,28 @@ public class Config
     public static final int otc_coalescing_window_us_default = 200;
     public int otc_coalescing_window_us = otc_coalescing_window_us_default;
 
+    /*
+     * How many megabytes of messages may be queued on each OutboundTcpConnection, and on all of them together
+     * (defaults to 1/16th of the heap). Beyond that, droppable messages are dropped instead of queued.
+     */
+    public int otc_queue_limit_in_mb = 64;
+    public Integer otc_global_queue_limit_in_mb;
+
+    /*
+     * How many microseconds a mutation bound for a replica in the local datacenter may wait for others to the same
+     * replica, so they are sent as one MUTATION_BATCH message, and how many mutations such a batch may hold.
+     * A window of 0 disables batching.
+     */
+    public int mutation_batch_window_us = 0;
+    public int mutation_batch_max_mutations = 32;
+
+    /*
+     * How many extra replicas a read may speculatively retry on, one after the other, and how many speculative
+     * requests are allowed per read that could speculate, so that speculation backs off when the cluster is overloaded.
+     */
+    public int max_speculative_read_retries = 1;
+    public double speculative_read_retry_budget = 0.1;
+
     public int windows_timer_interval = 0;
 
     public boolean enable_user_defined_functions = false;
@@ -342,13 +394,24 @@ public class Config
     public enum CommitLogSync
     {
         periodic,
-        batch
+        batch,
+        group
     }
     public enum InternodeCompression
     {
         all, none, dc
     }
 
+    public enum InternodeTransport
+    {
+        blocking, nio
+    }
+
+    public enum DynamicSnitchScoring
+    {
+        reservoir, histogram
+    }
+
     public enum DiskAccessMode
     {
         auto,
@@ -49,6 +49,7 @@ import org.apache.cassandraBloomFilters.io.sstable.format.SSTableFormat;
 import org.apache.cassandraBloomFilters.io.util.FileUtils;
 import org.apache.cassandraBloomFilters.locator.*;
 import org.apache.cassandraBloomFilters.net.MessagingService;
+import org.apache.cassandraBloomFilters.net.TrafficClass;
 import org.apache.cassandraBloomFilters.scheduler.IRequestScheduler;
 import org.apache.cassandraBloomFilters.scheduler.NoScheduler;
 import org.apache.cassandraBloomFilters.security.EncryptionContext;
@@ -102,6 +103,9 @@ public class DatabaseDescriptor
 
     private static String localDC;
     private static Comparator<InetAddress> localComparator;
+
+    private static Map<MessagingService.Verb, TrafficClass> trafficClasses = TrafficClass.classify(null);
+
     private static EncryptionContext encryptionContext;
     private static boolean hasLoggedConfig;
 
@@ -292,17 +296,33 @@ public class DatabaseDescriptor
             {
                 throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync", false);
             }
+            else if (conf.commitlog_sync_group_window_in_ms != null)
+            {
+                throw new ConfigurationException("Batch sync specified, but commitlog_sync_group_window_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync", false);
+            }
             logger.debug("Syncing log with a batch window of {}", conf.commitlog_sync_batch_window_in_ms);
         }
+        else if (conf.commitlog_sync == Config.CommitLogSync.group)
+        {
+            if (conf.commitlog_sync_group_window_in_ms == null || conf.commitlog_sync_group_window_in_ms <= 0)
+            {
+                throw new ConfigurationException("Missing or invalid value for commitlog_sync_group_window_in_ms: positive Double expected.", false);
+            }
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_batch_window_in_ms != null)
+            {
+                throw new ConfigurationException("Group sync specified, but commitlog_sync_period_in_ms or commitlog_sync_batch_window_in_ms found. Only specify commitlog_sync_group_window_in_ms when using group sync", false);
+            }
+            logger.debug("Syncing log with a group window of {}", conf.commitlog_sync_group_window_in_ms);
+        }
         else
         {
             if (conf.commitlog_sync_period_in_ms == null)
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_period_in_ms: Integer expected", false);
             }
-            else if (conf.commitlog_sync_batch_window_in_ms != null)
+            else if (conf.commitlog_sync_batch_window_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.", false);
+                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms or commitlog_sync_group_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.", false);
             }
             logger.debug("Syncing log with a period of {}", conf.commitlog_sync_period_in_ms);
         }
@@ -418,6 +438,19 @@ public class DatabaseDescriptor
         if (conf.file_cache_size_in_mb == null)
             conf.file_cache_size_in_mb = Math.min(512, (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576)));
 
+        if (conf.otc_global_queue_limit_in_mb == null)
+            conf.otc_global_queue_limit_in_mb = (int) (Runtime.getRuntime().maxMemory() / (16 * 1048576));
+        if (conf.otc_queue_limit_in_mb <= 0 || conf.otc_global_queue_limit_in_mb <= 0)
+            throw new ConfigurationException("otc_queue_limit_in_mb and otc_global_queue_limit_in_mb must be positive", false);
+        if (conf.mutation_batch_window_us < 0)
+            throw new ConfigurationException("mutation_batch_window_us must not be negative", false);
+        if (conf.mutation_batch_max_mutations < 1)
+            throw new ConfigurationException("mutation_batch_max_mutations must be positive", false);
+        if (conf.max_speculative_read_retries < 1)
+            throw new ConfigurationException("max_speculative_read_retries must be positive", false);
+        if (conf.speculative_read_retry_budget <= 0)
+            throw new ConfigurationException("speculative_read_retry_budget must be positive", false);
+
         if (conf.memtable_offheap_space_in_mb == null)
             conf.memtable_offheap_space_in_mb = (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576));
         if (conf.memtable_offheap_space_in_mb < 0)
@@ -604,6 +637,25 @@ public class DatabaseDescriptor
         if (conf.hints_directory.equals(conf.saved_caches_directory))
             throw new ConfigurationException("saved_caches_directory must not be the same as the hints_directory", false);
 
+        if (conf.commitlog_segment_pool_size < 0)
+            throw new ConfigurationException("commitlog_segment_pool_size must not be negative, but was " + conf.commitlog_segment_pool_size, false);
+
+        if (conf.commitlog_lane_directories == null)
+            conf.commitlog_lane_directories = new String[0];
+        Set<String> commitLogLocations = new HashSet<>();
+        commitLogLocations.add(conf.commitlog_directory);
+        for (String laneDirectory : conf.commitlog_lane_directories)
+        {
+            if (!commitLogLocations.add(laneDirectory))
+                throw new ConfigurationException("commitlog_lane_directories must not repeat a directory or contain the commitlog_directory", false);
+            if (Arrays.asList(conf.data_file_directories).contains(laneDirectory))
+                throw new ConfigurationException("commitlog_lane_directories must not be the same as any data_file_directories", false);
+            if (laneDirectory.equals(conf.hints_directory))
+                throw new ConfigurationException("hints_directory must not be the same as any commitlog_lane_directories", false);
+            if (laneDirectory.equals(conf.saved_caches_directory))
+                throw new ConfigurationException("saved_caches_directory must not be the same as any commitlog_lane_directories", false);
+        }
+
         if (conf.memtable_flush_writers < 1)
             throw new ConfigurationException("memtable_flush_writers must be at least 1, but was " + conf.memtable_flush_writers, false);
 
@@ -623,6 +675,17 @@ public class DatabaseDescriptor
         if (conf.concurrent_compactors <= 0)
             throw new ConfigurationException("concurrent_compactors should be strictly greater than 0, but was " + conf.concurrent_compactors, false);
 
+        if (conf.compaction_subrange_parallelism <= 0)
+            throw new ConfigurationException("compaction_subrange_parallelism should be strictly greater than 0, but was " + conf.compaction_subrange_parallelism, false);
+
+        if (conf.internode_transport_threads != null && conf.internode_transport_threads <= 0)
+            throw new ConfigurationException("internode_transport_threads should be strictly greater than 0, but was " + conf.internode_transport_threads, false);
+
+        trafficClasses = TrafficClass.classify(conf.internode_traffic_class_overrides);
+
+        if (conf.tombstone_sweep_interval_in_minutes < 0)
+            throw new ConfigurationException("tombstone_sweep_interval_in_minutes must not be negative, but was " + conf.tombstone_sweep_interval_in_minutes, false);
+
         if (conf.initial_token != null)
             for (String token : tokensFromString(conf.initial_token))
                 partitioner.getTokenFactory().validate(token);
@@ -883,6 +946,8 @@ public class DatabaseDescriptor
             if (conf.commitlog_directory == null)
                 throw new ConfigurationException("commitlog_directory must be specified", false);
             FileUtils.createDirectory(conf.commitlog_directory);
+            for (String laneDirectory : conf.commitlog_lane_directories)
+                FileUtils.createDirectory(laneDirectory);
 
             if (conf.hints_directory == null)
                 throw new ConfigurationException("hints_directory must be specified", false);
@@ -1170,6 +1235,7 @@ public class DatabaseDescriptor
             case HINT:
             case BATCH_STORE:
             case BATCH_REMOVE:
+            case MUTATION_BATCH:
                 return getWriteRpcTimeout();
             case COUNTER_MUTATION:
                 return getCounterWriteRpcTimeout();
@@ -1231,6 +1297,22 @@ public class DatabaseDescriptor
         return conf.concurrent_compactors;
     }
 
+    public static int getCompactionSubRangeParallelism()
+    {
+        return conf.compaction_subrange_parallelism;
+    }
+
+    @VisibleForTesting
+    public static void setCompactionSubRangeParallelism(int parallelism)
+    {
+        conf.compaction_subrange_parallelism = parallelism;
+    }
+
+    public static int getTombstoneSweepIntervalInMinutes()
+    {
+        return conf.tombstone_sweep_interval_in_minutes;
+    }
+
     public static int getCompactionThroughputMbPerSec()
     {
         return conf.compaction_throughput_mb_per_sec;
@@ -1278,6 +1360,17 @@ public class DatabaseDescriptor
         return conf.commitlog_directory;
     }
 
+    /**
+     * @return the directories of all commit log lanes; the first is always the commitlog_directory
+     */
+    public static String[] getCommitLogLocations()
+    {
+        String[] locations = new String[conf.commitlog_lane_directories.length + 1];
+        locations[0] = conf.commitlog_directory;
+        System.arraycopy(conf.commitlog_lane_directories, 0, locations, 1, conf.commitlog_lane_directories.length);
+        return locations;
+    }
+
     public static ParameterizedClass getCommitLogCompression()
     {
         return conf.commitlog_compression;
@@ -1293,6 +1386,28 @@ public class DatabaseDescriptor
         return conf.commitlog_max_compression_buffers_in_pool;
     }
 
+    public static boolean getCommitLogDirectIO()
+    {
+        return conf.commitlog_direct_io;
+    }
+
+    @VisibleForTesting
+    public static void setCommitLogDirectIO(boolean directIO)
+    {
+        conf.commitlog_direct_io = directIO;
+    }
+
+    public static int getCommitLogSegmentPoolSize()
+    {
+        return conf.commitlog_segment_pool_size;
+    }
+
+    @VisibleForTesting
+    public static void setCommitLogSegmentPoolSize(int poolSize)
+    {
+        conf.commitlog_segment_pool_size = poolSize;
+    }
+
     public static int getMaxMutationSize()
     {
         return conf.max_mutation_size_in_kb * 1024;
@@ -1492,6 +1607,16 @@ public class DatabaseDescriptor
         conf.commitlog_sync_batch_window_in_ms = windowMillis;
     }
 
+    public static double getCommitLogSyncGroupWindow()
+    {
+        return conf.commitlog_sync_group_window_in_ms;
+    }
+
+    public static void setCommitLogSyncGroupWindow(double windowMillis)
+    {
+        conf.commitlog_sync_group_window_in_ms = windowMillis;
+    }
+
     public static int getCommitLogSyncPeriod()
     {
         return conf.commitlog_sync_period_in_ms;
@@ -1656,6 +1781,16 @@ public class DatabaseDescriptor
         conf.dynamic_snitch_badness_threshold = dynamicBadnessThreshold;
     }
 
+    public static Config.DynamicSnitchScoring getDynamicSnitchScoring()
+    {
+        return conf.dynamic_snitch_scoring;
+    }
+
+    public static void setDynamicSnitchScoring(Config.DynamicSnitchScoring dynamicSnitchScoring)
+    {
+        conf.dynamic_snitch_scoring = dynamicSnitchScoring;
+    }
+
     public static ServerEncryptionOptions getServerEncryptionOptions()
     {
         return conf.server_encryption_options;
@@ -1889,6 +2024,55 @@ public class DatabaseDescriptor
         return conf.internode_compression;
     }
 
+    public static boolean internodeCompressionFramed()
+    {
+        return conf.internode_compression_framed;
+    }
+
+    public static int getInternodeCompressionMinFrameSize()
+    {
+        return conf.internode_compression_min_frame_size_in_bytes;
+    }
+
+    public static Config.InternodeTransport getInternodeTransport()
+    {
+        return conf.internode_transport;
+    }
+
+    public static int getInternodeTransportThreads()
+    {
+        return conf.internode_transport_threads == null
+               ? Math.min(4, FBUtilities.getAvailableProcessors())
+               : conf.internode_transport_threads;
+    }
+
+    public static boolean useInternodeTrafficClasses()
+    {
+        return conf.internode_traffic_classes;
+    }
+
+    @VisibleForTesting
+    public static void setInternodeTrafficClasses(boolean useTrafficClasses)
+    {
+        conf.internode_traffic_classes = useTrafficClasses;
+    }
+
+    public static TrafficClass getTrafficClass(MessagingService.Verb verb)
+    {
+        return trafficClasses.get(verb);
+    }
+
+    public static boolean internodeLatencyTracing()
+    {
+        return conf.internode_latency_tracing;
+    }
+
+    @VisibleForTesting
+    public static void setInternodeLatencyTracing(boolean enabled)
+    {
+        conf.internode_latency_tracing = enabled;
+    }
+
     public static boolean getInterDCTcpNoDelay()
     {
         return conf.inter_dc_tcp_nodelay;
@@ -1964,6 +2148,48 @@ public class DatabaseDescriptor
         return conf.otc_coalescing_window_us;
     }
 
+    public static long getOtcQueueLimit()
+    {
+        return (long) conf.otc_queue_limit_in_mb << 20;
+    }
+
+    public static long getOtcGlobalQueueLimit()
+    {
+        return (long) conf.otc_global_queue_limit_in_mb << 20;
+    }
+
+    public static int getMutationBatchWindow()
+    {
+        return conf.mutation_batch_window_us;
+    }
+
+    @VisibleForTesting
+    public static void setMutationBatchWindow(int windowMicros)
+    {
+        conf.mutation_batch_window_us = windowMicros;
+    }
+
+    public static int getMutationBatchMaxMutations()
+    {
+        return conf.mutation_batch_max_mutations;
+    }
+
+    @VisibleForTesting
+    public static void setMutationBatchMaxMutations(int maxMutations)
+    {
+        conf.mutation_batch_max_mutations = maxMutations;
+    }
+
+    public static int getMaxSpeculativeReadRetries()
+    {
+        return conf.max_speculative_read_retries;
+    }
+
+    public static double getSpeculativeReadRetryBudget()
+    {
+        return conf.speculative_read_retry_budget;
+    }
+
     public static int getWindowsTimerInterval()
     {
         return conf.windows_timer_interval;
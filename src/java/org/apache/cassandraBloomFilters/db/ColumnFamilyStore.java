@@ -309,6 +309,19 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         };
     }
 
+    public static Runnable getTombstoneSweepSubmitter()
+    {
+        return new Runnable()
+        {
+            public void run()
+            {
+                for (Keyspace keyspace : Keyspace.all())
+                    for (ColumnFamilyStore cfs : keyspace.getColumnFamilyStores())
+                        CompactionManager.instance.submitTombstoneSweep(cfs);
+            }
+        };
+    }
+
     public void setCompactionParametersJson(String options)
     {
         setCompactionParameters(FBUtilities.fromJsonMap(options));
@@ -1012,7 +1025,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             ReplayPosition lastReplayPosition;
             while (true)
             {
-                lastReplayPosition = new Memtable.LastReplayPosition(CommitLog.instance.getContext());
+                lastReplayPosition = new Memtable.LastReplayPosition(CommitLog.instance.getContext(metadata));
                 ReplayPosition currentLast = lastReplayPositionHolder.get();
                 if ((currentLast == null || currentLast.compareTo(lastReplayPosition) <= 0)
                     && lastReplayPositionHolder.compareAndSet(currentLast, lastReplayPosition))
@@ -57,6 +57,71 @@ public class ColumnIndex
         return builder.build();
     }
 
+    /**
+     * Writes a partition whose rows are copied as is by the provided copier, building its index as
+     * {@link #writeAndBuildIndex} does. Such a partition has no partition deletion nor range tombstones.
+     *
+     * @param key the key of the partition.
+     * @param copier the copier, already started on the partition.
+     */
+    public static ColumnIndex copyAndBuildIndex(DecoratedKey key,
+                                                SerializedRowCopier copier,
+                                                SequentialWriter output,
+                                                SerializationHeader header,
+                                                Version version) throws IOException
+    {
+        assert version.storeRows();
+
+        long initialPosition = output.position();
+        ByteBufferUtil.writeWithShortLength(key.getKey(), output);
+        DeletionTime.serializer.serialize(DeletionTime.LIVE, output);
+        if (header.hasStatic())
+        {
+            boolean hasStatic = copier.advance();
+            assert hasStatic && copier.isStatic();
+            copier.writeTo(output, 0);
+        }
+        long headerLength = output.position() - initialPosition;
+
+        List<IndexHelper.IndexInfo> columnsIndex = new ArrayList<>();
+        ClusteringPrefix firstClustering = null;
+        long startPosition = -1;
+        long previousRowStart = 0;
+        int written = 0;
+        while (copier.advance())
+        {
+            long pos = output.position() - initialPosition;
+            if (firstClustering == null)
+            {
+                // Beginning of an index block, the only place we materialize clusterings besides its end
+                firstClustering = copier.clustering();
+                startPosition = pos;
+            }
+
+            copier.writeTo(output, pos - previousRowStart);
+            previousRowStart = pos;
+            ++written;
+
+            long width = output.position() - initialPosition - startPosition;
+            if (width >= DatabaseDescriptor.getColumnIndexSize())
+            {
+                columnsIndex.add(new IndexHelper.IndexInfo(firstClustering, copier.clustering(), startPosition, width, null));
+                firstClustering = null;
+            }
+        }
+
+        UnfilteredSerializer.serializer.writeEndOfPartition(output);
+        if (written == 0)
+            return EMPTY;
+
+        if (firstClustering != null)
+        {
+            long width = output.position() - initialPosition - startPosition;
+            columnsIndex.add(new IndexHelper.IndexInfo(firstClustering, copier.clustering(), startPosition, width, null));
+        }
+        return new ColumnIndex(headerLength, columnsIndex);
+    }
+
     @VisibleForTesting
     public static ColumnIndex nothing()
     {
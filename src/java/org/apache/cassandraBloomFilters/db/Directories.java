@@ -298,7 +298,8 @@ public class Directories
         {
             for (DataDirectory dataDirectory : dataDirectories)
             {
-                if (directory.getAbsolutePath().startsWith(dataDirectory.location.getAbsolutePath()))
+                // compare whole path components, so that /data10 is not taken for part of /data1
+                if (directory.toPath().toAbsolutePath().startsWith(dataDirectory.location.toPath().toAbsolutePath()))
                     return dataDirectory;
             }
         }
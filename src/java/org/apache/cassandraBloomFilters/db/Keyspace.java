@@ -491,11 +491,11 @@ public class Keyspace
         try (OpOrder.Group opGroup = writeOrder.start())
         {
             // write the mutation to the commitlog and memtables
-            ReplayPosition replayPosition = null;
+            ReplayPosition[] replayPositions = null;
             if (writeCommitLog)
             {
                 Tracing.trace("Appending to commitlog");
-                replayPosition = CommitLog.instance.add(mutation);
+                replayPositions = CommitLog.instance.add(mutation);
             }
 
             for (PartitionUpdate upd : mutation.getPartitionUpdates())
@@ -528,6 +528,7 @@ public class Keyspace
                 UpdateTransaction indexTransaction = updateIndexes
                                                      ? cfs.indexManager.newUpdateTransaction(upd, opGroup, nowInSec)
                                                      : UpdateTransaction.NO_OP;
+                ReplayPosition replayPosition = replayPositions == null ? null : replayPositions[CommitLog.instance.laneFor(cfs.metadata.cfId)];
                 cfs.apply(upd, indexTransaction, opGroup, replayPosition);
                 if (requiresViewUpdate)
                     baseComplete.set(System.currentTimeMillis());
@@ -74,7 +74,7 @@ public class Memtable implements Comparable<Memtable>
     // the last ReplayPosition owned by this Memtable; all ReplayPositions lower are owned by this or an earlier Memtable
     private volatile AtomicReference<ReplayPosition> lastReplayPosition;
     // the "first" ReplayPosition owned by this Memtable; this is inaccurate, and only used as a convenience to prevent CLSM flushing wantonly
-    private final ReplayPosition minReplayPosition = CommitLog.instance.getContext();
+    private final ReplayPosition minReplayPosition;
 
     public int compareTo(Memtable that)
     {
@@ -110,6 +110,7 @@ public class Memtable implements Comparable<Memtable>
     public Memtable(ColumnFamilyStore cfs)
     {
         this.cfs = cfs;
+        this.minReplayPosition = CommitLog.instance.getContext(cfs.metadata);
         this.allocator = MEMORY_POOL.newAllocator();
         this.initialComparator = cfs.metadata.comparator;
         this.cfs.scheduleFlush();
@@ -121,6 +122,7 @@ public class Memtable implements Comparable<Memtable>
     public Memtable(CFMetaData metadata)
     {
         this.initialComparator = metadata.comparator;
+        this.minReplayPosition = CommitLog.instance.getContext(metadata);
         this.cfs = null;
         this.allocator = null;
         this.columnsCollector = new ColumnsCollector(metadata.partitionColumns());
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandraBloomFilters.io.IVersionedSerializer;
+import org.apache.cassandraBloomFilters.io.util.DataInputPlus;
+import org.apache.cassandraBloomFilters.io.util.DataOutputPlus;
+import org.apache.cassandraBloomFilters.net.MessageOut;
+import org.apache.cassandraBloomFilters.net.MessagingService;
+
+import static org.apache.cassandraBloomFilters.db.TypeSizes.sizeof;
+import static org.apache.cassandraBloomFilters.db.TypeSizes.sizeofUnsignedVInt;
+
+/**
+ * Unrelated mutations bound for the same replica, sent as a single MUTATION_BATCH message. Unlike a logged
+ * {@link org.apache.cassandraBloomFilters.batchlog.Batch}, the mutations are applied independently of one another,
+ * and the replica answers with a single {@link Response} saying which of them were applied.
+ */
+public final class MutationBatch
+{
+    public static final Serializer serializer = new Serializer();
+
+    public final List<Mutation> mutations;
+
+    public MutationBatch(List<Mutation> mutations)
+    {
+        this.mutations = mutations;
+    }
+
+    public MessageOut<MutationBatch> createMessage()
+    {
+        return new MessageOut<>(MessagingService.Verb.MUTATION_BATCH, this, serializer);
+    }
+
+    public static final class Serializer implements IVersionedSerializer<MutationBatch>
+    {
+        public void serialize(MutationBatch batch, DataOutputPlus out, int version) throws IOException
+        {
+            out.writeUnsignedVInt(batch.mutations.size());
+            for (Mutation mutation : batch.mutations)
+                Mutation.serializer.serialize(mutation, out, version);
+        }
+
+        public MutationBatch deserialize(DataInputPlus in, int version) throws IOException
+        {
+            int count = (int) in.readUnsignedVInt();
+            List<Mutation> mutations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                mutations.add(Mutation.serializer.deserialize(in, version));
+            return new MutationBatch(mutations);
+        }
+
+        public long serializedSize(MutationBatch batch, int version)
+        {
+            long size = sizeofUnsignedVInt(batch.mutations.size());
+            for (Mutation mutation : batch.mutations)
+                size += Mutation.serializer.serializedSize(mutation, version);
+            return size;
+        }
+    }
+
+    /**
+     * The reply to a MUTATION_BATCH: whether each mutation of the batch, in order, was applied.
+     */
+    public static final class Response
+    {
+        public static final ResponseSerializer serializer = new ResponseSerializer();
+
+        public final boolean[] applied;
+
+        public Response(boolean[] applied)
+        {
+            this.applied = applied;
+        }
+
+        public MessageOut<Response> createMessage()
+        {
+            return new MessageOut<>(MessagingService.Verb.REQUEST_RESPONSE, this, serializer);
+        }
+    }
+
+    public static final class ResponseSerializer implements IVersionedSerializer<Response>
+    {
+        public void serialize(Response response, DataOutputPlus out, int version) throws IOException
+        {
+            out.writeUnsignedVInt(response.applied.length);
+            for (boolean applied : response.applied)
+                out.writeBoolean(applied);
+        }
+
+        public Response deserialize(DataInputPlus in, int version) throws IOException
+        {
+            boolean[] applied = new boolean[(int) in.readUnsignedVInt()];
+            for (int i = 0; i < applied.length; i++)
+                applied[i] = in.readBoolean();
+            return new Response(applied);
+        }
+
+        public long serializedSize(Response response, int version)
+        {
+            return sizeofUnsignedVInt(response.applied.length) + response.applied.length * sizeof(true);
+        }
+    }
+}
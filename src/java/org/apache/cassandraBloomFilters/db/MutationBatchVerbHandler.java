@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandraBloomFilters.exceptions.WriteTimeoutException;
+import org.apache.cassandraBloomFilters.net.IVerbHandler;
+import org.apache.cassandraBloomFilters.net.MessageIn;
+import org.apache.cassandraBloomFilters.net.MessagingService;
+import org.apache.cassandraBloomFilters.tracing.Tracing;
+
+/**
+ * Applies each mutation of a MUTATION_BATCH on its own, and replies once all of them have either been applied or
+ * failed, with a {@link MutationBatch.Response} telling the coordinator which of them it may count as acknowledged.
+ */
+public class MutationBatchVerbHandler implements IVerbHandler<MutationBatch>
+{
+    private static final Logger logger = LoggerFactory.getLogger(MutationBatchVerbHandler.class);
+
+    public void doVerb(MessageIn<MutationBatch> message, int id)
+    {
+        List<Mutation> mutations = message.payload.mutations;
+        boolean[] applied = new boolean[mutations.size()];
+        AtomicInteger remaining = new AtomicInteger(mutations.size());
+        InetAddress replyTo = message.from;
+
+        for (int i = 0; i < mutations.size(); i++)
+        {
+            int index = i;
+            try
+            {
+                mutations.get(i).applyFuture().whenComplete((o, t) -> {
+                    applied[index] = t == null;
+                    if (remaining.decrementAndGet() == 0)
+                        reply(applied, id, replyTo);
+                });
+            }
+            catch (Exception e)
+            {
+                // whatever keeps one mutation from being applied must not keep the others from being answered: this
+                // one is reported as not applied, and hinted by the coordinator
+                if (!(e instanceof WriteTimeoutException))
+                    logger.error("Failed to apply mutation {} of a batch from {}", index, replyTo, e);
+                if (remaining.decrementAndGet() == 0)
+                    reply(applied, id, replyTo);
+            }
+        }
+    }
+
+    private static void reply(boolean[] applied, int id, InetAddress replyTo)
+    {
+        // the final decrement of the countdown happens-after every write to applied, so this sees all of them
+        Tracing.trace("Enqueuing response to {}", replyTo);
+        MessagingService.instance().sendReply(new MutationBatch.Response(applied).createMessage(), id, replyTo);
+    }
+}
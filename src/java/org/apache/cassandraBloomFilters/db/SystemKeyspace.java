@@ -211,6 +211,7 @@ public final class SystemKeyspace
                 + "compacted_at timestamp,"
                 + "keyspace_name text,"
                 + "rows_merged map<int, bigint>,"
+                + "phase_micros map<text, bigint>,"
                 + "PRIMARY KEY ((id)))")
                 .defaultTimeToLive((int) TimeUnit.DAYS.toSeconds(7));
 
@@ -507,12 +508,13 @@ public final class SystemKeyspace
                                                long compactedAt,
                                                long bytesIn,
                                                long bytesOut,
-                                               Map<Integer, Long> rowsMerged)
+                                               Map<Integer, Long> rowsMerged,
+                                               Map<String, Long> phaseMicros)
     {
         // don't write anything when the history table itself is compacted, since that would in turn cause new compactions
         if (ksname.equals("system") && cfname.equals(COMPACTION_HISTORY))
             return;
-        String req = "INSERT INTO system.%s (id, keyspace_name, columnfamily_name, compacted_at, bytes_in, bytes_out, rows_merged) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        String req = "INSERT INTO system.%s (id, keyspace_name, columnfamily_name, compacted_at, bytes_in, bytes_out, rows_merged, phase_micros) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
         executeInternal(String.format(req, COMPACTION_HISTORY),
                         UUIDGen.getTimeUUID(),
                         ksname,
@@ -520,7 +522,8 @@ public final class SystemKeyspace
                         ByteBufferUtil.bytes(compactedAt),
                         bytesIn,
                         bytesOut,
-                        rowsMerged);
+                        rowsMerged,
+                        phaseMicros);
     }
 
     public static TabularData getCompactionHistory() throws OpenDataException
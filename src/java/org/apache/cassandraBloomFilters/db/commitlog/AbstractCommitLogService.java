@@ -45,6 +45,8 @@ public abstract class AbstractCommitLogService
     protected final Semaphore haveWork = new Semaphore(1);
 
     final CommitLog commitLog;
+    // the lane whose segments this service syncs
+    final CommitLogSegmentManager allocator;
     private final String name;
     private final long pollIntervalMillis;
 
@@ -56,9 +58,10 @@ public abstract class AbstractCommitLogService
      *
      * Subclasses may be notified when a sync finishes by using the syncComplete WaitQueue.
      */
-    AbstractCommitLogService(final CommitLog commitLog, final String name, final long pollIntervalMillis)
+    AbstractCommitLogService(final CommitLog commitLog, final CommitLogSegmentManager allocator, final String name, final long pollIntervalMillis)
     {
         this.commitLog = commitLog;
+        this.allocator = allocator;
         this.name = name;
         this.pollIntervalMillis = pollIntervalMillis;
     }
@@ -89,8 +92,9 @@ public abstract class AbstractCommitLogService
 
                         // sync and signal
                         long syncStarted = System.currentTimeMillis();
+                        beforeSync();
                         //This is a target for Byteman in CommitLogSegmentManagerTest
-                        commitLog.sync(shutdown);
+                        commitLog.sync(shutdown, allocator);
                         lastSyncedAt = syncStarted;
                         syncComplete.signalAll();
 
@@ -132,8 +136,7 @@ public abstract class AbstractCommitLogService
 
                         try
                         {
-                            haveWork.tryAcquire(sleep, TimeUnit.MILLISECONDS);
-                            haveWork.drainPermits();
+                            awaitWork(sleep);
                         }
                         catch (InterruptedException e)
                         {
@@ -163,6 +166,25 @@ public abstract class AbstractCommitLogService
         thread.start();
     }
 
+    /**
+     * Called by the sync thread immediately before each sync is issued.
+     */
+    protected void beforeSync()
+    {
+    }
+
+    /**
+     * Called by the sync thread between syncs; blocks until the next sync is due, or until
+     * work has been signalled by a writer via {@link #haveWork}.
+     *
+     * @param sleepMillis the time left before the next sync is due
+     */
+    protected void awaitWork(long sleepMillis) throws InterruptedException
+    {
+        haveWork.tryAcquire(sleepMillis, TimeUnit.MILLISECONDS);
+        haveWork.drainPermits();
+    }
+
     /**
      * Block for @param alloc to be sync'd as necessary, and handle bookkeeping
      */
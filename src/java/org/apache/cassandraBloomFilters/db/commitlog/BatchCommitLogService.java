@@ -21,9 +21,9 @@ import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 
 class BatchCommitLogService extends AbstractCommitLogService
 {
-    public BatchCommitLogService(CommitLog commitLog)
+    public BatchCommitLogService(CommitLog commitLog, CommitLogSegmentManager allocator, int lane)
     {
-        super(commitLog, "COMMIT-LOG-WRITER", (int) DatabaseDescriptor.getCommitLogSyncBatchWindow());
+        super(commitLog, allocator, CommitLog.laneThreadName("COMMIT-LOG-WRITER", lane), (int) DatabaseDescriptor.getCommitLogSyncBatchWindow());
     }
 
     protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
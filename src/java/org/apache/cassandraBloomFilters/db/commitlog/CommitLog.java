@@ -21,6 +21,9 @@ import java.io.*;
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 
 import javax.management.MBeanServer;
@@ -33,9 +36,10 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.commons.lang3.StringUtils;
 
-import org.apache.cassandraBloomFilters.config.Config;
+import org.apache.cassandraBloomFilters.config.CFMetaData;
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.config.ParameterizedClass;
+import org.apache.cassandraBloomFilters.config.Schema;
 import org.apache.cassandraBloomFilters.db.*;
 import org.apache.cassandraBloomFilters.io.FSWriteError;
 import org.apache.cassandraBloomFilters.schema.CompressionParams;
@@ -46,6 +50,7 @@ import org.apache.cassandraBloomFilters.metrics.CommitLogMetrics;
 import org.apache.cassandraBloomFilters.net.MessagingService;
 import org.apache.cassandraBloomFilters.security.EncryptionContext;
 import org.apache.cassandraBloomFilters.service.StorageService;
+import org.apache.cassandraBloomFilters.utils.CLibrary;
 import org.apache.cassandraBloomFilters.utils.JVMStabilityInspector;
 
 import static org.apache.cassandraBloomFilters.db.commitlog.CommitLogSegment.*;
@@ -55,6 +60,11 @@ import static org.apache.cassandraBloomFilters.utils.FBUtilities.updateChecksumI
 /*
  * Commit Log tracks every write operation into the system. The aim of the commit log is to be able to
  * successfully recover data that was not stored to disk via the Memtable.
+ *
+ * The log may be striped across several directories ("lanes"), each with its own segment manager and sync
+ * service. Every table is given a lane the first time it is written to, and all its writes go to that lane, so the
+ * ReplayPositions of any one table are totally ordered; segment ids are shared by all lanes, which keeps them
+ * comparable across lanes too. The total commit log space is shared by all lanes.
  */
 public class CommitLog implements CommitLogMBean
 {
@@ -66,19 +76,26 @@ public class CommitLog implements CommitLogMBean
     // empty segments when writing large records
     private final long MAX_MUTATION_SIZE = DatabaseDescriptor.getMaxMutationSize();
 
-    public final CommitLogSegmentManager allocator;
+    // one segment manager and sync service per lane, indexed alike
+    public final CommitLogSegmentManager[] allocators;
     public final CommitLogArchiver archiver;
     final CommitLogMetrics metrics;
-    final AbstractCommitLogService executor;
+    final AbstractCommitLogService[] executors;
 
     final ICompressor compressor;
+    // whether uncompressed, unencrypted segments are written with O_DIRECT
+    final boolean directIO;
     public ParameterizedClass compressorClass;
     public EncryptionContext encryptionContext;
-    final public String location;
+    final public String[] locations;
+
+    // the lane of every table written to so far; tables are spread over the lanes in the order they are first seen
+    private final ConcurrentMap<UUID, Integer> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLane = new AtomicInteger();
 
     private static CommitLog construct()
     {
-        CommitLog log = new CommitLog(DatabaseDescriptor.getCommitLogLocation(), CommitLogArchiver.construct());
+        CommitLog log = new CommitLog(DatabaseDescriptor.getCommitLogLocations(), CommitLogArchiver.construct());
 
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
         try
@@ -94,34 +111,118 @@ public class CommitLog implements CommitLogMBean
 
     @VisibleForTesting
     CommitLog(String location, CommitLogArchiver archiver)
+    {
+        this(new String[]{ location }, archiver);
+    }
+
+    CommitLog(String[] locations, CommitLogArchiver archiver)
     {
         compressorClass = DatabaseDescriptor.getCommitLogCompression();
-        this.location = location;
+        this.locations = locations;
         ICompressor compressor = compressorClass != null ? CompressionParams.createCompressor(compressorClass) : null;
         DatabaseDescriptor.createAllDirectories();
         encryptionContext = DatabaseDescriptor.getEncryptionContext();
 
         this.compressor = compressor;
         this.archiver = archiver;
-        metrics = new CommitLogMetrics();
 
-        executor = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
-                ? new BatchCommitLogService(this)
-                : new PeriodicCommitLogService(this);
+        boolean directIO = DatabaseDescriptor.getCommitLogDirectIO();
+        if (directIO && (compressor != null || encryptionContext.isEnabled()))
+        {
+            logger.warn("commitlog_direct_io only applies to uncompressed, unencrypted commit logs; ignoring it");
+            directIO = false;
+        }
+        else if (directIO && !CLibrary.jnaAvailable())
+        {
+            logger.warn("commitlog_direct_io requires JNA; falling back to memory-mapped commit log segments");
+            directIO = false;
+        }
+        else if (directIO)
+        {
+            for (String location : locations)
+            {
+                if (!DirectIOSegment.isSupported(location))
+                {
+                    logger.warn("The file system of commit log directory {} does not support O_DIRECT; falling back to memory-mapped commit log segments", location);
+                    directIO = false;
+                    break;
+                }
+            }
+        }
+        this.directIO = directIO;
+        metrics = new CommitLogMetrics();
 
-        allocator = new CommitLogSegmentManager(this);
+        allocators = new CommitLogSegmentManager[locations.length];
+        executors = new AbstractCommitLogService[locations.length];
+        for (int lane = 0; lane < locations.length; lane++)
+        {
+            allocators[lane] = new CommitLogSegmentManager(this, locations[lane], laneThreadName("COMMIT-LOG-ALLOCATOR", lane));
+            switch (DatabaseDescriptor.getCommitLogSync())
+            {
+                case batch:
+                    executors[lane] = new BatchCommitLogService(this, allocators[lane], lane);
+                    break;
+                case group:
+                    executors[lane] = new GroupCommitLogService(this, allocators[lane], lane);
+                    break;
+                default:
+                    executors[lane] = new PeriodicCommitLogService(this, allocators[lane], lane);
+            }
+        }
 
         // register metrics
-        metrics.attach(executor, allocator);
+        metrics.attach(executors, allocators);
     }
 
     CommitLog start()
     {
-        executor.start();
-        allocator.start();
+        for (int lane = 0; lane < allocators.length; lane++)
+        {
+            executors[lane].start();
+            allocators[lane].start();
+        }
         return this;
     }
 
+    static String laneThreadName(String name, int lane)
+    {
+        return lane == 0 ? name : name + ':' + lane;
+    }
+
+    /**
+     * @return the lane all writes to the given table go to
+     */
+    public int laneFor(UUID cfId)
+    {
+        if (allocators.length == 1)
+            return 0;
+
+        Integer lane = lanes.get(cfId);
+        if (lane == null)
+        {
+            Integer newLane = (nextLane.getAndIncrement() & Integer.MAX_VALUE) % allocators.length;
+            lane = lanes.putIfAbsent(cfId, newLane);
+            if (lane == null)
+                lane = newLane;
+        }
+        return lane;
+    }
+
+    /**
+     * @return the lane the writes to the given table go to; a secondary index is given the lane of its base table,
+     * whose flushes its memtables follow
+     */
+    private int laneFor(CFMetaData metadata)
+    {
+        if (metadata.isIndex())
+        {
+            UUID baseId = Schema.instance.getId(metadata.ksName, metadata.getParentColumnFamilyName());
+            if (baseId != null)
+                return laneFor(baseId);
+        }
+        return laneFor(metadata.cfId);
+    }
+
     /**
      * Perform recovery on commit logs located in the directory specified by the config file.
      *
@@ -130,13 +231,14 @@ public class CommitLog implements CommitLogMBean
     public int recover() throws IOException
     {
         // If createReserveSegments is already flipped, the CLSM is running and recovery has already taken place.
-        if (allocator.createReserveSegments)
+        if (allocators[0].createReserveSegments)
             return 0;
 
         // Allocator could be in the process of initial startup with 0 active and available segments. We need to wait for
         // the allocation manager to finish allocation and add it to available segments so we don't get an invalid response
         // on allocator.manages(...) below by grabbing a file off the filesystem before it's added to the CLQ.
-        allocator.allocatingFrom();
+        for (CommitLogSegmentManager allocator : allocators)
+            allocator.allocatingFrom();
 
         FilenameFilter unmanagedFilesFilter = new FilenameFilter()
         {
@@ -145,12 +247,17 @@ public class CommitLog implements CommitLogMBean
                 // we used to try to avoid instantiating commitlog (thus creating an empty segment ready for writes)
                 // until after recover was finished.  this turns out to be fragile; it is less error-prone to go
                 // ahead and allow writes before recover(), and just skip active segments when we do.
-                return CommitLogDescriptor.isValid(name) && !allocator.manages(name);
+                if (!CommitLogDescriptor.isValid(name))
+                    return false;
+                for (CommitLogSegmentManager allocator : allocators)
+                    if (allocator.manages(name))
+                        return false;
+                return true;
             }
         };
 
-        // submit all existing files in the commit log dir for archiving prior to recovery - CASSANDRA-6904
-        for (File file : new File(DatabaseDescriptor.getCommitLogLocation()).listFiles(unmanagedFilesFilter))
+        // submit all existing files in the commit log dirs for archiving prior to recovery - CASSANDRA-6904
+        for (File file : listUnmanagedFiles(unmanagedFilesFilter))
         {
             archiver.maybeArchive(file.getPath(), file.getName());
             archiver.maybeWaitForArchiving(file.getName());
@@ -159,7 +266,8 @@ public class CommitLog implements CommitLogMBean
         assert archiver.archivePending.isEmpty() : "Not all commit log archive tasks were completed before restore";
         archiver.maybeRestoreArchive();
 
-        File[] files = new File(DatabaseDescriptor.getCommitLogLocation()).listFiles(unmanagedFilesFilter);
+        // segments of all lanes are replayed together, in segment id order
+        File[] files = listUnmanagedFiles(unmanagedFilesFilter);
         int replayed = 0;
         if (files.length == 0)
         {
@@ -173,13 +281,26 @@ public class CommitLog implements CommitLogMBean
             logger.info("Log replay complete, {} replayed mutations", replayed);
 
             for (File f : files)
-                allocator.recycleSegment(f);
+                allocators[0].recycleSegment(f);
         }
 
-        allocator.enableReserveSegmentCreation();
+        for (CommitLogSegmentManager allocator : allocators)
+            allocator.enableReserveSegmentCreation();
         return replayed;
     }
 
+    private File[] listUnmanagedFiles(FilenameFilter unmanagedFilesFilter)
+    {
+        List<File> files = new ArrayList<>();
+        for (String location : locations)
+        {
+            File[] laneFiles = new File(location).listFiles(unmanagedFilesFilter);
+            if (laneFiles != null)
+                files.addAll(Arrays.asList(laneFiles));
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
     /**
      * Perform recovery on a list of commit log files.
      *
@@ -204,12 +325,13 @@ public class CommitLog implements CommitLogMBean
     }
 
     /**
-     * @return a ReplayPosition which, if {@code >= one} returned from add(), implies add() was started
-     * (but not necessarily finished) prior to this call
+     * @param metadata the table of the writes the position is compared to
+     * @return a ReplayPosition which, if {@code >= one} returned from add() for a write to the table, implies
+     * add() was started (but not necessarily finished) prior to this call
      */
-    public ReplayPosition getContext()
+    public ReplayPosition getContext(CFMetaData metadata)
     {
-        return allocator.allocatingFrom().getContext();
+        return allocators[laneFor(metadata)].allocatingFrom().getContext();
     }
 
     /**
@@ -217,7 +339,8 @@ public class CommitLog implements CommitLogMBean
      */
     public void forceRecycleAllSegments(Iterable<UUID> droppedCfs)
     {
-        allocator.forceRecycleAll(droppedCfs);
+        for (CommitLogSegmentManager allocator : allocators)
+            allocator.forceRecycleAll(droppedCfs);
     }
 
     /**
@@ -225,13 +348,22 @@ public class CommitLog implements CommitLogMBean
      */
     public void forceRecycleAllSegments()
     {
-        allocator.forceRecycleAll(Collections.<UUID>emptyList());
+        forceRecycleAllSegments(Collections.<UUID>emptyList());
     }
 
     /**
      * Forces a disk flush on the commit log files that need it.  Blocking.
      */
     public void sync(boolean syncAllSegments)
+    {
+        for (CommitLogSegmentManager allocator : allocators)
+            sync(syncAllSegments, allocator);
+    }
+
+    /**
+     * Forces a disk flush on the commit log files of a single lane that need it.  Blocking.
+     */
+    void sync(boolean syncAllSegments, CommitLogSegmentManager allocator)
     {
         CommitLogSegment current = allocator.allocatingFrom();
         for (CommitLogSegment segment : allocator.getActiveSegments())
@@ -243,22 +375,57 @@ public class CommitLog implements CommitLogMBean
     }
 
     /**
-     * Preempts the CLExecutor, telling to to sync immediately
+     * Preempts the CLExecutors, telling them to sync immediately
      */
     public void requestExtraSync()
     {
-        executor.requestExtraSync();
+        for (AbstractCommitLogService executor : executors)
+            executor.requestExtraSync();
     }
 
     /**
-     * Add a Mutation to the commit log.
+     * Add a Mutation to the commit log. The updates of a mutation whose tables are on different lanes are logged as
+     * one entry per lane, which are replayed independently of each other.
      *
      * @param mutation the Mutation to add to the log
+     * @return the position of the entry written to each lane, indexed by lane (see {@link #laneFor(UUID)}); null for
+     * the lanes the mutation has no table on
      */
-    public ReplayPosition add(Mutation mutation)
+    public ReplayPosition[] add(Mutation mutation)
     {
         assert mutation != null;
 
+        ReplayPosition[] positions = new ReplayPosition[allocators.length];
+        int lane = -1;
+        boolean split = false;
+        for (UUID cfId : mutation.getColumnFamilyIds())
+        {
+            int cfLane = laneFor(cfId);
+            split |= lane >= 0 && cfLane != lane;
+            lane = cfLane;
+        }
+
+        if (!split)
+        {
+            lane = Math.max(lane, 0);
+            positions[lane] = add(mutation, lane);
+            return positions;
+        }
+
+        Map<Integer, Set<UUID>> cfIdsByLane = new HashMap<>();
+        for (UUID cfId : mutation.getColumnFamilyIds())
+            cfIdsByLane.computeIfAbsent(laneFor(cfId), l -> new HashSet<>()).add(cfId);
+        for (Map.Entry<Integer, Set<UUID>> entry : cfIdsByLane.entrySet())
+        {
+            Set<UUID> elsewhere = new HashSet<>(mutation.getColumnFamilyIds());
+            elsewhere.removeAll(entry.getValue());
+            positions[entry.getKey()] = add(mutation.without(elsewhere), entry.getKey());
+        }
+        return positions;
+    }
+
+    private ReplayPosition add(Mutation mutation, int lane)
+    {
         int size = (int) Mutation.serializer.serializedSize(mutation, MessagingService.current_version);
 
         int totalSize = size + ENTRY_OVERHEAD_SIZE;
@@ -268,7 +435,7 @@ public class CommitLog implements CommitLogMBean
                                                              totalSize, MAX_MUTATION_SIZE));
         }
 
-        Allocation alloc = allocator.allocate(mutation, (int) totalSize);
+        Allocation alloc = allocators[lane].allocate(mutation, (int) totalSize);
         CRC32 checksum = new CRC32();
         final ByteBuffer buffer = alloc.getBuffer();
         try (BufferedDataOutputStreamPlus dos = new DataOutputBufferFixed(buffer))
@@ -292,10 +459,51 @@ public class CommitLog implements CommitLogMBean
             alloc.markWritten();
         }
 
-        executor.finishWriteFor(alloc);
+        executors[lane].finishWriteFor(alloc);
         return alloc.getReplayPosition();
     }
 
+    /**
+     * @return the space left for segment files out of the total commit log space; negative if it is exceeded
+     */
+    long unusedCapacity()
+    {
+        long total = DatabaseDescriptor.getTotalCommitlogSpaceInMB() * 1024 * 1024;
+        long currentSize = 0;
+        for (CommitLogSegmentManager allocator : allocators)
+            currentSize += allocator.onDiskSize();
+        logger.trace("Total active commitlog segment space used is {} out of {}", currentSize, total);
+        return total - currentSize;
+    }
+
+    /**
+     * Flushes the tables that are dirty in the oldest segments if the commit log uses more than its total space.
+     * The space is shared by all lanes, so a busy lane may use what idle ones leave; in turn the segments to free
+     * are the oldest of every lane, not only those of the lane whose manager noticed.
+     */
+    void flushOldestSegmentsIfFull()
+    {
+        long unused = unusedCapacity();
+        if (unused >= 0)
+            return;
+
+        List<CommitLogSegment> completed = new ArrayList<>();
+        for (CommitLogSegmentManager allocator : allocators)
+            completed.addAll(allocator.getCompletedSegments());
+        completed.sort(Comparator.comparingLong(segment -> segment.id));
+
+        List<CommitLogSegment> segmentsToRecycle = new ArrayList<>();
+        long spaceToReclaim = 0;
+        for (CommitLogSegment segment : completed)
+        {
+            segmentsToRecycle.add(segment);
+            spaceToReclaim += DatabaseDescriptor.getCommitLogSegmentSize();
+            if (spaceToReclaim + unused >= 0)
+                break;
+        }
+        CommitLogSegmentManager.flushDataFrom(segmentsToRecycle, false);
+    }
+
     /**
      * Modifies the per-CF dirty cursors of any commit log segments for the column family according to the position
      * given. Discards any commit log segments that are no longer used.
@@ -307,10 +515,17 @@ public class CommitLog implements CommitLogMBean
     {
         logger.trace("discard completed log segments for {}, table {}", context, cfId);
 
-        // Go thru the active segment files, which are ordered oldest to newest, marking the
+        // Go thru the active segment files of each lane, which are ordered oldest to newest, marking the
         // flushed CF as clean, until we reach the segment file containing the ReplayPosition passed
         // in the arguments. Any segments that become unused after they are marked clean will be
-        // recycled or discarded.
+        // recycled or discarded. A CF is only ever dirty in its own lane, and marking it clean elsewhere
+        // is a no-op.
+        for (CommitLogSegmentManager allocator : allocators)
+            discardCompletedSegments(allocator, cfId, context);
+    }
+
+    private void discardCompletedSegments(CommitLogSegmentManager allocator, UUID cfId, ReplayPosition context)
+    {
         for (Iterator<CommitLogSegment> iter = allocator.getActiveSegments().iterator(); iter.hasNext();)
         {
             CommitLogSegment segment = iter.next();
@@ -367,8 +582,9 @@ public class CommitLog implements CommitLogMBean
     public List<String> getActiveSegmentNames()
     {
         List<String> segmentNames = new ArrayList<>();
-        for (CommitLogSegment segment : allocator.getActiveSegments())
-            segmentNames.add(segment.getName());
+        for (CommitLogSegmentManager allocator : allocators)
+            for (CommitLogSegment segment : allocator.getActiveSegments())
+                segmentNames.add(segment.getName());
         return segmentNames;
     }
 
@@ -381,23 +597,28 @@ public class CommitLog implements CommitLogMBean
     public long getActiveContentSize()
     {
         long size = 0;
-        for (CommitLogSegment segment : allocator.getActiveSegments())
-            size += segment.contentSize();
+        for (CommitLogSegmentManager allocator : allocators)
+            for (CommitLogSegment segment : allocator.getActiveSegments())
+                size += segment.contentSize();
         return size;
     }
 
     @Override
     public long getActiveOnDiskSize()
     {
-        return allocator.onDiskSize();
+        long size = 0;
+        for (CommitLogSegmentManager allocator : allocators)
+            size += allocator.onDiskSize();
+        return size;
     }
 
     @Override
     public Map<String, Double> getActiveSegmentCompressionRatios()
     {
         Map<String, Double> segmentRatios = new TreeMap<>();
-        for (CommitLogSegment segment : allocator.getActiveSegments())
-            segmentRatios.put(segment.getName(), 1.0 * segment.onDiskSize() / segment.contentSize());
+        for (CommitLogSegmentManager allocator : allocators)
+            for (CommitLogSegment segment : allocator.getActiveSegments())
+                segmentRatios.put(segment.getName(), 1.0 * segment.onDiskSize() / segment.contentSize());
         return segmentRatios;
     }
 
@@ -406,10 +627,14 @@ public class CommitLog implements CommitLogMBean
      */
     public void shutdownBlocking() throws InterruptedException
     {
-        executor.shutdown();
-        executor.awaitTermination();
-        allocator.shutdown();
-        allocator.awaitTermination();
+        for (AbstractCommitLogService executor : executors)
+            executor.shutdown();
+        for (AbstractCommitLogService executor : executors)
+            executor.awaitTermination();
+        for (CommitLogSegmentManager allocator : allocators)
+            allocator.shutdown();
+        for (CommitLogSegmentManager allocator : allocators)
+            allocator.awaitTermination();
     }
 
     /**
@@ -427,16 +652,19 @@ public class CommitLog implements CommitLogMBean
      */
     public void stopUnsafe(boolean deleteSegments)
     {
-        executor.shutdown();
+        for (AbstractCommitLogService executor : executors)
+            executor.shutdown();
         try
         {
-            executor.awaitTermination();
+            for (AbstractCommitLogService executor : executors)
+                executor.awaitTermination();
         }
         catch (InterruptedException e)
         {
             throw new RuntimeException(e);
         }
-        allocator.stopUnsafe(deleteSegments);
+        for (CommitLogSegmentManager allocator : allocators)
+            allocator.stopUnsafe(deleteSegments);
     }
 
     /**
@@ -444,8 +672,11 @@ public class CommitLog implements CommitLogMBean
      */
     public int restartUnsafe() throws IOException
     {
-        allocator.start();
-        executor.restartUnsafe();
+        for (int lane = 0; lane < allocators.length; lane++)
+        {
+            allocators[lane].start();
+            executors[lane].restartUnsafe();
+        }
         try
         {
             return recover();
@@ -470,7 +701,10 @@ public class CommitLog implements CommitLogMBean
      */
     public int activeSegments()
     {
-        return allocator.getActiveSegments().size();
+        int count = 0;
+        for (CommitLogSegmentManager allocator : allocators)
+            count += allocator.getActiveSegments().size();
+        return count;
     }
 
     @VisibleForTesting
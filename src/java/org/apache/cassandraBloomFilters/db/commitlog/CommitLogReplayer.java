@@ -34,7 +34,10 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
@@ -52,8 +55,7 @@ import org.cliffc.high_scale_lib.NonBlockingHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandraBloomFilters.concurrent.Stage;
-import org.apache.cassandraBloomFilters.concurrent.StageManager;
+import org.apache.cassandraBloomFilters.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandraBloomFilters.config.CFMetaData;
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.config.Schema;
@@ -71,6 +73,7 @@ import org.apache.cassandraBloomFilters.io.util.DataInputBuffer;
 import org.apache.cassandraBloomFilters.io.util.FileDataInput;
 import org.apache.cassandraBloomFilters.io.util.RandomAccessReader;
 import org.apache.cassandraBloomFilters.io.util.RebufferingInputStream;
+import org.apache.cassandraBloomFilters.metrics.CommitLogMetrics;
 import org.apache.cassandraBloomFilters.utils.FBUtilities;
 import org.apache.cassandraBloomFilters.utils.JVMStabilityInspector;
 import org.apache.cassandraBloomFilters.utils.WrappedRunnable;
@@ -86,20 +89,30 @@ public class CommitLogReplayer
     static final String IGNORE_REPLAY_ERRORS_PROPERTY = "cassandra.commitlog.ignorereplayerrors";
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = Integer.getInteger("cassandra.commitlog_max_outstanding_replay_count", 1024);
+    // number of segments read, decompressed/decrypted and deserialized concurrently ahead of the one being applied
+    private static final int REPLAY_READER_THREADS = Integer.getInteger("cassandra.commitlog_replay_reader_threads", Math.min(4, FBUtilities.getAvailableProcessors()));
+    // bound on the segment files read ahead of and including the one being applied, whose deserialized mutations
+    // are all held on heap at once; a compressed or encrypted segment takes more memory than its file size
+    private static final long MAX_READ_AHEAD_BYTES = Long.getLong("cassandra.commitlog_replay_read_ahead_bytes", 128L * 1024 * 1024);
     private static final int LEGACY_END_OF_SEGMENT_MARKER = 0;
 
     private final Set<Keyspace> keyspacesRecovered;
     private final Queue<Future<Integer>> futures;
-    private final Map<UUID, AtomicInteger> invalidMutations;
+    private final ConcurrentMap<UUID, AtomicInteger> invalidMutations;
     private final AtomicInteger replayedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
     private final ReplayPosition globalPosition;
-    private final CRC32 checksum;
-    private byte[] buffer;
+    private final ReadState readState;
+    private final int readerThreads;
     private long pendingMutationBytes = 0;
 
+    // single threaded executors that mutations are applied on, striped by partition key so that mutations
+    // to the same partition are applied in commit log order; created on first use
+    private ExecutorService[] applyLanes;
+
     private final ReplayFilter replayFilter;
     private final CommitLogArchiver archiver;
+    private final CommitLogMetrics metrics;
 
     /*
      * Wrapper around initiating mutations read from the log to make it possible
@@ -165,23 +178,65 @@ public class CommitLogReplayer
                     }
                 }
             };
-            return StageManager.getStage(Stage.MUTATION).submit(runnable, serializedSize);
+            return clr.applyExecutorFor(mutation).submit(runnable, serializedSize);
+        }
+    }
+
+    /**
+     * Scratch space used while reading a segment; each segment reader needs its own.
+     */
+    private static final class ReadState
+    {
+        final CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[4096];
+    }
+
+    /**
+     * Receives each checksummed entry read from a sync section.
+     */
+    private interface EntryHandler
+    {
+        void handle(byte[] inputBuffer, int size, long entryLocation, CommitLogDescriptor desc) throws IOException;
+    }
+
+    /**
+     * A deserialized mutation read ahead of being applied.
+     */
+    private static final class ReplayEntry
+    {
+        final Mutation mutation;
+        final long segmentId;
+        final int size;
+        final long entryLocation;
+
+        ReplayEntry(Mutation mutation, long segmentId, int size, long entryLocation)
+        {
+            this.mutation = mutation;
+            this.segmentId = segmentId;
+            this.size = size;
+            this.entryLocation = entryLocation;
         }
     }
 
     CommitLogReplayer(CommitLog commitLog, ReplayPosition globalPosition, Map<UUID, ReplayPosition> cfPositions, ReplayFilter replayFilter)
+    {
+        this(commitLog, globalPosition, cfPositions, replayFilter, 1);
+    }
+
+    CommitLogReplayer(CommitLog commitLog, ReplayPosition globalPosition, Map<UUID, ReplayPosition> cfPositions, ReplayFilter replayFilter, int readerThreads)
     {
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
         this.futures = new ArrayDeque<Future<Integer>>();
-        this.buffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.readState = new ReadState();
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
-        this.checksum = new CRC32();
         this.cfPositions = cfPositions;
         this.globalPosition = globalPosition;
         this.replayFilter = replayFilter;
         this.archiver = commitLog.archiver;
+        this.metrics = commitLog.metrics;
+        this.readerThreads = readerThreads;
     }
 
     public static CommitLogReplayer construct(CommitLog commitLog)
@@ -226,14 +281,111 @@ public class CommitLogReplayer
         }
         ReplayPosition globalPosition = replayPositionOrdering.min(cfPositions.values());
         logger.trace("Global replay position is {} from columnfamilies {}", globalPosition, FBUtilities.toString(cfPositions));
-        return new CommitLogReplayer(commitLog, globalPosition, cfPositions, replayFilter);
+        return new CommitLogReplayer(commitLog, globalPosition, cfPositions, replayFilter, REPLAY_READER_THREADS);
     }
 
     public void recover(File[] clogs) throws IOException
     {
-        int i;
-        for (i = 0; i < clogs.length; ++i)
-            recover(clogs[i], i + 1 == clogs.length);
+        metrics.pendingReplaySegments.inc(clogs.length);
+        int replayed = 0;
+        try
+        {
+            if (readerThreads <= 1 || clogs.length <= 1)
+            {
+                for (int i = 0; i < clogs.length; ++i)
+                {
+                    recover(clogs[i], i + 1 == clogs.length);
+                    markReplayed(clogs[i]);
+                    replayed++;
+                }
+                return;
+            }
+
+            // Segments are read, decompressed or decrypted, and deserialized concurrently, up to one per reader thread
+            // and MAX_READ_AHEAD_BYTES ahead of the one being applied. Mutations are still initiated in segment order,
+            // which together with the partition striped apply lanes keeps every partition's mutations applied in the
+            // order they were logged.
+            ExecutorService readers = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayReader", readerThreads);
+            try
+            {
+                Queue<Future<List<ReplayEntry>>> readAhead = new ArrayDeque<>();
+                long readAheadBytes = 0;
+                int nextToRead = 0;
+                for (int i = 0; i < clogs.length; ++i)
+                {
+                    for (; nextToRead < clogs.length && nextToRead <= i + readerThreads; ++nextToRead)
+                    {
+                        // the segment to apply next is always read, whatever its size
+                        final File file = clogs[nextToRead];
+                        if (nextToRead > i && readAheadBytes + file.length() > MAX_READ_AHEAD_BYTES)
+                            break;
+                        readAheadBytes += file.length();
+                        final boolean tolerateTruncation = nextToRead + 1 == clogs.length;
+                        readAhead.add(readers.submit(() -> readSegment(file, tolerateTruncation)));
+                    }
+
+                    for (ReplayEntry entry : waitForSegment(readAhead.poll()))
+                        initiateMutation(entry.mutation, entry.segmentId, entry.size, entry.entryLocation);
+                    readAheadBytes -= clogs[i].length();
+                    markReplayed(clogs[i]);
+                    replayed++;
+                }
+            }
+            finally
+            {
+                readers.shutdownNow();
+            }
+        }
+        finally
+        {
+            // segments a failure kept from being replayed are not pending any more either
+            metrics.pendingReplaySegments.dec(clogs.length - replayed);
+        }
+    }
+
+    private List<ReplayEntry> readSegment(File file, boolean tolerateTruncation) throws IOException
+    {
+        final List<ReplayEntry> entries = new ArrayList<>();
+        recover(file, tolerateTruncation, new ReadState(), (inputBuffer, size, entryLocation, desc) -> {
+            Mutation mutation = deserializeMutation(inputBuffer, size, desc);
+            if (mutation != null)
+                entries.add(new ReplayEntry(mutation, desc.id, size, entryLocation));
+        });
+        return entries;
+    }
+
+    private static List<ReplayEntry> waitForSegment(Future<List<ReplayEntry>> segment) throws IOException
+    {
+        try
+        {
+            return Uninterruptibles.getUninterruptibly(segment);
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void markReplayed(File file)
+    {
+        metrics.pendingReplaySegments.dec();
+        metrics.replayedSegments.inc();
+        metrics.replayedBytes.inc(file.length());
+    }
+
+    /**
+     * @return the executor a mutation is to be applied on; mutations to a given partition always go to the same one
+     */
+    ExecutorService applyExecutorFor(Mutation mutation)
+    {
+        if (applyLanes == null)
+        {
+            applyLanes = new ExecutorService[DatabaseDescriptor.getConcurrentWriters()];
+            for (int i = 0; i < applyLanes.length; i++)
+                applyLanes[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayApply:" + i, 1);
+        }
+        return applyLanes[(mutation.key().hashCode() & Integer.MAX_VALUE) % applyLanes.length];
     }
 
     public int blockForWrites()
@@ -245,6 +397,13 @@ public class CommitLogReplayer
         FBUtilities.waitOnFutures(futures);
         logger.trace("Finished waiting on mutations from recovery");
 
+        if (applyLanes != null)
+        {
+            for (ExecutorService lane : applyLanes)
+                lane.shutdown();
+            applyLanes = null;
+        }
+
         // flush replayed keyspaces
         futures.clear();
         boolean flushingSystem = false;
@@ -343,6 +502,11 @@ public class CommitLogReplayer
     }
 
     public void recover(File file, boolean tolerateTruncation) throws IOException
+    {
+        recover(file, tolerateTruncation, readState, this::replayMutation);
+    }
+
+    private void recover(File file, boolean tolerateTruncation, ReadState state, EntryHandler handler) throws IOException
     {
         // just transform from the file name (no reading of headers) to determine version
         CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
@@ -356,7 +520,7 @@ public class CommitLogReplayer
                     return;
                 if (globalPosition.segment == desc.id)
                     reader.seek(globalPosition.position);
-                replaySyncSection(reader, (int) reader.length(), desc, desc.fileName(), tolerateTruncation);
+                replaySyncSection(reader, (int) reader.length(), desc, desc.fileName(), tolerateTruncation, state, handler);
                 return;
             }
             final long segmentId = desc.id;
@@ -404,7 +568,7 @@ public class CommitLogReplayer
                     if (desc.id == globalPosition.segment && syncSegment.endPosition < globalPosition.position)
                         continue;
                     String errorContext = String.format("next section at %d in %s", syncSegment.fileStartPosition, desc.fileName());
-                    if (!replaySyncSection(syncSegment.input, syncSegment.endPosition, desc, errorContext, tolerateErrorsInSection))
+                    if (!replaySyncSection(syncSegment.input, syncSegment.endPosition, desc, errorContext, tolerateErrorsInSection, state, handler))
                         break;
                 }
             }
@@ -441,8 +605,10 @@ public class CommitLogReplayer
      *
      * @return Whether replay should continue with the next section.
      */
-    private boolean replaySyncSection(FileDataInput reader, int end, CommitLogDescriptor desc, String errorContext, boolean tolerateErrors) throws IOException
+    private boolean replaySyncSection(FileDataInput reader, int end, CommitLogDescriptor desc, String errorContext, boolean tolerateErrors,
+                                      ReadState state, EntryHandler handler) throws IOException
     {
+        CRC32 checksum = state.checksum;
          /* read the logs populate Mutation and apply */
         while (reader.getFilePointer() < end && !reader.isEOF())
         {
@@ -494,9 +660,9 @@ public class CommitLogReplayer
                 }
                 // ok.
 
-                if (serializedSize > buffer.length)
-                    buffer = new byte[(int) (1.2 * serializedSize)];
-                reader.readFully(buffer, 0, serializedSize);
+                if (serializedSize > state.buffer.length)
+                    state.buffer = new byte[(int) (1.2 * serializedSize)];
+                reader.readFully(state.buffer, 0, serializedSize);
                 if (desc.version < CommitLogDescriptor.VERSION_21)
                     claimedCRC32 = reader.readLong();
                 else
@@ -510,7 +676,7 @@ public class CommitLogReplayer
                 return false; // last CL entry didn't get completely written. that's ok.
             }
 
-            checksum.update(buffer, 0, serializedSize);
+            checksum.update(state.buffer, 0, serializedSize);
             if (claimedCRC32 != checksum.getValue())
             {
                 handleReplayError(tolerateErrors,
@@ -518,7 +684,7 @@ public class CommitLogReplayer
                                   mutationStart, errorContext);
                 continue;
             }
-            replayMutation(buffer, serializedSize, reader.getFilePointer(), desc);
+            handler.handle(state.buffer, serializedSize, reader.getFilePointer(), desc);
         }
         return true;
     }
@@ -529,7 +695,18 @@ public class CommitLogReplayer
     void replayMutation(byte[] inputBuffer, int size,
             final long entryLocation, final CommitLogDescriptor desc) throws IOException
     {
+        Mutation mutation = deserializeMutation(inputBuffer, size, desc);
+        if (mutation != null)
+            initiateMutation(mutation, desc.id, size, entryLocation);
+    }
 
+    /**
+     * Deserializes a commit log entry, which may be done concurrently for different segments.
+     *
+     * @return the mutation, or null if it is not to be replayed
+     */
+    private Mutation deserializeMutation(byte[] inputBuffer, int size, CommitLogDescriptor desc) throws IOException
+    {
         final Mutation mutation;
         try (RebufferingInputStream bufIn = new DataInputBuffer(inputBuffer, 0, size))
         {
@@ -543,16 +720,17 @@ public class CommitLogReplayer
         catch (UnknownColumnFamilyException ex)
         {
             if (ex.cfId == null)
-                return;
+                return null;
             AtomicInteger i = invalidMutations.get(ex.cfId);
             if (i == null)
             {
-                i = new AtomicInteger(1);
-                invalidMutations.put(ex.cfId, i);
+                i = new AtomicInteger();
+                AtomicInteger existing = invalidMutations.putIfAbsent(ex.cfId, i);
+                if (existing != null)
+                    i = existing;
             }
-            else
-                i.incrementAndGet();
-            return;
+            i.incrementAndGet();
+            return null;
         }
         catch (Throwable t)
         {
@@ -571,15 +749,20 @@ public class CommitLogReplayer
                               "Exception follows: %s",
                               f.getAbsolutePath(),
                               t);
-            return;
+            return null;
         }
+        return mutation;
+    }
 
+    private void initiateMutation(Mutation mutation, long segmentId, int size, long entryLocation)
+    {
         if (logger.isTraceEnabled())
             logger.trace("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), mutation.key(), "{" + StringUtils.join(mutation.getPartitionUpdates().iterator(), ", ") + "}");
 
+        metrics.replayedMutations.inc();
         pendingMutationBytes += size;
         futures.offer(mutationInitiator.initiateMutation(mutation,
-                                                         desc.id,
+                                                         segmentId,
                                                          size,
                                                          entryLocation,
                                                          this));
@@ -68,11 +68,18 @@ public abstract class CommitLogSegment
     private final static AtomicInteger nextId = new AtomicInteger(1);
     static
     {
+        // ids are shared by all commit log lanes, so that segments of every lane are ordered with respect to each other
         long maxId = Long.MIN_VALUE;
-        for (File file : new File(DatabaseDescriptor.getCommitLogLocation()).listFiles())
+        for (String location : DatabaseDescriptor.getCommitLogLocations())
         {
-            if (CommitLogDescriptor.isValid(file.getName()))
-                maxId = Math.max(CommitLogDescriptor.fromFileName(file.getName()).id, maxId);
+            File[] files = new File(location).listFiles();
+            if (files == null)
+                continue;
+            for (File file : files)
+            {
+                if (CommitLogDescriptor.isValid(file.getName()))
+                    maxId = Math.max(CommitLogDescriptor.fromFileName(file.getName()).id, maxId);
+            }
         }
         idBase = Math.max(System.currentTimeMillis(), maxId + 1);
     }
@@ -117,13 +124,16 @@ public abstract class CommitLogSegment
     private volatile boolean headerWritten;
 
     final CommitLog commitLog;
+    // the manager of the lane this segment belongs to
+    final CommitLogSegmentManager manager;
     public final CommitLogDescriptor descriptor;
 
-    static CommitLogSegment createSegment(CommitLog commitLog, Runnable onClose)
+    static CommitLogSegment createSegment(CommitLog commitLog, CommitLogSegmentManager manager, Runnable onClose)
     {
-        CommitLogSegment segment = commitLog.encryptionContext.isEnabled() ? new EncryptedSegment(commitLog, commitLog.encryptionContext, onClose) :
-               commitLog.compressor != null ? new CompressedSegment(commitLog, onClose) :
-                                              new MemoryMappedSegment(commitLog);
+        CommitLogSegment segment = commitLog.encryptionContext.isEnabled() ? new EncryptedSegment(commitLog, manager, commitLog.encryptionContext, onClose) :
+               commitLog.compressor != null ? new CompressedSegment(commitLog, manager, onClose) :
+               commitLog.directIO ? new DirectIOSegment(commitLog, manager) :
+                                    new MemoryMappedSegment(commitLog, manager);
         segment.writeLogHeader();
         return segment;
     }
@@ -147,12 +157,14 @@ public abstract class CommitLogSegment
     /**
      * Constructs a new segment file.
      */
-    CommitLogSegment(CommitLog commitLog)
+    CommitLogSegment(CommitLog commitLog, CommitLogSegmentManager manager)
     {
         this.commitLog = commitLog;
+        this.manager = manager;
         id = getNextId();
         descriptor = new CommitLogDescriptor(id, commitLog.compressorClass, commitLog.encryptionContext);
-        logFile = new File(commitLog.location, descriptor.fileName());
+        logFile = new File(manager.location, descriptor.fileName());
+        manager.reuseSpareFile(logFile);
 
         try
         {
@@ -350,14 +362,15 @@ public abstract class CommitLogSegment
     }
 
     /**
-     * Completely discards a segment file by deleting it. (Potentially blocking operation)
+     * Completely discards a segment file by deleting it, or keeping it as a spare file for a later segment.
+     * (Potentially blocking operation)
      */
     void discard(boolean deleteFile)
     {
         close();
-        if (deleteFile)
+        if (deleteFile && !manager.maybeRecycleFile(logFile))
             FileUtils.deleteWithConfirm(logFile);
-        commitLog.allocator.addSize(-onDiskSize());
+        manager.addSize(-onDiskSize());
     }
 
     /**
@@ -18,6 +18,10 @@
 package org.apache.cassandraBloomFilters.db.commitlog;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -32,8 +36,10 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.*;
 import org.slf4j.Logger;
@@ -44,8 +50,10 @@ import org.apache.cassandraBloomFilters.config.Schema;
 import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
 import org.apache.cassandraBloomFilters.db.Keyspace;
 import org.apache.cassandraBloomFilters.db.Mutation;
+import org.apache.cassandraBloomFilters.io.FSWriteError;
 import org.apache.cassandraBloomFilters.io.util.FileUtils;
 import org.apache.cassandraBloomFilters.utils.Pair;
+import org.apache.cassandraBloomFilters.utils.SyncUtil;
 import org.apache.cassandraBloomFilters.utils.concurrent.WaitQueue;
 import org.apache.cassandraBloomFilters.utils.JVMStabilityInspector;
 import org.apache.cassandraBloomFilters.utils.WrappedRunnable;
@@ -55,6 +63,8 @@ import static org.apache.cassandraBloomFilters.db.commitlog.CommitLogSegment.All
 /**
  * Performs eager-creation of commit log segments in a background thread. All the
  * public methods are thread safe.
+ *
+ * There is one manager per commit log lane, each owning the segments of a single commit log directory.
  */
 public class CommitLogSegmentManager
 {
@@ -76,6 +86,20 @@ public class CommitLogSegmentManager
 
     private final WaitQueue hasAvailableSegments = new WaitQueue();
 
+    /**
+     * Preallocated, zeroed files of this lane that new segments are created from. Only used for the fixed size
+     * (memory-mapped and direct I/O) segments; see {@link #targetSpareFiles()}.
+     */
+    private final ConcurrentLinkedQueue<File> spareFiles = new ConcurrentLinkedQueue<>();
+    /**
+     * The spare files of this lane plus those still being zeroed: a slot is reserved (see {@link #reserveSpareFile()})
+     * before a file is recycled or preallocated, so that concurrent discards never overshoot the target.
+     */
+    private final AtomicInteger reservedSpareFiles = new AtomicInteger();
+    private static final String SPARE_FILE_PREFIX = "CommitLogSpare-";
+    private static final String SPARE_FILE_EXTENSION = ".log";
+    private static final String SPARE_FILE_TMP_EXTENSION = ".tmp";
+
     /**
      * Tracks commitlog size, in multiples of the segment size.  We need to do this so we can "promise" size
      * adjustments ahead of actually adding/freeing segments on disk, so that the "evict oldest segment" logic
@@ -94,13 +118,21 @@ public class CommitLogSegmentManager
     private volatile boolean run = true;
     private final CommitLog commitLog;
 
-    CommitLogSegmentManager(final CommitLog commitLog)
+    /** The directory the segments of this lane are created in */
+    final String location;
+    private final String threadName;
+
+    CommitLogSegmentManager(final CommitLog commitLog, String location, String threadName)
     {
         this.commitLog = commitLog;
+        this.location = location;
+        this.threadName = threadName;
     }
 
     void start()
     {
+        adoptSpareFiles();
+
         // The run loop for the manager thread
         Runnable runnable = new WrappedRunnable()
         {
@@ -118,28 +150,21 @@ public class CommitLogSegmentManager
                             {
                                 logger.trace("No segments in reserve; creating a fresh one");
                                 // TODO : some error handling in case we fail to create a new segment
-                                availableSegments.add(CommitLogSegment.createSegment(commitLog, () -> wakeManager()));
+                                availableSegments.add(CommitLogSegment.createSegment(commitLog, CommitLogSegmentManager.this, () -> wakeManager()));
                                 hasAvailableSegments.signalAll();
                             }
 
-                            // flush old Cfs if we're full
-                            long unused = unusedCapacity();
-                            if (unused < 0)
+                            // top up the spare files one at a time, so that segment requests are not held up for long
+                            if (reserveSpareFile())
                             {
-                                List<CommitLogSegment> segmentsToRecycle = new ArrayList<>();
-                                long spaceToReclaim = 0;
-                                for (CommitLogSegment segment : activeSegments)
-                                {
-                                    if (segment == allocatingFrom)
-                                        break;
-                                    segmentsToRecycle.add(segment);
-                                    spaceToReclaim += DatabaseDescriptor.getCommitLogSegmentSize();
-                                    if (spaceToReclaim + unused >= 0)
-                                        break;
-                                }
-                                flushDataFrom(segmentsToRecycle, false);
+                                preallocateSpareFile();
+                                if (reservedSpareFiles.get() < targetSpareFiles())
+                                    wakeManager();
                             }
 
+                            // flush old Cfs if we're full
+                            commitLog.flushOldestSegmentsIfFull();
+
                             try
                             {
                                 // wait for new work to be provided
@@ -173,7 +198,7 @@ public class CommitLogSegmentManager
 
         run = true;
 
-        managerThread = new Thread(runnable, "COMMIT-LOG-ALLOCATOR");
+        managerThread = new Thread(runnable, threadName);
         managerThread.start();
     }
 
@@ -272,6 +297,7 @@ public class CommitLogSegmentManager
             // before we registered the signal, as we only remove items from the queue
             // after updating allocatingFrom. Can safely block until we are signalled
             // by the allocator that new segments have been published
+            commitLog.metrics.segmentAllocationStalls.inc();
             signal.awaitUninterruptibly();
         }
     }
@@ -379,6 +405,139 @@ public class CommitLogSegmentManager
         });
     }
 
+    /**
+     * @return the number of spare files this lane keeps; 0 if segment files cannot be reused
+     */
+    private int targetSpareFiles()
+    {
+        // compressed and encrypted segments grow with their content, and an archive command may link to the files
+        if (CommitLogSegment.usesBufferPool(commitLog) || !Strings.isNullOrEmpty(commitLog.archiver.archiveCommand))
+            return 0;
+        return DatabaseDescriptor.getCommitLogSegmentPoolSize();
+    }
+
+    /**
+     * Moves a spare file of this lane, if there is one, to the path of a new segment.
+     *
+     * @return true if a spare file was reused
+     */
+    boolean reuseSpareFile(File segmentFile)
+    {
+        File spare = spareFiles.poll();
+        if (spare == null)
+            return false;
+        reservedSpareFiles.decrementAndGet();
+        FileUtils.renameWithConfirm(spare, segmentFile);
+        commitLog.metrics.recycledSegments.inc();
+        return true;
+    }
+
+    /**
+     * Keeps the file of a discarded segment as a spare file, if the lane is short of them. Only the rename happens
+     * here: the file is zeroed by the manager thread, off the path of whoever discards the segment.
+     *
+     * @return true if the file was kept, false if it should be deleted
+     */
+    boolean maybeRecycleFile(File segmentFile)
+    {
+        if (!reserveSpareFile())
+            return false;
+
+        // rename first, so that a partially zeroed file is never mistaken for a segment to replay; a temporary
+        // file left behind by a crash or shutdown is deleted by adoptSpareFiles()
+        File tmp = spareFile(SPARE_FILE_TMP_EXTENSION);
+        FileUtils.renameWithConfirm(segmentFile, tmp);
+        segmentManagementTasks.add(() -> addSpareFile(tmp));
+        return true;
+    }
+
+    /**
+     * Reserves a slot for one more spare file, if the lane is short of them.
+     */
+    private boolean reserveSpareFile()
+    {
+        int target = targetSpareFiles();
+        while (true)
+        {
+            int reserved = reservedSpareFiles.get();
+            if (reserved >= target)
+                return false;
+            if (reservedSpareFiles.compareAndSet(reserved, reserved + 1))
+                return true;
+        }
+    }
+
+    private void preallocateSpareFile()
+    {
+        addSpareFile(spareFile(SPARE_FILE_TMP_EXTENSION));
+    }
+
+    private File spareFile(String extension)
+    {
+        return new File(location, SPARE_FILE_PREFIX + CommitLogSegment.getNextId() + extension);
+    }
+
+    /**
+     * Zeroes a temporary spare file over the full segment size and publishes it as a spare file, in the slot
+     * reserved for it.
+     */
+    private void addSpareFile(File tmp)
+    {
+        int segmentSize = DatabaseDescriptor.getCommitLogSegmentSize();
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE))
+        {
+            // writing the zeroes (rather than just setting the length) makes sure all blocks of the file are allocated
+            ByteBuffer zeroes = ByteBuffer.allocateDirect(1 << 20);
+            for (long position = 0; position < segmentSize; )
+            {
+                zeroes.clear().limit((int) Math.min(zeroes.capacity(), segmentSize - position));
+                position += channel.write(zeroes, position);
+            }
+            channel.truncate(segmentSize);
+            SyncUtil.force(channel, true);
+            FileUtils.clean(zeroes);
+        }
+        catch (IOException e)
+        {
+            reservedSpareFiles.decrementAndGet();
+            throw new FSWriteError(e, tmp);
+        }
+
+        String name = tmp.getName();
+        File spare = new File(location, name.substring(0, name.length() - SPARE_FILE_TMP_EXTENSION.length()) + SPARE_FILE_EXTENSION);
+        FileUtils.renameWithConfirm(tmp, spare);
+        spareFiles.add(spare);
+    }
+
+    /**
+     * Picks up the spare files left in the lane's directory by a previous run, deleting the ones it no longer needs.
+     */
+    private void adoptSpareFiles()
+    {
+        spareFiles.clear();
+        reservedSpareFiles.set(0);
+        File[] files = new File(location).listFiles((dir, name) -> name.startsWith(SPARE_FILE_PREFIX));
+        if (files == null)
+            return;
+
+        for (File file : files)
+        {
+            if (file.getName().endsWith(SPARE_FILE_EXTENSION) && file.length() == DatabaseDescriptor.getCommitLogSegmentSize()
+                && reserveSpareFile())
+                spareFiles.add(file);
+            else
+                FileUtils.deleteWithConfirm(file);
+        }
+    }
+
+    /**
+     * @return the number of spare segment files of this lane
+     */
+    public int spareFileCount()
+    {
+        return spareFiles.size();
+    }
+
     /**
      * Adjust the tracked on-disk size. Called by individual segments to reflect writes, allocations and discards.
      * @param addedSize
@@ -396,14 +555,6 @@ public class CommitLogSegmentManager
         return size.get();
     }
 
-    private long unusedCapacity()
-    {
-        long total = DatabaseDescriptor.getTotalCommitlogSpaceInMB() * 1024 * 1024;
-        long currentSize = size.get();
-        logger.trace("Total active commitlog segment space used is {} out of {}", currentSize, total);
-        return total - currentSize;
-    }
-
     /**
      * @param name the filename to check
      * @return true if file is managed by this manager.
@@ -431,7 +582,7 @@ public class CommitLogSegmentManager
      *
      * @return a Future that will finish when all the flushes are complete.
      */
-    private Future<?> flushDataFrom(List<CommitLogSegment> segments, boolean force)
+    static Future<?> flushDataFrom(List<CommitLogSegment> segments, boolean force)
     {
         if (segments.isEmpty())
             return Futures.immediateFuture(null);
@@ -550,6 +701,7 @@ public class CommitLogSegmentManager
             segment.close();
 
         FileDirectSegment.shutdown();
+        DirectIOSegment.shutdown();
     }
 
     /**
@@ -560,5 +712,20 @@ public class CommitLogSegmentManager
         return Collections.unmodifiableCollection(activeSegments);
     }
 
+    /**
+     * @return the active segments that are no longer allocated from, oldest first
+     */
+    List<CommitLogSegment> getCompletedSegments()
+    {
+        List<CommitLogSegment> segments = new ArrayList<>();
+        for (CommitLogSegment segment : activeSegments)
+        {
+            if (segment == allocatingFrom)
+                break;
+            segments.add(segment);
+        }
+        return segments;
+    }
+
 }
 
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.commitlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.io.FSWriteError;
+import org.apache.cassandraBloomFilters.utils.CLibrary;
+import org.apache.cassandraBloomFilters.utils.SyncUtil;
+import org.apache.cassandraBloomFilters.utils.memory.MemoryUtil;
+
+/*
+ * Direct I/O segment. Mutation threads write into an aligned off-heap buffer, which is written out on sync through
+ * a file descriptor opened with O_DIRECT, so that the commit log does not go through (and evict from) the page cache.
+ * The on-disk format is the same as for memory-mapped segments.
+ *
+ * O_DIRECT requires writes to start and end on a block boundary, so each sync writes from the start of the block
+ * containing the previous sync point up to the end of the block containing the new one; the partially filled last
+ * block is written again by the next sync.
+ */
+public class DirectIOSegment extends CommitLogSegment
+{
+    /**
+     * The alignment of direct writes, in memory and in the file. 4KiB satisfies both 512 byte and 4KiB sector devices.
+     */
+    static final int ALIGNMENT = Integer.getInteger("cassandra.commitlog_direct_io_alignment", 4096);
+
+    /**
+     * Aligned buffers of closed segments, reused by new ones. Each active or reserve segment holds one buffer,
+     * so the pool never needs to hold more than the number of lanes.
+     */
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private static final int MAX_BUFFERPOOL_SIZE = DatabaseDescriptor.getCommitLogLocations().length;
+
+    private final int directFd;
+
+    // the file offset of the first block that has not been completely written out yet
+    private int flushedOffset = 0;
+
+    DirectIOSegment(CommitLog commitLog, CommitLogSegmentManager manager)
+    {
+        super(commitLog, manager);
+        directFd = CLibrary.tryOpenDirect(logFile.getPath());
+        if (directFd < 0)
+        {
+            // isSupported() passed at startup, so this is unexpected: undo what createBuffer() did, as the segment
+            // will never be closed
+            manager.addSize(-onDiskSize());
+            if (bufferPool.size() < MAX_BUFFERPOOL_SIZE)
+                bufferPool.add(buffer);
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                // the segment is unusable either way
+            }
+            throw new FSWriteError(new IOException("Unable to open commit log segment with O_DIRECT"), logFile);
+        }
+    }
+
+    /**
+     * Checks that files in the given commit log directory can be opened with O_DIRECT, which some file systems,
+     * like tmpfs, refuse.
+     */
+    static boolean isSupported(String location)
+    {
+        File probe = null;
+        try
+        {
+            probe = File.createTempFile("direct-io-probe", ".tmp", new File(location));
+            int fd = CLibrary.tryOpenDirect(probe.getPath());
+            if (fd < 0)
+                return false;
+            CLibrary.tryCloseFD(fd);
+            return true;
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, location);
+        }
+        finally
+        {
+            if (probe != null && !probe.delete())
+                probe.deleteOnExit();
+        }
+    }
+
+    ByteBuffer createBuffer(CommitLog commitLog)
+    {
+        int segmentSize = DatabaseDescriptor.getCommitLogSegmentSize();
+
+        // Allocate the whole file up front, so that neither the writes nor the syncs have to update file metadata.
+        if (!CLibrary.tryFallocate(fd, 0, segmentSize))
+        {
+            try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw"))
+            {
+                raf.setLength(segmentSize);
+            }
+            catch (IOException e)
+            {
+                throw new FSWriteError(e, logFile);
+            }
+        }
+        manager.addSize(segmentSize);
+
+        ByteBuffer buf = bufferPool.poll();
+        if (buf == null)
+            return allocateAligned(segmentSize);
+        buf.clear();
+        return buf;
+    }
+
+    private static ByteBuffer allocateAligned(int size)
+    {
+        ByteBuffer buf = ByteBuffer.allocateDirect(size + ALIGNMENT);
+        int misalignment = (int) (MemoryUtil.getAddress(buf) & (ALIGNMENT - 1));
+        buf.position(misalignment == 0 ? 0 : ALIGNMENT - misalignment);
+        buf.limit(buf.position() + size);
+        return buf.slice();
+    }
+
+    @Override
+    void write(int startMarker, int nextMarker)
+    {
+        // if there's room in the discard section to write an empty header,
+        // zero out the next sync marker so replayer can cleanly exit
+        int end = nextMarker;
+        if (nextMarker <= buffer.capacity() - SYNC_MARKER_SIZE)
+        {
+            buffer.putInt(nextMarker, 0);
+            buffer.putInt(nextMarker + 4, 0);
+            end += SYNC_MARKER_SIZE;
+        }
+
+        // write previous sync marker to point to next sync marker
+        // we don't chain the crcs here to ensure this method is idempotent if it fails
+        writeSyncMarker(buffer, startMarker, startMarker, nextMarker);
+
+        int start = flushedOffset;
+        end = Math.min(alignUp(end), buffer.capacity());
+        try
+        {
+            CLibrary.pwriteFully(directFd, MemoryUtil.getAddress(buffer) + start, end - start, start);
+            // the data itself is already on the device; this only flushes the device cache
+            SyncUtil.force(channel, false);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+        flushedOffset = alignDown(nextMarker);
+    }
+
+    private static int alignUp(int position)
+    {
+        return (position + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static int alignDown(int position)
+    {
+        return position & -ALIGNMENT;
+    }
+
+    @Override
+    public long onDiskSize()
+    {
+        return DatabaseDescriptor.getCommitLogSegmentSize();
+    }
+
+    @Override
+    protected void internalClose()
+    {
+        CLibrary.tryCloseFD(directFd);
+        // a reused buffer may still hold data of its previous segment; whatever of it is written out lies past the
+        // zeroed sync marker ending the last sync section, where replay never reads.
+        // Buffers beyond the pool size are aligned slices without a cleaner of their own, and are left to the GC.
+        if (bufferPool.size() < MAX_BUFFERPOOL_SIZE)
+            bufferPool.add(buffer);
+        super.internalClose();
+    }
+
+    static void shutdown()
+    {
+        bufferPool.clear();
+    }
+}
@@ -45,11 +45,12 @@ public abstract class FileDirectSegment extends CommitLogSegment
     static Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
 
     /**
-     * Maximum number of buffers in the compression pool. The default value is 3, it should not be set lower than that
-     * (one segment in compression, one written to, one in reserve); delays in compression may cause the log to use
-     * more, depending on how soon the sync policy stops all writing threads.
+     * Maximum number of buffers in the compression pool. The default value is 3 per commit log lane, it should not be
+     * set lower than that (one segment in compression, one written to, one in reserve); delays in compression may cause
+     * the log to use more, depending on how soon the sync policy stops all writing threads.
      */
-    static final int MAX_BUFFERPOOL_SIZE = DatabaseDescriptor.getCommitLogMaxCompressionBuffersInPool();
+    static final int MAX_BUFFERPOOL_SIZE = DatabaseDescriptor.getCommitLogMaxCompressionBuffersInPool()
+                                           * DatabaseDescriptor.getCommitLogLocations().length;
 
     /**
      * The number of buffers in use
@@ -60,9 +61,9 @@ public abstract class FileDirectSegment extends CommitLogSegment
 
     private final Runnable onClose;
 
-    FileDirectSegment(CommitLog commitLog, Runnable onClose)
+    FileDirectSegment(CommitLog commitLog, CommitLogSegmentManager manager, Runnable onClose)
     {
-        super(commitLog);
+        super(commitLog, manager);
         this.onClose = onClose;
     }
 
@@ -72,7 +73,7 @@ public abstract class FileDirectSegment extends CommitLogSegment
         try
         {
             channel.write((ByteBuffer) buffer.duplicate().flip());
-            commitLog.allocator.addSize(lastWrittenPos = buffer.position());
+            manager.addSize(lastWrittenPos = buffer.position());
         }
         catch (IOException e)
         {
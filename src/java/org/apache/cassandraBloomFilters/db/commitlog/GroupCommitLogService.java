@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.commitlog;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+
+/**
+ * A batch-like service that, rather than syncing as soon as a writer arrives, holds the sync back for as long
+ * as further writers keep arriving (bounded by commitlog_sync_group_window_in_ms), so that a single fsync
+ * acknowledges the whole group. Writes are still only acknowledged once durable.
+ */
+class GroupCommitLogService extends AbstractCommitLogService
+{
+    private final long maxDelayNanos;
+
+    // writers that have arrived since the last sync was issued
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    // only accessed by the sync thread
+    private long syncStartedNanos = System.nanoTime();
+
+    public GroupCommitLogService(CommitLog commitLog, CommitLogSegmentManager allocator, int lane)
+    {
+        super(commitLog, allocator, CommitLog.laneThreadName("GROUP-COMMIT-LOG-SYNCER", lane), Math.max(1, (long) DatabaseDescriptor.getCommitLogSyncGroupWindow()));
+        maxDelayNanos = (long) (DatabaseDescriptor.getCommitLogSyncGroupWindow() * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
+    {
+        // wait until record has been safely persisted to disk
+        pending.incrementAndGet();
+        waiters.incrementAndGet();
+        haveWork.release();
+        alloc.awaitDiskSync(commitLog.metrics.waitingOnCommit);
+        pending.decrementAndGet();
+    }
+
+    @Override
+    protected void beforeSync()
+    {
+        syncStartedNanos = System.nanoTime();
+        int batchSize = waiters.getAndSet(0);
+        if (batchSize > 0)
+            commitLog.metrics.syncBatchSize.update(batchSize);
+    }
+
+    @Override
+    protected void awaitWork(long sleepMillis) throws InterruptedException
+    {
+        long lastSyncDuration = System.nanoTime() - syncStartedNanos;
+        if (!haveWork.tryAcquire(sleepMillis, TimeUnit.MILLISECONDS))
+            return;
+
+        // A writer is waiting. Every writer that joins before we sync saves an fsync of its own, so keep
+        // collecting them for as long as they arrive within the time the last sync took, but never hold
+        // the first writer for longer than the group window.
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (true)
+        {
+            haveWork.drainPermits();
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !haveWork.tryAcquire(Math.min(remaining, lastSyncDuration), TimeUnit.NANOSECONDS))
+                return;
+        }
+    }
+}
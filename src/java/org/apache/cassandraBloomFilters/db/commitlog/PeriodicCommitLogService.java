@@ -24,9 +24,9 @@ class PeriodicCommitLogService extends AbstractCommitLogService
 {
     private static final int blockWhenSyncLagsMillis = (int) (DatabaseDescriptor.getCommitLogSyncPeriod() * 1.5);
 
-    public PeriodicCommitLogService(final CommitLog commitLog)
+    public PeriodicCommitLogService(final CommitLog commitLog, final CommitLogSegmentManager allocator, int lane)
     {
-        super(commitLog, "PERIODIC-COMMIT-LOG-SYNCER", DatabaseDescriptor.getCommitLogSyncPeriod());
+        super(commitLog, allocator, CommitLog.laneThreadName("PERIODIC-COMMIT-LOG-SYNCER", lane), DatabaseDescriptor.getCommitLogSyncPeriod());
     }
 
     protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
@@ -23,9 +23,9 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.RateLimiter;
 
 import org.apache.cassandraBloomFilters.db.Directories;
+import org.apache.cassandraBloomFilters.db.PartitionPosition;
 import org.apache.cassandraBloomFilters.db.SerializationHeader;
 import org.apache.cassandraBloomFilters.db.lifecycle.SSTableSet;
 import org.apache.cassandraBloomFilters.index.Index;
@@ -45,6 +45,8 @@ import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
 import org.apache.cassandraBloomFilters.io.sstable.Component;
 import org.apache.cassandraBloomFilters.io.sstable.ISSTableScanner;
 import org.apache.cassandraBloomFilters.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandraBloomFilters.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandraBloomFilters.service.StorageService;
 import org.apache.cassandraBloomFilters.utils.JVMStabilityInspector;
 
 /**
@@ -70,6 +72,9 @@ public abstract class AbstractCompactionStrategy
     protected static final String UNCHECKED_TOMBSTONE_COMPACTION_OPTION = "unchecked_tombstone_compaction";
     protected static final String COMPACTION_ENABLED = "enabled";
     public static final String ONLY_PURGE_REPAIRED_TOMBSTONES = "only_purge_repaired_tombstones";
+    // split compaction output into this many token ranges per data directory; strategies that bucket sstables by
+    // something else than their token range, like time windows, reject it
+    public static final String TOKEN_RANGE_SPLITS_OPTION = "token_range_splits";
 
     protected Map<String, String> options;
 
@@ -273,12 +278,11 @@ public abstract class AbstractCompactionStrategy
     @SuppressWarnings("resource")
     public ScannerList getScanners(Collection<SSTableReader> sstables, Range<Token> range)
     {
-        RateLimiter limiter = CompactionManager.instance.getRateLimiter();
         ArrayList<ISSTableScanner> scanners = new ArrayList<ISSTableScanner>();
         try
         {
             for (SSTableReader sstable : sstables)
-                scanners.add(sstable.getScanner(range, limiter));
+                scanners.add(sstable.getScanner(range, CompactionManager.instance.getRateLimiter(sstable)));
         }
         catch (Throwable t)
         {
@@ -323,6 +327,16 @@ public abstract class AbstractCompactionStrategy
 
     public abstract void removeSSTable(SSTableReader sstable);
 
+    /**
+     * Called when the metadata of an sstable of this strategy was changed in place, without replacing the sstable.
+     *
+     * @param oldMetadata the metadata of the sstable before the change
+     * @param sstable the sstable, with its new metadata already loaded
+     */
+    public void metadataChanged(StatsMetadata oldMetadata, SSTableReader sstable)
+    {
+    }
+
     public static class ScannerList implements AutoCloseable
     {
         public final List<ISSTableScanner> scanners;
@@ -418,6 +432,23 @@ public abstract class AbstractCompactionStrategy
         }
     }
 
+    /**
+     * @return the upper bounds of the token ranges compaction output is split into, as per the token_range_splits
+     * option, or null if the output isn't split
+     */
+    protected List<PartitionPosition> getTokenRangeBoundaries()
+    {
+        int splits = cfs.getCompactionStrategyManager().tokenRangeSplits();
+        return splits > 1 ? StorageService.getTokenRangeBoundaries(cfs, cfs.getDirectories().getWriteableLocations(), splits) : null;
+    }
+
+    protected static void rejectTokenRangeSplits(Map<String, String> options, Class<? extends AbstractCompactionStrategy> strategy) throws ConfigurationException
+    {
+        if (options.containsKey(TOKEN_RANGE_SPLITS_OPTION))
+            throw new ConfigurationException(String.format("%s is not supported by %s, which would compact the sstables of a split together again",
+                                                           TOKEN_RANGE_SPLITS_OPTION, strategy.getSimpleName()));
+    }
+
     public static Map<String, String> validateOptions(Map<String, String> options) throws ConfigurationException
     {
         String threshold = options.get(TOMBSTONE_THRESHOLD_OPTION);
@@ -469,12 +500,28 @@ public abstract class AbstractCompactionStrategy
                 throw new ConfigurationException(String.format("enabled should either be 'true' or 'false', not %s", compactionEnabled));
             }
         }
+        String tokenRangeSplits = options.get(TOKEN_RANGE_SPLITS_OPTION);
+        if (tokenRangeSplits != null)
+        {
+            try
+            {
+                int splits = Integer.parseInt(tokenRangeSplits);
+                if (splits < 1)
+                    throw new ConfigurationException(String.format("%s must be at least 1, but was %d", TOKEN_RANGE_SPLITS_OPTION, splits));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new ConfigurationException(String.format("%s is not a parsable int (base10) for %s", tokenRangeSplits, TOKEN_RANGE_SPLITS_OPTION), e);
+            }
+        }
+
         Map<String, String> uncheckedOptions = new HashMap<String, String>(options);
         uncheckedOptions.remove(TOMBSTONE_THRESHOLD_OPTION);
         uncheckedOptions.remove(TOMBSTONE_COMPACTION_INTERVAL_OPTION);
         uncheckedOptions.remove(UNCHECKED_TOMBSTONE_COMPACTION_OPTION);
         uncheckedOptions.remove(COMPACTION_ENABLED);
         uncheckedOptions.remove(ONLY_PURGE_REPAIRED_TOMBSTONES);
+        uncheckedOptions.remove(TOKEN_RANGE_SPLITS_OPTION);
         return uncheckedOptions;
     }
 
@@ -20,9 +20,7 @@ package org.apache.cassandraBloomFilters.db.compaction;
 import java.util.Set;
 
 import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
-import org.apache.cassandraBloomFilters.db.Directories;
 import org.apache.cassandraBloomFilters.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
-import org.apache.cassandraBloomFilters.db.compaction.writers.CompactionAwareWriter;
 import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
 import org.apache.cassandraBloomFilters.utils.WrappedRunnable;
 import org.apache.cassandraBloomFilters.db.lifecycle.LifecycleTransaction;
@@ -64,7 +62,6 @@ public abstract class AbstractCompactionTask extends WrappedRunnable
             transaction.close();
         }
     }
-    public abstract CompactionAwareWriter getCompactionAwareWriter(ColumnFamilyStore cfs, Directories directories, LifecycleTransaction txn, Set<SSTableReader> nonExpiredSSTables);
 
     protected abstract int executeInternal(CompactionExecutorStatsCollector collector);
 
@@ -25,16 +25,18 @@ import com.google.common.base.Throwables;
 import org.apache.cassandraBloomFilters.cql3.UntypedResultSet;
 import org.apache.cassandraBloomFilters.db.marshal.Int32Type;
 import org.apache.cassandraBloomFilters.db.marshal.LongType;
+import org.apache.cassandraBloomFilters.db.marshal.UTF8Type;
 import org.apache.cassandraBloomFilters.utils.FBUtilities;
 
 public class CompactionHistoryTabularData
 {
     private static final String[] ITEM_NAMES = new String[]{ "id", "keyspace_name", "columnfamily_name", "compacted_at",
-                                                             "bytes_in", "bytes_out", "rows_merged" };
+                                                             "bytes_in", "bytes_out", "rows_merged", "phase_micros" };
 
     private static final String[] ITEM_DESCS = new String[]{ "time uuid", "keyspace name",
                                                              "column family name", "compaction finished at",
-                                                             "total bytes in", "total bytes out", "total rows merged" };
+                                                             "total bytes in", "total bytes out", "total rows merged",
+                                                             "microseconds spent in each phase" };
 
     private static final String TYPE_NAME = "CompactionHistory";
 
@@ -50,7 +52,7 @@ public class CompactionHistoryTabularData
         try
         {
             ITEM_TYPES = new OpenType[]{ SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.LONG,
-                                         SimpleType.LONG, SimpleType.LONG, SimpleType.STRING };
+                                         SimpleType.LONG, SimpleType.LONG, SimpleType.STRING, SimpleType.STRING };
 
             COMPOSITE_TYPE = new CompositeType(TYPE_NAME, ROW_DESC, ITEM_NAMES, ITEM_DESCS, ITEM_TYPES);
 
@@ -74,10 +76,13 @@ public class CompactionHistoryTabularData
             long bytesIn = row.getLong(ITEM_NAMES[4]);
             long bytesOut = row.getLong(ITEM_NAMES[5]);
             Map<Integer, Long> rowMerged = row.getMap(ITEM_NAMES[6], Int32Type.instance, LongType.instance);
+            // null for compactions recorded before phases were measured
+            Map<String, Long> phaseMicros = row.getMap(ITEM_NAMES[7], UTF8Type.instance, LongType.instance);
 
             result.put(new CompositeDataSupport(COMPOSITE_TYPE, ITEM_NAMES,
                        new Object[]{ id.toString(), ksName, cfName, compactedAt, bytesIn, bytesOut,
-                                     "{" + FBUtilities.toString(rowMerged) + "}" }));
+                                     "{" + FBUtilities.toString(rowMerged) + "}",
+                                     "{" + FBUtilities.toString(phaseMicros) + "}" }));
         }
         return result;
     }
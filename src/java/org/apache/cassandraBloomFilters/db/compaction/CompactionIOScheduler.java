@@ -0,0 +1,391 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandraBloomFilters.db.Directories;
+import org.apache.cassandraBloomFilters.db.Directories.DataDirectory;
+import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
+import org.apache.cassandraBloomFilters.metrics.LatencyMetrics;
+import org.apache.cassandraBloomFilters.metrics.TableMetrics;
+
+/**
+ * Schedules the I/O of compactions and other compaction manager operations (cleanup, scrub, verify, validation,
+ * anticompaction) across the data directories.
+ *
+ * Each data directory has its own throughput budget of {@code compaction_throughput_mb_per_sec}, so that operations
+ * on one disk do not use up the budget of the others. Within a directory, the budget is shared by the operations
+ * reading from it, grouped by {@link OperationType} and {@link Priority}: each group with running operations gets a
+ * share of the budget proportional to the weight of its priority, so that user-triggered operations go before
+ * compactions out of L0, which go before other background compactions, while an operation running alone still gets
+ * the whole budget.
+ *
+ * The budgets are further scaled down when foreground reads suffer: every second, the mean read latency of the last
+ * second is compared to its long-term average, and if it is more than {@link #BACKOFF_LATENCY_RATIO} times higher,
+ * the budgets are halved (down to {@link #MIN_BACKOFF_FACTOR} of their configured value); otherwise they recover
+ * step by step.
+ *
+ * Operations hold a {@link Lease} while they run, which is current for the thread that opened it. The rate limiters
+ * of the lease are handed out by {@link CompactionManager#getRateLimiter(SSTableReader)}, per directory of the
+ * sstables read. Reads outside of any lease get a background share of the budget of their directory; as there is no
+ * telling when they are done, that share is kept from then on.
+ */
+public class CompactionIOScheduler
+{
+    private static final Logger logger = LoggerFactory.getLogger(CompactionIOScheduler.class);
+
+    static final double BACKOFF_LATENCY_RATIO = Double.parseDouble(System.getProperty("cassandra.compaction_backoff_read_latency_ratio", "2.0"));
+    static final double MIN_BACKOFF_FACTOR = Double.parseDouble(System.getProperty("cassandra.compaction_min_backoff_factor", "0.25"));
+    private static final double RECOVERY_STEP = 0.1;
+    private static final double BASELINE_ALPHA = 0.05;
+    // too few reads to tell anything about read latency
+    private static final long MIN_READS = 100;
+
+    // for sstables outside of the configured data directories
+    private static final DataDirectory UNKNOWN_DIRECTORY = new DataDirectory(new File(""));
+
+    public enum Priority
+    {
+        BACKGROUND(1),
+        URGENT(2),
+        USER(4);
+
+        final int weight;
+
+        Priority(int weight)
+        {
+            this.weight = weight;
+        }
+    }
+
+    private static final ThreadLocal<Lease> current = new ThreadLocal<>();
+
+    private final Map<DataDirectory, List<Budget>> budgets = new HashMap<>();
+    // used outside of any lease; also part of the budgets of their directory
+    private final Map<DataDirectory, Budget> unscheduled = new HashMap<>();
+
+    // bytes per second, per data directory
+    private double throughput = Double.MAX_VALUE;
+    private double backoffFactor = 1.0;
+
+    private long lastReadCount = -1;
+    private long lastReadLatency;
+    private double baselineReadLatency = -1;
+
+    /**
+     * Opens a lease for an operation, which is current for the calling thread until it is closed.
+     */
+    public Lease lease(OperationType type, Priority priority)
+    {
+        Lease lease = new Lease(type, priority, current.get());
+        current.set(lease);
+        return lease;
+    }
+
+    /**
+     * Makes the given lease current for the calling thread, for work an operation hands to other threads.
+     *
+     * @return the previously current lease, to be restored with this method when done
+     */
+    public static Lease setCurrent(Lease lease)
+    {
+        Lease previous = current.get();
+        current.set(lease);
+        return previous;
+    }
+
+    public static Lease current()
+    {
+        return current.get();
+    }
+
+    /**
+     * @return the rate limiter for reading the given sstable, in the lease current for this thread if any
+     */
+    public RateLimiter getRateLimiter(SSTableReader sstable)
+    {
+        return getRateLimiter(directoryOf(sstable.descriptor.directory, Directories.dataDirectories));
+    }
+
+    @VisibleForTesting
+    RateLimiter getRateLimiter(DataDirectory directory)
+    {
+        Lease lease = current.get();
+        if (lease != null)
+            return lease.getRateLimiter(directory);
+
+        synchronized (this)
+        {
+            Budget budget = unscheduled.get(directory);
+            if (budget == null)
+            {
+                budget = new Budget(directory, null, Priority.BACKGROUND);
+                budget.leases = 1;
+                unscheduled.put(directory, budget);
+                List<Budget> directoryBudgets = budgetsOf(directory);
+                directoryBudgets.add(budget);
+                rebalance(directoryBudgets);
+            }
+            return budget.limiter;
+        }
+    }
+
+    /**
+     * Sets the budget of each data directory, in bytes per second.
+     */
+    public synchronized void setThroughput(double throughput)
+    {
+        if (this.throughput == throughput)
+            return;
+        this.throughput = throughput;
+        rebalance();
+    }
+
+    /**
+     * Adapts the budgets to the foreground read latency of the last interval; called every second.
+     */
+    public void adapt()
+    {
+        LatencyMetrics reads = TableMetrics.globalReadLatency;
+        long count = reads.latency.getCount();
+        long latency = reads.totalLatency.getCount();
+        if (lastReadCount >= 0)
+            adapt(count - lastReadCount, latency - lastReadLatency);
+        lastReadCount = count;
+        lastReadLatency = latency;
+    }
+
+    @VisibleForTesting
+    synchronized void adapt(long reads, long totalLatencyMicros)
+    {
+        double factor = backoffFactor;
+        if (reads >= MIN_READS)
+        {
+            double mean = (double) totalLatencyMicros / reads;
+            if (baselineReadLatency < 0)
+                baselineReadLatency = mean;
+
+            if (mean > baselineReadLatency * BACKOFF_LATENCY_RATIO)
+                factor = Math.max(MIN_BACKOFF_FACTOR, factor / 2);
+            else
+                factor = Math.min(1.0, factor + RECOVERY_STEP);
+            baselineReadLatency += BASELINE_ALPHA * (mean - baselineReadLatency);
+        }
+        else
+        {
+            factor = Math.min(1.0, factor + RECOVERY_STEP);
+        }
+
+        if (factor != backoffFactor)
+        {
+            if (factor < backoffFactor)
+                logger.debug("Foreground read latency is up, scaling compaction throughput down to {}%", (int) (factor * 100));
+            backoffFactor = factor;
+            rebalance();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized double getBackoffFactor()
+    {
+        return backoffFactor;
+    }
+
+    /**
+     * @return the data directory the given sstable directory is in, comparing whole path components so that
+     * /data10 is not taken for part of /data1
+     */
+    @VisibleForTesting
+    static DataDirectory directoryOf(File sstableDirectory, DataDirectory[] dataDirectories)
+    {
+        Path path = sstableDirectory.toPath().toAbsolutePath().normalize();
+        for (DataDirectory directory : dataDirectories)
+        {
+            if (path.startsWith(directory.location.toPath().toAbsolutePath().normalize()))
+                return directory;
+        }
+        return UNKNOWN_DIRECTORY;
+    }
+
+    private List<Budget> budgetsOf(DataDirectory directory)
+    {
+        List<Budget> directoryBudgets = budgets.get(directory);
+        if (directoryBudgets == null)
+        {
+            directoryBudgets = new ArrayList<>();
+            budgets.put(directory, directoryBudgets);
+        }
+        return directoryBudgets;
+    }
+
+    private synchronized RateLimiter acquire(Lease lease, DataDirectory directory)
+    {
+        for (Budget budget : lease.budgets)
+        {
+            if (budget.directory.equals(directory))
+                return budget.limiter;
+        }
+
+        List<Budget> directoryBudgets = budgetsOf(directory);
+        Budget budget = null;
+        for (Budget candidate : directoryBudgets)
+        {
+            if (candidate.type == lease.type && candidate.priority == lease.priority)
+                budget = candidate;
+        }
+        if (budget == null)
+        {
+            budget = new Budget(directory, lease.type, lease.priority);
+            directoryBudgets.add(budget);
+        }
+
+        budget.leases++;
+        lease.budgets.add(budget);
+        rebalance(directoryBudgets);
+        return budget.limiter;
+    }
+
+    private synchronized void release(Lease lease)
+    {
+        for (Budget budget : lease.budgets)
+        {
+            budget.leases--;
+            rebalance(budgets.get(budget.directory));
+        }
+        lease.budgets.clear();
+    }
+
+    private void rebalance()
+    {
+        for (List<Budget> directoryBudgets : budgets.values())
+            rebalance(directoryBudgets);
+    }
+
+    /**
+     * Shares the budget of a directory among the groups of operations running on it, by the weight of their priority.
+     */
+    private void rebalance(List<Budget> directoryBudgets)
+    {
+        int totalWeight = 0;
+        for (Budget budget : directoryBudgets)
+        {
+            if (budget.leases > 0)
+                totalWeight += budget.priority.weight;
+        }
+
+        for (Budget budget : directoryBudgets)
+        {
+            if (budget.leases > 0)
+                budget.setRate(rate((double) budget.priority.weight / totalWeight));
+        }
+    }
+
+    /**
+     * @return the given share of the budget of a directory, in bytes per second
+     */
+    private double rate(double share)
+    {
+        // Double.MAX_VALUE means unthrottled, whatever the share
+        return throughput == Double.MAX_VALUE ? Double.MAX_VALUE : throughput * backoffFactor * share;
+    }
+
+    /**
+     * @param type the type of the operations, or null for the reads outside of any lease
+     */
+    @VisibleForTesting
+    synchronized double getRate(DataDirectory directory, OperationType type, Priority priority)
+    {
+        List<Budget> directoryBudgets = budgets.get(directory);
+        if (directoryBudgets != null)
+        {
+            for (Budget budget : directoryBudgets)
+            {
+                if (budget.type == type && budget.priority == priority)
+                    return budget.limiter.getRate();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The throughput budget of one group of operations on one data directory.
+     */
+    private static final class Budget
+    {
+        final DataDirectory directory;
+        // null for the reads outside of any lease
+        final OperationType type;
+        final Priority priority;
+        final RateLimiter limiter = RateLimiter.create(Double.MAX_VALUE);
+        int leases;
+
+        Budget(DataDirectory directory, OperationType type, Priority priority)
+        {
+            this.directory = directory;
+            this.type = type;
+            this.priority = priority;
+        }
+
+        void setRate(double rate)
+        {
+            if (limiter.getRate() != rate)
+                limiter.setRate(rate);
+        }
+    }
+
+    /**
+     * The budgets used by one running operation, released when it completes.
+     */
+    public final class Lease implements AutoCloseable
+    {
+        final OperationType type;
+        final Priority priority;
+        private final Lease previous;
+        private final List<Budget> budgets = new ArrayList<>();
+
+        private Lease(OperationType type, Priority priority, Lease previous)
+        {
+            this.type = type;
+            this.priority = priority;
+            this.previous = previous;
+        }
+
+        public RateLimiter getRateLimiter(DataDirectory directory)
+        {
+            return acquire(this, directory);
+        }
+
+        public void close()
+        {
+            release(this);
+            if (current.get() == this)
+                current.set(previous);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.cassandraBloomFilters.config.CFMetaData;
 import org.apache.cassandraBloomFilters.metrics.StorageMetrics;
@@ -36,18 +37,29 @@ public final class CompactionInfo implements Serializable
     private final long total;
     private final String unit;
     private final UUID compactionId;
+    private final CompactionPhases phases;
 
     public CompactionInfo(CFMetaData cfm, OperationType tasktype, long bytesComplete, long totalBytes, UUID compactionId)
     {
         this(cfm, tasktype, bytesComplete, totalBytes, "bytes", compactionId);
     }
 
+    public CompactionInfo(CFMetaData cfm, OperationType tasktype, long bytesComplete, long totalBytes, UUID compactionId, CompactionPhases phases)
+    {
+        this(cfm, tasktype, bytesComplete, totalBytes, "bytes", compactionId, phases);
+    }
+
     public CompactionInfo(OperationType tasktype, long completed, long total, String unit, UUID compactionId)
     {
         this(null, tasktype, completed, total, unit, compactionId);
     }
 
     public CompactionInfo(CFMetaData cfm, OperationType tasktype, long completed, long total, String unit, UUID compactionId)
+    {
+        this(cfm, tasktype, completed, total, unit, compactionId, null);
+    }
+
+    private CompactionInfo(CFMetaData cfm, OperationType tasktype, long completed, long total, String unit, UUID compactionId, CompactionPhases phases)
     {
         this.tasktype = tasktype;
         this.completed = completed;
@@ -55,12 +67,13 @@ public final class CompactionInfo implements Serializable
         this.cfm = cfm;
         this.unit = unit;
         this.compactionId = compactionId;
+        this.phases = phases;
     }
 
     /** @return A copy of this CompactionInfo with updated progress. */
     public CompactionInfo forProgress(long complete, long total)
     {
-        return new CompactionInfo(cfm, tasktype, complete, total, unit, compactionId);
+        return new CompactionInfo(cfm, tasktype, complete, total, unit, compactionId, phases);
     }
 
     public UUID getId()
@@ -103,6 +116,14 @@ public final class CompactionInfo implements Serializable
         return compactionId;
     }
 
+    /**
+     * @return the time and bytes spent in each phase of the operation so far, or null if they are not measured
+     */
+    public CompactionPhases getPhases()
+    {
+        return phases;
+    }
+
     public String toString()
     {
         StringBuilder buff = new StringBuilder();
@@ -131,9 +152,29 @@ public final class CompactionInfo implements Serializable
         ret.put("taskType", tasktype.toString());
         ret.put("unit", unit);
         ret.put("compactionId", compactionId == null ? "" : compactionId.toString());
+        if (phases != null)
+        {
+            for (CompactionPhases.Phase phase : CompactionPhases.Phase.values())
+            {
+                ret.put(phaseTimeKey(phase), Long.toString(TimeUnit.NANOSECONDS.toMicros(phases.getNanos(phase))));
+                ret.put(phaseBytesKey(phase), Long.toString(phases.getBytes(phase)));
+            }
+        }
         return ret;
     }
 
+    /** @return the key of the time in microseconds of a phase in {@link #asMap()} */
+    public static String phaseTimeKey(CompactionPhases.Phase phase)
+    {
+        return "phase." + phase.displayName() + ".micros";
+    }
+
+    /** @return the key of the bytes of a phase in {@link #asMap()} */
+    public static String phaseBytesKey(CompactionPhases.Phase phase)
+    {
+        return "phase." + phase.displayName() + ".bytes";
+    }
+
     public static abstract class Holder
     {
         private volatile boolean stopRequested = false;
@@ -31,7 +31,9 @@ import org.apache.cassandraBloomFilters.db.partitions.UnfilteredPartitionIterato
 import org.apache.cassandraBloomFilters.db.rows.*;
 import org.apache.cassandraBloomFilters.db.transform.Transformation;
 import org.apache.cassandraBloomFilters.index.transactions.CompactionTransaction;
+import org.apache.cassandraBloomFilters.io.sstable.CopyablePartition;
 import org.apache.cassandraBloomFilters.io.sstable.ISSTableScanner;
+import org.apache.cassandraBloomFilters.io.sstable.SSTableIdentityIterator;
 import org.apache.cassandraBloomFilters.metrics.CompactionMetrics;
 
 /**
@@ -48,12 +50,15 @@ import org.apache.cassandraBloomFilters.metrics.CompactionMetrics;
  *   <li>invalidate cached partitions that are empty post-compaction. This avoids keeping partitions with
  *       only purgable tombstones in the row cache.</li>
  *   <li>keep tracks of the compaction progress.</li>
+ *   <li>pass partitions that compaction leaves unchanged as {@link CopyablePartition}, so writers can copy them
+ *       without deserializing them (see copyableSource below).</li>
  * </ul>
  */
 public class CompactionIterator extends CompactionInfo.Holder implements UnfilteredPartitionIterator
 {
     private static final Logger logger = LoggerFactory.getLogger(CompactionIterator.class);
     private static final long UNFILTERED_TO_UPDATE_PROGRESS = 100;
+    private static final boolean COPY_UNCHANGED_PARTITIONS = Boolean.parseBoolean(System.getProperty("cassandra.compaction_copy_unchanged_partitions", "true"));
 
     private final OperationType type;
     private final CompactionController controller;
@@ -73,6 +78,8 @@ public class CompactionIterator extends CompactionInfo.Holder implements Unfilte
 
     private final UnfilteredPartitionIterator compacted;
     private final CompactionMetrics metrics;
+    private final CompactionPhases phases = new CompactionPhases();
+    private final boolean canCopyPartitions;
 
     public CompactionIterator(OperationType type, List<ISSTableScanner> scanners, CompactionController controller, int nowInSec, UUID compactionId)
     {
@@ -95,6 +102,10 @@ public class CompactionIterator extends CompactionInfo.Holder implements Unfilte
         this.totalBytes = bytes;
         this.mergeCounters = new long[scanners.size()];
         this.metrics = metrics;
+        this.canCopyPartitions = COPY_UNCHANGED_PARTITIONS
+                                 && !controller.cfs.metadata.isCounter()
+                                 && controller.cfs.metadata.getDroppedColumns().isEmpty()
+                                 && !controller.cfs.indexManager.hasIndexes();
 
         if (metrics != null)
             metrics.beginCompaction(this);
@@ -122,7 +133,16 @@ public class CompactionIterator extends CompactionInfo.Holder implements Unfilte
                                   type,
                                   bytesRead,
                                   totalBytes,
-                                  compactionId);
+                                  compactionId,
+                                  phases.isUsed() ? phases.snapshot() : null);
+    }
+
+    /**
+     * @return the phases of this compaction, to be bound by the thread consuming it
+     */
+    public CompactionPhases getPhases()
+    {
+        return phases;
     }
 
     private void updateCounterFor(int rows)
@@ -136,10 +156,40 @@ public class CompactionIterator extends CompactionInfo.Holder implements Unfilte
         return mergeCounters;
     }
 
+    /**
+     * Returns the sstable partition behind the provided version, the only one of its partition, if compacting it
+     * leaves it unchanged so that it can be copied rather than rewritten. That is the case if its sstable has neither
+     * tombstones nor expiring data, so there is nothing to purge, and if nothing needs to see its rows: counters
+     * (whose shards may be cleaned up when deserialized), dropped columns (whose cells are skipped when deserialized)
+     * and secondary indexes.
+     */
+    private SSTableIdentityIterator copyableSource(UnfilteredRowIterator version)
+    {
+        if (!canCopyPartitions || !(version instanceof LazilyInitializedUnfilteredRowIterator))
+            return null;
+
+        UnfilteredRowIterator partition = ((LazilyInitializedUnfilteredRowIterator) version).initializedIterator();
+        if (!(partition instanceof SSTableIdentityIterator))
+            return null;
+
+        SSTableIdentityIterator source = (SSTableIdentityIterator) partition;
+        return source.getSSTable().getMinLocalDeletionTime() == Cell.NO_DELETION_TIME ? source : null;
+    }
+
     private UnfilteredPartitionIterators.MergeListener listener()
     {
         return new UnfilteredPartitionIterators.MergeListener()
         {
+            public UnfilteredRowIterator getUnmerged(DecoratedKey partitionKey, UnfilteredRowIterator version)
+            {
+                SSTableIdentityIterator source = copyableSource(version);
+                if (source == null)
+                    return null;
+
+                CompactionIterator.this.updateCounterFor(1);
+                return new CopyablePartition(source);
+            }
+
             public UnfilteredRowIterators.MergeListener getRowMergeListener(DecoratedKey partitionKey, List<UnfilteredRowIterator> versions)
             {
                 int merged = 0;
@@ -270,6 +320,18 @@ public class CompactionIterator extends CompactionInfo.Holder implements Unfilte
             this.controller = controller;
         }
 
+        @Override
+        public UnfilteredRowIterator applyToPartition(UnfilteredRowIterator partition)
+        {
+            // Copyable partitions have nothing to purge, and wrapping them would prevent copying them
+            if (partition instanceof CopyablePartition)
+            {
+                updateProgress();
+                return partition;
+            }
+            return super.applyToPartition(partition);
+        }
+
         @Override
         protected void onEmptyPartitionPostPurge(DecoratedKey key)
         {
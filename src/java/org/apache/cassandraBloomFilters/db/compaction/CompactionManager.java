@@ -38,6 +38,7 @@ import org.apache.cassandraBloomFilters.cache.AutoSavingCache;
 import org.apache.cassandraBloomFilters.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandraBloomFilters.concurrent.JMXEnabledThreadPoolExecutor;
 import org.apache.cassandraBloomFilters.concurrent.NamedThreadFactory;
+import org.apache.cassandraBloomFilters.concurrent.ScheduledExecutors;
 import org.apache.cassandraBloomFilters.config.CFMetaData;
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.config.Schema;
@@ -110,16 +111,19 @@ public class CompactionManager implements CompactionManagerMBean
         {
             throw new RuntimeException(e);
         }
+        ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(instance.ioScheduler::adapt, 1, 1, TimeUnit.SECONDS);
     }
 
     private final CompactionExecutor executor = new CompactionExecutor();
     private final CompactionExecutor validationExecutor = new ValidationExecutor();
+    private final CompactionExecutor subRangeExecutor = new SubRangeExecutor();
     private final static CompactionExecutor cacheCleanupExecutor = new CacheCleanupExecutor();
 
     private final CompactionMetrics metrics = new CompactionMetrics(executor, validationExecutor);
     private final Multiset<ColumnFamilyStore> compactingCF = ConcurrentHashMultiset.create();
 
     private final RateLimiter compactionRateLimiter = RateLimiter.create(Double.MAX_VALUE);
+    private final CompactionIOScheduler ioScheduler = new CompactionIOScheduler();
 
     /**
      * Gets compaction rate limiter.
@@ -133,6 +137,27 @@ public class CompactionManager implements CompactionManagerMBean
         return compactionRateLimiter;
     }
 
+    /**
+     * Gets the rate limiter for reading the given sstable in a compaction manager operation, from the budget of
+     * its data directory and of the operation running on this thread.
+     * Rate unit is bytes per sec.
+     */
+    public RateLimiter getRateLimiter(SSTableReader sstable)
+    {
+        setRate(DatabaseDescriptor.getCompactionThroughputMbPerSec());
+        return ioScheduler.getRateLimiter(sstable);
+    }
+
+    public CompactionMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public CompactionIOScheduler getIOScheduler()
+    {
+        return ioScheduler;
+    }
+
     /**
      * Sets the rate for the rate limiter. When compaction_throughput_mb_per_sec is 0 or node is bootstrapping,
      * this sets the rate to Double.MAX_VALUE bytes per second.
@@ -146,6 +171,7 @@ public class CompactionManager implements CompactionManagerMBean
             throughput = Double.MAX_VALUE;
         if (compactionRateLimiter.getRate() != throughput)
             compactionRateLimiter.setRate(throughput);
+        ioScheduler.setThroughput(throughput);
     }
 
     /**
@@ -203,6 +229,7 @@ public class CompactionManager implements CompactionManagerMBean
         // shutdown executors to prevent further submission
         executor.shutdown();
         validationExecutor.shutdown();
+        subRangeExecutor.shutdown();
 
         // interrupt compactions and validations
         for (Holder compactionHolder : CompactionMetrics.getCompactions())
@@ -213,7 +240,7 @@ public class CompactionManager implements CompactionManagerMBean
         // wait for tasks to terminate
         // compaction tasks are interrupted above, so it shuold be fairy quick
         // until not interrupted tasks to complete.
-        for (ExecutorService exec : Arrays.asList(executor, validationExecutor))
+        for (ExecutorService exec : Arrays.asList(executor, validationExecutor, subRangeExecutor))
         {
             try
             {
@@ -801,6 +828,33 @@ public class CompactionManager implements CompactionManagerMBean
         return executor.submit(runnable);
     }
 
+    /**
+     * Submits a tombstone sweep of the given table, which rewrites the sstables with the most droppable tombstones
+     * if any is worth it. Tables with compactions pending are skipped, as their compactions come first.
+     */
+    public Future<?> submitTombstoneSweep(final ColumnFamilyStore cfs)
+    {
+        if (cfs.isAutoCompactionDisabled() || cfs.getCompactionStrategyManager().getEstimatedRemainingTasks() > 0)
+            return Futures.immediateFuture(null);
+
+        Runnable runnable = new WrappedRunnable()
+        {
+            protected void runMayThrow()
+            {
+                AbstractCompactionTask task = TombstoneSweep.getNextTask(cfs, getDefaultGcBefore(cfs, FBUtilities.nowInSeconds()));
+                if (task != null)
+                    task.execute(metrics);
+            }
+        };
+        if (executor.isShutdown())
+        {
+            logger.info("Compaction executor has shut down, not submitting task");
+            return Futures.immediateCancelledFuture();
+        }
+
+        return executor.submit(runnable);
+    }
+
     // This acquire a reference on the sstable
     // This is not efficient, do not use in any critical path
     private SSTableReader lookupSSTable(final ColumnFamilyStore cfs, Descriptor descriptor)
@@ -852,7 +906,8 @@ public class CompactionManager implements CompactionManagerMBean
     {
         CompactionInfo.Holder scrubInfo = null;
 
-        try (Scrubber scrubber = new Scrubber(cfs, modifier, skipCorrupted, checkData))
+        try (CompactionIOScheduler.Lease lease = ioScheduler.lease(OperationType.SCRUB, CompactionIOScheduler.Priority.USER);
+             Scrubber scrubber = new Scrubber(cfs, modifier, skipCorrupted, checkData))
         {
             scrubInfo = scrubber.getScrubInfo();
             metrics.beginCompaction(scrubInfo);
@@ -869,7 +924,8 @@ public class CompactionManager implements CompactionManagerMBean
     {
         CompactionInfo.Holder verifyInfo = null;
 
-        try (Verifier verifier = new Verifier(cfs, sstable, false))
+        try (CompactionIOScheduler.Lease lease = ioScheduler.lease(OperationType.VERIFY, CompactionIOScheduler.Priority.USER);
+             Verifier verifier = new Verifier(cfs, sstable, false))
         {
             verifyInfo = verifier.getVerifyInfo();
             metrics.beginCompaction(verifyInfo);
@@ -975,8 +1031,9 @@ public class CompactionManager implements CompactionManagerMBean
 
         List<SSTableReader> finished;
         int nowInSec = FBUtilities.nowInSeconds();
-        try (SSTableRewriter writer = SSTableRewriter.constructKeepingOriginals(txn, false, sstable.maxDataAge);
-             ISSTableScanner scanner = cleanupStrategy.getScanner(sstable, getRateLimiter());
+        try (CompactionIOScheduler.Lease lease = ioScheduler.lease(OperationType.CLEANUP, CompactionIOScheduler.Priority.USER);
+             SSTableRewriter writer = SSTableRewriter.constructKeepingOriginals(txn, false, sstable.maxDataAge);
+             ISSTableScanner scanner = cleanupStrategy.getScanner(sstable, getRateLimiter(sstable));
              CompactionController controller = new CompactionController(cfs, txn.originals(), getDefaultGcBefore(cfs, nowInSec));
              CompactionIterator ci = new CompactionIterator(OperationType.CLEANUP, Collections.singletonList(scanner), controller, nowInSec, UUIDGen.getTimeUUID(), metrics))
         {
@@ -1216,7 +1273,8 @@ public class CompactionManager implements CompactionManagerMBean
             tree.addMerkleTrees((int) Math.pow(2, depth), validator.desc.ranges);
 
             long start = System.nanoTime();
-            try (AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategyManager().getScanners(sstables, validator.desc.ranges);
+            try (CompactionIOScheduler.Lease lease = ioScheduler.lease(OperationType.VALIDATION, CompactionIOScheduler.Priority.USER);
+                 AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategyManager().getScanners(sstables, validator.desc.ranges);
                  ValidationCompactionController controller = new ValidationCompactionController(cfs, gcBefore);
                  CompactionIterator ci = new ValidationCompactionIterator(scanners.scanners, controller, nowInSec, metrics))
             {
@@ -1364,7 +1422,8 @@ public class CompactionManager implements CompactionManagerMBean
         int nowInSec = FBUtilities.nowInSeconds();
 
         CompactionStrategyManager strategy = cfs.getCompactionStrategyManager();
-        try (SSTableRewriter repairedSSTableWriter = SSTableRewriter.constructWithoutEarlyOpening(anticompactionGroup, false, groupMaxDataAge);
+        try (CompactionIOScheduler.Lease lease = ioScheduler.lease(OperationType.ANTICOMPACTION, CompactionIOScheduler.Priority.USER);
+             SSTableRewriter repairedSSTableWriter = SSTableRewriter.constructWithoutEarlyOpening(anticompactionGroup, false, groupMaxDataAge);
              SSTableRewriter unRepairedSSTableWriter = SSTableRewriter.constructWithoutEarlyOpening(anticompactionGroup, false, groupMaxDataAge);
              AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(anticompactionGroup.originals());
              CompactionController controller = new CompactionController(cfs, sstableAsSet, getDefaultGcBefore(cfs, nowInSec));
@@ -1640,6 +1699,14 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    private static class SubRangeExecutor extends CompactionExecutor
+    {
+        public SubRangeExecutor()
+        {
+            super(DatabaseDescriptor.getCompactionSubRangeParallelism(), "CompactionSubRangeExecutor");
+        }
+    }
+
     private static class CacheCleanupExecutor extends CompactionExecutor
     {
         public CacheCleanupExecutor()
@@ -1648,6 +1715,14 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    /**
+     * Runs one token sub-range of a compaction task that was split for parallelism, see CompactionTask.
+     */
+    <T> Future<T> submitSubRange(Callable<T> subRange)
+    {
+        return subRangeExecutor.submit(subRange);
+    }
+
     public interface CompactionExecutorStatsCollector
     {
         void beginCompaction(CompactionInfo.Holder ci);
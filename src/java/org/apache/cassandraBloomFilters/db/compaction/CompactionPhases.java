@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time and bytes a compaction spent in each of its {@link Phase}s.
+ *
+ * The phases are measured by the readers and writers of the compaction itself: a compaction thread binds its phases
+ * with {@link #bind(CompactionPhases, Phase)}, after which the reads, writes, syncs and index updates it does are
+ * timed by {@link #start()} and {@link #end(Phase, long, long)} at chunk or partition granularity, and so cost a few
+ * nanoseconds each. Whatever time is not spent in one of these sections is accounted to the residual phase of the
+ * binding: merging while iterating over the input, building the index and bloom filter while finishing the output.
+ * Timed sections do not nest: the time of a section opened within another one counts towards the outer one.
+ *
+ * Phases are updated by the thread they are bound to only, and read racily for progress reports.
+ */
+public final class CompactionPhases implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    public enum Phase
+    {
+        /**
+         * Reading and decompressing the input sstables. With memory-mapped reads, the pages are faulted in while
+         * merging and count there.
+         */
+        READ,
+        /** Merging and purging the input, and serializing the merged partitions. */
+        MERGE,
+        /** Compressing and writing out the data of the output sstables. */
+        WRITE,
+        /** Building and writing out the partition index, bloom filter and index summary of the output sstables. */
+        INDEX,
+        /** Syncing the output sstables to disk. */
+        SYNC,
+        /** Waiting for the compaction throughput budget. */
+        THROTTLE;
+
+        public String displayName()
+        {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    /** Returned by {@link #start()} for sections that are not timed. */
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static final ThreadLocal<CompactionPhases> current = new ThreadLocal<>();
+
+    private final long[] nanos = new long[PHASES.length];
+    private final long[] bytes = new long[PHASES.length];
+
+    // state of the binding of these phases to their thread
+    private transient Phase residual;
+    private transient long boundAt;
+    private transient long timedSinceBound;
+    private transient boolean timing;
+    private transient boolean used;
+
+    /**
+     * Makes the given phases current for the calling thread until {@link #unbind(CompactionPhases)}, accounting the
+     * time not spent in timed sections to {@code residual}.
+     *
+     * @return the previously bound phases, to be restored on unbind
+     */
+    public static CompactionPhases bind(CompactionPhases phases, Phase residual)
+    {
+        CompactionPhases previous = current.get();
+        phases.residual = residual;
+        phases.timedSinceBound = 0;
+        phases.timing = false;
+        phases.used = true;
+        phases.boundAt = System.nanoTime();
+        current.set(phases);
+        return previous;
+    }
+
+    public static void unbind(CompactionPhases previous)
+    {
+        CompactionPhases phases = current.get();
+        if (phases != null)
+        {
+            phases.nanos[phases.residual.ordinal()] += phases.residualSinceBound(System.nanoTime());
+            phases.boundAt = 0;
+        }
+
+        if (previous == null)
+            current.remove();
+        else
+            current.set(previous);
+    }
+
+    /**
+     * Opens a timed section on the calling thread.
+     *
+     * @return the start of the section to pass to {@link #end(Phase, long, long)}, or {@link #NOT_TIMED} if no
+     * phases are bound to this thread or a section is already open
+     */
+    public static long start()
+    {
+        CompactionPhases phases = current.get();
+        if (phases == null || phases.timing)
+            return NOT_TIMED;
+
+        phases.timing = true;
+        return System.nanoTime();
+    }
+
+    /**
+     * Closes the timed section opened at {@code start}, accounting its time and {@code bytes} to {@code phase}.
+     */
+    public static void end(Phase phase, long start, long bytes)
+    {
+        if (start == NOT_TIMED)
+            return;
+
+        CompactionPhases phases = current.get();
+        if (phases == null)
+            return;
+
+        phases.timing = false;
+        phases.add(phase, System.nanoTime() - start, bytes);
+    }
+
+    /**
+     * Accounts time that was measured otherwise to {@code phase}, unless a timed section is open.
+     */
+    public static void record(Phase phase, long nanos, long bytes)
+    {
+        CompactionPhases phases = current.get();
+        if (phases == null || phases.timing)
+            return;
+
+        phases.add(phase, nanos, bytes);
+    }
+
+    private void add(Phase phase, long nanos, long bytes)
+    {
+        this.nanos[phase.ordinal()] += nanos;
+        this.bytes[phase.ordinal()] += bytes;
+        timedSinceBound += nanos;
+    }
+
+    private long residualSinceBound(long now)
+    {
+        return Math.max(0, now - boundAt - timedSinceBound);
+    }
+
+    /**
+     * Adds the phases of a part of a compaction, such as a sub-range compacted on another thread, to these.
+     */
+    public synchronized void add(CompactionPhases other)
+    {
+        CompactionPhases snapshot = other.snapshot();
+        for (int i = 0; i < PHASES.length; i++)
+        {
+            nanos[i] += snapshot.nanos[i];
+            bytes[i] += snapshot.bytes[i];
+        }
+    }
+
+    /**
+     * @return a copy of these phases, including the residual time of a binding in progress
+     */
+    public CompactionPhases snapshot()
+    {
+        CompactionPhases snapshot = new CompactionPhases();
+        System.arraycopy(nanos, 0, snapshot.nanos, 0, PHASES.length);
+        System.arraycopy(bytes, 0, snapshot.bytes, 0, PHASES.length);
+        long bound = boundAt;
+        Phase phase = residual;
+        if (bound != 0 && phase != null)
+            snapshot.nanos[phase.ordinal()] += Math.max(0, System.nanoTime() - bound - timedSinceBound);
+        snapshot.used = used;
+        return snapshot;
+    }
+
+    /**
+     * @return whether these phases were ever bound, that is, whether they measured anything
+     */
+    public boolean isUsed()
+    {
+        return used;
+    }
+
+    public long getNanos(Phase phase)
+    {
+        return nanos[phase.ordinal()];
+    }
+
+    public long getBytes(Phase phase)
+    {
+        return bytes[phase.ordinal()];
+    }
+
+    /**
+     * @return the time of each phase in microseconds, keyed by phase display name
+     */
+    public Map<String, Long> micros()
+    {
+        Map<String, Long> micros = new LinkedHashMap<>();
+        for (Phase phase : PHASES)
+            micros.put(phase.displayName(), TimeUnit.NANOSECONDS.toMicros(nanos[phase.ordinal()]));
+        return micros;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : PHASES)
+        {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(phase.displayName()).append('=').append(TimeUnit.NANOSECONDS.toMillis(nanos[phase.ordinal()])).append("ms");
+        }
+        return sb.toString();
+    }
+}
@@ -46,6 +46,7 @@ import org.apache.cassandraBloomFilters.io.sstable.SSTableMultiWriter;
 import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
 import org.apache.cassandraBloomFilters.io.sstable.ISSTableScanner;
 import org.apache.cassandraBloomFilters.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandraBloomFilters.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandraBloomFilters.notifications.*;
 import org.apache.cassandraBloomFilters.schema.CompactionParams;
 import org.apache.cassandraBloomFilters.service.ActiveRepairService;
@@ -171,7 +172,7 @@ public class CompactionStrategyManager implements INotificationConsumer
      * @param sstable
      * @return
      */
-    private AbstractCompactionStrategy getCompactionStrategyFor(SSTableReader sstable)
+    AbstractCompactionStrategy getCompactionStrategyFor(SSTableReader sstable)
     {
         int index = getCompactionStrategyIndex(cfs, getDirectories(), sstable);
         readLock.lock();
@@ -456,6 +457,11 @@ public class CompactionStrategyManager implements INotificationConsumer
         }
     }
 
+    private void handleMetadataChangedNotification(SSTableReader sstable, StatsMetadata oldMetadata)
+    {
+        getCompactionStrategyFor(sstable).metadataChanged(oldMetadata, sstable);
+    }
+
     private void handleRepairStatusChangedNotification(Iterable<SSTableReader> sstables)
     {
         // we need a write lock here since we move sstables from one strategy instance to another
@@ -512,6 +518,11 @@ public class CompactionStrategyManager implements INotificationConsumer
         {
             handleRepairStatusChangedNotification(((SSTableRepairStatusChanged) notification).sstables);
         }
+        else if (notification instanceof SSTableMetadataChanged)
+        {
+            SSTableMetadataChanged metadataChanged = (SSTableMetadataChanged) notification;
+            handleMetadataChangedNotification(metadataChanged.sstable, metadataChanged.oldMetadata);
+        }
         else if (notification instanceof SSTableDeletingNotification)
         {
             handleDeletingNotification(((SSTableDeletingNotification) notification).deleting);
@@ -832,6 +843,15 @@ public class CompactionStrategyManager implements INotificationConsumer
         return Boolean.parseBoolean(params.options().get(AbstractCompactionStrategy.ONLY_PURGE_REPAIRED_TOMBSTONES));
     }
 
+    /**
+     * The number of token ranges compaction output is split into per data directory, 1 if it is not split
+     */
+    public int tokenRangeSplits()
+    {
+        String splits = params.options().get(AbstractCompactionStrategy.TOKEN_RANGE_SPLITS_OPTION);
+        return splits == null ? 1 : Integer.parseInt(splits);
+    }
+
     public SSTableMultiWriter createSSTableMultiWriter(Descriptor descriptor,
                                                        long keyCount,
                                                        long repairedAt,
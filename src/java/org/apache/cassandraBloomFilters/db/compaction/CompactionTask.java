@@ -17,17 +17,28 @@
  */
 package org.apache.cassandraBloomFilters.db.compaction;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 
+import org.apache.cassandraBloomFilters.db.DecoratedKey;
 import org.apache.cassandraBloomFilters.db.Directories;
 import org.apache.cassandraBloomFilters.db.compaction.writers.CompactionAwareWriter;
 import org.apache.cassandraBloomFilters.db.compaction.writers.DefaultCompactionWriter;
@@ -41,8 +52,13 @@ import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
 import org.apache.cassandraBloomFilters.db.SystemKeyspace;
 import org.apache.cassandraBloomFilters.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
 import org.apache.cassandraBloomFilters.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandraBloomFilters.dht.IPartitioner;
+import org.apache.cassandraBloomFilters.dht.Range;
+import org.apache.cassandraBloomFilters.dht.Splitter;
+import org.apache.cassandraBloomFilters.dht.Token;
 import org.apache.cassandraBloomFilters.service.ActiveRepairService;
 import org.apache.cassandraBloomFilters.utils.FBUtilities;
+import org.apache.cassandraBloomFilters.utils.Throwables;
 import org.apache.cassandraBloomFilters.utils.concurrent.Refs;
 
 public class CompactionTask extends AbstractCompactionTask
@@ -53,6 +69,10 @@ public class CompactionTask extends AbstractCompactionTask
     protected static long totalBytesCompacted = 0;
     private CompactionExecutorStatsCollector collector;
 
+    // compactions of at least this much data are split into sub-ranges if compaction_subrange_parallelism is set
+    @VisibleForTesting
+    static long subRangeMinBytes = Integer.getInteger("cassandra.compaction_subrange_min_size_in_mb", 1024) * (1L << 20);
+
     public CompactionTask(ColumnFamilyStore cfs, LifecycleTransaction txn, int gcBefore)
     {
         this(cfs, txn, gcBefore, false);
@@ -152,7 +172,9 @@ public class CompactionTask extends AbstractCompactionTask
         long start = System.nanoTime();
         long totalKeysWritten = 0;
         long estimatedKeys = 0;
-        try (CompactionController controller = getCompactionController(transaction.originals()))
+        CompactionPhases phases = new CompactionPhases();
+        try (CompactionIOScheduler.Lease lease = CompactionManager.instance.getIOScheduler().lease(compactionType, getIOPriority());
+             CompactionController controller = getCompactionController(transaction.originals()))
         {
             Set<SSTableReader> actuallyCompact = Sets.difference(transaction.originals(), controller.getFullyExpiredSSTables());
 
@@ -164,7 +186,20 @@ public class CompactionTask extends AbstractCompactionTask
             // to both ifile and dfile and SSTR will throw deletion errors on Windows if it tries to delete before scanner is closed.
             // See CASSANDRA-8019 and CASSANDRA-8399
             int nowInSec = FBUtilities.nowInSeconds();
-            try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact);
+            List<Range<Token>> subRanges = getSubRanges(actuallyCompact);
+            if (subRanges.size() > 1)
+            {
+                logger.debug("Compacting ({}) in {} parallel sub-ranges {}", taskId, subRanges.size(), subRanges);
+                try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact))
+                {
+                    SubRangeCompaction compaction = new SubRangeCompaction(subRanges, actuallyCompact, strategy, taskId, nowInSec, phases);
+                    newSStables = compaction.run();
+                    estimatedKeys = compaction.estimatedKeys;
+                    totalKeysWritten = compaction.keysWritten;
+                    mergedRowCounts = compaction.mergedRowCounts;
+                }
+            }
+            else try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact);
                  AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact);
                  CompactionIterator ci = new CompactionIterator(compactionType, scanners.scanners, controller, nowInSec, taskId))
             {
@@ -178,23 +213,39 @@ public class CompactionTask extends AbstractCompactionTask
                 try (CompactionAwareWriter writer = getCompactionAwareWriter(cfs, getDirectories(), transaction, actuallyCompact))
                 {
                     estimatedKeys = writer.estimatedKeys();
-                    while (ci.hasNext())
+                    CompactionPhases previous = CompactionPhases.bind(ci.getPhases(), CompactionPhases.Phase.MERGE);
+                    try
                     {
-                        if (ci.isStopRequested())
-                            throw new CompactionInterruptedException(ci.getCompactionInfo());
+                        while (ci.hasNext())
+                        {
+                            if (ci.isStopRequested())
+                                throw new CompactionInterruptedException(ci.getCompactionInfo());
 
-                        if (writer.append(ci.next()))
-                            totalKeysWritten++;
+                            if (writer.append(ci.next()))
+                                totalKeysWritten++;
 
-                        if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
-                        {
-                            controller.maybeRefreshOverlaps();
-                            lastCheckObsoletion = System.nanoTime();
+                            if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
+                            {
+                                controller.maybeRefreshOverlaps();
+                                lastCheckObsoletion = System.nanoTime();
+                            }
                         }
                     }
+                    finally
+                    {
+                        CompactionPhases.unbind(previous);
+                    }
 
                     // point of no return
-                    newSStables = writer.finish();
+                    previous = CompactionPhases.bind(ci.getPhases(), CompactionPhases.Phase.INDEX);
+                    try
+                    {
+                        newSStables = writer.finish();
+                    }
+                    finally
+                    {
+                        CompactionPhases.unbind(previous);
+                    }
                 }
                 finally
                 {
@@ -202,6 +253,7 @@ public class CompactionTask extends AbstractCompactionTask
                         collector.finishCompaction(ci);
 
                     mergedRowCounts = ci.getMergedRowCounts();
+                    phases.add(ci.getPhases());
                 }
             }
 
@@ -217,18 +269,264 @@ public class CompactionTask extends AbstractCompactionTask
 
             double mbps = dTime > 0 ? (double) endsize / (1024 * 1024) / ((double) dTime / 1000) : 0;
             long totalSourceRows = 0;
-            String mergeSummary = updateCompactionHistory(cfs.keyspace.getName(), cfs.getColumnFamilyName(), mergedRowCounts, startsize, endsize);
-            logger.debug(String.format("Compacted (%s) %d sstables to [%s] to level=%d.  %,d bytes to %,d (~%d%% of original) in %,dms = %fMB/s.  %,d total partitions merged to %,d.  Partition merge counts were {%s}",
-                                      taskId, transaction.originals().size(), newSSTableNames.toString(), getLevel(), startsize, endsize, (int) (ratio * 100), dTime, mbps, totalSourceRows, totalKeysWritten, mergeSummary));
+            String mergeSummary = updateCompactionHistory(cfs.keyspace.getName(), cfs.getColumnFamilyName(), mergedRowCounts, startsize, endsize, phases);
+            logger.debug(String.format("Compacted (%s) %d sstables to [%s] to level=%d.  %,d bytes to %,d (~%d%% of original) in %,dms = %fMB/s.  %,d total partitions merged to %,d.  Partition merge counts were {%s}.  Phases were {%s}",
+                                      taskId, transaction.originals().size(), newSSTableNames.toString(), getLevel(), startsize, endsize, (int) (ratio * 100), dTime, mbps, totalSourceRows, totalKeysWritten, mergeSummary, phases));
+            CompactionManager.instance.getMetrics().recordPhases(phases);
             logger.trace(String.format("CF Total Bytes Compacted: %,d", CompactionTask.addToTotalBytesCompacted(endsize)));
             logger.trace("Actual #keys: {}, Estimated #keys:{}, Err%: {}", totalKeysWritten, estimatedKeys, ((double)(totalKeysWritten - estimatedKeys)/totalKeysWritten));
 
+            if (compactionType == OperationType.TOMBSTONE_SWEEP)
+                TombstoneSweep.recordSweep(cfs, transaction.originals(), newSStables, gcBefore);
+
             if (transaction.isOffline())
                 Refs.release(Refs.selfRefs(newSStables));
         }
     }
 
-    @Override
+    /**
+     * Splits the token span of the given sstables into compaction_subrange_parallelism sub-ranges that are
+     * compacted in parallel, or returns a single range if the task should be compacted in one pass.
+     */
+    @VisibleForTesting
+    List<Range<Token>> getSubRanges(Set<SSTableReader> sstables)
+    {
+        IPartitioner partitioner = cfs.getPartitioner();
+        Token minimum = partitioner.getMinimumToken();
+        Range<Token> fullRange = new Range<>(minimum, minimum);
+
+        int parallelism = DatabaseDescriptor.getCompactionSubRangeParallelism();
+        if (parallelism <= 1 || sstables.isEmpty() || transaction.isOffline() || !supportsSubRanges()
+            || SSTableReader.getTotalBytes(sstables) < subRangeMinBytes)
+            return Collections.singletonList(fullRange);
+
+        Token first = null;
+        Token last = null;
+        for (SSTableReader sstable : sstables)
+        {
+            if (first == null || sstable.first.getToken().compareTo(first) < 0)
+                first = sstable.first.getToken();
+            if (last == null || sstable.last.getToken().compareTo(last) > 0)
+                last = sstable.last.getToken();
+        }
+
+        List<Token> boundaries;
+        Optional<Splitter> splitter = partitioner.splitter();
+        if (splitter.isPresent())
+        {
+            // hashed tokens are evenly distributed, so equal token widths hold roughly equal amounts of data;
+            // the last boundary is the maximum token, the end of the last sub-range
+            boundaries = new ArrayList<>(splitter.get().splitOwnedRanges(parallelism, Collections.singletonList(new Range<>(first, last)), false));
+            boundaries.remove(boundaries.size() - 1);
+        }
+        else
+        {
+            boundaries = sampledBoundaries(sstables, fullRange, parallelism);
+        }
+
+        List<Range<Token>> ranges = new ArrayList<>(parallelism);
+        Token left = minimum;
+        for (Token boundary : boundaries)
+        {
+            // skip boundaries that would leave a sub-range empty
+            if (boundary.compareTo(left) > 0 && boundary.compareTo(last) < 0)
+            {
+                ranges.add(new Range<>(left, boundary));
+                left = boundary;
+            }
+        }
+        // the last sub-range wraps around to the end of the ring
+        ranges.add(new Range<>(left, minimum));
+        return ranges;
+    }
+
+    /**
+     * Picks the boundaries between sub-ranges from the index summaries of the sstables, for partitioners whose
+     * tokens are not evenly distributed.
+     */
+    private static List<Token> sampledBoundaries(Set<SSTableReader> sstables, Range<Token> fullRange, int parts)
+    {
+        List<Token> samples = new ArrayList<>();
+        for (SSTableReader sstable : sstables)
+        {
+            for (DecoratedKey key : sstable.getKeySamples(fullRange))
+                samples.add(key.getToken());
+        }
+        if (samples.isEmpty())
+            return Collections.emptyList();
+
+        Collections.sort(samples);
+        List<Token> boundaries = new ArrayList<>(parts - 1);
+        for (int i = 1; i < parts; i++)
+            boundaries.add(samples.get(i * samples.size() / parts));
+        return boundaries;
+    }
+
+    /**
+     * Whether the output of this task may be split by token sub-ranges, see getSubRanges().
+     */
+    protected boolean supportsSubRanges()
+    {
+        return true;
+    }
+
+    /**
+     * Compacts each token sub-range of the task on the sub-range executor, with its own scanners, controller (the
+     * overlap tracking of which is not thread-safe) and writer, and then atomically replaces the originals with the
+     * sstables of all sub-ranges.
+     */
+    private class SubRangeCompaction
+    {
+        private final List<Range<Token>> ranges;
+        private final Set<SSTableReader> actuallyCompact;
+        private final CompactionStrategyManager strategy;
+        private final UUID taskId;
+        private final int nowInSec;
+        private final CompactionPhases phases;
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        private long estimatedKeys;
+        private long keysWritten;
+        private long[] mergedRowCounts = new long[0];
+
+        private SubRangeCompaction(List<Range<Token>> ranges, Set<SSTableReader> actuallyCompact, CompactionStrategyManager strategy, UUID taskId, int nowInSec, CompactionPhases phases)
+        {
+            this.ranges = ranges;
+            this.actuallyCompact = actuallyCompact;
+            this.strategy = strategy;
+            this.taskId = taskId;
+            this.nowInSec = nowInSec;
+            this.phases = phases;
+        }
+
+        private Collection<SSTableReader> run()
+        {
+            List<CompactionAwareWriter> writers = new ArrayList<>(ranges.size());
+            CompactionIOScheduler.Lease lease = CompactionIOScheduler.current();
+            try
+            {
+                List<Future<long[]>> futures = new ArrayList<>(ranges.size());
+                for (Range<Token> range : ranges)
+                {
+                    CompactionAwareWriter writer = getCompactionAwareWriter(cfs, getDirectories(), transaction, actuallyCompact).shareTransaction(ranges.size());
+                    writers.add(writer);
+                    estimatedKeys += writer.estimatedKeys();
+                    futures.add(CompactionManager.instance.submitSubRange(() -> compact(range, writer, lease)));
+                }
+
+                // wait for all sub-ranges, even after a failure, as their writers cannot be aborted while in use
+                Throwable fail = null;
+                for (Future<long[]> future : futures)
+                {
+                    try
+                    {
+                        addMergedRowCounts(Uninterruptibles.getUninterruptibly(future));
+                    }
+                    catch (ExecutionException e)
+                    {
+                        failed.set(true);
+                        fail = Throwables.merge(fail, e.getCause());
+                    }
+                }
+                Throwables.maybeFail(fail);
+
+                // point of no return
+                CompactionPhases previous = CompactionPhases.bind(phases, CompactionPhases.Phase.INDEX);
+                try
+                {
+                    for (CompactionAwareWriter writer : writers)
+                        writer.prepareToCommit();
+                }
+                finally
+                {
+                    CompactionPhases.unbind(previous);
+                }
+                transaction.checkpoint();
+                if (!keepOriginals)
+                    transaction.obsoleteOriginals();
+                transaction.prepareToCommit();
+
+                List<SSTableReader> newSSTables = new ArrayList<>();
+                for (CompactionAwareWriter writer : writers)
+                {
+                    writer.commit();
+                    newSSTables.addAll(writer.finished());
+                }
+                transaction.commit();
+                return newSSTables;
+            }
+            finally
+            {
+                // aborts the sstables of any writer not committed; the transaction is aborted when the task closes it
+                Throwables.maybeFail(Throwables.close(null, writers));
+            }
+        }
+
+        private long[] compact(Range<Token> range, CompactionAwareWriter writer, CompactionIOScheduler.Lease lease)
+        {
+            long keys = 0;
+            // read the sub-range under the I/O budget of the task
+            CompactionIOScheduler.Lease previous = CompactionIOScheduler.setCurrent(lease);
+            try (CompactionController controller = getCompactionController(transaction.originals());
+                 AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact, Collections.singleton(range));
+                 CompactionIterator ci = new CompactionIterator(compactionType, scanners.scanners, controller, nowInSec, taskId))
+            {
+                if (collector != null)
+                    collector.beginCompaction(ci);
+                CompactionPhases previousPhases = CompactionPhases.bind(ci.getPhases(), CompactionPhases.Phase.MERGE);
+                try
+                {
+                    long lastCheckObsoletion = System.nanoTime();
+                    while (ci.hasNext())
+                    {
+                        // stop early if another sub-range failed, as the whole task will be aborted
+                        if (ci.isStopRequested() || failed.get())
+                            throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                        if (writer.append(ci.next()))
+                            keys++;
+
+                        if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
+                        {
+                            controller.maybeRefreshOverlaps();
+                            lastCheckObsoletion = System.nanoTime();
+                        }
+                    }
+                }
+                catch (Throwable t)
+                {
+                    failed.set(true);
+                    throw t;
+                }
+                finally
+                {
+                    CompactionPhases.unbind(previousPhases);
+                    if (collector != null)
+                        collector.finishCompaction(ci);
+                }
+
+                phases.add(ci.getPhases());
+                synchronized (this)
+                {
+                    keysWritten += keys;
+                }
+                return ci.getMergedRowCounts();
+            }
+            finally
+            {
+                CompactionIOScheduler.setCurrent(previous);
+            }
+        }
+
+        private void addMergedRowCounts(long[] counts)
+        {
+            if (counts.length > mergedRowCounts.length)
+                mergedRowCounts = Arrays.copyOf(mergedRowCounts, counts.length);
+            for (int i = 0; i < counts.length; i++)
+                mergedRowCounts[i] += counts[i];
+        }
+    }
+
     public CompactionAwareWriter getCompactionAwareWriter(ColumnFamilyStore cfs,
                                                           Directories directories,
                                                           LifecycleTransaction transaction,
@@ -237,7 +535,7 @@ public class CompactionTask extends AbstractCompactionTask
         return new DefaultCompactionWriter(cfs, directories, transaction, nonExpiredSSTables, keepOriginals, getLevel());
     }
 
-    public static String updateCompactionHistory(String keyspaceName, String columnFamilyName, long[] mergedRowCounts, long startSize, long endSize)
+    public static String updateCompactionHistory(String keyspaceName, String columnFamilyName, long[] mergedRowCounts, long startSize, long endSize, CompactionPhases phases)
     {
         StringBuilder mergeSummary = new StringBuilder(mergedRowCounts.length * 10);
         Map<Integer, Long> mergedRows = new HashMap<>();
@@ -251,7 +549,7 @@ public class CompactionTask extends AbstractCompactionTask
             mergeSummary.append(String.format("%d:%d, ", rows, count));
             mergedRows.put(rows, count);
         }
-        SystemKeyspace.updateCompactionHistory(keyspaceName, columnFamilyName, System.currentTimeMillis(), startSize, endSize, mergedRows);
+        SystemKeyspace.updateCompactionHistory(keyspaceName, columnFamilyName, System.currentTimeMillis(), startSize, endSize, mergedRows, phases.micros());
         return mergeSummary.toString();
     }
 
@@ -284,6 +582,14 @@ public class CompactionTask extends AbstractCompactionTask
         return 0;
     }
 
+    /**
+     * @return the priority of the I/O of this task against the other operations reading from the same disks
+     */
+    protected CompactionIOScheduler.Priority getIOPriority()
+    {
+        return isUserDefined ? CompactionIOScheduler.Priority.USER : CompactionIOScheduler.Priority.BACKGROUND;
+    }
+
     protected CompactionController getCompactionController(Set<SSTableReader> toCompact)
     {
         return new CompactionController(cfs, toCompact, gcBefore);
@@ -442,6 +442,7 @@ public class DateTieredCompactionStrategy extends AbstractCompactionStrategy
 
     public static Map<String, String> validateOptions(Map<String, String> options) throws ConfigurationException
     {
+        rejectTokenRangeSplits(options, DateTieredCompactionStrategy.class);
         Map<String, String> uncheckedOptions = AbstractCompactionStrategy.validateOptions(options);
         uncheckedOptions = DateTieredCompactionStrategyOptions.validateOptions(options, uncheckedOptions);
 
@@ -37,6 +37,7 @@ import org.apache.cassandraBloomFilters.dht.Token;
 import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
 import org.apache.cassandraBloomFilters.io.sstable.ISSTableScanner;
 import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
+import org.apache.cassandraBloomFilters.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandraBloomFilters.utils.FBUtilities;
 
 public class LeveledCompactionStrategy extends AbstractCompactionStrategy
@@ -118,6 +119,10 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
             LifecycleTransaction txn = cfs.getTracker().tryModify(candidate.sstables, OperationType.COMPACTION);
             if (txn != null)
             {
+                // sstables that fit into the next level as they are only need their level changed
+                if (op == OperationType.COMPACTION && manifest.canPromoteWithoutRewrite(candidate))
+                    return new LeveledPromotionTask(cfs, txn, candidate.level);
+
                 LeveledCompactionTask newTask = new LeveledCompactionTask(cfs, txn, candidate.level, gcBefore, candidate.maxSSTableBytes, false);
                 newTask.setCompactionType(op);
                 return newTask;
@@ -235,7 +240,7 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
                 {
                     // L0 makes no guarantees about overlapping-ness.  Just create a direct scanner for each
                     for (SSTableReader sstable : byLevel.get(level))
-                        scanners.add(sstable.getScanner(range, CompactionManager.instance.getRateLimiter()));
+                        scanners.add(sstable.getScanner(range, CompactionManager.instance.getRateLimiter(sstable)));
                 }
                 else
                 {
@@ -284,6 +289,13 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
         manifest.remove(sstable);
     }
 
+    @Override
+    public void metadataChanged(StatsMetadata oldMetadata, SSTableReader sstable)
+    {
+        if (sstable.getSSTableLevel() != oldMetadata.sstableLevel)
+            manifest.newLevel(sstable, oldMetadata.sstableLevel);
+    }
+
     // Lazily creates SSTableBoundedScanner for sstable that are assumed to be from the
     // same level (e.g. non overlapping) - see #4142
     private static class LeveledScanner extends AbstractIterator<UnfilteredRowIterator> implements ISSTableScanner
@@ -319,7 +331,8 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
             Collections.sort(this.sstables, SSTableReader.sstableComparator);
             sstableIterator = this.sstables.iterator();
             assert sstableIterator.hasNext(); // caller should check intersecting first
-            currentScanner = sstableIterator.next().getScanner(range, CompactionManager.instance.getRateLimiter());
+            SSTableReader first = sstableIterator.next();
+            currentScanner = first.getScanner(range, CompactionManager.instance.getRateLimiter(first));
         }
 
         public static List<SSTableReader> intersecting(Collection<SSTableReader> sstables, Range<Token> range)
@@ -362,7 +375,8 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
                     currentScanner = null;
                     return endOfData();
                 }
-                currentScanner = sstableIterator.next().getScanner(range, CompactionManager.instance.getRateLimiter());
+                SSTableReader next = sstableIterator.next();
+                currentScanner = next.getScanner(range, CompactionManager.instance.getRateLimiter(next));
             }
         }
 
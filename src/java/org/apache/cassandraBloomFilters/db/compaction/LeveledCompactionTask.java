@@ -62,4 +62,21 @@ public class LeveledCompactionTask extends CompactionTask
     {
         return level;
     }
+
+    /**
+     * Compactions out of L0 go before other background compactions, as a growing L0 slows down reads.
+     */
+    @Override
+    protected CompactionIOScheduler.Priority getIOPriority()
+    {
+        if (!isUserDefined && !majorCompaction)
+        {
+            for (SSTableReader sstable : transaction.originals())
+            {
+                if (sstable.getSSTableLevel() == 0)
+                    return CompactionIOScheduler.Priority.URGENT;
+            }
+        }
+        return super.getIOPriority();
+    }
 }
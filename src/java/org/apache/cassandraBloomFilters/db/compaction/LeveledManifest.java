@@ -171,6 +171,18 @@ public class LeveledManifest
         lastCompactedKeys[minLevel] = SSTableReader.sstableOrdering.max(added).last;
     }
 
+    /**
+     * Moves an sstable whose level was changed in place (see LeveledPromotionTask) to its new level.
+     */
+    public synchronized void newLevel(SSTableReader sstable, int oldLevel)
+    {
+        boolean removed = generations[oldLevel].remove(sstable);
+        assert removed : "Could not remove " + sstable + " from " + oldLevel;
+        // add() sends the sstable back to L0 if it overlaps something that was added to its new level meanwhile
+        add(sstable);
+        lastCompactedKeys[oldLevel] = sstable.last;
+    }
+
     public synchronized void repairOverlappingSSTables(int level)
     {
         SSTableReader previous = null;
@@ -357,6 +369,36 @@ public class LeveledManifest
         return new CompactionCandidate(candidates, getNextLevel(candidates), maxSSTableSizeInBytes);
     }
 
+    /**
+     * Checks whether the candidate sstables can be moved to the level of the candidate by only changing the level in
+     * their metadata: they must all come from the level below, be no larger than a compaction would write them, and
+     * not overlap each other or any sstable in the new level. This is typical of sequential or append-heavy keys,
+     * which would otherwise be rewritten for nothing.
+     */
+    public synchronized boolean canPromoteWithoutRewrite(CompactionCandidate candidate)
+    {
+        if (candidate.level == 0)
+            return false;
+
+        List<SSTableReader> sstables = new ArrayList<>(candidate.sstables);
+        for (SSTableReader sstable : sstables)
+        {
+            // an L0 sstable can be much larger than sstable_size_in_mb, and would then throw the level sizes off
+            if (sstable.getSSTableLevel() != candidate.level - 1 || sstable.onDiskLength() > maxSSTableSizeInBytes)
+                return false;
+        }
+
+        Collections.sort(sstables, SSTableReader.sstableComparator);
+        SSTableReader previous = null;
+        for (SSTableReader current : sstables)
+        {
+            if (previous != null && current.first.compareTo(previous.last) <= 0)
+                return false;
+            previous = current;
+        }
+        return overlapping(sstables, getLevel(candidate.level)).isEmpty();
+    }
+
     private CompactionCandidate getSTCSInL0CompactionCandidate()
     {
         if (!DatabaseDescriptor.getDisableSTCSInL0() && getLevel(0).size() > MAX_COMPACTING_L0)
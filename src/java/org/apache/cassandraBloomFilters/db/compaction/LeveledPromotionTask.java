@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
+import org.apache.cassandraBloomFilters.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
+import org.apache.cassandraBloomFilters.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
+import org.apache.cassandraBloomFilters.io.sstable.metadata.StatsMetadata;
+
+/**
+ * Moves sstables to the next level by only rewriting the level in their metadata, for sstables that overlap neither
+ * each other nor anything in that level (see LeveledManifest.canPromoteWithoutRewrite), where a compaction would
+ * just copy them. As no sstable is written, this is not a CompactionTask, but it shows in compactionstats all the same.
+ */
+public class LeveledPromotionTask extends AbstractCompactionTask
+{
+    private static final Logger logger = LoggerFactory.getLogger(LeveledPromotionTask.class);
+
+    private final int level;
+    private final Set<SSTableReader> sstables;
+    private final long totalBytes;
+    private volatile long bytesPromoted;
+
+    private final CompactionInfo.Holder progress = new CompactionInfo.Holder()
+    {
+        public CompactionInfo getCompactionInfo()
+        {
+            return new CompactionInfo(cfs.metadata, compactionType, bytesPromoted, totalBytes, transaction.opId());
+        }
+    };
+
+    public LeveledPromotionTask(ColumnFamilyStore cfs, LifecycleTransaction txn, int level)
+    {
+        super(cfs, txn);
+        this.level = level;
+        this.sstables = ImmutableSet.copyOf(txn.originals());
+        long bytes = 0;
+        for (SSTableReader sstable : sstables)
+            bytes += sstable.onDiskLength();
+        this.totalBytes = bytes;
+    }
+
+    protected int executeInternal(CompactionExecutorStatsCollector collector)
+    {
+        if (collector != null)
+            collector.beginCompaction(progress);
+        try
+        {
+            run();
+        }
+        finally
+        {
+            if (collector != null)
+                collector.finishCompaction(progress);
+        }
+        return sstables.size();
+    }
+
+    protected void runMayThrow() throws Exception
+    {
+        for (SSTableReader sstable : sstables)
+        {
+            // sstables promoted so far stay promoted: each one is a complete, valid change of level
+            if (progress.isStopRequested())
+                throw new CompactionInterruptedException(progress.getCompactionInfo());
+
+            StatsMetadata oldMetadata = sstable.getSSTableMetadata();
+            sstable.descriptor.getMetadataSerializer().mutateLevel(sstable.descriptor, level);
+            sstable.reloadSSTableMetadata();
+            cfs.getTracker().notifySSTableMetadataChanged(sstable, oldMetadata);
+            bytesPromoted += sstable.onDiskLength();
+        }
+        cfs.metric.compactionBytesRewriteAvoided.inc(bytesPromoted);
+        logger.debug("Promoted {} to L{} without rewriting {} bytes", sstables, level, bytesPromoted);
+
+        // nothing is replaced, the sstables only have to be released
+        transaction.cancel(sstables);
+        transaction.prepareToCommit();
+        transaction.commit();
+    }
+}
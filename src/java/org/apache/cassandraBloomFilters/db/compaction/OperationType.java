@@ -38,7 +38,9 @@ public enum OperationType
     WRITE("Write"),
     VIEW_BUILD("View build"),
     INDEX_SUMMARY("Index summary redistribution"),
-    RELOCATE("Relocate sstables to correct disk");
+    RELOCATE("Relocate sstables to correct disk"),
+    /** Rewrite of sstables only to purge their droppable tombstones */
+    TOMBSTONE_SWEEP("Tombstone sweep");
 
     public final String type;
     public final String fileName;
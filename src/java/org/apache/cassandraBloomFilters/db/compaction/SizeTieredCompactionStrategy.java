@@ -23,11 +23,13 @@ import java.util.Map.Entry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
 import org.apache.cassandraBloomFilters.db.Directories;
+import org.apache.cassandraBloomFilters.db.PartitionPosition;
 import org.apache.cassandraBloomFilters.db.compaction.writers.CompactionAwareWriter;
 import org.apache.cassandraBloomFilters.db.compaction.writers.SplittingSizeTieredCompactionWriter;
 import org.apache.cassandraBloomFilters.db.lifecycle.LifecycleTransaction;
@@ -83,7 +85,9 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
 
         Iterable<SSTableReader> candidates = filterSuspectSSTables(filter(cfs.getUncompactingSSTables(), sstables::contains));
 
-        List<List<SSTableReader>> buckets = getBuckets(createSSTableAndLengthPairs(candidates), sizeTieredOptions.bucketHigh, sizeTieredOptions.bucketLow, sizeTieredOptions.minSSTableSize);
+        List<List<SSTableReader>> buckets = new ArrayList<>();
+        for (List<SSTableReader> group : groupByTokenRange(candidates, getTokenRangeBoundaries()))
+            buckets.addAll(getBuckets(createSSTableAndLengthPairs(group), sizeTieredOptions.bucketHigh, sizeTieredOptions.bucketLow, sizeTieredOptions.minSSTableSize));
         logger.trace("Compaction buckets are {}", buckets);
         estimatedRemainingTasks = getEstimatedCompactionsByTasks(cfs, buckets);
         List<SSTableReader> mostInteresting = mostInterestingBucket(buckets, minThreshold, maxThreshold);
@@ -106,6 +110,36 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
     }
 
 
+    /**
+     * With the token_range_splits option, a compaction writes one sstable of similar size per token range: bucketed
+     * together, they would be compacted again and again. So the sstables within each token range are bucketed
+     * separately, and those spanning several token ranges (flushed or streamed ones, say) separately again.
+     *
+     * @param boundaries the upper bounds of the token ranges, or null if compaction output isn't split
+     */
+    @VisibleForTesting
+    static Collection<List<SSTableReader>> groupByTokenRange(Iterable<SSTableReader> sstables, List<PartitionPosition> boundaries)
+    {
+        if (boundaries == null)
+            return Collections.singletonList(Lists.newArrayList(sstables));
+
+        Map<Integer, List<SSTableReader>> groups = new HashMap<>();
+        for (SSTableReader sstable : sstables)
+        {
+            int first = tokenRangeIndex(boundaries, sstable.first);
+            int last = tokenRangeIndex(boundaries, sstable.last);
+            groups.computeIfAbsent(first == last ? first : -1, k -> new ArrayList<>()).add(sstable);
+        }
+        return groups.values();
+    }
+
+    // the index of the token range holding the key: that of the first upper bound that isn't before it
+    private static int tokenRangeIndex(List<PartitionPosition> boundaries, PartitionPosition key)
+    {
+        int index = Collections.binarySearch(boundaries, key);
+        return index < 0 ? -index - 1 : index;
+    }
+
     /**
      * @param buckets list of buckets from which to return the most interesting, where "interesting" is the total hotness for reads
      * @param minThreshold minimum number of sstables in a bucket to qualify as interesting
@@ -335,7 +369,7 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
             cfs.getMaximumCompactionThreshold());
     }
 
-    private static class SplittingCompactionTask extends CompactionTask
+    static class SplittingCompactionTask extends CompactionTask
     {
         public SplittingCompactionTask(ColumnFamilyStore cfs, LifecycleTransaction txn, int gcBefore)
         {
@@ -350,5 +384,12 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
         {
             return new SplittingSizeTieredCompactionWriter(cfs, directories, txn, nonExpiredSSTables);
         }
+
+        @Override
+        protected boolean supportsSubRanges()
+        {
+            // the output is split by size ratios of the whole compaction
+            return false;
+        }
     }
 }
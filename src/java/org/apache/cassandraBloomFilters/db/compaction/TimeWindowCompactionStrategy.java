@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
+import org.apache.cassandraBloomFilters.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandraBloomFilters.db.lifecycle.SSTableSet;
+import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
+import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
+import org.apache.cassandraBloomFilters.schema.CompactionParams;
+import org.apache.cassandraBloomFilters.utils.Pair;
+
+import static com.google.common.collect.Iterables.filter;
+
+/**
+ * Groups sstables into fixed, non-overlapping time windows by their maximum timestamp. The newest window, which is
+ * still being written to, is compacted with size tiering; once a window is closed, its sstables are compacted into
+ * a single sstable which is then left alone until all of its data has expired, at which point it is dropped as a whole.
+ */
+public class TimeWindowCompactionStrategy extends AbstractCompactionStrategy
+{
+    private static final Logger logger = LoggerFactory.getLogger(TimeWindowCompactionStrategy.class);
+
+    private final TimeWindowCompactionStrategyOptions options;
+    protected volatile int estimatedRemainingTasks;
+    private final Set<SSTableReader> sstables = new HashSet<>();
+    private long lastExpiredCheck;
+    private final SizeTieredCompactionStrategyOptions stcsOptions;
+
+    public TimeWindowCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
+    {
+        super(cfs, options);
+        this.estimatedRemainingTasks = 0;
+        this.options = new TimeWindowCompactionStrategyOptions(options);
+        if (!options.containsKey(AbstractCompactionStrategy.TOMBSTONE_COMPACTION_INTERVAL_OPTION) && !options.containsKey(AbstractCompactionStrategy.TOMBSTONE_THRESHOLD_OPTION))
+        {
+            disableTombstoneCompactions = true;
+            logger.trace("Disabling tombstone compactions for TWCS");
+        }
+        else
+            logger.trace("Enabling tombstone compactions for TWCS");
+
+        this.stcsOptions = new SizeTieredCompactionStrategyOptions(options);
+    }
+
+    @Override
+    @SuppressWarnings("resource")
+    public AbstractCompactionTask getNextBackgroundTask(int gcBefore)
+    {
+        while (true)
+        {
+            List<SSTableReader> latestBucket = getNextBackgroundSSTables(gcBefore);
+
+            if (latestBucket.isEmpty())
+                return null;
+
+            LifecycleTransaction modifier = cfs.getTracker().tryModify(latestBucket, OperationType.COMPACTION);
+            if (modifier != null)
+                return new CompactionTask(cfs, modifier, gcBefore);
+        }
+    }
+
+    private synchronized List<SSTableReader> getNextBackgroundSSTables(final int gcBefore)
+    {
+        if (sstables.isEmpty())
+            return Collections.emptyList();
+
+        Set<SSTableReader> uncompacting = ImmutableSet.copyOf(filter(cfs.getUncompactingSSTables(), sstables::contains));
+
+        Set<SSTableReader> expired = Collections.emptySet();
+        // we only check for expired sstables every 10 minutes (by default) due to it being an expensive operation
+        if (System.currentTimeMillis() - lastExpiredCheck > options.expiredSSTableCheckFrequency)
+        {
+            // Find fully expired SSTables. Those will be included no matter what; the compaction task drops them
+            // without rewriting, as CompactionController.getFullyExpiredSSTables() leaves them out of the merge.
+            expired = CompactionController.getFullyExpiredSSTables(cfs, uncompacting, cfs.getOverlappingSSTables(SSTableSet.CANONICAL, uncompacting), gcBefore);
+            lastExpiredCheck = System.currentTimeMillis();
+        }
+        Set<SSTableReader> candidates = Sets.newHashSet(filterSuspectSSTables(uncompacting));
+
+        List<SSTableReader> compactionCandidates = new ArrayList<>(getNextNonExpiredSSTables(Sets.difference(candidates, expired), gcBefore));
+        if (!expired.isEmpty())
+        {
+            logger.trace("Including expired sstables: {}", expired);
+            compactionCandidates.addAll(expired);
+        }
+        return compactionCandidates;
+    }
+
+    private List<SSTableReader> getNextNonExpiredSSTables(Iterable<SSTableReader> nonExpiringSSTables, final int gcBefore)
+    {
+        List<SSTableReader> mostInteresting = getCompactionCandidates(nonExpiringSSTables);
+        if (!mostInteresting.isEmpty())
+            return mostInteresting;
+
+        // if there is no sstable to compact in standard way, try compacting single sstable whose droppable tombstone
+        // ratio is greater than threshold.
+        List<SSTableReader> sstablesWithTombstones = Lists.newArrayList();
+        for (SSTableReader sstable : nonExpiringSSTables)
+        {
+            if (worthDroppingTombstones(sstable, gcBefore))
+                sstablesWithTombstones.add(sstable);
+        }
+        if (sstablesWithTombstones.isEmpty())
+            return Collections.emptyList();
+
+        return Collections.singletonList(Collections.min(sstablesWithTombstones, new SSTableReader.SizeComparator()));
+    }
+
+    private List<SSTableReader> getCompactionCandidates(Iterable<SSTableReader> candidateSSTables)
+    {
+        if (Iterables.isEmpty(candidateSSTables))
+            return Collections.emptyList();
+
+        Pair<NavigableMap<Long, List<SSTableReader>>, Long> buckets = getBuckets(candidateSSTables, options.windowUnit, options.windowSize, options.timestampResolution);
+        logger.debug("Compaction buckets are {}", buckets.left);
+        updateEstimatedCompactionsByTasks(buckets.left, buckets.right);
+        return newestBucket(buckets.left,
+                            cfs.getMinimumCompactionThreshold(),
+                            cfs.getMaximumCompactionThreshold(),
+                            buckets.right,
+                            stcsOptions);
+    }
+
+    /**
+     * Finds the lower bound of the window a timestamp falls in. Windows are aligned to the epoch.
+     * @param windowUnit the unit of the window size
+     * @param windowSize the number of windowUnits in a window
+     * @param timestampInMillis the timestamp, in milliseconds
+     * @return the start of the window, in milliseconds
+     */
+    @VisibleForTesting
+    static long getWindowLowerBound(TimeUnit windowUnit, int windowSize, long timestampInMillis)
+    {
+        long windowMillis = windowUnit.toMillis(windowSize);
+        return timestampInMillis - Math.floorMod(timestampInMillis, windowMillis);
+    }
+
+    /**
+     * Groups sstables into time windows by their max timestamp, which is the window their newest data falls in.
+     * @param files the sstables to group
+     * @param windowUnit the unit of the window size
+     * @param windowSize the number of windowUnits in a window
+     * @param timestampResolution the unit of the timestamps written by clients
+     * @return the buckets, keyed by the start of their window in milliseconds and ordered from newest to oldest,
+     *         and the start of the newest window
+     */
+    @VisibleForTesting
+    static Pair<NavigableMap<Long, List<SSTableReader>>, Long> getBuckets(Iterable<SSTableReader> files, TimeUnit windowUnit, int windowSize, TimeUnit timestampResolution)
+    {
+        NavigableMap<Long, List<SSTableReader>> buckets = new TreeMap<>(Collections.reverseOrder());
+        long maxWindow = Long.MIN_VALUE;
+        for (SSTableReader sstable : files)
+        {
+            long maxTimestamp = TimeUnit.MILLISECONDS.convert(sstable.getMaxTimestamp(), timestampResolution);
+            long window = getWindowLowerBound(windowUnit, windowSize, maxTimestamp);
+            List<SSTableReader> bucket = buckets.get(window);
+            if (bucket == null)
+            {
+                bucket = new ArrayList<>();
+                buckets.put(window, bucket);
+            }
+            bucket.add(sstable);
+            maxWindow = Math.max(maxWindow, window);
+        }
+        return Pair.create(buckets, maxWindow);
+    }
+
+    private void updateEstimatedCompactionsByTasks(NavigableMap<Long, List<SSTableReader>> buckets, long currentWindow)
+    {
+        int n = 0;
+        for (Map.Entry<Long, List<SSTableReader>> bucket : buckets.entrySet())
+        {
+            if (bucket.getKey() == currentWindow)
+            {
+                for (List<SSTableReader> stcsBucket : getSTCSBuckets(bucket.getValue(), stcsOptions))
+                    if (stcsBucket.size() >= cfs.getMinimumCompactionThreshold())
+                        n += Math.ceil((double) stcsBucket.size() / cfs.getMaximumCompactionThreshold());
+            }
+            else if (bucket.getValue().size() >= 2)
+            {
+                n += Math.ceil((double) bucket.getValue().size() / cfs.getMaximumCompactionThreshold());
+            }
+        }
+        estimatedRemainingTasks = n;
+    }
+
+    /**
+     * @param buckets the buckets, ordered from newest to oldest, from which to return the newest one needing compaction
+     * @param minThreshold minimum number of sstables in the current window for it to be compacted
+     * @param maxThreshold maximum number of sstables to compact at once
+     * @param currentWindow the start of the newest window, which is the one still being written to
+     * @return a bucket (list) of sstables to compact
+     */
+    @VisibleForTesting
+    static List<SSTableReader> newestBucket(NavigableMap<Long, List<SSTableReader>> buckets, int minThreshold, int maxThreshold, long currentWindow, SizeTieredCompactionStrategyOptions stcsOptions)
+    {
+        for (Map.Entry<Long, List<SSTableReader>> bucket : buckets.entrySet())
+        {
+            List<SSTableReader> sstables = bucket.getValue();
+            if (bucket.getKey() == currentWindow)
+            {
+                // flushes of the current window are size tiered, as in STCS
+                if (sstables.size() >= minThreshold)
+                {
+                    List<SSTableReader> stcsSSTables = SizeTieredCompactionStrategy.mostInterestingBucket(getSTCSBuckets(sstables, stcsOptions), minThreshold, maxThreshold);
+                    if (!stcsSSTables.isEmpty())
+                        return stcsSSTables;
+                }
+            }
+            else if (sstables.size() >= 2)
+            {
+                // a closed window is compacted down to a single sstable
+                return trimToThreshold(sstables, maxThreshold);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the maxThreshold smallest sstables of the bucket, so that the largest one is left to a later round
+     */
+    @VisibleForTesting
+    static List<SSTableReader> trimToThreshold(List<SSTableReader> bucket, int maxThreshold)
+    {
+        List<SSTableReader> ssTableReaders = new ArrayList<>(bucket);
+        Collections.sort(ssTableReaders, new SSTableReader.SizeComparator());
+        return ImmutableList.copyOf(Iterables.limit(ssTableReaders, maxThreshold));
+    }
+
+    private static List<List<SSTableReader>> getSTCSBuckets(Collection<SSTableReader> sstables, SizeTieredCompactionStrategyOptions stcsOptions)
+    {
+        List<Pair<SSTableReader,Long>> pairs = SizeTieredCompactionStrategy.createSSTableAndLengthPairs(AbstractCompactionStrategy.filterSuspectSSTables(sstables));
+        return SizeTieredCompactionStrategy.getBuckets(pairs,
+                                                       stcsOptions.bucketHigh,
+                                                       stcsOptions.bucketLow,
+                                                       stcsOptions.minSSTableSize);
+    }
+
+    @Override
+    public void addSSTable(SSTableReader sstable)
+    {
+        sstables.add(sstable);
+    }
+
+    @Override
+    public void removeSSTable(SSTableReader sstable)
+    {
+        sstables.remove(sstable);
+    }
+
+    /**
+     * Compacts each window separately, so that a major compaction leaves one sstable per window rather than one
+     * sstable mixing all of them, which could never be dropped before its newest data expires. Windows that already
+     * have a single sstable are left alone, and with splitOutput the output of each window is split as size tiered
+     * compaction does.
+     */
+    @Override
+    @SuppressWarnings("resource")
+    public synchronized Collection<AbstractCompactionTask> getMaximalTask(int gcBefore, boolean splitOutput)
+    {
+        Iterable<SSTableReader> filteredSSTables = filterSuspectSSTables(sstables);
+        if (Iterables.isEmpty(filteredSSTables))
+            return null;
+
+        List<AbstractCompactionTask> tasks = new ArrayList<>();
+        NavigableMap<Long, List<SSTableReader>> buckets = getBuckets(filteredSSTables, options.windowUnit, options.windowSize, options.timestampResolution).left;
+        for (List<SSTableReader> bucket : buckets.values())
+        {
+            if (bucket.size() < 2)
+                continue;
+
+            LifecycleTransaction txn = cfs.getTracker().tryModify(bucket, OperationType.COMPACTION);
+            if (txn != null)
+                tasks.add(splitOutput ? new SizeTieredCompactionStrategy.SplittingCompactionTask(cfs, txn, gcBefore)
+                                      : new CompactionTask(cfs, txn, gcBefore));
+        }
+        return tasks.isEmpty() ? null : tasks;
+    }
+
+    @Override
+    @SuppressWarnings("resource")
+    public synchronized AbstractCompactionTask getUserDefinedTask(Collection<SSTableReader> sstables, int gcBefore)
+    {
+        assert !sstables.isEmpty(); // checked for by CM.submitUserDefined
+
+        LifecycleTransaction modifier = cfs.getTracker().tryModify(sstables, OperationType.COMPACTION);
+        if (modifier == null)
+        {
+            logger.trace("Unable to mark {} for compaction; probably a background compaction got to it first.  You can disable background compactions temporarily if this is a problem", sstables);
+            return null;
+        }
+
+        return new CompactionTask(cfs, modifier, gcBefore).setUserDefined(true);
+    }
+
+    public int getEstimatedRemainingTasks()
+    {
+        return estimatedRemainingTasks;
+    }
+
+    public long getMaxSSTableBytes()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * TWCS should not group sstables for anticompaction - this can mix new and old data
+     */
+    @Override
+    public Collection<Collection<SSTableReader>> groupSSTablesForAntiCompaction(Collection<SSTableReader> sstablesToGroup)
+    {
+        Collection<Collection<SSTableReader>> groups = new ArrayList<>();
+        for (SSTableReader sstable : sstablesToGroup)
+        {
+            groups.add(Collections.singleton(sstable));
+        }
+        return groups;
+    }
+
+    public static Map<String, String> validateOptions(Map<String, String> options) throws ConfigurationException
+    {
+        rejectTokenRangeSplits(options, TimeWindowCompactionStrategy.class);
+        Map<String, String> uncheckedOptions = AbstractCompactionStrategy.validateOptions(options);
+        uncheckedOptions = TimeWindowCompactionStrategyOptions.validateOptions(options, uncheckedOptions);
+
+        uncheckedOptions.remove(CompactionParams.Option.MIN_THRESHOLD.toString());
+        uncheckedOptions.remove(CompactionParams.Option.MAX_THRESHOLD.toString());
+
+        uncheckedOptions = SizeTieredCompactionStrategyOptions.validateOptions(options, uncheckedOptions);
+
+        return uncheckedOptions;
+    }
+
+    public String toString()
+    {
+        return String.format("TimeWindowCompactionStrategy[%s/%s]",
+                cfs.getMinimumCompactionThreshold(),
+                cfs.getMaximumCompactionThreshold());
+    }
+}
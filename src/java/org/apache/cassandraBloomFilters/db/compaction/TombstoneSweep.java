@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.util.*;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
+import org.apache.cassandraBloomFilters.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandraBloomFilters.db.lifecycle.SSTableSet;
+import org.apache.cassandraBloomFilters.io.sstable.Component;
+import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
+
+/**
+ * Tombstone sweeps rewrite sstables only to purge their droppable tombstones, independently of when the compaction
+ * strategy would next pick them.
+ *
+ * A sweep rewrites the sstable with the most estimated droppable tombstone bytes, together with the sstables
+ * overlapping it (found through the interval tree of the live sstables) if there are only a few of them, as the
+ * tombstones of an sstable can only be purged if the data they shadow in overlapping sstables is compacted with
+ * them. Sstables with too many overlaps, or overlaps that cannot be compacted together (different levels or
+ * repaired status), are left to the compaction strategy.
+ *
+ * Sweeps are submitted every tombstone_sweep_interval_in_minutes, one per table at most, and only for tables without
+ * pending compactions. They read under their own {@link OperationType#TOMBSTONE_SWEEP} I/O budget at background
+ * priority, and honour the tombstone_threshold and tombstone_compaction_interval options of the table.
+ */
+public final class TombstoneSweep
+{
+    private static final Logger logger = LoggerFactory.getLogger(TombstoneSweep.class);
+
+    /** The largest group of overlapping sstables rewritten together. */
+    static final int MAX_GROUP_SIZE = Integer.getInteger("cassandra.tombstone_sweep_max_group_size", 4);
+
+    private TombstoneSweep()
+    {
+    }
+
+    /**
+     * @return a task sweeping the best candidate of the given table, with its sstables marked compacting, or null
+     * if no sstable is worth sweeping
+     */
+    public static AbstractCompactionTask getNextTask(ColumnFamilyStore cfs, int gcBefore)
+    {
+        CompactionStrategyManager strategyManager = cfs.getCompactionStrategyManager();
+        for (Candidate candidate : getCandidates(cfs, gcBefore))
+        {
+            LifecycleTransaction txn = cfs.getTracker().tryModify(candidate.sstables, OperationType.TOMBSTONE_SWEEP);
+            if (txn != null)
+            {
+                logger.debug("Sweeping ~{} bytes of droppable tombstones from {}", candidate.droppableBytes, candidate.sstables);
+                return strategyManager.getCompactionTask(txn, gcBefore, strategyManager.getMaxSSTableBytes())
+                                      .setCompactionType(OperationType.TOMBSTONE_SWEEP);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the groups of sstables worth sweeping, most droppable bytes first
+     */
+    @VisibleForTesting
+    static List<Candidate> getCandidates(ColumnFamilyStore cfs, int gcBefore)
+    {
+        CompactionStrategyManager strategyManager = cfs.getCompactionStrategyManager();
+        Set<SSTableReader> compacting = cfs.getTracker().getCompacting();
+        List<Candidate> candidates = new ArrayList<>();
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+        {
+            if (compacting.contains(sstable) || sstable.isMarkedSuspect())
+                continue;
+
+            AbstractCompactionStrategy strategy = strategyManager.getCompactionStrategyFor(sstable);
+            if (strategy.disableTombstoneCompactions
+                || System.currentTimeMillis() < sstable.getCreationTimeFor(Component.DATA) + strategy.tombstoneCompactionInterval * 1000
+                || sstable.getEstimatedDroppableTombstoneRatio(gcBefore) <= strategy.tombstoneThreshold)
+                continue;
+
+            Set<SSTableReader> group = getGroup(cfs, sstable, strategy, compacting, gcBefore);
+            if (group == null)
+                continue;
+
+            Candidate candidate = new Candidate(group, gcBefore);
+            if (candidate.droppableBytes > candidate.totalBytes * strategy.tombstoneThreshold)
+                candidates.add(candidate);
+        }
+
+        Collections.sort(candidates, (c1, c2) -> Long.compare(c2.droppableBytes, c1.droppableBytes));
+        return candidates;
+    }
+
+    /**
+     * @return the given sstable with the sstables it needs to be compacted with for its tombstones to be purged,
+     * or null if there are too many of them or they cannot be compacted together
+     */
+    private static Set<SSTableReader> getGroup(ColumnFamilyStore cfs, SSTableReader sstable, AbstractCompactionStrategy strategy,
+                                               Set<SSTableReader> compacting, int gcBefore)
+    {
+        Set<SSTableReader> group = new HashSet<>();
+        group.add(sstable);
+        if (strategy.uncheckedTombstoneCompaction)
+            return group;
+
+        Collection<SSTableReader> overlaps = cfs.getOverlappingSSTables(SSTableSet.CANONICAL, group);
+        if (overlaps.isEmpty() || !CompactionController.getFullyExpiredSSTables(cfs, group, overlaps, gcBefore).isEmpty())
+            return group;
+
+        if (overlaps.size() + 1 > MAX_GROUP_SIZE)
+            return null;
+
+        for (SSTableReader overlap : overlaps)
+        {
+            if (compacting.contains(overlap)
+                || overlap.isMarkedSuspect()
+                || overlap.isRepaired() != sstable.isRepaired()
+                || overlap.getSSTableLevel() != sstable.getSSTableLevel())
+                return null;
+            group.add(overlap);
+        }
+        return group;
+    }
+
+    /**
+     * Records the tombstones purged and bytes reclaimed by a sweep, from the estimated droppable tombstones of its
+     * inputs and outputs.
+     */
+    static void recordSweep(ColumnFamilyStore cfs, Collection<SSTableReader> inputs, Collection<SSTableReader> outputs, int gcBefore)
+    {
+        double purged = 0;
+        for (SSTableReader sstable : inputs)
+            purged += sstable.getDroppableTombstonesBefore(gcBefore);
+        for (SSTableReader sstable : outputs)
+            purged -= sstable.getDroppableTombstonesBefore(gcBefore);
+
+        cfs.metric.tombstoneSweepTombstonesPurged.inc(Math.max(0, Math.round(purged)));
+        cfs.metric.tombstoneSweepBytesReclaimed.inc(Math.max(0, SSTableReader.getTotalBytes(inputs) - SSTableReader.getTotalBytes(outputs)));
+    }
+
+    @VisibleForTesting
+    static final class Candidate
+    {
+        final Set<SSTableReader> sstables;
+        final long droppableBytes;
+        final long totalBytes;
+
+        Candidate(Set<SSTableReader> sstables, int gcBefore)
+        {
+            this.sstables = sstables;
+            long droppable = 0;
+            long total = 0;
+            for (SSTableReader sstable : sstables)
+            {
+                droppable += (long) (sstable.getEstimatedDroppableTombstoneRatio(gcBefore) * sstable.onDiskLength());
+                total += sstable.onDiskLength();
+            }
+            this.droppableBytes = droppable;
+            this.totalBytes = total;
+        }
+    }
+}
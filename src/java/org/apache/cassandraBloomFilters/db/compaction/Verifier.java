@@ -78,7 +78,7 @@ public class Verifier implements Closeable
 
         this.dataFile = isOffline
                         ? sstable.openDataReader()
-                        : sstable.openDataReader(CompactionManager.instance.getRateLimiter());
+                        : sstable.openDataReader(CompactionManager.instance.getRateLimiter(sstable));
         this.indexFile = RandomAccessReader.open(new File(sstable.descriptor.filenameFor(Component.PRIMARY_INDEX)));
         this.verifyInfo = new VerifyInfo(dataFile, sstable);
     }
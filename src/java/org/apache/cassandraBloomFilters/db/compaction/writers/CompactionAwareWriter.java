@@ -51,7 +51,7 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
     protected final ColumnFamilyStore cfs;
     protected final Directories directories;
     protected final Set<SSTableReader> nonExpiredSSTables;
-    protected final long estimatedTotalKeys;
+    protected long estimatedTotalKeys;
     protected final long maxAge;
     protected final long minRepairedAt;
 
@@ -59,7 +59,11 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
     protected final LifecycleTransaction txn;
     private final Directories.DataDirectory[] locations;
     private final List<PartitionPosition> diskBoundaries;
+    // upper bounds of the token ranges written to separate sstables, the disk boundaries unless output is split further
+    private final List<PartitionPosition> outputBoundaries;
+    protected final int tokenRangeSplits;
     private int locationIndex;
+    private int outputIndex;
 
     @Deprecated
     public CompactionAwareWriter(ColumnFamilyStore cfs,
@@ -88,8 +92,11 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
         sstableWriter = SSTableRewriter.constructKeepingOriginals(txn, keepOriginals, maxAge, txn.isOffline());
         minRepairedAt = CompactionTask.getMinRepairedAt(nonExpiredSSTables);
         locations = cfs.getDirectories().getWriteableLocations();
-        diskBoundaries = StorageService.getDiskBoundaries(cfs);
+        diskBoundaries = StorageService.getDiskBoundaries(cfs, locations);
+        tokenRangeSplits = diskBoundaries == null ? 1 : cfs.getCompactionStrategyManager().tokenRangeSplits();
+        outputBoundaries = tokenRangeSplits > 1 ? StorageService.getTokenRangeBoundaries(cfs, locations, tokenRangeSplits) : diskBoundaries;
         locationIndex = -1;
+        outputIndex = -1;
     }
 
     @Override
@@ -121,6 +128,29 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
         return sstableWriter.finished();
     }
 
+    /**
+     * the sstables written, once this writer has been prepared
+     */
+    public Collection<SSTableReader> finished()
+    {
+        return sstableWriter.finished();
+    }
+
+    /**
+     * Makes this writer write one of subRanges disjoint token ranges of a compaction whose ranges are written
+     * concurrently by separate writers. Preparing and committing this writer then only finishes its own sstables;
+     * the caller is in charge of the lifecycle transaction, see SSTableRewriter#shareTransaction().
+     *
+     * Must be called before the first append.
+     */
+    public CompactionAwareWriter shareTransaction(int subRanges)
+    {
+        // size the bloom filters for this writer's share of the keys only
+        estimatedTotalKeys = Math.max(1, estimatedTotalKeys / subRanges);
+        sstableWriter.shareTransaction();
+        return this;
+    }
+
     /**
      * estimated number of keys we should write
      */
@@ -166,12 +196,20 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
             return;
         }
 
-        if (locationIndex > -1 && key.compareTo(diskBoundaries.get(locationIndex)) < 0)
+        if (outputIndex > -1 && key.compareTo(outputBoundaries.get(outputIndex)) < 0)
             return;
 
+        while (outputIndex == -1 || key.compareTo(outputBoundaries.get(outputIndex)) > 0)
+            outputIndex++;
         int prevIdx = locationIndex;
         while (locationIndex == -1 || key.compareTo(diskBoundaries.get(locationIndex)) > 0)
             locationIndex++;
+        if (prevIdx >= 0 && prevIdx == locationIndex)
+        {
+            logger.trace("Starting a new sstable in {} for keys up to {}", locations[locationIndex], outputBoundaries.get(outputIndex));
+            switchTokenRange(locations[locationIndex]);
+            return;
+        }
         if (prevIdx >= 0)
             logger.debug("Switching write location from {} to {}", locations[prevIdx], locations[locationIndex]);
         switchCompactionLocation(locations[locationIndex]);
@@ -185,6 +223,26 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
      */
     protected abstract void switchCompactionLocation(Directories.DataDirectory directory);
 
+    /**
+     * Called, when the token_range_splits compaction option is set, whenever we start writing another token range of
+     * the directory we are already writing to. Implementations keeping per directory state should override this
+     * to finish the current sstable writer without resetting it.
+     * @param directory the directory we are already writing to
+     */
+    protected void switchTokenRange(Directories.DataDirectory directory)
+    {
+        switchCompactionLocation(directory);
+    }
+
+    /**
+     * @return the number of keys we expect to write to each token range, to size the bloom filters of sstables
+     * holding a single token range
+     */
+    protected long estimatedKeysPerTokenRange()
+    {
+        return Math.max(1, estimatedTotalKeys / tokenRangeSplits);
+    }
+
     /**
      * The directories we can write to
      */
@@ -34,7 +34,7 @@ import org.apache.cassandraBloomFilters.io.sstable.format.SSTableWriter;
 import org.apache.cassandraBloomFilters.io.sstable.metadata.MetadataCollector;
 
 /**
- * The default compaction writer - creates one output file in L0
+ * The default compaction writer - creates one output file in L0, or one per token range if the output is split
  */
 public class DefaultCompactionWriter extends CompactionAwareWriter
 {
@@ -70,7 +70,7 @@ public class DefaultCompactionWriter extends CompactionAwareWriter
     {
         @SuppressWarnings("resource")
         SSTableWriter writer = SSTableWriter.create(Descriptor.fromFilename(cfs.getSSTablePath(getDirectories().getLocationForDisk(directory))),
-                                                    estimatedTotalKeys,
+                                                    estimatedKeysPerTokenRange(),
                                                     minRepairedAt,
                                                     cfs.metadata,
                                                     new MetadataCollector(txn.originals(), cfs.metadata.comparator, sstableLevel),
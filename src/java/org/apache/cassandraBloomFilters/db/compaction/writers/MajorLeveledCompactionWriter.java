@@ -101,19 +101,29 @@ public class MajorLeveledCompactionWriter extends CompactionAwareWriter
 
     @Override
     public void switchCompactionLocation(Directories.DataDirectory location)
+    {
+        switchWriter(location);
+        partitionsWritten = 0;
+        sstablesWritten = 0;
+    }
+
+    @Override
+    protected void switchTokenRange(Directories.DataDirectory location)
+    {
+        switchWriter(location);
+    }
+
+    private void switchWriter(Directories.DataDirectory location)
     {
         this.sstableDirectory = location;
         averageEstimatedKeysPerSSTable = Math.round(((double) averageEstimatedKeysPerSSTable * sstablesWritten + partitionsWritten) / (sstablesWritten + 1));
         sstableWriter.switchWriter(SSTableWriter.create(Descriptor.fromFilename(cfs.getSSTablePath(getDirectories().getLocationForDisk(sstableDirectory))),
-                keysPerSSTable,
+                Math.min(keysPerSSTable, estimatedKeysPerTokenRange()),
                 minRepairedAt,
                 cfs.metadata,
                 new MetadataCollector(txn.originals(), cfs.metadata.comparator, currentLevel),
                 SerializationHeader.make(cfs.metadata, txn.originals()),
                 cfs.indexManager.listIndexes(),
                 txn));
-        partitionsWritten = 0;
-        sstablesWritten = 0;
-
     }
 }
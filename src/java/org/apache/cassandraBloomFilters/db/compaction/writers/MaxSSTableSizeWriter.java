@@ -109,7 +109,7 @@ public class MaxSSTableSizeWriter extends CompactionAwareWriter
         sstableDirectory = location;
         @SuppressWarnings("resource")
         SSTableWriter writer = SSTableWriter.create(Descriptor.fromFilename(cfs.getSSTablePath(getDirectories().getLocationForDisk(sstableDirectory))),
-                                                    estimatedTotalKeys / estimatedSSTables,
+                                                    Math.min(estimatedTotalKeys / estimatedSSTables, estimatedKeysPerTokenRange()),
                                                     minRepairedAt,
                                                     cfs.metadata,
                                                     new MetadataCollector(allSSTables, cfs.metadata.comparator, level),
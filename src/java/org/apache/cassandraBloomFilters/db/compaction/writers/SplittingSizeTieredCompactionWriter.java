@@ -103,7 +103,7 @@ public class SplittingSizeTieredCompactionWriter extends CompactionAwareWriter
     public void switchCompactionLocation(Directories.DataDirectory location)
     {
         this.location = location;
-        long currentPartitionsToWrite = Math.round(ratios[currentRatioIndex] * estimatedTotalKeys);
+        long currentPartitionsToWrite = Math.min(Math.round(ratios[currentRatioIndex] * estimatedTotalKeys), estimatedKeysPerTokenRange());
         @SuppressWarnings("resource")
         SSTableWriter writer = SSTableWriter.create(Descriptor.fromFilename(cfs.getSSTablePath(getDirectories().getLocationForDisk(location))),
                                                     currentPartitionsToWrite,
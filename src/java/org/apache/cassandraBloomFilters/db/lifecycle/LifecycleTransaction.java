@@ -512,12 +512,13 @@ public class LifecycleTransaction extends Transactional.AbstractTransactional
         return getFirst(originals, null);
     }
 
-    public void trackNew(SSTable table)
+    // synchronized, as the writers of a sub-range parallel compaction create their sstables concurrently
+    public synchronized void trackNew(SSTable table)
     {
         log.trackNew(table);
     }
 
-    public void untrackNew(SSTable table)
+    public synchronized void untrackNew(SSTable table)
     {
         log.untrackNew(table);
     }
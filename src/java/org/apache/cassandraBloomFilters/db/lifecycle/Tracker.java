@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.db.compaction.OperationType;
 import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
+import org.apache.cassandraBloomFilters.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandraBloomFilters.io.util.FileUtils;
 import org.apache.cassandraBloomFilters.metrics.StorageMetrics;
 import org.apache.cassandraBloomFilters.notifications.*;
@@ -438,6 +439,13 @@ public class Tracker
             subscriber.handleNotification(notification, this);
     }
 
+    public void notifySSTableMetadataChanged(SSTableReader levelChanged, StatsMetadata oldMetadata)
+    {
+        INotification notification = new SSTableMetadataChanged(levelChanged, oldMetadata);
+        for (INotificationConsumer subscriber : subscribers)
+            subscriber.handleNotification(notification, this);
+    }
+
     public void notifyDeleting(SSTableReader deleting)
     {
         INotification notification = new SSTableDeletingNotification(deleting);
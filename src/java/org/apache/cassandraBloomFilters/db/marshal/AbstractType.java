@@ -364,6 +364,15 @@ public abstract class AbstractType<T> implements Comparator<ByteBuffer>
         return -1;
     }
 
+    /**
+     * The length of values for this type if all values are of fixed length, -1 otherwise. This is what decides whether
+     * {@link #writeValue} prefixes values with their length, for code copying serialized values as is.
+     */
+    public final int fixedValueLength()
+    {
+        return valueLengthIfFixed();
+    }
+
     // This assumes that no empty values are passed
     public void writeValue(ByteBuffer value, DataOutputPlus out) throws IOException
     {
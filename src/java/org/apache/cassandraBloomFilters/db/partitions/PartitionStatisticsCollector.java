@@ -19,12 +19,22 @@ package org.apache.cassandraBloomFilters.db.partitions;
 
 import org.apache.cassandraBloomFilters.db.*;
 import org.apache.cassandraBloomFilters.db.rows.Cell;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
 
 public interface PartitionStatisticsCollector
 {
     public void update(LivenessInfo info);
     public void update(DeletionTime deletionTime);
     public void update(Cell cell);
+
+    /**
+     * Updates the statistics for a live and non-expiring cell or primary key liveness info of the provided timestamp,
+     * for data copied without being materialized (see {@link org.apache.cassandraBloomFilters.db.rows.SerializedRowCopier}).
+     */
+    public default void updateLive(long timestamp)
+    {
+        update(LivenessInfo.create(timestamp, FBUtilities.nowInSeconds()));
+    }
     public void updateColumnSetPerRow(long columnSetInRow);
     public void updateHasLegacyCounterShards(boolean hasLegacyCounterShards);
 }
@@ -48,6 +48,17 @@ public abstract class UnfilteredPartitionIterators
     {
         public UnfilteredRowIterators.MergeListener getRowMergeListener(DecoratedKey partitionKey, List<UnfilteredRowIterator> versions);
         public void close();
+
+        /**
+         * Called for a partition present in only one of the merged iterators, before {@link #getRowMergeListener}, to
+         * allow using that version as is rather than merging it (which, with a single version, only costs).
+         *
+         * @return the partition to use for the provided single version, or {@code null} to merge it as usual.
+         */
+        public default UnfilteredRowIterator getUnmerged(DecoratedKey partitionKey, UnfilteredRowIterator version)
+        {
+            return null;
+        }
     }
 
     @SuppressWarnings("resource") // The created resources are returned right away
@@ -102,11 +113,15 @@ public abstract class UnfilteredPartitionIterators
 
             private DecoratedKey partitionKey;
             private boolean isReverseOrder;
+            private int versions;
+            private UnfilteredRowIterator lastVersion;
 
             public void reduce(int idx, UnfilteredRowIterator current)
             {
                 partitionKey = current.partitionKey();
                 isReverseOrder = current.isReverseOrder();
+                ++versions;
+                lastVersion = current;
 
                 // Note that because the MergeListener cares about it, we want to preserve the index of the iterator.
                 // Non-present iterator will thus be set to empty in getReduced.
@@ -115,6 +130,13 @@ public abstract class UnfilteredPartitionIterators
 
             protected UnfilteredRowIterator getReduced()
             {
+                if (versions == 1)
+                {
+                    UnfilteredRowIterator unmerged = listener.getUnmerged(partitionKey, lastVersion);
+                    if (unmerged != null)
+                        return unmerged;
+                }
+
                 UnfilteredRowIterators.MergeListener rowListener = listener.getRowMergeListener(partitionKey, toMerge);
 
                 // Replace nulls by empty iterators
@@ -127,6 +149,8 @@ public abstract class UnfilteredPartitionIterators
 
             protected void onKeyChange()
             {
+                versions = 0;
+                lastVersion = null;
                 toMerge.clear();
                 for (int i = 0; i < iterators.size(); i++)
                     toMerge.add(null);
@@ -171,6 +171,11 @@ public class EncodingStats
             }
         }
 
+        public void updateLive(long timestamp)
+        {
+            updateTimestamp(timestamp);
+        }
+
         public void update(DeletionTime deletionTime)
         {
             if (deletionTime.isLive())
@@ -53,6 +53,15 @@ public abstract class LazilyInitializedUnfilteredRowIterator extends AbstractIte
         return iterator != null;
     }
 
+    /**
+     * Returns the iterator this lazily initializes to, initializing it if necessary.
+     */
+    public UnfilteredRowIterator initializedIterator()
+    {
+        maybeInit();
+        return iterator;
+    }
+
     public CFMetaData metadata()
     {
         maybeInit();
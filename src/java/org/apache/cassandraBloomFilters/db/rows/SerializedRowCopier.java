@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.rows;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandraBloomFilters.config.ColumnDefinition;
+import org.apache.cassandraBloomFilters.db.*;
+import org.apache.cassandraBloomFilters.db.marshal.AbstractType;
+import org.apache.cassandraBloomFilters.db.partitions.PartitionStatisticsCollector;
+import org.apache.cassandraBloomFilters.io.util.DataInputPlus;
+import org.apache.cassandraBloomFilters.io.util.DataOutputBuffer;
+import org.apache.cassandraBloomFilters.io.util.DataOutputPlus;
+
+import static org.apache.cassandraBloomFilters.db.rows.UnfilteredSerializer.*;
+
+/**
+ * Copies serialized rows from one sstable to another without materializing them as {@code Row} and {@code Cell}
+ * objects.
+ * <p>
+ * The copier is a cursor over the serialized rows of a partition: {@link #advance} reads the next row into reusable
+ * buffers, re-encoding its timestamps against the target header (the only part of the encoding that depends on the
+ * header, provided both have the same columns and types), and {@link #writeTo} writes it out with the size fields
+ * the target sstable expects. Only the clustering of the current row can be materialized, for the index blocks.
+ * <p>
+ * This only supports rows with neither deletion nor expiring data, the case where compacting a partition present in
+ * a single sstable leaves it unchanged: {@link #advance} throws if it encounters anything else, so callers must
+ * check beforehand (typically through the sstable minimum local deletion time) that no such data exists.
+ */
+public class SerializedRowCopier
+{
+    private final SerializationHeader target;
+    private final int version;
+    private final List<AbstractType<?>> clusteringTypes;
+
+    private final Map<SerializationHeader, Boolean> copyable = new IdentityHashMap<>();
+    private final ColumnLayout statics;
+    private final ColumnLayout regulars;
+
+    private final DataOutputBuffer clustering = new DataOutputBuffer();
+    private final DataOutputBuffer body = new DataOutputBuffer();
+    private byte[] scratch = new byte[128];
+
+    private DataInputPlus in;
+    private SerializationHeader source;
+    private PartitionStatisticsCollector stats;
+
+    private int flags;
+    private int extendedFlags;
+    private long rowTimestamp;
+    private int cellCount;
+
+    public SerializedRowCopier(SerializationHeader target, int version)
+    {
+        assert target.isForSSTable();
+        this.target = target;
+        this.version = version;
+        this.clusteringTypes = target.clusteringTypes();
+        this.statics = new ColumnLayout(target, target.columns(true));
+        this.regulars = new ColumnLayout(target, target.columns(false));
+    }
+
+    /**
+     * Whether rows serialized with the provided header can be copied with this copier, that is if it has the same
+     * clustering and column types than the target header. Note that this doesn't check the rows themselves.
+     */
+    public boolean canCopyFrom(SerializationHeader source)
+    {
+        Boolean result = copyable.get(source);
+        if (result == null)
+        {
+            result = source.isForSSTable()
+                     && statics.columns.size() < 64
+                     && regulars.columns.size() < 64
+                     && source.clusteringTypes().equals(clusteringTypes)
+                     && statics.hasSameTypes(source, source.columns(true))
+                     && regulars.hasSameTypes(source, source.columns(false));
+            copyable.put(source, result);
+        }
+        return result;
+    }
+
+    /**
+     * Starts copying a partition.
+     *
+     * @param in the input positioned on the first serialized unfiltered of the partition, that is its static row if
+     * {@code source} has static columns, its first row otherwise.
+     * @param source the header of the sstable {@code in} reads from, for which {@link #canCopyFrom} must be true.
+     * @param stats the collector to update with the statistics of the copied rows.
+     */
+    public void startPartition(DataInputPlus in, SerializationHeader source, PartitionStatisticsCollector stats)
+    {
+        assert canCopyFrom(source);
+        this.in = in;
+        this.source = source;
+        this.stats = stats;
+        this.cellCount = 0;
+        this.clustering.clear();
+    }
+
+    /**
+     * Reads the next row of the partition, which is its static row first if the source has static columns.
+     *
+     * @return whether a row was read, {@code false} if the end of the partition was reached.
+     */
+    public boolean advance() throws IOException
+    {
+        int flags = in.readUnsignedByte();
+        if (isEndOfPartition(flags))
+            return false;
+
+        int extendedFlags = readExtendedFlags(in, flags);
+        if (kind(flags) != Unfiltered.Kind.ROW || (flags & (HAS_TTL | HAS_DELETION | HAS_COMPLEX_DELETION)) != 0)
+            throw new IllegalStateException("Cannot copy unfiltered with flags " + flags + "; only rows without deletion nor expiring data can be copied");
+
+        this.flags = flags;
+        this.extendedFlags = extendedFlags;
+        boolean isStatic = UnfilteredSerializer.isStatic(extendedFlags);
+
+        clustering.clear();
+        if (!isStatic)
+            copyClustering();
+
+        // The row size and previous unfiltered size depend on the output position, they are recomputed by writeTo
+        in.readUnsignedVInt();
+        in.readUnsignedVInt();
+
+        body.clear();
+        rowTimestamp = LivenessInfo.NO_TIMESTAMP;
+        if ((flags & HAS_TIMESTAMP) != 0)
+        {
+            rowTimestamp = source.readTimestamp(in);
+            target.writeTimestamp(rowTimestamp, body);
+        }
+
+        long missing = 0;
+        if ((flags & HAS_ALL_COLUMNS) == 0)
+        {
+            missing = in.readUnsignedVInt();
+            body.writeUnsignedVInt(missing);
+        }
+
+        // An empty static row is serialized when the table has static columns, but doesn't count as a row
+        boolean isEmpty = rowTimestamp == LivenessInfo.NO_TIMESTAMP;
+        ColumnLayout layout = isStatic ? statics : regulars;
+        int columnCount = 0;
+        for (int i = 0; i < layout.types.length; i++)
+        {
+            if ((missing & (1L << i)) != 0)
+                continue;
+
+            if (layout.isComplex[i])
+            {
+                int count = (int) in.readUnsignedVInt();
+                body.writeUnsignedVInt(count);
+                for (int j = 0; j < count; j++)
+                    copyCell(layout.types[i], true);
+                if (count > 0)
+                    ++columnCount;
+                cellCount += count;
+            }
+            else
+            {
+                copyCell(layout.types[i], false);
+                ++columnCount;
+                ++cellCount;
+            }
+            isEmpty = false;
+        }
+
+        if (rowTimestamp != LivenessInfo.NO_TIMESTAMP)
+            stats.updateLive(rowTimestamp);
+        if (!isEmpty)
+            stats.updateColumnSetPerRow(columnCount);
+        return true;
+    }
+
+    /**
+     * Whether the current row is the static row.
+     */
+    public boolean isStatic()
+    {
+        return UnfilteredSerializer.isStatic(extendedFlags);
+    }
+
+    /**
+     * Materializes the clustering of the current row, or of the last row read if the end of the partition was
+     * reached.
+     */
+    public Clustering clustering()
+    {
+        return Clustering.serializer.deserialize(clustering.buffer(), version, clusteringTypes);
+    }
+
+    /**
+     * The number of cells copied so far in the current partition.
+     */
+    public int cellCount()
+    {
+        return cellCount;
+    }
+
+    /**
+     * Writes the current row.
+     *
+     * @param out the output to write to.
+     * @param previousUnfilteredSize the distance from the start of the previous unfiltered of the partition (or
+     * of the partition itself for the first one), as for {@link UnfilteredSerializer#serialize}.
+     */
+    public void writeTo(DataOutputPlus out, long previousUnfilteredSize) throws IOException
+    {
+        out.writeByte((byte) flags);
+        if (isExtended(flags))
+            out.writeByte((byte) extendedFlags);
+        out.write(clustering.getData(), 0, clustering.getLength());
+        out.writeUnsignedVInt(body.getLength() + TypeSizes.sizeofUnsignedVInt(previousUnfilteredSize));
+        out.writeUnsignedVInt(previousUnfilteredSize);
+        out.write(body.getData(), 0, body.getLength());
+    }
+
+    private void copyClustering() throws IOException
+    {
+        // See ClusteringPrefix.Serializer.serializeValuesWithoutSize: a header of 2 bits per value (null, empty)
+        // precedes each group of 32 values
+        int size = clusteringTypes.size();
+        int offset = 0;
+        while (offset < size)
+        {
+            long header = in.readUnsignedVInt();
+            clustering.writeUnsignedVInt(header);
+            int limit = Math.min(size, offset + 32);
+            while (offset < limit)
+            {
+                if ((header & (3L << (offset * 2))) == 0)
+                    copyValue(clusteringTypes.get(offset), clustering);
+                offset++;
+            }
+        }
+    }
+
+    private void copyCell(AbstractType<?> type, boolean isComplex) throws IOException
+    {
+        int flags = in.readUnsignedByte();
+        if ((flags & (Cell.Serializer.IS_DELETED_MASK | Cell.Serializer.IS_EXPIRING_MASK)) != 0)
+            throw new IllegalStateException("Cannot copy cell with flags " + flags + "; only live and non-expiring cells can be copied");
+
+        body.writeByte((byte) flags);
+        long timestamp = rowTimestamp;
+        if ((flags & Cell.Serializer.USE_ROW_TIMESTAMP_MASK) == 0)
+        {
+            timestamp = source.readTimestamp(in);
+            target.writeTimestamp(timestamp, body);
+        }
+        stats.updateLive(timestamp);
+
+        // See CollectionType.CollectionPathSerializer
+        if (isComplex)
+            copyBytes((int) in.readUnsignedVInt(), body, true);
+
+        if ((flags & Cell.Serializer.HAS_EMPTY_VALUE_MASK) == 0)
+            copyValue(type, body);
+    }
+
+    private void copyValue(AbstractType<?> type, DataOutputBuffer out) throws IOException
+    {
+        int length = type.fixedValueLength();
+        if (length >= 0)
+            copyBytes(length, out, false);
+        else
+            copyBytes((int) in.readUnsignedVInt(), out, true);
+    }
+
+    private void copyBytes(int length, DataOutputBuffer out, boolean writeLength) throws IOException
+    {
+        if (writeLength)
+            out.writeUnsignedVInt(length);
+        if (scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        in.readFully(scratch, 0, length);
+        out.write(scratch, 0, length);
+    }
+
+    /**
+     * The columns of a header in serialization order, as arrays so rows can be copied without iterating (and thus
+     * allocating) over the {@code Columns} object.
+     */
+    private static class ColumnLayout
+    {
+        private final Columns columns;
+        private final AbstractType<?>[] types;
+        private final boolean[] isComplex;
+
+        private ColumnLayout(SerializationHeader header, Columns columns)
+        {
+            this.columns = columns;
+            this.types = new AbstractType<?>[columns.size()];
+            this.isComplex = new boolean[columns.size()];
+            int i = 0;
+            for (ColumnDefinition column : columns)
+            {
+                types[i] = header.getType(column);
+                isComplex[i] = column.isComplex();
+                i++;
+            }
+        }
+
+        private boolean hasSameTypes(SerializationHeader header, Columns columns)
+        {
+            if (!this.columns.equals(columns))
+                return false;
+
+            int i = 0;
+            for (ColumnDefinition column : columns)
+            {
+                if (!types[i++].equals(header.getType(column)))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -34,8 +34,8 @@ public enum ApplicationState
     HOST_ID,
     TOKENS,
     RPC_READY,
+    MUTATION_BATCH, // was X1; advertised by nodes that accept MessagingService.Verb.MUTATION_BATCH
     // pad to allow adding new states to existing cluster
-    X1,
     X2,
     X3,
     X4,
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.io.sstable;
+
+import org.apache.cassandraBloomFilters.db.rows.WrappingUnfilteredRowIterator;
+
+/**
+ * A partition read from an sstable that compaction leaves unchanged, and that sstable writers may thus copy without
+ * deserializing its rows (see {@link org.apache.cassandraBloomFilters.db.rows.SerializedRowCopier}).
+ * <p>
+ * The partition must have neither deletion nor expiring data. It can otherwise be consumed as any other partition
+ * by code that doesn't copy it.
+ */
+public class CopyablePartition extends WrappingUnfilteredRowIterator
+{
+    private final SSTableIdentityIterator source;
+
+    public CopyablePartition(SSTableIdentityIterator source)
+    {
+        super(source);
+        this.source = source;
+    }
+
+    public SSTableIdentityIterator source()
+    {
+        return source;
+    }
+}
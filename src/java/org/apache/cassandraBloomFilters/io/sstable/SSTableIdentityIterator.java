@@ -33,6 +33,8 @@ public class SSTableIdentityIterator extends AbstractIterator<Unfiltered> implem
     private final DecoratedKey key;
     private final DeletionTime partitionLevelDeletion;
     private final String filename;
+    private final RandomAccessReader file;
+    private final long unfilteredStart;
 
     private final SSTableSimpleIterator iterator;
     private final Row staticRow;
@@ -47,12 +49,14 @@ public class SSTableIdentityIterator extends AbstractIterator<Unfiltered> implem
     {
         this.sstable = sstable;
         this.filename = file.getPath();
+        this.file = file;
         this.key = key;
 
         try
         {
             this.partitionLevelDeletion = DeletionTime.serializer.deserialize(file);
             SerializationHelper helper = new SerializationHelper(sstable.metadata, sstable.descriptor.version.correspondingMessagingVersion(), SerializationHelper.Flag.LOCAL);
+            this.unfilteredStart = file.getFilePointer();
             this.iterator = SSTableSimpleIterator.create(sstable.metadata, file, sstable.header, helper, partitionLevelDeletion);
             this.staticRow = iterator.readStaticRow();
         }
@@ -123,6 +127,22 @@ public class SSTableIdentityIterator extends AbstractIterator<Unfiltered> implem
         return filename;
     }
 
+    public SSTableReader getSSTable()
+    {
+        return sstable;
+    }
+
+    /**
+     * Returns the file positioned on the first serialized unfiltered of the partition (its static row if the sstable
+     * has static columns), to copy the partition without deserializing it (see {@code SerializedRowCopier}). This
+     * iterator must not be used anymore after that.
+     */
+    public RandomAccessReader serializedUnfiltereds()
+    {
+        file.seek(unfilteredStart);
+        return file;
+    }
+
     public EncodingStats stats()
     {
         // We could return sstable.header.stats(), but this may not be as accurate than the actual sstable stats (see
@@ -54,7 +54,7 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
     @VisibleForTesting
     public static boolean disableEarlyOpeningForTests = false;
 
-    private final long preemptiveOpenInterval;
+    private long preemptiveOpenInterval;
     private final long maxAge;
     private long repairedAt = -1;
     // the set of final readers we will expose on commit
@@ -65,6 +65,7 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
 
     private final List<SSTableWriter> writers = new ArrayList<>();
     private final boolean keepOriginals; // true if we do not want to obsolete the originals
+    private boolean sharedTransaction; // true if the transaction is committed by the caller, see shareTransaction()
 
     private SSTableWriter writer;
     private Map<DecoratedKey, RowIndexEntry> cachedKeys = new HashMap<>();
@@ -116,6 +117,20 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
         return interval;
     }
 
+    /**
+     * Used when several rewriters write disjoint parts of the same compaction concurrently: early opening is
+     * disabled, and preparing and committing this rewriter only finishes its own writers (adding the new readers
+     * to the transaction), leaving the checkpoint, the obsoletion of the originals and the commit of the
+     * transaction itself to the caller, once every rewriter is prepared.
+     */
+    public SSTableRewriter shareTransaction()
+    {
+        assert writer == null : "must be called before any writer is added";
+        preemptiveOpenInterval = Long.MAX_VALUE;
+        sharedTransaction = true;
+        return this;
+    }
+
     public SSTableWriter currentWriter()
     {
         return writer;
@@ -191,7 +206,8 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
         for (SSTableWriter writer : writers)
             accumulate = writer.abort(accumulate);
         // abort the lifecycle transaction
-        accumulate = transaction.abort(accumulate);
+        if (!sharedTransaction)
+            accumulate = transaction.abort(accumulate);
         return accumulate;
     }
 
@@ -200,12 +216,13 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
         for (SSTableWriter writer : writers)
             accumulate = writer.commit(accumulate);
 
-        accumulate = transaction.commit(accumulate);
+        if (!sharedTransaction)
+            accumulate = transaction.commit(accumulate);
         return accumulate;
     }
 
     /**
-     * Replace the readers we are rewriting with cloneWithNewStart, reclaiming any page cache that is no longer
+     * Replace the readers we are rewriting with cloneWithNewStartBeyond, reclaiming any page cache that is no longer
      * needed, and transferring any key cache entries over to the new reader, expiring them from the old. if reset
      * is true, we are instead restoring the starts of the readers from before the rewriting began
      *
@@ -252,9 +269,8 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
                 continue;
             }
 
-            DecoratedKey newStart = latest.firstKeyBeyond(lowerbound);
-            assert newStart != null;
-            SSTableReader replacement = latest.cloneWithNewStart(newStart, runOnClose);
+            SSTableReader replacement = latest.cloneWithNewStartBeyond(lowerbound, runOnClose);
+            assert replacement != null;
             transaction.update(replacement, true);
         }
     }
@@ -369,6 +385,10 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
             transaction.update(reader, false);
             preparedForCommit.add(reader);
         }
+
+        if (sharedTransaction)
+            return;
+
         transaction.checkpoint();
 
         if (throwLate)
@@ -36,6 +36,8 @@ import org.apache.cassandraBloomFilters.service.StorageService;
 
 public class RangeAwareSSTableWriter implements SSTableMultiWriter
 {
+    private final List<PartitionPosition> diskBoundaries;
+    // the disk boundaries, further split if the token_range_splits compaction option is set
     private final List<PartitionPosition> boundaries;
     private final Directories.DataDirectory[] directories;
     private final int sstableLevel;
@@ -45,6 +47,7 @@ public class RangeAwareSSTableWriter implements SSTableMultiWriter
     private final SerializationHeader header;
     private final LifecycleTransaction txn;
     private int currentIndex = -1;
+    private int currentDiskIndex = -1;
     public final ColumnFamilyStore cfs;
     private final List<SSTableMultiWriter> finishedWriters = new ArrayList<>();
     private final List<SSTableReader> finishedReaders = new ArrayList<>();
@@ -55,12 +58,14 @@ public class RangeAwareSSTableWriter implements SSTableMultiWriter
         directories = cfs.getDirectories().getWriteableLocations();
         this.sstableLevel = sstableLevel;
         this.cfs = cfs;
-        this.estimatedKeys = estimatedKeys / directories.length;
+        int splits = cfs.getCompactionStrategyManager().tokenRangeSplits();
+        this.estimatedKeys = estimatedKeys / (directories.length * splits);
         this.repairedAt = repairedAt;
         this.format = format;
         this.txn = txn;
         this.header = header;
-        boundaries = StorageService.getDiskBoundaries(cfs, directories);
+        diskBoundaries = StorageService.getDiskBoundaries(cfs, directories);
+        boundaries = splits > 1 && diskBoundaries != null ? StorageService.getTokenRangeBoundaries(cfs, directories, splits) : diskBoundaries;
         if (boundaries == null)
         {
             Directories.DataDirectory localDir = cfs.getDirectories().getWriteableLocation(totalSize);
@@ -82,13 +87,15 @@ public class RangeAwareSSTableWriter implements SSTableMultiWriter
             switched = true;
             currentIndex++;
         }
+        while (currentDiskIndex < 0 || key.compareTo(diskBoundaries.get(currentDiskIndex)) > 0)
+            currentDiskIndex++;
 
         if (switched)
         {
             if (currentWriter != null)
                 finishedWriters.add(currentWriter);
 
-            Descriptor desc = Descriptor.fromFilename(cfs.getSSTablePath(cfs.getDirectories().getLocationForDisk(directories[currentIndex])), format);
+            Descriptor desc = Descriptor.fromFilename(cfs.getSSTablePath(cfs.getDirectories().getLocationForDisk(directories[currentDiskIndex])), format);
             currentWriter = cfs.createSSTableMultiWriter(desc, estimatedKeys, repairedAt, sstableLevel, header, txn);
         }
     }
@@ -1093,21 +1093,49 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         }
     }
 
+    /**
+     * Returns a clone of this reader starting at the first key beyond {@code lowerbound}, that is at
+     * {@code firstKeyBeyond(lowerbound)}, or {@code null} if there is no such key. The index is only scanned once to
+     * find both that key and the positions before which the page cache can be dropped, as this is done for every
+     * original sstable each time a compaction opens its output early.
+     */
     // runOnClose must NOT be an anonymous or non-static inner class, nor must it retain a reference chain to this reader
-    public SSTableReader cloneWithNewStart(DecoratedKey newStart, final Runnable runOnClose)
+    public SSTableReader cloneWithNewStartBeyond(PartitionPosition lowerbound, final Runnable runOnClose)
     {
         synchronized (tidy.global)
         {
             assert openReason != OpenReason.EARLY;
-            // TODO: merge with caller's firstKeyBeyond() work,to save time
-            if (newStart.compareTo(first) > 0)
+            if (lowerbound.compareTo(first) < 0)
+                return cloneAndReplace(first, OpenReason.MOVED_START);
+
+            if (ifile == null)
+                return null;
+
+            String path = null;
+            try (FileDataInput in = ifile.createReader(getIndexScanPosition(lowerbound)))
+            {
+                path = in.getPath();
+                while (!in.isEOF())
+                {
+                    long indexStart = in.getFilePointer();
+                    DecoratedKey indexDecoratedKey = decorateKey(ByteBufferUtil.readWithShortLength(in));
+                    if (indexDecoratedKey.compareTo(lowerbound) > 0)
+                    {
+                        long dataStart = RowIndexEntry.Serializer.readPosition(in, descriptor.version);
+                        this.tidy.runOnClose = new DropPageCache(dfile, dataStart, ifile, indexStart, runOnClose);
+                        return cloneAndReplace(indexDecoratedKey, OpenReason.MOVED_START);
+                    }
+
+                    RowIndexEntry.Serializer.skip(in, descriptor.version);
+                }
+            }
+            catch (IOException e)
             {
-                final long dataStart = getPosition(newStart, Operator.EQ).position;
-                final long indexStart = getIndexScanPosition(newStart);
-                this.tidy.runOnClose = new DropPageCache(dfile, dataStart, ifile, indexStart, runOnClose);
+                markSuspect();
+                throw new CorruptSSTableException(e, path);
             }
 
-            return cloneAndReplace(newStart, OpenReason.MOVED_START);
+            return null;
         }
     }
 
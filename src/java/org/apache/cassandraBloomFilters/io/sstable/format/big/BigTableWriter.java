@@ -19,9 +19,13 @@ package org.apache.cassandraBloomFilters.io.sstable.format.big;
 
 import java.io.*;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.cassandraBloomFilters.db.*;
+import org.apache.cassandraBloomFilters.db.compaction.CompactionPhases;
 import org.apache.cassandraBloomFilters.db.lifecycle.LifecycleTransaction;
 import org.apache.cassandraBloomFilters.db.transform.Transformation;
 import org.apache.cassandraBloomFilters.io.sstable.*;
@@ -59,6 +63,10 @@ public class BigTableWriter extends SSTableWriter
     private DecoratedKey lastWrittenKey;
     private DataPosition dataMark;
 
+    // Created on the first copied partition, see copy()
+    private SerializedRowCopier copier;
+    private final Set<SSTableReader> copiedFrom = Collections.newSetFromMap(new IdentityHashMap<>());
+
     public BigTableWriter(Descriptor descriptor, 
                           Long keyCount, 
                           Long repairedAt, 
@@ -120,7 +128,10 @@ public class BigTableWriter extends SSTableWriter
 
         if (logger.isTraceEnabled())
             logger.trace("wrote {} at {}", decoratedKey, dataEnd);
+        long start = CompactionPhases.start();
+        long indexStart = iwriter.indexFile.position();
         iwriter.append(decoratedKey, index, dataEnd);
+        CompactionPhases.end(CompactionPhases.Phase.INDEX, start, iwriter.indexFile.position() - indexStart);
     }
 
     /**
@@ -142,6 +153,13 @@ public class BigTableWriter extends SSTableWriter
             return null;
         }
 
+        if (iterator instanceof CopyablePartition && observers.isEmpty())
+        {
+            SSTableIdentityIterator source = ((CopyablePartition) iterator).source();
+            if (canCopyFrom(source.getSSTable()))
+                return copy(key, source);
+        }
+
         if (iterator.isEmpty())
             return null;
 
@@ -167,6 +185,61 @@ public class BigTableWriter extends SSTableWriter
         }
     }
 
+    private boolean canCopyFrom(SSTableReader sstable)
+    {
+        if (!sstable.descriptor.version.equals(descriptor.version) || sstable.getMinTimestamp() < header.stats().minTimestamp)
+            return false;
+
+        if (copier == null)
+            copier = new SerializedRowCopier(header, descriptor.version.correspondingMessagingVersion());
+        return copier.canCopyFrom(sstable.header);
+    }
+
+    /**
+     * Appends a partition by copying its serialized rows from the sstable it is read from, which saves materializing
+     * them. The partition has no deletion nor expiring data (see {@link CopyablePartition}).
+     */
+    private RowIndexEntry copy(DecoratedKey key, SSTableIdentityIterator source)
+    {
+        SSTableReader sstable = source.getSSTable();
+        long startPosition = beforeAppend(key);
+
+        // The clustering values are only materialized at index block boundaries, so we use those of the sstable
+        // instead, which can only make the min and max of the new sstable wider than necessary
+        if (copiedFrom.add(sstable))
+            metadataCollector.updateClusteringValues(sstable.getSSTableMetadata());
+
+        ColumnIndex index;
+        try
+        {
+            copier.startPartition(source.serializedUnfiltereds(), sstable.header, metadataCollector);
+            index = ColumnIndex.copyAndBuildIndex(key, copier, dataFile, header, descriptor.version);
+        }
+        catch (IOException e)
+        {
+            // writes to dataFile throw FSWriteError, so this comes from reading the copied sstable
+            sstable.markSuspect();
+            throw new CorruptSSTableException(e, source.getPath());
+        }
+        metadataCollector.addCellPerPartitionCount(copier.cellCount());
+
+        RowIndexEntry entry = RowIndexEntry.create(startPosition, DeletionTime.LIVE, index);
+
+        long endPosition = dataFile.position();
+        long rowSize = endPosition - startPosition;
+        maybeLogLargePartitionWarning(key, rowSize);
+        metadataCollector.addPartitionSizeInBytes(rowSize);
+        try
+        {
+            afterAppend(key, endPosition, entry);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, dataFile.getPath());
+        }
+        return entry;
+    }
+
     private void maybeLogLargePartitionWarning(DecoratedKey key, long rowSize)
     {
         if (rowSize > DatabaseDescriptor.getCompactionLargePartitionWarningThreshold())
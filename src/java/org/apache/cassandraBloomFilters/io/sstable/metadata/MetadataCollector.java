@@ -176,6 +176,13 @@ public class MetadataCollector implements PartitionStatisticsCollector
         updateLocalDeletionTime(cell.localDeletionTime());
     }
 
+    public void updateLive(long timestamp)
+    {
+        updateTimestamp(timestamp);
+        updateTTL(Cell.NO_TTL);
+        updateLocalDeletionTime(Cell.NO_DELETION_TIME);
+    }
+
     public void update(DeletionTime dt)
     {
         if (!dt.isLive())
@@ -263,6 +270,19 @@ public class MetadataCollector implements PartitionStatisticsCollector
         return b2;
     }
 
+    /**
+     * Widens the min and max clustering values to cover those of the provided sstable stats, for rows copied from
+     * that sstable without being deserialized.
+     */
+    public MetadataCollector updateClusteringValues(StatsMetadata stats)
+    {
+        for (int i = 0; i < stats.minClusteringValues.size() && i < minClusteringValues.length; i++)
+            minClusteringValues[i] = maybeMinimize(min(minClusteringValues[i], stats.minClusteringValues.get(i), comparator.subtype(i)));
+        for (int i = 0; i < stats.maxClusteringValues.size() && i < maxClusteringValues.length; i++)
+            maxClusteringValues[i] = maybeMinimize(max(maxClusteringValues[i], stats.maxClusteringValues.get(i), comparator.subtype(i)));
+        return this;
+    }
+
     public void updateHasLegacyCounterShards(boolean hasLegacyCounterShards)
     {
         this.hasLegacyCounterShards = this.hasLegacyCounterShards || hasLegacyCounterShards;
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
 import com.google.common.base.Function;
@@ -162,6 +163,10 @@ public class BufferedDataOutputStreamPlus extends DataOutputStreamPlus
                 {
                     writeExcessSlow();
                 }
+                else if (channel instanceof GatheringByteChannel)
+                {
+                    writeExcessGathering();
+                }
                 else
                 {
                     doFlush(toWriteRemaining - buffer.remaining());
@@ -174,6 +179,18 @@ public class BufferedDataOutputStreamPlus extends DataOutputStreamPlus
         }
     }
 
+    // writes what is buffered along with what doesn't fit of hollowBuffer, with as few system calls as possible
+    @DontInline
+    private void writeExcessGathering() throws IOException
+    {
+        GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+        ByteBuffer[] buffers = { buffer, hollowBuffer };
+        buffer.flip();
+        while (buffer.hasRemaining() || hollowBuffer.remaining() > buffer.capacity())
+            gatheringChannel.write(buffers);
+        buffer.clear();
+    }
+
     // writes anything we can't fit into the buffer
     @DontInline
     private void writeExcessSlow() throws IOException
@@ -184,6 +184,14 @@ public class DataOutputBuffer extends BufferedDataOutputStreamPlus
         return true;
     }
 
+    /**
+     * Discards the written data, keeping the allocated buffer for reuse.
+     */
+    public void clear()
+    {
+        buffer.clear();
+    }
+
     public long position()
     {
         return getLength();
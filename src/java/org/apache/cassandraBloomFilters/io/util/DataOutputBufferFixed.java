@@ -62,9 +62,4 @@ public class DataOutputBufferFixed extends DataOutputBuffer
     {
         throw new BufferOverflowException();
     }
-
-    public void clear()
-    {
-        buffer.clear();
-    }
 }
@@ -24,6 +24,7 @@ import java.nio.ByteOrder;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.RateLimiter;
 
+import org.apache.cassandraBloomFilters.db.compaction.CompactionPhases;
 import org.apache.cassandraBloomFilters.io.FSReadError;
 import org.apache.cassandraBloomFilters.io.compress.BufferType;
 import org.apache.cassandraBloomFilters.utils.memory.BufferPool;
@@ -105,13 +106,18 @@ public class RandomAccessReader extends RebufferingInputStream implements FileDa
         if (isEOF())
             return;
 
+        long start = CompactionPhases.start();
         if (regions == null)
             reBufferStandard();
         else
             reBufferMmap();
+        CompactionPhases.end(CompactionPhases.Phase.READ, start, buffer.remaining());
 
         if (limiter != null)
-            limiter.acquire(buffer.remaining());
+        {
+            double waited = limiter.acquire(buffer.remaining());
+            CompactionPhases.record(CompactionPhases.Phase.THROTTLE, (long) (waited * 1e9), buffer.remaining());
+        }
 
         assert buffer.order() == ByteOrder.BIG_ENDIAN : "Buffer must have BIG ENDIAN byte ordering";
     }
@@ -195,7 +195,8 @@ public abstract class SegmentedFile extends SharedCloseableImpl
 
         public SegmentedFile buildIndex(Descriptor desc, IndexSummary indexSummary, IndexSummaryBuilder.ReadableBoundary boundary)
         {
-            return complete(desc.filenameFor(Component.PRIMARY_INDEX), bufferSize(desc, indexSummary), boundary.indexLength);
+            // the readable boundary gives us the index length without stat'ing the file, on each early open
+            return complete(desc.filenameFor(Component.PRIMARY_INDEX), bufferSize(boundary.indexLength / indexSummary.size()), boundary.indexLength);
         }
 
         public SegmentedFile buildIndex(Descriptor desc, IndexSummary indexSummary)
@@ -22,6 +22,7 @@ import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
 
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.db.compaction.CompactionPhases;
 import org.apache.cassandraBloomFilters.io.FSReadError;
 import org.apache.cassandraBloomFilters.io.FSWriteError;
 import org.apache.cassandraBloomFilters.io.compress.BufferType;
@@ -186,6 +187,7 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
 
     protected void syncDataOnlyInternal()
     {
+        long start = CompactionPhases.start();
         try
         {
             SyncUtil.force(fchannel, false);
@@ -194,6 +196,7 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
         {
             throw new FSWriteError(e, getPath());
         }
+        CompactionPhases.end(CompactionPhases.Phase.SYNC, start, 0);
     }
 
     /*
@@ -210,7 +213,10 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
     @Override
     protected void doFlush(int count)
     {
+        long start = CompactionPhases.start();
+        int flushed = buffer.position();
         flushData();
+        CompactionPhases.end(CompactionPhases.Phase.WRITE, start, flushed);
 
         if (trickleFsync)
         {
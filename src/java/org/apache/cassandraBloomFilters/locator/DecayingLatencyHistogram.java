@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.locator;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.codahale.metrics.Snapshot;
+
+import org.apache.cassandraBloomFilters.utils.EstimatedHistogram;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+
+/**
+ * The latencies measured for a host by the dynamic snitch, in a histogram where older measurements weigh
+ * exponentially less than newer ones.
+ *
+ * Measuring a latency is a single atomic increment, on one of a few stripes of exponentially growing buckets (the
+ * same as EstimatedHistogram's) picked by thread, so that the threads handling responses don't contend with each
+ * other. The stripes are only folded into the decayed distribution when the snitch updates its scores, by
+ * {@link #decay}. Decaying every bucket by the same factor doesn't change the shape of the distribution, so the
+ * previous snapshot is reused as is for hosts that weren't measured in between; and so that decaying doesn't have to
+ * touch every bucket either, new counts are weighted up instead (forward decay), which keeps the weights relative.
+ *
+ * Not thread-safe: {@link #update} may be called concurrently, but {@link #decay} must be called by one thread at a time.
+ */
+final class DecayingLatencyHistogram
+{
+    // latencies are in milliseconds, so this goes up to a few minutes
+    private static final long[] OFFSETS = new EstimatedHistogram(64, true).getBucketOffsets();
+    private static final int BUCKETS = OFFSETS.length + 1;
+
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(FBUtilities.getAvailableProcessors() * 2 - 1));
+
+    // past this, weights are scaled back down before they lose precision
+    private static final double MAX_SCALE = 1e100;
+
+    // stripe s holds the counts of bucket b at s * BUCKETS + b, so that stripes don't share cache lines
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private volatile boolean measured;
+
+    private final double[] weights = new double[BUCKETS];
+    private double totalWeight;
+    // the weight new counts get, which grows as older ones decay
+    private double scale = 1;
+    private DecayedSnapshot snapshot = DecayedSnapshot.of(new double[BUCKETS], 0);
+
+    void update(long latency)
+    {
+        int bucket = Arrays.binarySearch(OFFSETS, latency);
+        if (bucket < 0)
+            bucket = -bucket - 1; // latencies above the last offset go in the overflow bucket
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + bucket);
+        // the flag must be set after the count, so that decay() finds the count whenever it finds the flag
+        if (!measured)
+            measured = true;
+    }
+
+    /**
+     * Decays the weight of the latencies measured so far by the provided factor, and adds those measured since the
+     * last call.
+     *
+     * @return a snapshot of the resulting distribution, whose size is the total (decayed) weight of the latencies
+     */
+    Snapshot decay(double factor)
+    {
+        scale /= factor;
+        if (scale > MAX_SCALE)
+        {
+            for (int b = 0; b < BUCKETS; b++)
+                weights[b] /= scale;
+            totalWeight /= scale;
+            scale = 1;
+        }
+
+        if (!measured)
+        {
+            snapshot = snapshot.withSize(totalWeight / scale);
+            return snapshot;
+        }
+
+        measured = false;
+        for (int i = 0; i < counts.length(); i++)
+        {
+            // only write to the counters that need it, as they share cache lines with those of other buckets
+            if (counts.get(i) == 0)
+                continue;
+            long count = counts.getAndSet(i, 0);
+            weights[i % BUCKETS] += count * scale;
+            totalWeight += count * scale;
+        }
+        snapshot = DecayedSnapshot.of(weights, totalWeight / scale);
+        return snapshot;
+    }
+
+    /**
+     * An immutable view of the decayed distribution, whose values are the upper bounds of the buckets.
+     */
+    private static final class DecayedSnapshot extends Snapshot
+    {
+        // as many values as the reservoirs of the snitch hold, which is plenty to tell the shape of the distribution
+        private static final int MAX_VALUES = 100;
+
+        // cumulative[b] is the weight of buckets 0 to b, relative to the total weight
+        private final double[] cumulative;
+        private final double size;
+
+        private DecayedSnapshot(double[] cumulative, double size)
+        {
+            this.cumulative = cumulative;
+            this.size = size;
+        }
+
+        private static DecayedSnapshot of(double[] weights, double size)
+        {
+            double[] cumulative = new double[weights.length];
+            double sum = 0;
+            for (int b = 0; b < weights.length; b++)
+            {
+                sum += weights[b];
+                cumulative[b] = sum;
+            }
+            if (sum > 0)
+            {
+                for (int b = 0; b < cumulative.length; b++)
+                    cumulative[b] /= sum;
+            }
+            return new DecayedSnapshot(cumulative, size);
+        }
+
+        private DecayedSnapshot withSize(double size)
+        {
+            return new DecayedSnapshot(cumulative, size);
+        }
+
+        private boolean isEmpty()
+        {
+            return cumulative[cumulative.length - 1] == 0;
+        }
+
+        private static long valueOf(int bucket)
+        {
+            return OFFSETS[Math.min(bucket, OFFSETS.length - 1)];
+        }
+
+        public double getValue(double quantile)
+        {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile))
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            if (isEmpty())
+                return 0;
+
+            // first bucket whose cumulative weight reaches the quantile, and isn't empty
+            double target = Math.max(quantile, Double.MIN_VALUE);
+            int low = 0, high = cumulative.length - 1;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < target)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return valueOf(low);
+        }
+
+        public long[] getValues()
+        {
+            // each bucket's value, as many times as its share of the size
+            double valueCount = Math.min(size, MAX_VALUES);
+            long[] counts = new long[cumulative.length];
+            int total = 0;
+            double previous = 0;
+            for (int b = 0; b < cumulative.length; b++)
+            {
+                counts[b] = Math.round((cumulative[b] - previous) * valueCount);
+                total += counts[b];
+                previous = cumulative[b];
+            }
+            long[] values = new long[total];
+            int i = 0;
+            for (int b = 0; b < counts.length; b++)
+            {
+                for (long c = 0; c < counts[b]; c++)
+                    values[i++] = valueOf(b);
+            }
+            return values;
+        }
+
+        public int size()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, size);
+        }
+
+        public long getMax()
+        {
+            return (long) getValue(1.0);
+        }
+
+        public long getMin()
+        {
+            return (long) getValue(0.0);
+        }
+
+        public double getMean()
+        {
+            double mean = 0;
+            double previous = 0;
+            for (int b = 0; b < cumulative.length; b++)
+            {
+                mean += (cumulative[b] - previous) * valueOf(b);
+                previous = cumulative[b];
+            }
+            return mean;
+        }
+
+        public double getStdDev()
+        {
+            if (isEmpty())
+                return 0;
+
+            double mean = getMean();
+            double variance = 0;
+            double previous = 0;
+            for (int b = 0; b < cumulative.length; b++)
+            {
+                double diff = valueOf(b) - mean;
+                variance += (cumulative[b] - previous) * diff * diff;
+                previous = cumulative[b];
+            }
+            return Math.sqrt(variance);
+        }
+
+        public void dump(OutputStream output)
+        {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)))
+            {
+                for (long value : getValues())
+                    out.printf("%d%n", value);
+            }
+        }
+    }
+}
@@ -26,10 +26,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Snapshot;
+import com.google.common.annotations.VisibleForTesting;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 import org.apache.cassandraBloomFilters.concurrent.ScheduledExecutors;
+import org.apache.cassandraBloomFilters.config.Config;
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.net.MessagingService;
 import org.apache.cassandraBloomFilters.service.StorageService;
@@ -38,15 +41,24 @@ import org.apache.cassandraBloomFilters.utils.FBUtilities;
 
 /**
  * A dynamic snitch that sorts endpoints by latency with an adapted phi failure detector
+ *
+ * The latencies of each host are sampled either in an exponentially decaying reservoir, or, with
+ * dynamic_snitch_scoring: histogram, in a {@link DecayingLatencyHistogram}, which records latencies without locking
+ * and only needs to be looked at again on score updates for the hosts measured since the previous one.
  */
 public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILatencySubscriber, DynamicEndpointSnitchMBean
 {
     private static final double ALPHA = 0.75; // set to 0.75 to make EDS more biased to towards the newer values
     private static final int WINDOW_SIZE = 100;
+    // fewer samples than this say too little about a host's latency distribution to derive percentiles from it
+    private static final int MIN_PERCENTILE_SAMPLES = 20;
 
     private final int UPDATE_INTERVAL_IN_MS = DatabaseDescriptor.getDynamicUpdateInterval();
     private final int RESET_INTERVAL_IN_MS = DatabaseDescriptor.getDynamicResetInterval();
     private final double BADNESS_THRESHOLD = DatabaseDescriptor.getDynamicBadnessThreshold();
+    private final boolean USE_HISTOGRAMS = DatabaseDescriptor.getDynamicSnitchScoring() == Config.DynamicSnitchScoring.histogram;
+    // how much the weight of the latencies in the histograms decays between score updates, as per ALPHA
+    private final double HISTOGRAM_DECAY = Math.exp(-ALPHA * UPDATE_INTERVAL_IN_MS / 1000d);
 
     // the score for a merged set of endpoints must be this much worse than the score for separate endpoints to
     // warrant not merging two ranges into a single range
@@ -56,7 +68,9 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
     private boolean registered = false;
 
     private volatile HashMap<InetAddress, Double> scores = new HashMap<>();
+    private volatile HashMap<InetAddress, Snapshot> snapshots = new HashMap<>();
     private final ConcurrentHashMap<InetAddress, ExponentiallyDecayingReservoir> samples = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<InetAddress, DecayingLatencyHistogram> histograms = new ConcurrentHashMap<>();
 
     public final IEndpointSnitch subsnitch;
 
@@ -240,6 +254,20 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
 
     public void receiveTiming(InetAddress host, long latency) // this is cheap
     {
+        if (USE_HISTOGRAMS)
+        {
+            DecayingLatencyHistogram histogram = histograms.get(host);
+            if (histogram == null)
+            {
+                DecayingLatencyHistogram maybeNewHistogram = new DecayingLatencyHistogram();
+                histogram = histograms.putIfAbsent(host, maybeNewHistogram);
+                if (histogram == null)
+                    histogram = maybeNewHistogram;
+            }
+            histogram.update(latency);
+            return;
+        }
+
         ExponentiallyDecayingReservoir sample = samples.get(host);
         if (sample == null)
         {
@@ -251,7 +279,9 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
         sample.update(latency);
     }
 
-    private void updateScores() // this is expensive
+    // synchronized as the histograms must be decayed by one thread at a time; this only contends with tests
+    @VisibleForTesting
+    public synchronized void updateScores() // this is expensive
     {
         if (!StorageService.instance.isInitialized()) 
             return;
@@ -268,16 +298,27 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
         // We're going to weight the latency for each host against the worst one we see, to
         // arrive at sort of a 'badness percentage' for them. First, find the worst for each:
         HashMap<InetAddress, Double> newScores = new HashMap<>();
-        for (Map.Entry<InetAddress, ExponentiallyDecayingReservoir> entry : samples.entrySet())
+        HashMap<InetAddress, Snapshot> newSnapshots = new HashMap<>();
+        if (USE_HISTOGRAMS)
+        {
+            for (Map.Entry<InetAddress, DecayingLatencyHistogram> entry : histograms.entrySet())
+                newSnapshots.put(entry.getKey(), entry.getValue().decay(HISTOGRAM_DECAY));
+        }
+        else
+        {
+            for (Map.Entry<InetAddress, ExponentiallyDecayingReservoir> entry : samples.entrySet())
+                newSnapshots.put(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        for (Snapshot snapshot : newSnapshots.values())
         {
-            double mean = entry.getValue().getSnapshot().getMedian();
+            double mean = snapshot.getMedian();
             if (mean > maxLatency)
                 maxLatency = mean;
         }
         // now make another pass to do the weighting based on the maximums we found before
-        for (Map.Entry<InetAddress, ExponentiallyDecayingReservoir> entry: samples.entrySet())
+        for (Map.Entry<InetAddress, Snapshot> entry: newSnapshots.entrySet())
         {
-            double score = entry.getValue().getSnapshot().getMedian() / maxLatency;
+            double score = entry.getValue().getMedian() / maxLatency;
             // finally, add the severity without any weighting, since hosts scale this relative to their own load and the size of the task causing the severity.
             // "Severity" is basically a measure of compaction activity (CASSANDRA-3722).
             score += StorageService.instance.getSeverity(entry.getKey());
@@ -285,11 +326,28 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
             newScores.put(entry.getKey(), score);
         }
         scores = newScores;
+        snapshots = newSnapshots;
     }
 
     private void reset()
     {
        samples.clear();
+       histograms.clear();
+    }
+
+    /**
+     * Returns the given quantile of the latencies recently measured for a host, as of the last score update.
+     *
+     * @param quantile a quantile in [0..1]
+     * @return the latency in nanoseconds, or -1 if too few latencies were measured for the host
+     */
+    public long getLatencyPercentileNanos(InetAddress host, double quantile)
+    {
+        Snapshot snapshot = snapshots.get(host);
+        if (snapshot == null || snapshot.size() < MIN_PERCENTILE_SAMPLES)
+            return -1;
+        // latencies are measured in milliseconds, so anything below 1ms reads as 0
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(1L, (long) Math.ceil(snapshot.getValue(quantile))));
     }
 
     public Map<InetAddress, Double> getScores()
@@ -319,10 +377,19 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
     {
         InetAddress host = InetAddress.getByName(hostname);
         ArrayList<Double> timings = new ArrayList<Double>();
-        ExponentiallyDecayingReservoir sample = samples.get(host);
-        if (sample != null)
+        Snapshot snapshot;
+        if (USE_HISTOGRAMS)
+        {
+            snapshot = snapshots.get(host);
+        }
+        else
+        {
+            ExponentiallyDecayingReservoir sample = samples.get(host);
+            snapshot = sample == null ? null : sample.getSnapshot();
+        }
+        if (snapshot != null)
         {
-            for (double time: sample.getSnapshot().getValues())
+            for (double time: snapshot.getValues())
                 timings.add(time);
         }
         return timings;
@@ -18,7 +18,9 @@
 package org.apache.cassandraBloomFilters.metrics;
 
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import org.apache.cassandraBloomFilters.db.commitlog.AbstractCommitLogService;
 import org.apache.cassandraBloomFilters.db.commitlog.CommitLogSegmentManager;
@@ -38,38 +40,80 @@ public class CommitLogMetrics
     public Gauge<Long> pendingTasks;
     /** Current size used by all the commit log segments */
     public Gauge<Long> totalCommitLogSize;
+    /** Number of spare segment files ready to be reused by new segments */
+    public Gauge<Long> spareSegmentFiles;
     /** Time spent waiting for a CLS to be allocated - under normal conditions this should be zero */
     public final Timer waitingOnSegmentAllocation;
+    /** Number of times a writer had to block because no segment was available */
+    public final Counter segmentAllocationStalls;
+    /** Number of segments created from a spare (recycled or preallocated) file rather than a new one */
+    public final Counter recycledSegments;
     /** The time spent waiting on CL sync; for Periodic this is only occurs when the sync is lagging its sync interval */
     public final Timer waitingOnCommit;
+    /** Number of writers acknowledged by each commit log sync; only updated by the group sync mode */
+    public final Histogram syncBatchSize;
+    /** Number of commit log segments queued for replay that have not been replayed yet */
+    public final Counter pendingReplaySegments;
+    /** Number of commit log segments replayed */
+    public final Counter replayedSegments;
+    /** Size on disk of the commit log segments replayed */
+    public final Counter replayedBytes;
+    /** Number of mutations read from the commit log and submitted for replay */
+    public final Counter replayedMutations;
     
     public CommitLogMetrics()
     {
         waitingOnSegmentAllocation = Metrics.timer(factory.createMetricName("WaitingOnSegmentAllocation"));
+        segmentAllocationStalls = Metrics.counter(factory.createMetricName("SegmentAllocationStalls"));
+        recycledSegments = Metrics.counter(factory.createMetricName("RecycledSegments"));
         waitingOnCommit = Metrics.timer(factory.createMetricName("WaitingOnCommit"));
+        syncBatchSize = Metrics.histogram(factory.createMetricName("SyncBatchSize"), false);
+        pendingReplaySegments = Metrics.counter(factory.createMetricName("PendingReplaySegments"));
+        replayedSegments = Metrics.counter(factory.createMetricName("ReplayedSegments"));
+        replayedBytes = Metrics.counter(factory.createMetricName("ReplayedBytes"));
+        replayedMutations = Metrics.counter(factory.createMetricName("ReplayedMutations"));
     }
 
-    public void attach(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
+    public void attach(final AbstractCommitLogService[] services, final CommitLogSegmentManager[] allocators)
     {
         completedTasks = Metrics.register(factory.createMetricName("CompletedTasks"), new Gauge<Long>()
         {
             public Long getValue()
             {
-                return service.getCompletedTasks();
+                long completed = 0;
+                for (AbstractCommitLogService service : services)
+                    completed += service.getCompletedTasks();
+                return completed;
             }
         });
         pendingTasks = Metrics.register(factory.createMetricName("PendingTasks"), new Gauge<Long>()
         {
             public Long getValue()
             {
-                return service.getPendingTasks();
+                long pending = 0;
+                for (AbstractCommitLogService service : services)
+                    pending += service.getPendingTasks();
+                return pending;
             }
         });
         totalCommitLogSize = Metrics.register(factory.createMetricName("TotalCommitLogSize"), new Gauge<Long>()
         {
             public Long getValue()
             {
-                return allocator.onDiskSize();
+                long size = 0;
+                for (CommitLogSegmentManager allocator : allocators)
+                    size += allocator.onDiskSize();
+                return size;
+            }
+        });
+        spareSegmentFiles = Metrics.register(factory.createMetricName("SpareSegmentFiles"), new Gauge<Long>()
+        {
+            public Long getValue()
+            {
+                long spare = 0;
+                for (CommitLogSegmentManager allocator : allocators)
+                    spare += allocator.spareFileCount();
+                return spare;
             }
         });
     }
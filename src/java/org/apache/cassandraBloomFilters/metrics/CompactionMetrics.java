@@ -19,6 +19,7 @@ package org.apache.cassandraBloomFilters.metrics;
 
 import java.util.*;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
@@ -30,6 +31,7 @@ import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
 import org.apache.cassandraBloomFilters.db.Keyspace;
 import org.apache.cassandraBloomFilters.db.compaction.CompactionInfo;
 import org.apache.cassandraBloomFilters.db.compaction.CompactionManager;
+import org.apache.cassandraBloomFilters.db.compaction.CompactionPhases;
 
 import static org.apache.cassandraBloomFilters.metrics.CassandraMetricsRegistry.Metrics;
 
@@ -54,6 +56,10 @@ public class CompactionMetrics implements CompactionManager.CompactionExecutorSt
     public final Meter totalCompactionsCompleted;
     /** Total number of bytes compacted since server [re]start */
     public final Counter bytesCompacted;
+    /** Time spent by compactions in each phase since server [re]start, in microseconds */
+    public final Map<CompactionPhases.Phase, Counter> phaseTime = new EnumMap<>(CompactionPhases.Phase.class);
+    /** Number of bytes processed by compactions in each phase since server [re]start */
+    public final Map<CompactionPhases.Phase, Counter> phaseBytes = new EnumMap<>(CompactionPhases.Phase.class);
 
     public CompactionMetrics(final ThreadPoolExecutor... collectors)
     {
@@ -132,6 +138,12 @@ public class CompactionMetrics implements CompactionManager.CompactionExecutorSt
         });
         totalCompactionsCompleted = Metrics.meter(factory.createMetricName("TotalCompactionsCompleted"));
         bytesCompacted = Metrics.counter(factory.createMetricName("BytesCompacted"));
+        for (CompactionPhases.Phase phase : CompactionPhases.Phase.values())
+        {
+            String name = Character.toUpperCase(phase.displayName().charAt(0)) + phase.displayName().substring(1);
+            phaseTime.put(phase, Metrics.counter(factory.createMetricName(name + "PhaseMicros")));
+            phaseBytes.put(phase, Metrics.counter(factory.createMetricName(name + "PhaseBytes")));
+        }
     }
 
     public void beginCompaction(CompactionInfo.Holder ci)
@@ -150,6 +162,18 @@ public class CompactionMetrics implements CompactionManager.CompactionExecutorSt
         totalCompactionsCompleted.mark();
     }
 
+    /**
+     * Adds the phases of a finished compaction to the phase totals.
+     */
+    public void recordPhases(CompactionPhases phases)
+    {
+        for (CompactionPhases.Phase phase : CompactionPhases.Phase.values())
+        {
+            phaseTime.get(phase).inc(TimeUnit.NANOSECONDS.toMicros(phases.getNanos(phase)));
+            phaseBytes.get(phase).inc(phases.getBytes(phase));
+        }
+    }
+
     public static List<CompactionInfo.Holder> getCompactions()
     {
         return new ArrayList<CompactionInfo.Holder>(compactions);
@@ -18,14 +18,19 @@
 package org.apache.cassandraBloomFilters.metrics;
 
 import java.net.InetAddress;
+import java.util.EnumMap;
+import java.util.Map;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 
 import static org.apache.cassandraBloomFilters.metrics.CassandraMetricsRegistry.Metrics;
 
 
+import org.apache.cassandraBloomFilters.net.OutboundTcpConnection;
 import org.apache.cassandraBloomFilters.net.OutboundTcpConnectionPool;
+import org.apache.cassandraBloomFilters.net.TrafficClass;
 
 /**
  * Metrics for {@link OutboundTcpConnectionPool}.
@@ -36,6 +41,24 @@ public class ConnectionMetrics
 
     /** Total number of timeouts happened on this node */
     public static final Meter totalTimeouts = Metrics.meter(DefaultNameFactory.createMetricName(TYPE_NAME, "TotalTimeouts", null));
+    /** Serialized size of the messages queued for all peers */
+    public static final Gauge<Long> totalPendingBytes = Metrics.register(DefaultNameFactory.createMetricName(TYPE_NAME, "TotalPendingBytes", null), new Gauge<Long>()
+    {
+        public Long getValue()
+        {
+            return OutboundTcpConnection.getGlobalPendingBytes();
+        }
+    });
+    /** Time messages of each traffic class spend queued before being written to any peer, e.g. UrgentQueueLatency */
+    private static final Map<TrafficClass, Timer> queueLatencies = new EnumMap<>(TrafficClass.class);
+    static
+    {
+        for (TrafficClass trafficClass : TrafficClass.values())
+        {
+            String name = trafficClass.name().charAt(0) + trafficClass.name().substring(1).toLowerCase() + "QueueLatency";
+            queueLatencies.put(trafficClass, Metrics.timer(DefaultNameFactory.createMetricName(TYPE_NAME, name, null)));
+        }
+    }
 
     public final String address;
     /** Pending tasks for large message TCP Connections */
@@ -56,6 +79,21 @@ public class ConnectionMetrics
     public final Gauge<Long> gossipMessageCompletedTasks;
     /** Dropped tasks for gossip message TCP Connections */
     public final Gauge<Long> gossipMessageDroppedTasks;
+    /** Pending tasks for mutation message TCP Connections, 0 without internode_traffic_classes */
+    public final Gauge<Integer> mutationMessagePendingTasks;
+    /** Completed tasks for mutation message TCP Connections, 0 without internode_traffic_classes */
+    public final Gauge<Long> mutationMessageCompletedTasks;
+    /** Dropped tasks for mutation message TCP Connections, 0 without internode_traffic_classes */
+    public final Gauge<Long> mutationMessageDroppedTasks;
+
+    /** Serialized size of the messages queued for this peer */
+    public final Gauge<Long> pendingBytes;
+    /** Messages to this peer dropped because they timed out before they could be sent */
+    public final Gauge<Long> droppedExpired;
+    /** Messages to this peer dropped because its connection queue was over otc_queue_limit_in_mb */
+    public final Gauge<Long> droppedConnectionQueueFull;
+    /** Messages to this peer dropped because the queues of all connections were over otc_global_queue_limit_in_mb */
+    public final Gauge<Long> droppedGlobalQueueFull;
 
     /** Number of timeouts for specific IP */
     public final Meter timeouts;
@@ -138,9 +176,63 @@ public class ConnectionMetrics
                 return connectionPool.gossipMessages.getDroppedMessages();
             }
         });
+        mutationMessagePendingTasks = Metrics.register(factory.createMetricName("MutationMessagePendingTasks"), new Gauge<Integer>()
+        {
+            public Integer getValue()
+            {
+                return connectionPool.mutationMessages == null ? 0 : connectionPool.mutationMessages.getPendingMessages();
+            }
+        });
+        mutationMessageCompletedTasks = Metrics.register(factory.createMetricName("MutationMessageCompletedTasks"), new Gauge<Long>()
+        {
+            public Long getValue()
+            {
+                return connectionPool.mutationMessages == null ? 0L : connectionPool.mutationMessages.getCompletedMesssages();
+            }
+        });
+        mutationMessageDroppedTasks = Metrics.register(factory.createMetricName("MutationMessageDroppedTasks"), new Gauge<Long>()
+        {
+            public Long getValue()
+            {
+                return connectionPool.mutationMessages == null ? 0L : connectionPool.mutationMessages.getDroppedMessages();
+            }
+        });
+        pendingBytes = Metrics.register(factory.createMetricName("PendingBytes"), new Gauge<Long>()
+        {
+            public Long getValue()
+            {
+                return connectionPool.getPendingBytes();
+            }
+        });
+        droppedExpired = Metrics.register(factory.createMetricName("DroppedExpired"), new Gauge<Long>()
+        {
+            public Long getValue()
+            {
+                return connectionPool.getDroppedMessages(OutboundTcpConnection.DropReason.EXPIRED);
+            }
+        });
+        droppedConnectionQueueFull = Metrics.register(factory.createMetricName("DroppedConnectionQueueFull"), new Gauge<Long>()
+        {
+            public Long getValue()
+            {
+                return connectionPool.getDroppedMessages(OutboundTcpConnection.DropReason.CONNECTION_QUEUE_FULL);
+            }
+        });
+        droppedGlobalQueueFull = Metrics.register(factory.createMetricName("DroppedGlobalQueueFull"), new Gauge<Long>()
+        {
+            public Long getValue()
+            {
+                return connectionPool.getDroppedMessages(OutboundTcpConnection.DropReason.GLOBAL_QUEUE_FULL);
+            }
+        });
         timeouts = Metrics.meter(factory.createMetricName("Timeouts"));
     }
 
+    public static Timer queueLatency(TrafficClass trafficClass)
+    {
+        return queueLatencies.get(trafficClass);
+    }
+
     public void release()
     {
         Metrics.remove(factory.createMetricName("LargeMessagePendingTasks"));
@@ -152,6 +244,13 @@ public class ConnectionMetrics
         Metrics.remove(factory.createMetricName("GossipMessagePendingTasks"));
         Metrics.remove(factory.createMetricName("GossipMessageCompletedTasks"));
         Metrics.remove(factory.createMetricName("GossipMessageDroppedTasks"));
+        Metrics.remove(factory.createMetricName("MutationMessagePendingTasks"));
+        Metrics.remove(factory.createMetricName("MutationMessageCompletedTasks"));
+        Metrics.remove(factory.createMetricName("MutationMessageDroppedTasks"));
+        Metrics.remove(factory.createMetricName("PendingBytes"));
+        Metrics.remove(factory.createMetricName("DroppedExpired"));
+        Metrics.remove(factory.createMetricName("DroppedConnectionQueueFull"));
+        Metrics.remove(factory.createMetricName("DroppedGlobalQueueFull"));
         Metrics.remove(factory.createMetricName("Timeouts"));
     }
 }
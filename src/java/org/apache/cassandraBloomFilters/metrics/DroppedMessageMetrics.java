@@ -38,11 +38,15 @@ public class DroppedMessageMetrics
     /** The cross node dropped latency */
     public final Timer crossNodeDroppedLatency;
 
+    /** Number of requests sent with this verb that got no response before their timeout */
+    public final Meter timeouts;
+
     public DroppedMessageMetrics(MessagingService.Verb verb)
     {
         MetricNameFactory factory = new DefaultNameFactory("DroppedMessage", verb.toString());
         dropped = Metrics.meter(factory.createMetricName("Dropped"));
         internalDroppedLatency = Metrics.timer(factory.createMetricName("InternalDroppedLatency"));
         crossNodeDroppedLatency = Metrics.timer(factory.createMetricName("CrossNodeDroppedLatency"));
+        timeouts = Metrics.meter(factory.createMetricName("Timeouts"));
     }
 }
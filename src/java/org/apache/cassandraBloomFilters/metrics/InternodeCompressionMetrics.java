@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+
+import org.apache.cassandraBloomFilters.net.MessagingService;
+
+import static org.apache.cassandraBloomFilters.metrics.CassandraMetricsRegistry.Metrics;
+
+/**
+ * Metrics for the compression of internode messages by verb, on connections compressing frame by frame. The bytes and
+ * time of a frame are attributed to the verbs of its messages in proportion of their size.
+ */
+public class InternodeCompressionMetrics
+{
+    /** Bytes of messages compression was attempted on */
+    public final Counter uncompressedBytes;
+    /** What these bytes were compressed to, or their own size where compressing didn't make them smaller */
+    public final Counter compressedBytes;
+    /** Bytes of messages sent without attempting compression, because their frame was small or incompressible */
+    public final Counter skippedBytes;
+    /** Time spent compressing, in microseconds */
+    public final Counter compressionMicros;
+    /** Compressed size over uncompressed size of the messages compression was attempted on */
+    public final Gauge<Double> compressionRatio;
+
+    public InternodeCompressionMetrics(MessagingService.Verb verb)
+    {
+        MetricNameFactory factory = new DefaultNameFactory("InternodeCompression", verb.toString());
+        uncompressedBytes = Metrics.counter(factory.createMetricName("UncompressedBytes"));
+        compressedBytes = Metrics.counter(factory.createMetricName("CompressedBytes"));
+        skippedBytes = Metrics.counter(factory.createMetricName("SkippedBytes"));
+        compressionMicros = Metrics.counter(factory.createMetricName("CompressionMicros"));
+        compressionRatio = Metrics.register(factory.createMetricName("CompressionRatio"), new Gauge<Double>()
+        {
+            public Double getValue()
+            {
+                return ratio();
+            }
+        });
+    }
+
+    /**
+     * @return the compression ratio so far, 1 if compression was never attempted
+     */
+    public double ratio()
+    {
+        long uncompressed = uncompressedBytes.getCount();
+        return uncompressed == 0 ? 1 : (double) compressedBytes.getCount() / uncompressed;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.metrics;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.codahale.metrics.Timer;
+
+import org.apache.cassandraBloomFilters.net.MessagingService;
+
+import static org.apache.cassandraBloomFilters.metrics.CassandraMetricsRegistry.Metrics;
+
+/**
+ * Where the time of internode messages goes, segment by segment, for each verb and for each peer, when
+ * internode_latency_tracing is enabled. The metrics of a verb or peer are created when it first records a latency.
+ */
+public class MessageLatencyMetrics
+{
+    public static final String TYPE_NAME = "MessageLatency";
+
+    public enum Segment
+    {
+        /** from a message being queued for a peer to it being written to the connection, on the sender */
+        OUTBOUND_QUEUE("OutboundQueue"),
+        /** from a message being written by the sender to it being read by the receiver, assuming synchronized clocks */
+        NETWORK("Network"),
+        /** from a message being read to its verb handler starting, on the receiver */
+        INBOUND_QUEUE("InboundQueue"),
+        /** the time spent in the verb handler, on the receiver */
+        EXECUTION("Execution"),
+        /** from a request being sent to its response being processed, on the sender of the request */
+        ROUND_TRIP("RoundTrip");
+
+        public final String metricName;
+
+        Segment(String metricName)
+        {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final AtomicReferenceArray<MessageLatencyMetrics> byVerb = new AtomicReferenceArray<>(MessagingService.Verb.values().length);
+    private static final ConcurrentMap<InetAddress, MessageLatencyMetrics> byPeer = new ConcurrentHashMap<>();
+
+    private final MetricNameFactory factory;
+    private final Timer[] latencies = new Timer[Segment.values().length];
+
+    private MessageLatencyMetrics(String scope)
+    {
+        factory = new DefaultNameFactory(TYPE_NAME, scope);
+        for (Segment segment : Segment.values())
+            latencies[segment.ordinal()] = Metrics.timer(factory.createMetricName(segment.metricName));
+    }
+
+    public Timer latency(Segment segment)
+    {
+        return latencies[segment.ordinal()];
+    }
+
+    /**
+     * Records the latency of a segment of a message of the provided verb, exchanged with the provided peer.
+     */
+    public static void update(Segment segment, MessagingService.Verb verb, InetAddress peer, long nanos)
+    {
+        nanos = Math.max(0, nanos); // the network segment can be negative if clocks are not quite synchronized
+        forVerb(verb).latency(segment).update(nanos, TimeUnit.NANOSECONDS);
+        forPeer(peer).latency(segment).update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static MessageLatencyMetrics forVerb(MessagingService.Verb verb)
+    {
+        MessageLatencyMetrics metrics = byVerb.get(verb.ordinal());
+        if (metrics == null)
+        {
+            synchronized (byVerb)
+            {
+                metrics = byVerb.get(verb.ordinal());
+                if (metrics == null)
+                {
+                    metrics = new MessageLatencyMetrics(verb.toString());
+                    byVerb.set(verb.ordinal(), metrics);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    public static MessageLatencyMetrics forPeer(InetAddress peer)
+    {
+        MessageLatencyMetrics metrics = byPeer.get(peer);
+        if (metrics == null)
+            // ipv6 addresses will contain colons, which are invalid in a JMX ObjectName
+            metrics = byPeer.computeIfAbsent(peer, p -> new MessageLatencyMetrics(p.getHostAddress().replace(':', '.')));
+        return metrics;
+    }
+
+    /**
+     * Removes the metrics of a peer that left the cluster.
+     */
+    public static void releasePeer(InetAddress peer)
+    {
+        MessageLatencyMetrics metrics = byPeer.remove(peer);
+        if (metrics != null)
+        {
+            for (Segment segment : Segment.values())
+                Metrics.remove(metrics.factory.createMetricName(segment.metricName));
+        }
+    }
+}
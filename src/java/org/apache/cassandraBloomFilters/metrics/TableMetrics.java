@@ -151,6 +151,15 @@ public class TableMetrics
     private static final MetricNameFactory globalAliasFactory = new AllTableMetricNameFactory("ColumnFamily");
 
     public final Counter speculativeRetries;
+    /** Speculative retries that were not made because the speculative read retry budget was exhausted */
+    public final Counter speculativeRetriesThrottled;
+
+    /** Bytes of sstables that compaction moved to another level by changing their metadata, rather than rewriting them */
+    public final Counter compactionBytesRewriteAvoided;
+    /** Estimated number of tombstones purged by tombstone sweeps */
+    public final Counter tombstoneSweepTombstonesPurged;
+    /** Bytes by which tombstone sweeps reduced the size of the sstables they rewrote */
+    public final Counter tombstoneSweepBytesReclaimed;
 
     public final static LatencyMetrics globalReadLatency = new LatencyMetrics(globalFactory, globalAliasFactory, "Read");
     public final static LatencyMetrics globalWriteLatency = new LatencyMetrics(globalFactory, globalAliasFactory, "Write");
@@ -568,6 +577,10 @@ public class TableMetrics
             }
         });
         speculativeRetries = createTableCounter("SpeculativeRetries");
+        speculativeRetriesThrottled = createTableCounter("SpeculativeRetriesThrottled");
+        compactionBytesRewriteAvoided = createTableCounter("CompactionBytesRewriteAvoided");
+        tombstoneSweepTombstonesPurged = createTableCounter("TombstoneSweepTombstonesPurged");
+        tombstoneSweepBytesReclaimed = createTableCounter("TombstoneSweepBytesReclaimed");
         keyCacheHitRate = Metrics.register(factory.createMetricName("KeyCacheHitRate"),
                                            aliasFactory.createMetricName("KeyCacheHitRate"),
                                            new RatioGauge()
@@ -0,0 +1,400 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.apache.cassandraBloomFilters.config.Config;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.io.util.DataOutputPlus;
+import org.apache.cassandraBloomFilters.metrics.ConnectionMetrics;
+import org.apache.cassandraBloomFilters.metrics.MessageLatencyMetrics;
+import org.apache.cassandraBloomFilters.tracing.TraceState;
+import org.apache.cassandraBloomFilters.tracing.Tracing;
+import org.apache.cassandraBloomFilters.utils.CoalescingStrategies.Coalescable;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+import org.apache.cassandraBloomFilters.utils.UUIDGen;
+import org.apache.cassandraBloomFilters.utils.concurrent.IntrusiveMpscQueue;
+
+/**
+ * What the outbound message connections of both internode transports share: the backlog of queued messages and
+ * its byte limits, the drop and completion counters, and the handshake and wire format.
+ *
+ * Messages are enqueued from any thread; taking them off the backlog and writing them is left to the implementation:
+ * OutboundTcpConnection does it from a thread of its own, NioOutboundTcpConnection from a shared event loop.
+ */
+public abstract class AbstractOutboundTcpConnection
+{
+    /*
+     * Enabled/disable TCP_NODELAY for intradc connections. Defaults to enabled.
+     */
+    private static final String INTRADC_TCP_NODELAY_PROPERTY = Config.PROPERTY_PREFIX + "otc_intradc_tcp_nodelay";
+    static final boolean INTRADC_TCP_NODELAY = Boolean.valueOf(System.getProperty(INTRADC_TCP_NODELAY_PROPERTY, "true"));
+
+    static final MessageOut<?> CLOSE_SENTINEL = new MessageOut<>(MessagingService.Verb.INTERNAL_RESPONSE);
+    // the id of the close sentinel enqueued by closeSocket(), up to which the backlog is discarded
+    private static final int CLEAR_BACKLOG_ID = -2;
+    volatile boolean isStopped = false;
+
+    static final int OPEN_RETRY_DELAY = 100; // ms between retries
+    public static final int WAIT_FOR_VERSION_MAX_TIME = 5000;
+
+    static final int LZ4_HASH_SEED = 0x9747b28c;
+
+    /**
+     * Why a message was dropped rather than sent.
+     */
+    public enum DropReason
+    {
+        /** the message timed out before it could be sent */
+        EXPIRED,
+        /** the backlog of the connection was over otc_queue_limit_in_mb */
+        CONNECTION_QUEUE_FULL,
+        /** the backlogs of all connections together were over otc_global_queue_limit_in_mb */
+        GLOBAL_QUEUE_FULL
+    }
+
+    // the serialized size of the messages queued on all connections
+    private static final AtomicLong globalPendingBytes = new AtomicLong();
+
+    // only ever consumed by a single thread: the connection's own, or its event loop for the nio transport
+    final IntrusiveMpscQueue<QueuedMessage> backlog = new IntrusiveMpscQueue<>();
+
+    private static final AtomicLongFieldUpdater<AbstractOutboundTcpConnection> pendingBytesUpdater = AtomicLongFieldUpdater.newUpdater(AbstractOutboundTcpConnection.class, "pendingBytes");
+    private volatile long pendingBytes;
+    // the number of closeSocket() sentinels enqueued but not yet consumed: while there are any, the consumer
+    // discards the messages it dequeues
+    private static final AtomicIntegerFieldUpdater<AbstractOutboundTcpConnection> pendingClearsUpdater = AtomicIntegerFieldUpdater.newUpdater(AbstractOutboundTcpConnection.class, "pendingClears");
+    private volatile int pendingClears;
+
+    final OutboundTcpConnectionPool poolReference;
+
+    // set when the connection compresses frame by frame
+    CompressedFrameOutputStream compressedFrames;
+    volatile long completed;
+    final AtomicLong dropped = new AtomicLong();
+    private final AtomicLongArray droppedByReason = new AtomicLongArray(DropReason.values().length);
+    volatile int targetVersion;
+
+    AbstractOutboundTcpConnection(OutboundTcpConnectionPool pool)
+    {
+        this.poolReference = pool;
+
+        // We want to use the most precise version we know because while there is version detection on connect(),
+        // the target version might be accessed by the pool (in getConnection()) before we actually connect (as we
+        // connect when the first message is submitted). Note however that the only case where we'll connect
+        // without knowing the true version of a node is if that node is a seed (otherwise, we can't know a node
+        // unless it has been gossiped to us or it has connected to us and in both case this sets the version) and
+        // in that case we won't rely on that targetVersion before we're actually connected and so the version
+        // detection in connect() will do its job.
+        targetVersion = MessagingService.instance().getVersion(pool.endPoint());
+    }
+
+    /**
+     * Starts sending the enqueued messages.
+     */
+    abstract void startProcessing();
+
+    static boolean isLocalDC(InetAddress targetHost)
+    {
+        String remoteDC = DatabaseDescriptor.getEndpointSnitch().getDatacenter(targetHost);
+        String localDC = DatabaseDescriptor.getEndpointSnitch().getDatacenter(FBUtilities.getBroadcastAddress());
+        return remoteDC.equals(localDC);
+    }
+
+    public void enqueue(MessageOut<?> message, int id)
+    {
+        add(new QueuedMessage(message, id, targetVersion));
+    }
+
+    /**
+     * Adds the message to the backlog unless it is droppable and would take the queued bytes of this connection,
+     * or of all connections, over their limit. A single message is always accepted on an empty connection, however
+     * large, so that it can't be starved by its own size.
+     */
+    void add(QueuedMessage qm)
+    {
+        qm.refPayload();
+        long size = qm.size;
+        long connectionBytes = pendingBytesUpdater.addAndGet(this, size);
+        long globalBytes = globalPendingBytes.addAndGet(size);
+        if (qm.droppable && connectionBytes > size)
+        {
+            DropReason reason = connectionBytes > DatabaseDescriptor.getOtcQueueLimit() ? DropReason.CONNECTION_QUEUE_FULL
+                              : globalBytes > DatabaseDescriptor.getOtcGlobalQueueLimit() ? DropReason.GLOBAL_QUEUE_FULL
+                              : null;
+            if (reason != null)
+            {
+                release(size);
+                qm.releasePayload();
+                recordDrop(reason);
+                return;
+            }
+        }
+        backlog.add(qm);
+    }
+
+    private void release(long size)
+    {
+        pendingBytesUpdater.addAndGet(this, -size);
+        globalPendingBytes.addAndGet(-size);
+    }
+
+    void recordDrop(DropReason reason)
+    {
+        dropped.incrementAndGet();
+        droppedByReason.incrementAndGet(reason.ordinal());
+    }
+
+    /**
+     * Must be called by the consumer for each message it takes off the backlog, before acting on it.
+     *
+     * @return true if the message is to be discarded, because the backlog was cleared after it was enqueued
+     */
+    boolean dequeued(QueuedMessage qm)
+    {
+        release(qm.size);
+        if (qm.message == CLOSE_SENTINEL)
+        {
+            if (qm.id == CLEAR_BACKLOG_ID)
+                pendingClearsUpdater.decrementAndGet(this);
+            return false;
+        }
+        return isClearingBacklog();
+    }
+
+    boolean isClearingBacklog()
+    {
+        return pendingClears > 0;
+    }
+
+    /**
+     * Discards everything queued so far; only to be called by the consumer.
+     */
+    void clearBacklog()
+    {
+        QueuedMessage qm;
+        while ((qm = backlog.poll()) != null)
+        {
+            dequeued(qm);
+            qm.releasePayload();
+        }
+    }
+
+    void closeSocket(boolean destroyThread)
+    {
+        // only the consumer can take messages off the backlog, so have it discard everything up to the sentinel
+        pendingClearsUpdater.incrementAndGet(this);
+        isStopped = destroyThread; // Exit loop to stop the thread
+        enqueue(CLOSE_SENTINEL, CLEAR_BACKLOG_ID);
+    }
+
+    void softCloseSocket()
+    {
+        enqueue(CLOSE_SENTINEL, -1);
+    }
+
+    public int getTargetVersion()
+    {
+        return targetVersion;
+    }
+
+    public long getCompletedMesssages()
+    {
+        return completed;
+    }
+
+    public int getPendingMessages()
+    {
+        return backlog.size();
+    }
+
+    public long getDroppedMessages()
+    {
+        return dropped.get();
+    }
+
+    public long getDroppedMessages(DropReason reason)
+    {
+        return droppedByReason.get(reason.ordinal());
+    }
+
+    /**
+     * @return the serialized size of the messages queued on this connection
+     */
+    public long getPendingBytes()
+    {
+        return pendingBytes;
+    }
+
+    /**
+     * @return the serialized size of the messages queued on all connections
+     */
+    public static long getGlobalPendingBytes()
+    {
+        return globalPendingBytes.get();
+    }
+
+    boolean shouldCompressConnection()
+    {
+        // assumes version >= 1.2
+        return DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.all
+               || (DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.dc && !isLocalDC(poolReference.endPoint()));
+    }
+
+    void traceSend(QueuedMessage qm)
+    {
+        byte[] sessionBytes = qm.message.parameters.get(Tracing.TRACE_HEADER);
+        if (sessionBytes != null)
+        {
+            UUID sessionId = UUIDGen.getUUID(ByteBuffer.wrap(sessionBytes));
+            TraceState state = Tracing.instance.get(sessionId);
+            String message = String.format("Sending %s message to %s", qm.message.verb, poolReference.endPoint());
+            // session may have already finished; see CASSANDRA-5668
+            if (state == null)
+            {
+                byte[] traceTypeBytes = qm.message.parameters.get(Tracing.TRACE_TYPE);
+                Tracing.TraceType traceType = traceTypeBytes == null ? Tracing.TraceType.QUERY : Tracing.TraceType.deserialize(traceTypeBytes[0]);
+                Tracing.instance.trace(ByteBuffer.wrap(sessionBytes), message, traceType.getTTL());
+            }
+            else
+            {
+                state.trace(message);
+                if (qm.message.verb == MessagingService.Verb.REQUEST_RESPONSE)
+                    Tracing.instance.doneWithNonLocalSession(state);
+            }
+        }
+    }
+
+    static void recordQueueLatency(QueuedMessage qm, InetAddress peer)
+    {
+        long latency = System.nanoTime() - qm.timestampNanos;
+        TrafficClass trafficClass = DatabaseDescriptor.getTrafficClass(qm.message.verb);
+        ConnectionMetrics.queueLatency(trafficClass).update(latency, TimeUnit.NANOSECONDS);
+        if (DatabaseDescriptor.internodeLatencyTracing())
+            MessageLatencyMetrics.update(MessageLatencyMetrics.Segment.OUTBOUND_QUEUE, qm.message.verb, peer, latency);
+    }
+
+    static void writeInternal(DataOutputPlus out, MessageOut<?> message, int id, long timestamp, int targetVersion) throws IOException
+    {
+        out.writeInt(MessagingService.PROTOCOL_MAGIC);
+
+        if (targetVersion < MessagingService.VERSION_20)
+            out.writeUTF(String.valueOf(id));
+        else
+            out.writeInt(id);
+
+        // int cast cuts off the high-order half of the timestamp, which we can assume remains
+        // the same between now and when the recipient reconstructs it.
+        out.writeInt((int) timestamp);
+        message.serialize(out, targetVersion);
+    }
+
+    static void writeHeader(DataOutput out, int version, boolean compressionEnabled) throws IOException
+    {
+        // 2 bits: unused.  used to be "serializer type," which was always Binary
+        // 1 bit: compression
+        // 1 bit: streaming mode
+        // 3 bits: unused
+        // 8 bits: version
+        // 15 bits: unused
+        int header = 0;
+        if (compressionEnabled)
+            header |= 4;
+        header |= (version << 8);
+        out.writeInt(header);
+    }
+
+    /** messages that have not been retried yet */
+    static class QueuedMessage extends IntrusiveMpscQueue.Node implements Coalescable
+    {
+        final MessageOut<?> message;
+        final int id;
+        final long timestampNanos;
+        final boolean droppable;
+        // the bytes the message is accounted for in the backlog: its serialized size, plus the frame header
+        final int size;
+        // the reference this message holds to the shared serialized payload of its MessageOut, if any
+        private SerializedPayload payload;
+
+        QueuedMessage(MessageOut<?> message, int id, int version)
+        {
+            this.message = message;
+            this.id = id;
+            this.timestampNanos = System.nanoTime();
+            this.droppable = MessagingService.DROPPABLE_VERBS.contains(message.verb);
+            this.size = 12 + message.serializedSize(version);
+        }
+
+        /**
+         * Keeps the serialized payload of the message, if it has one, until releasePayload() is called once the
+         * message is written or dropped.
+         */
+        void refPayload()
+        {
+            payload = message.refSerializedPayload();
+        }
+
+        void releasePayload()
+        {
+            if (payload != null)
+            {
+                payload.release();
+                payload = null;
+            }
+        }
+
+        /** don't drop a non-droppable message just because it's timestamp is expired */
+        boolean isTimedOut()
+        {
+            return droppable && timestampNanos < System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(message.getTimeout());
+        }
+
+        boolean shouldRetry()
+        {
+            return !droppable;
+        }
+
+        public long timestampNanos()
+        {
+            return timestampNanos;
+        }
+    }
+
+    static class RetriedQueuedMessage extends QueuedMessage
+    {
+        RetriedQueuedMessage(QueuedMessage msg, int version)
+        {
+            super(msg.message, msg.id, version);
+        }
+
+        boolean shouldRetry()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandraBloomFilters.concurrent.DebuggableScheduledThreadPoolExecutor;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+
+/**
+ * The callbacks of in-flight requests, by message id, expired with a hashed timer wheel.
+ *
+ * Callbacks are spread over shards by message id, so that registering and removing them rarely contend. Each shard
+ * keeps its callbacks in a wheel of {@link #WHEEL_SIZE} buckets, each covering one tick of {@link #TICK_NANOS}, the
+ * callbacks of a bucket being linked together. Registering or removing a callback is therefore O(1), and each tick
+ * only looks at the callbacks of the bucket that tick falls in, rather than at every callback in flight, which
+ * includes those registered with a timeout longer than a turn of the wheel, until their turn comes.
+ */
+final class CallbackMap
+{
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("cassandra.callback_expiry_tick_ms", 10));
+    static final int WHEEL_SIZE = 512;
+    private static final int SHARDS = 1 << (32 - Integer.numberOfLeadingZeros(4 * FBUtilities.getAvailableProcessors() - 1));
+
+    // if we use more CallbackMaps we may want to add multiple threads to this executor
+    private static final ScheduledExecutorService service = new DebuggableScheduledThreadPoolExecutor("CALLBACK-REAPER");
+
+    static final class Entry
+    {
+        final int id;
+        final CallbackInfo info;
+        final MessagingService.Verb verb;
+        final long timeout; // in milliseconds
+        final long createdAt; // System.nanoTime()
+        private final long deadlineTick;
+
+        // the wheel bucket and its links, guarded by the shard
+        private int bucket;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(int id, CallbackInfo info, MessagingService.Verb verb, long timeout, long createdAt)
+        {
+            this.id = id;
+            this.info = info;
+            this.verb = verb;
+            this.timeout = timeout;
+            this.createdAt = createdAt;
+            this.deadlineTick = tickCeil(createdAt + TimeUnit.MILLISECONDS.toNanos(timeout));
+        }
+    }
+
+    private static final class Shard
+    {
+        final Map<Integer, Entry> entries = new HashMap<>();
+        final Entry[] wheel = new Entry[WHEEL_SIZE];
+        long currentTick; // the last tick expired
+
+        Shard(long currentTick)
+        {
+            this.currentTick = currentTick;
+        }
+
+        void link(Entry entry)
+        {
+            // an entry already due goes in the next bucket to be expired
+            entry.bucket = bucket(Math.max(entry.deadlineTick, currentTick + 1));
+            entry.next = wheel[entry.bucket];
+            if (entry.next != null)
+                entry.next.prev = entry;
+            wheel[entry.bucket] = entry;
+        }
+
+        void unlink(Entry entry)
+        {
+            if (entry.prev == null)
+                wheel[entry.bucket] = entry.next;
+            else
+                entry.prev.next = entry.next;
+            if (entry.next != null)
+                entry.next.prev = entry.prev;
+            entry.prev = entry.next = null;
+        }
+
+        void clear()
+        {
+            entries.clear();
+            for (int i = 0; i < wheel.length; i++)
+                wheel[i] = null;
+        }
+    }
+
+    private static final long epoch = System.nanoTime();
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final Consumer<List<Entry>> onExpired;
+
+    /**
+     * @param onExpired invoked, from the reaper thread, with the entries that have just expired
+     */
+    CallbackMap(Consumer<List<Entry>> onExpired)
+    {
+        this.onExpired = onExpired;
+        long now = tick(System.nanoTime());
+        for (int i = 0; i < shards.length; i++)
+            shards[i] = new Shard(now);
+        service.scheduleWithFixedDelay(() -> expire(System.nanoTime()), TICK_NANOS, TICK_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    private static long tick(long nanos)
+    {
+        return (nanos - epoch) / TICK_NANOS;
+    }
+
+    private static long tickCeil(long nanos)
+    {
+        return (nanos - epoch + TICK_NANOS - 1) / TICK_NANOS;
+    }
+
+    private static int bucket(long tick)
+    {
+        return (int) (tick & (WHEEL_SIZE - 1));
+    }
+
+    private Shard shard(int id)
+    {
+        return shards[id & (SHARDS - 1)];
+    }
+
+    /**
+     * @param timeout the time after which the callback expires, in milliseconds
+     * @return the callback previously registered under this id, if any
+     */
+    CallbackInfo put(int id, CallbackInfo info, long timeout, MessagingService.Verb verb)
+    {
+        assert info != null;
+        Entry entry = new Entry(id, info, verb, timeout, System.nanoTime());
+        Shard shard = shard(id);
+        Entry previous;
+        synchronized (shard)
+        {
+            previous = shard.entries.put(id, entry);
+            if (previous != null)
+                shard.unlink(previous);
+            shard.link(entry);
+        }
+        return previous == null ? null : previous.info;
+    }
+
+    CallbackInfo get(int id)
+    {
+        Shard shard = shard(id);
+        Entry entry;
+        synchronized (shard)
+        {
+            entry = shard.entries.get(id);
+        }
+        return entry == null ? null : entry.info;
+    }
+
+    CallbackInfo remove(int id)
+    {
+        Entry entry = removeEntry(id);
+        return entry == null ? null : entry.info;
+    }
+
+    Entry removeEntry(int id)
+    {
+        Shard shard = shard(id);
+        Entry entry;
+        synchronized (shard)
+        {
+            entry = shard.entries.remove(id);
+            if (entry != null)
+                shard.unlink(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @return System.nanoTime() when the callback was registered, or 0 if there is none with that id.
+     */
+    long getAge(int id)
+    {
+        Shard shard = shard(id);
+        Entry entry;
+        synchronized (shard)
+        {
+            entry = shard.entries.get(id);
+        }
+        return entry == null ? 0 : entry.createdAt;
+    }
+
+    int size()
+    {
+        int size = 0;
+        for (Shard shard : shards)
+        {
+            synchronized (shard)
+            {
+                size += shard.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes the callbacks due at the provided time, and hands them to the expiry hook.
+     */
+    @VisibleForTesting
+    void expire(long nowNanos)
+    {
+        long now = tick(nowNanos);
+        List<Entry> expired = null;
+        for (Shard shard : shards)
+        {
+            synchronized (shard)
+            {
+                // if we fell behind by more than a turn of the wheel, a single turn still visits every bucket
+                long from = Math.max(shard.currentTick + 1, now - WHEEL_SIZE + 1);
+                for (long tick = from; tick <= now; tick++)
+                {
+                    Entry entry = shard.wheel[bucket(tick)];
+                    while (entry != null)
+                    {
+                        Entry next = entry.next;
+                        if (entry.deadlineTick <= now)
+                        {
+                            shard.unlink(entry);
+                            shard.entries.remove(entry.id);
+                            if (expired == null)
+                                expired = new ArrayList<>();
+                            expired.add(entry);
+                        }
+                        entry = next;
+                    }
+                }
+                shard.currentTick = Math.max(shard.currentTick, now);
+            }
+        }
+
+        if (expired != null)
+            onExpired.accept(expired);
+    }
+
+    void reset()
+    {
+        for (Shard shard : shards)
+        {
+            synchronized (shard)
+            {
+                shard.clear();
+            }
+        }
+    }
+
+    void shutdownBlocking()
+    {
+        service.shutdown();
+        try
+        {
+            service.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.Checksum;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+
+import org.apache.cassandraBloomFilters.metrics.InternodeCompressionMetrics;
+
+/**
+ * Compresses what is written to a connection frame by frame rather than as a stream. Whatever is written between two
+ * flushes, that is a batch of messages, makes a frame, up to MAX_FRAME_SIZE. A frame is only compressed if it is at
+ * least internode_compression_min_frame_size_in_bytes long and holds a message of a verb that compresses well, and
+ * is sent as is if compressing doesn't make it smaller.
+ *
+ * Frames are written in the block format of LZ4BlockOutputStream, uncompressed frames being raw blocks, so they are
+ * read by the LZ4BlockInputStream or LZ4BlockDecoder of the other end like any compressed connection.
+ *
+ * The sizes and compression time of each frame are attributed to the verbs of its messages, in proportion to their
+ * bytes, in {@link InternodeCompressionMetrics}; their compression ratio decides which verbs compress well.
+ */
+class CompressedFrameOutputStream extends OutputStream
+{
+    static final int MAX_FRAME_SIZE = 1 << 16;
+
+    private static final byte[] MAGIC = new byte[] { 'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k' };
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + 4 + 4;
+    private static final int COMPRESSION_METHOD_RAW = 0x10;
+    private static final int COMPRESSION_METHOD_LZ4 = 0x20;
+    // the block size is 1 << (10 + level)
+    private static final int COMPRESSION_LEVEL = 6;
+
+    // verbs whose messages don't get smaller than this ratio are not worth compressing...
+    private static final double MAX_USEFUL_RATIO = 0.9;
+    // ...once that many of their bytes have been compressed...
+    private static final long MIN_SAMPLED_BYTES = 1 << 20;
+    // ...and only one frame in that many of them is compressed, to follow changes of their ratio
+    private static final int RESAMPLE_INTERVAL = 64;
+
+    private static final MessagingService.Verb[] VERBS = MessagingService.Verb.values();
+    private static final AtomicReferenceArray<InternodeCompressionMetrics> metrics = new AtomicReferenceArray<>(VERBS.length);
+
+    private final OutputStream out;
+    private final int minCompressedFrameSize;
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final Checksum checksum = XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum();
+
+    // the header of a raw frame, then the frame
+    private final byte[] buffer = new byte[HEADER_LENGTH + MAX_FRAME_SIZE];
+    private final byte[] compressed;
+    private int position;
+
+    // the bytes of each verb in the current frame
+    private final int[] verbBytes = new int[VERBS.length];
+    private MessagingService.Verb currentVerb;
+    private int currentVerbStart;
+    private int skippedFrames;
+
+    CompressedFrameOutputStream(OutputStream out, int minCompressedFrameSize)
+    {
+        this.out = out;
+        this.minCompressedFrameSize = minCompressedFrameSize;
+        this.compressed = new byte[HEADER_LENGTH + compressor.maxCompressedLength(MAX_FRAME_SIZE)];
+    }
+
+    static InternodeCompressionMetrics metrics(MessagingService.Verb verb)
+    {
+        InternodeCompressionMetrics verbMetrics = metrics.get(verb.ordinal());
+        if (verbMetrics == null)
+        {
+            synchronized (metrics)
+            {
+                verbMetrics = metrics.get(verb.ordinal());
+                if (verbMetrics == null)
+                {
+                    verbMetrics = new InternodeCompressionMetrics(verb);
+                    metrics.set(verb.ordinal(), verbMetrics);
+                }
+            }
+        }
+        return verbMetrics;
+    }
+
+    /**
+     * Tells the verb of the message whose bytes follow.
+     */
+    void startMessage(MessagingService.Verb verb)
+    {
+        endVerb();
+        currentVerb = verb;
+    }
+
+    private void endVerb()
+    {
+        if (currentVerb != null)
+            verbBytes[currentVerb.ordinal()] += position - currentVerbStart;
+        currentVerbStart = position;
+    }
+
+    public void write(int b) throws IOException
+    {
+        if (position == MAX_FRAME_SIZE)
+            writeFrame();
+        buffer[HEADER_LENGTH + position++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            if (position == MAX_FRAME_SIZE)
+                writeFrame();
+            int length = Math.min(len, MAX_FRAME_SIZE - position);
+            System.arraycopy(b, off, buffer, HEADER_LENGTH + position, length);
+            position += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    public void flush() throws IOException
+    {
+        if (position > 0)
+            writeFrame();
+        out.flush();
+    }
+
+    public void close() throws IOException
+    {
+        flush();
+        out.close();
+    }
+
+    private void writeFrame() throws IOException
+    {
+        endVerb();
+        checksum.reset();
+        checksum.update(buffer, HEADER_LENGTH, position);
+        int check = (int) checksum.getValue();
+
+        if (position >= minCompressedFrameSize && isWorthCompressing())
+        {
+            long start = System.nanoTime();
+            int compressedLength = compressor.compress(buffer, HEADER_LENGTH, position, compressed, HEADER_LENGTH);
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            recordCompression(Math.min(compressedLength, position), micros);
+            if (compressedLength < position)
+            {
+                writeHeader(compressed, COMPRESSION_METHOD_LZ4, compressedLength, position, check);
+                out.write(compressed, 0, HEADER_LENGTH + compressedLength);
+                endFrame();
+                return;
+            }
+        }
+        else
+        {
+            recordSkipped();
+        }
+
+        writeHeader(buffer, COMPRESSION_METHOD_RAW, position, position, check);
+        out.write(buffer, 0, HEADER_LENGTH + position);
+        endFrame();
+    }
+
+    private void endFrame()
+    {
+        position = 0;
+        currentVerbStart = 0;
+        for (int i = 0; i < verbBytes.length; i++)
+            verbBytes[i] = 0;
+    }
+
+    private boolean isWorthCompressing()
+    {
+        boolean hasVerbs = false;
+        for (int i = 0; i < verbBytes.length; i++)
+        {
+            if (verbBytes[i] == 0)
+                continue;
+            hasVerbs = true;
+            InternodeCompressionMetrics verbMetrics = metrics(VERBS[i]);
+            if (verbMetrics.uncompressedBytes.getCount() < MIN_SAMPLED_BYTES || verbMetrics.ratio() < MAX_USEFUL_RATIO)
+                return true;
+        }
+        if (!hasVerbs || ++skippedFrames >= RESAMPLE_INTERVAL)
+        {
+            skippedFrames = 0;
+            return true;
+        }
+        return false;
+    }
+
+    private void recordCompression(int compressedLength, long micros)
+    {
+        for (int i = 0; i < verbBytes.length; i++)
+        {
+            int bytes = verbBytes[i];
+            if (bytes == 0)
+                continue;
+            InternodeCompressionMetrics verbMetrics = metrics(VERBS[i]);
+            verbMetrics.uncompressedBytes.inc(bytes);
+            verbMetrics.compressedBytes.inc((long) compressedLength * bytes / position);
+            verbMetrics.compressionMicros.inc(micros * bytes / position);
+        }
+    }
+
+    private void recordSkipped()
+    {
+        for (int i = 0; i < verbBytes.length; i++)
+        {
+            if (verbBytes[i] > 0)
+                metrics(VERBS[i]).skippedBytes.inc(verbBytes[i]);
+        }
+    }
+
+    private static void writeHeader(byte[] dest, int method, int compressedLength, int length, int check)
+    {
+        System.arraycopy(MAGIC, 0, dest, 0, MAGIC.length);
+        dest[MAGIC.length] = (byte) (method | COMPRESSION_LEVEL);
+        writeIntLE(dest, MAGIC.length + 1, compressedLength);
+        writeIntLE(dest, MAGIC.length + 5, length);
+        writeIntLE(dest, MAGIC.length + 9, check);
+    }
+
+    private static void writeIntLE(byte[] dest, int offset, int value)
+    {
+        dest[offset] = (byte) value;
+        dest[offset + 1] = (byte) (value >>> 8);
+        dest[offset + 2] = (byte) (value >>> 16);
+        dest[offset + 3] = (byte) (value >>> 24);
+    }
+}
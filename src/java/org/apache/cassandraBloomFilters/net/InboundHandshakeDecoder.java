@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The receiving side of the version handshake of a message connection on the nio internode transport, the
+ * counterpart of the beginning of IncomingTcpConnection#receiveMessages().
+ *
+ * Once the peer has sent its version and address, this replaces itself with the decoders of the messages; any bytes
+ * already received are passed on to them.
+ */
+class InboundHandshakeDecoder extends ByteToMessageDecoder
+{
+    private static final Logger logger = LoggerFactory.getLogger(InboundHandshakeDecoder.class);
+
+    private final int version;
+    private final boolean compressed;
+
+    InboundHandshakeDecoder(int version, boolean compressed)
+    {
+        this.version = version;
+        this.compressed = compressed;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception
+    {
+        // if this version is < the MS version the other node is trying
+        // to connect with, the other node will disconnect
+        ctx.writeAndFlush(ctx.alloc().buffer(4).writeInt(MessagingService.current_version));
+        super.channelActive(ctx);
+    }
+
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
+    {
+        // max version (int), then the address: its length (byte) and bytes, see CompactEndpointSerializationHelper
+        if (in.readableBytes() < 5 || in.readableBytes() < 5 + in.getUnsignedByte(in.readerIndex() + 4))
+            return;
+
+        int maxVersion = in.readInt();
+        byte[] address = new byte[in.readUnsignedByte()];
+        in.readBytes(address);
+        InetAddress from = InetAddress.getByAddress(address);
+
+        // record the (true) version of the endpoint
+        MessagingService.instance().setVersion(from, maxVersion);
+        logger.trace("Set version for {} to {} (will use {})", from, maxVersion, MessagingService.instance().getVersion(from));
+
+        ctx.pipeline().addAfter(ctx.name(), "messageDecoder", new MessageInDecoder(version));
+        if (compressed)
+        {
+            logger.trace("Upgrading incoming connection to be compressed");
+            ctx.pipeline().addAfter(ctx.name(), "lz4Decoder", new LZ4BlockDecoder());
+        }
+        ctx.pipeline().remove(this);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+    {
+        logger.trace("Error during handshake of {}; closing", ctx.channel(), cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandraBloomFilters.concurrent.NamedThreadFactory;
+import org.apache.cassandraBloomFilters.config.Config;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+
+/**
+ * The event loops of the nio internode transport (see internode_transport in cassandra.yaml).
+ *
+ * Outbound message connections are created on, and inbound ones handed over to, a small fixed set of non-blocking
+ * event loops instead of each being served by its own thread. Each connection stays on one event loop for its
+ * whole lifetime, so its state needs no further synchronization.
+ *
+ * The version handshake is unchanged, so nodes using either transport talk to each other. Encrypted connections
+ * and streaming keep using the blocking transport.
+ */
+public final class InternodeEventLoops
+{
+    private static final Logger logger = LoggerFactory.getLogger(InternodeEventLoops.class);
+
+    // how long the event loops must have been idle to shut down, and the most we wait for them to
+    private static final long SHUTDOWN_QUIET_PERIOD_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private static volatile EventLoopGroup group;
+
+    private InternodeEventLoops()
+    {
+    }
+
+    public static boolean isEnabled()
+    {
+        return DatabaseDescriptor.getInternodeTransport() == Config.InternodeTransport.nio;
+    }
+
+    /**
+     * Whether messages to the given endpoint are sent from the event loops.
+     */
+    static boolean useForOutbound(InetAddress endpoint)
+    {
+        return isEnabled() && !OutboundTcpConnectionPool.isEncryptedChannel(endpoint);
+    }
+
+    /**
+     * Whether an inbound message connection accepted on the given socket channel (null if the socket has none, as
+     * with SSL) with the given protocol version can be handed over to the event loops.
+     */
+    static boolean canAccept(SocketChannel channel, int version)
+    {
+        // older nodes compress with snappy, whose stream format we don't decode incrementally; newer ones are
+        // ignored by the blocking connection
+        return isEnabled()
+               && channel != null
+               && version >= MessagingService.VERSION_21
+               && version <= MessagingService.current_version;
+    }
+
+    static EventLoop next()
+    {
+        return group().next();
+    }
+
+    private static EventLoopGroup group()
+    {
+        if (group == null)
+        {
+            synchronized (InternodeEventLoops.class)
+            {
+                if (group == null)
+                {
+                    int threads = DatabaseDescriptor.getInternodeTransportThreads();
+                    logger.info("Starting {} internode messaging event loops", threads);
+                    group = new NioEventLoopGroup(threads, new NamedThreadFactory("MessagingService-EventLoop"));
+                }
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Shuts the event loops down, closing the connections they serve, once what was written to them so far is sent
+     * (within a timeout). Called by MessagingService#shutdown(); new event loops are only started if connections
+     * are created afterwards.
+     */
+    static void shutdown()
+    {
+        EventLoopGroup stopping;
+        synchronized (InternodeEventLoops.class)
+        {
+            stopping = group;
+            group = null;
+        }
+        if (stopping == null)
+            return;
+
+        logger.info("Stopping internode messaging event loops");
+        if (!stopping.shutdownGracefully(SHUTDOWN_QUIET_PERIOD_MILLIS, SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                     .awaitUninterruptibly(2 * SHUTDOWN_TIMEOUT_MILLIS))
+            logger.warn("Internode messaging event loops did not stop within {}ms", 2 * SHUTDOWN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Hands an accepted message connection, whose magic and header have already been read, over to an event loop.
+     * The connection is added to, and removed from once closed, the given group of inbound connections.
+     */
+    @SuppressWarnings("resource")
+    static void accept(SocketChannel socketChannel, int version, boolean compressed, Set<Closeable> connections)
+    {
+        Channel channel = new NioSocketChannel(socketChannel);
+        if (DatabaseDescriptor.getInternodeRecvBufferSize() != null)
+            channel.config().setOption(ChannelOption.SO_RCVBUF, DatabaseDescriptor.getInternodeRecvBufferSize());
+        channel.pipeline().addLast("handshake", new InboundHandshakeDecoder(version, compressed));
+
+        Closeable connection = channel::close;
+        connections.add(connection);
+        channel.closeFuture().addListener(future -> connections.remove(connection));
+        group().register(channel);
+    }
+}
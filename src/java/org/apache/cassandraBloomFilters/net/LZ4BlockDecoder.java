@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.Checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Decompresses the stream written by the LZ4BlockOutputStream of a compressed outbound connection (see
+ * OutboundTcpConnection#connect()) without blocking, block by block, as LZ4BlockInputStream does for the blocking
+ * transport.
+ *
+ * Each block has a 21 byte header: the magic, a token holding the compression method and level, the compressed
+ * and decompressed lengths and the checksum of the decompressed bytes, the last three little-endian.
+ */
+class LZ4BlockDecoder extends ByteToMessageDecoder
+{
+    private static final byte[] MAGIC = new byte[] { 'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k' };
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + 4 + 4;
+    private static final int COMPRESSION_METHOD_RAW = 0x10;
+    private static final int COMPRESSION_METHOD_LZ4 = 0x20;
+    private static final int COMPRESSION_LEVEL_BASE = 10;
+
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+    private final Checksum checksum = XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum();
+    private byte[] compressed = new byte[0];
+    private byte[] decompressed = new byte[0];
+
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
+    {
+        if (in.readableBytes() < HEADER_LENGTH)
+            return;
+
+        int offset = in.readerIndex();
+        for (int i = 0; i < MAGIC.length; i++)
+        {
+            if (in.getByte(offset + i) != MAGIC[i])
+                throw new IOException("Stream is corrupted");
+        }
+        int token = in.getUnsignedByte(offset + MAGIC.length);
+        int method = token & 0xF0;
+        int maxLength = 1 << (COMPRESSION_LEVEL_BASE + (token & 0x0F));
+        int compressedLength = Integer.reverseBytes(in.getInt(offset + MAGIC.length + 1));
+        int decompressedLength = Integer.reverseBytes(in.getInt(offset + MAGIC.length + 5));
+        int check = Integer.reverseBytes(in.getInt(offset + MAGIC.length + 9));
+
+        if ((method != COMPRESSION_METHOD_RAW && method != COMPRESSION_METHOD_LZ4)
+            || decompressedLength > maxLength || decompressedLength < 0 || compressedLength < 0
+            || (decompressedLength == 0) != (compressedLength == 0)
+            || (method == COMPRESSION_METHOD_RAW && decompressedLength != compressedLength))
+            throw new IOException("Stream is corrupted");
+
+        if (in.readableBytes() < HEADER_LENGTH + compressedLength)
+            return;
+        in.skipBytes(HEADER_LENGTH);
+
+        // the end of the stream; the connection is about to be closed
+        if (decompressedLength == 0)
+            return;
+
+        if (decompressed.length < decompressedLength)
+            decompressed = new byte[decompressedLength];
+        if (method == COMPRESSION_METHOD_RAW)
+        {
+            in.readBytes(decompressed, 0, decompressedLength);
+        }
+        else
+        {
+            if (compressed.length < compressedLength)
+                compressed = new byte[compressedLength];
+            in.readBytes(compressed, 0, compressedLength);
+            try
+            {
+                if (decompressor.decompress(compressed, 0, decompressed, 0, decompressedLength) != compressedLength)
+                    throw new IOException("Stream is corrupted");
+            }
+            catch (LZ4Exception e)
+            {
+                throw new IOException("Stream is corrupted", e);
+            }
+        }
+
+        checksum.reset();
+        checksum.update(decompressed, 0, decompressedLength);
+        if ((int) checksum.getValue() != check)
+            throw new IOException("Stream is corrupted");
+
+        out.add(ctx.alloc().buffer(decompressedLength).writeBytes(decompressed, 0, decompressedLength));
+    }
+}
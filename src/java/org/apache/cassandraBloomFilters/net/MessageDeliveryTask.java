@@ -23,9 +23,11 @@ import java.util.EnumSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.db.filter.TombstoneOverwhelmingException;
 import org.apache.cassandraBloomFilters.gms.Gossiper;
 import org.apache.cassandraBloomFilters.index.IndexNotAvailableException;
+import org.apache.cassandraBloomFilters.metrics.MessageLatencyMetrics;
 
 public class MessageDeliveryTask implements Runnable
 {
@@ -33,6 +35,7 @@ public class MessageDeliveryTask implements Runnable
 
     private final MessageIn message;
     private final int id;
+    private final long enqueueTime = System.nanoTime();
 
     public MessageDeliveryTask(MessageIn message, int id)
     {
@@ -59,9 +62,16 @@ public class MessageDeliveryTask implements Runnable
             return;
         }
 
+        boolean traceLatency = DatabaseDescriptor.internodeLatencyTracing();
+        long start = System.nanoTime();
+        if (traceLatency)
+            MessageLatencyMetrics.update(MessageLatencyMetrics.Segment.INBOUND_QUEUE, verb, message.from, start - enqueueTime);
+
         try
         {
             verbHandler.doVerb(message, id);
+            if (traceLatency)
+                MessageLatencyMetrics.update(MessageLatencyMetrics.Segment.EXECUTION, verb, message.from, System.nanoTime() - start);
         }
         catch (IOException ioe)
         {
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.IOException;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandraBloomFilters.db.UnknownColumnFamilyException;
+import org.apache.cassandraBloomFilters.io.util.DataInputBuffer;
+
+/**
+ * Decodes the messages of an inbound connection of the nio internode transport and hands them to MessagingService,
+ * as IncomingTcpConnection does from its own thread.
+ *
+ * Messages are not length-prefixed, so the size of each one is worked out from its header; it is only deserialized
+ * once it has been received in full.
+ */
+class MessageInDecoder extends ByteToMessageDecoder
+{
+    private static final Logger logger = LoggerFactory.getLogger(MessageInDecoder.class);
+
+    private final int version;
+
+    MessageInDecoder(int version)
+    {
+        this.version = version;
+    }
+
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
+    {
+        int size = messageSize(in, in.readerIndex());
+        if (size < 0)
+            return;
+
+        MessagingService.validateMagic(in.getInt(in.readerIndex()));
+        DataInputBuffer input = new DataInputBuffer(in.nioBuffer(in.readerIndex() + 4, size - 4), false);
+        int id = input.readInt();
+        MessageIn<?> message = MessageIn.read(input, version, id, MessageIn.readTimestamp(input));
+        in.skipBytes(size);
+
+        // null if the callback expired
+        if (message != null)
+            MessagingService.instance().receive(message, id);
+    }
+
+    /**
+     * Returns the size of the message starting at the given offset, including the magic, id and timestamp, or -1 if
+     * its header hasn't been received in full yet, or if the message itself hasn't.
+     *
+     * See MessageIn#read() for the layout.
+     */
+    static int messageSize(ByteBuf in, int offset)
+    {
+        int end = in.writerIndex();
+        // magic, id and timestamp, then the length of the sender's address
+        int position = offset + 12;
+        if (position + 1 > end)
+            return -1;
+        // the address, then the verb and the number of parameters
+        position += 1 + in.getUnsignedByte(position) + 4;
+        if (position + 4 > end)
+            return -1;
+        int parameterCount = in.getInt(position);
+        position += 4;
+        for (int i = 0; i < parameterCount; i++)
+        {
+            // the key, written with writeUTF
+            if (position + 2 > end)
+                return -1;
+            position += 2 + in.getUnsignedShort(position);
+            // the value, prefixed by its length
+            if (position + 4 > end)
+                return -1;
+            position += 4 + in.getInt(position);
+        }
+        if (position + 4 > end)
+            return -1;
+        position += 4 + in.getInt(position);
+        return position > end ? -1 : position - offset;
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+    {
+        Throwable t = cause instanceof DecoderException && cause.getCause() != null ? cause.getCause() : cause;
+        if (t instanceof UnknownColumnFamilyException)
+            logger.warn("UnknownColumnFamilyException reading from socket; closing", t);
+        else if (t instanceof IOException)
+            logger.trace("IOException reading from socket; closing", t);
+        else
+            logger.error("Error reading from {}; closing", ctx.channel(), t);
+        ctx.close();
+    }
+}
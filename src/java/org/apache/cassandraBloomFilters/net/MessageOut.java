@@ -44,6 +44,8 @@ public class MessageOut<T>
     public final Map<String, byte[]> parameters;
     private long payloadSize = -1;
     private int payloadSizeVersion = -1;
+    // the payload serialized once for all the nodes it's sent to, if any
+    private final SerializedPayload serializedPayload;
 
     // we do support messages that just consist of a verb
     public MessageOut(MessagingService.Verb verb)
@@ -68,19 +70,61 @@ public class MessageOut<T>
 
     @VisibleForTesting
     public MessageOut(InetAddress from, MessagingService.Verb verb, T payload, IVersionedSerializer<T> serializer, Map<String, byte[]> parameters)
+    {
+        this(from, verb, payload, serializer, parameters, null);
+    }
+
+    private MessageOut(InetAddress from, MessagingService.Verb verb, T payload, IVersionedSerializer<T> serializer, Map<String, byte[]> parameters, SerializedPayload serializedPayload)
     {
         this.from = from;
         this.verb = verb;
         this.payload = payload;
         this.serializer = serializer;
         this.parameters = parameters;
+        this.serializedPayload = serializedPayload;
     }
 
     public MessageOut<T> withParameter(String key, byte[] value)
     {
         ImmutableMap.Builder<String, byte[]> builder = ImmutableMap.builder();
         builder.putAll(parameters).put(key, value);
-        return new MessageOut<T>(verb, payload, serializer, builder.build());
+        return new MessageOut<T>(FBUtilities.getBroadcastAddress(), verb, payload, serializer, builder.build(), serializedPayload);
+    }
+
+    /**
+     * Returns a copy of this message whose payload is serialized now, once, into a pooled buffer that is then copied
+     * as is to every connection using that version, instead of serializing the payload for each of them. Worth it for
+     * messages sent to several nodes.
+     *
+     * The caller must call {@link #releaseSerializedPayload()} on the returned message once it has sent it to all
+     * its destinations.
+     */
+    public MessageOut<T> withSerializedPayload(int version)
+    {
+        if (payload == null || serializedPayload != null)
+            return this;
+        SerializedPayload serialized = SerializedPayload.serialize(payload, serializer, version, (int) payloadSize(version));
+        MessageOut<T> message = new MessageOut<T>(from, verb, payload, serializer, parameters, serialized);
+        message.payloadSize = payloadSize;
+        message.payloadSizeVersion = payloadSizeVersion;
+        return message;
+    }
+
+    /**
+     * Releases the reference to the serialized payload taken by {@link #withSerializedPayload(int)}.
+     */
+    public void releaseSerializedPayload()
+    {
+        if (serializedPayload != null)
+            serializedPayload.release();
+    }
+
+    /**
+     * @return the serialized payload, with a reference taken for the caller, or null if there is none to share
+     */
+    SerializedPayload refSerializedPayload()
+    {
+        return serializedPayload != null && serializedPayload.ref() ? serializedPayload : null;
     }
 
     public Stage getStage()
@@ -100,27 +144,67 @@ public class MessageOut<T>
         return sbuf.toString();
     }
 
+    /**
+     * Serializes this message as sent to a connection, with the time it is sent at if internode_latency_tracing
+     * is enabled.
+     */
     public void serialize(DataOutputPlus out, int version) throws IOException
+    {
+        serialize(out, version, DatabaseDescriptor.internodeLatencyTracing() ? FBUtilities.timestampMicros() : 0);
+    }
+
+    /**
+     * @param sentAtMicros if positive, the time the message is sent at, added to its parameters as SENT_AT_PARAM
+     */
+    void serialize(DataOutputPlus out, int version, long sentAtMicros) throws IOException
     {
         CompactEndpointSerializationHelper.serialize(from, out);
 
         out.writeInt(verb.ordinal());
-        out.writeInt(parameters.size());
+        out.writeInt(sentAtMicros > 0 ? parameters.size() + 1 : parameters.size());
         for (Map.Entry<String, byte[]> entry : parameters.entrySet())
         {
             out.writeUTF(entry.getKey());
             out.writeInt(entry.getValue().length);
             out.write(entry.getValue());
         }
+        if (sentAtMicros > 0)
+        {
+            out.writeUTF(MessagingService.SENT_AT_PARAM);
+            out.writeInt(TypeSizes.sizeof(sentAtMicros));
+            out.writeLong(sentAtMicros);
+        }
 
         long longSize = payloadSize(version);
         assert longSize <= Integer.MAX_VALUE; // larger values are supported in sstables but not messages
         out.writeInt((int) longSize);
-        if (payload != null)
+        SerializedPayload serialized = serializedPayload != null && serializedPayload.version == version ? refSerializedPayload() : null;
+        if (serialized != null)
+        {
+            try
+            {
+                out.write(serialized.buffer());
+            }
+            finally
+            {
+                serialized.release();
+            }
+        }
+        else if (payload != null)
+        {
             serializer.serialize(payload, out, version);
+        }
     }
 
+    /**
+     * @return the size of this message as written by {@link #serialize(DataOutputPlus, int)}
+     */
     public int serializedSize(int version)
+    {
+        return serializedSize(version, DatabaseDescriptor.internodeLatencyTracing());
+    }
+
+    int serializedSize(int version, boolean withSentAt)
     {
         int size = CompactEndpointSerializationHelper.serializedSize(from);
 
@@ -132,6 +216,12 @@ public class MessageOut<T>
             size += TypeSizes.sizeof(entry.getValue().length);
             size += entry.getValue().length;
         }
+        if (withSentAt)
+        {
+            size += TypeSizes.sizeof(MessagingService.SENT_AT_PARAM);
+            size += TypeSizes.sizeof(TypeSizes.sizeof(0L));
+            size += TypeSizes.sizeof(0L);
+        }
 
         long longSize = payloadSize(version);
         assert longSize <= Integer.MAX_VALUE; // larger values are supported in sstables but not messages
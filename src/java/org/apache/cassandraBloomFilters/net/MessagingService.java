@@ -20,6 +20,7 @@ package org.apache.cassandraBloomFilters.net;
 import java.io.*;
 import java.lang.management.ManagementFactory;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ServerSocketChannel;
@@ -34,7 +35,6 @@ import javax.management.ObjectName;
 import javax.net.ssl.SSLHandshakeException;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
@@ -67,6 +67,7 @@ import org.apache.cassandraBloomFilters.io.util.FileUtils;
 import org.apache.cassandraBloomFilters.locator.ILatencySubscriber;
 import org.apache.cassandraBloomFilters.metrics.ConnectionMetrics;
 import org.apache.cassandraBloomFilters.metrics.DroppedMessageMetrics;
+import org.apache.cassandraBloomFilters.metrics.MessageLatencyMetrics;
 import org.apache.cassandraBloomFilters.repair.messages.RepairMessage;
 import org.apache.cassandraBloomFilters.security.SSLFactory;
 import org.apache.cassandraBloomFilters.service.*;
@@ -92,6 +93,8 @@ public final class MessagingService implements MessagingServiceMBean
     public static final String FAILURE_CALLBACK_PARAM = "CAL_BAC";
     public static final byte[] ONE_BYTE = new byte[1];
     public static final String FAILURE_RESPONSE_PARAM = "FAIL";
+    // the time, in microseconds, the sender wrote the message at; only with internode_latency_tracing
+    public static final String SENT_AT_PARAM = "SENT_AT";
 
     /**
      * we preface every message with this number so the recipient can validate the sender is sane
@@ -142,7 +145,7 @@ public final class MessagingService implements MessagingServiceMBean
         PAXOS_COMMIT,
         @Deprecated PAGED_RANGE,
         // remember to add new verbs at the end, since we serialize by ordinal
-        UNUSED_1,
+        MUTATION_BATCH, // was UNUSED_1
         UNUSED_2,
         UNUSED_3,
         UNUSED_4,
@@ -162,6 +165,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.PAXOS_COMMIT, Stage.MUTATION);
         put(Verb.BATCH_STORE, Stage.MUTATION);
         put(Verb.BATCH_REMOVE, Stage.MUTATION);
+        put(Verb.MUTATION_BATCH, Stage.MUTATION);
 
         put(Verb.READ, Stage.READ);
         put(Verb.RANGE_SLICE, Stage.READ);
@@ -194,7 +198,6 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.SNAPSHOT, Stage.MISC);
         put(Verb.ECHO, Stage.GOSSIP);
 
-        put(Verb.UNUSED_1, Stage.INTERNAL_RESPONSE);
         put(Verb.UNUSED_2, Stage.INTERNAL_RESPONSE);
         put(Verb.UNUSED_3, Stage.INTERNAL_RESPONSE);
     }};
@@ -235,6 +238,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.HINT, HintMessage.serializer);
         put(Verb.BATCH_STORE, Batch.serializer);
         put(Verb.BATCH_REMOVE, UUIDSerializer.serializer);
+        put(Verb.MUTATION_BATCH, MutationBatch.serializer);
     }};
 
     /**
@@ -262,10 +266,11 @@ public final class MessagingService implements MessagingServiceMBean
 
         put(Verb.BATCH_STORE, WriteResponse.serializer);
         put(Verb.BATCH_REMOVE, WriteResponse.serializer);
+        put(Verb.MUTATION_BATCH, MutationBatch.Response.serializer);
     }};
 
     /* This records all the results mapped by message Id */
-    private final ExpiringMap<Integer, CallbackInfo> callbacks;
+    private final CallbackMap callbacks;
 
     /**
      * a placeholder class that means "deserialize using the callback." We can't implement this without
@@ -317,7 +322,8 @@ public final class MessagingService implements MessagingServiceMBean
                                                                    Verb.PAGED_RANGE,
                                                                    Verb.REQUEST_RESPONSE,
                                                                    Verb.BATCH_STORE,
-                                                                   Verb.BATCH_REMOVE);
+                                                                   Verb.BATCH_REMOVE,
+                                                                   Verb.MUTATION_BATCH);
 
 
     private static final class DroppedMessages
@@ -394,35 +400,7 @@ public final class MessagingService implements MessagingServiceMBean
             ScheduledExecutors.scheduledTasks.scheduleWithFixedDelay(logDropped, LOG_DROPPED_INTERVAL_IN_MS, LOG_DROPPED_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
         }
 
-        Function<Pair<Integer, ExpiringMap.CacheableObject<CallbackInfo>>, ?> timeoutReporter = new Function<Pair<Integer, ExpiringMap.CacheableObject<CallbackInfo>>, Object>()
-        {
-            public Object apply(Pair<Integer, ExpiringMap.CacheableObject<CallbackInfo>> pair)
-            {
-                final CallbackInfo expiredCallbackInfo = pair.right.value;
-                maybeAddLatency(expiredCallbackInfo.callback, expiredCallbackInfo.target, pair.right.timeout);
-                ConnectionMetrics.totalTimeouts.mark();
-                getConnectionPool(expiredCallbackInfo.target).incrementTimeout();
-                if (expiredCallbackInfo.isFailureCallback())
-                {
-                    StageManager.getStage(Stage.INTERNAL_RESPONSE).submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            ((IAsyncCallbackWithFailure)expiredCallbackInfo.callback).onFailure(expiredCallbackInfo.target);
-                        }
-                    });
-                }
-
-                if (expiredCallbackInfo.shouldHint())
-                {
-                    Mutation mutation = ((WriteCallbackInfo) expiredCallbackInfo).mutation();
-                    return StorageProxy.submitHint(mutation, expiredCallbackInfo.target, null);
-                }
-
-                return null;
-            }
-        };
-
-        callbacks = new ExpiringMap<>(DatabaseDescriptor.getMinRpcTimeout(), timeoutReporter);
+        callbacks = new CallbackMap(this::callbacksExpired);
 
         if (!testOnly)
         {
@@ -438,6 +416,54 @@ public final class MessagingService implements MessagingServiceMBean
         }
     }
 
+    private void callbacksExpired(List<CallbackMap.Entry> expired)
+    {
+        List<CallbackInfo> failureCallbacks = null;
+        for (CallbackMap.Entry entry : expired)
+        {
+            CallbackInfo expiredCallbackInfo = entry.info;
+            maybeAddLatency(expiredCallbackInfo.callback, expiredCallbackInfo.target, entry.timeout);
+            ConnectionMetrics.totalTimeouts.mark();
+            getConnectionPool(expiredCallbackInfo.target).incrementTimeout();
+            DroppedMessages droppedMessages = entry.verb == null ? null : droppedMessagesMap.get(entry.verb);
+            if (droppedMessages != null)
+                droppedMessages.metrics.timeouts.mark();
+
+            if (expiredCallbackInfo.isFailureCallback())
+            {
+                if (failureCallbacks == null)
+                    failureCallbacks = new ArrayList<>();
+                failureCallbacks.add(expiredCallbackInfo);
+            }
+
+            if (expiredCallbackInfo.shouldHint())
+            {
+                Mutation mutation = ((WriteCallbackInfo) expiredCallbackInfo).mutation();
+                StorageProxy.submitHint(mutation, expiredCallbackInfo.target, null);
+            }
+        }
+
+        if (failureCallbacks == null)
+            return;
+
+        // notify all the callbacks that expired together with a single task
+        List<CallbackInfo> toNotify = failureCallbacks;
+        StageManager.getStage(Stage.INTERNAL_RESPONSE).execute(() -> {
+            for (CallbackInfo info : toNotify)
+            {
+                try
+                {
+                    ((IAsyncCallbackWithFailure) info.callback).onFailure(info.target);
+                }
+                catch (Throwable t)
+                {
+                    JVMStabilityInspector.inspectThrowable(t);
+                    logger.error("Failed to notify {} of a timeout from {}", info.callback, info.target, t);
+                }
+            }
+        });
+    }
+
     /**
      * Track latency information for the dynamic snitch
      *
@@ -585,6 +611,7 @@ public final class MessagingService implements MessagingServiceMBean
             return;
         cp.close();
         connectionManagers.remove(to);
+        MessageLatencyMetrics.releasePeer(to);
     }
 
     public OutboundTcpConnectionPool getConnectionPool(InetAddress to)
@@ -604,7 +631,7 @@ public final class MessagingService implements MessagingServiceMBean
     }
 
 
-    public OutboundTcpConnection getConnection(InetAddress to, MessageOut msg)
+    public AbstractOutboundTcpConnection getConnection(InetAddress to, MessageOut msg)
     {
         return getConnectionPool(to).getConnection(msg);
     }
@@ -638,7 +665,7 @@ public final class MessagingService implements MessagingServiceMBean
     {
         assert message.verb != Verb.MUTATION; // mutations need to call the overload with a ConsistencyLevel
         int messageId = nextId();
-        CallbackInfo previous = callbacks.put(messageId, new CallbackInfo(to, cb, callbackDeserializers.get(message.verb), failureCallback), timeout);
+        CallbackInfo previous = callbacks.put(messageId, new CallbackInfo(to, cb, callbackDeserializers.get(message.verb), failureCallback), timeout, message.verb);
         assert previous == null : String.format("Callback already exists for id %d! (%s)", messageId, previous);
         return messageId;
     }
@@ -662,7 +689,8 @@ public final class MessagingService implements MessagingServiceMBean
                                                                     callbackDeserializers.get(message.verb),
                                                                     consistencyLevel,
                                                                     allowHints),
-                                                                    timeout);
+                                              timeout,
+                                              message.verb);
         assert previous == null : String.format("Callback already exists for id %d! (%s)", messageId, previous);
         return messageId;
     }
@@ -755,7 +783,7 @@ public final class MessagingService implements MessagingServiceMBean
                 return;
 
         // get pooled connection (really, connection queue)
-        OutboundTcpConnection connection = getConnection(to, message);
+        AbstractOutboundTcpConnection connection = getConnection(to, message);
 
         // write it
         connection.enqueue(message, id);
@@ -808,10 +836,15 @@ public final class MessagingService implements MessagingServiceMBean
         {
             throw new IOError(e);
         }
+
+        InternodeEventLoops.shutdown();
     }
 
     public void receive(MessageIn message, int id)
     {
+        if (DatabaseDescriptor.internodeLatencyTracing())
+            recordNetworkLatency(message);
+
         TraceState state = Tracing.instance.initializeFromMessage(message);
         if (state != null)
             state.trace("{} message received from {}", message.verb, message.from);
@@ -828,9 +861,19 @@ public final class MessagingService implements MessagingServiceMBean
         stage.execute(runnable, ExecutorLocals.create(state));
     }
 
+    private static void recordNetworkLatency(MessageIn<?> message)
+    {
+        byte[] sentAt = message.parameters.get(SENT_AT_PARAM);
+        if (sentAt == null)
+            return;
+
+        long latencyMicros = FBUtilities.timestampMicros() - ByteBuffer.wrap(sentAt).getLong();
+        MessageLatencyMetrics.update(MessageLatencyMetrics.Segment.NETWORK, message.verb, message.from, TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+    }
+
     public void setCallbackForTests(int messageId, CallbackInfo callback)
     {
-        callbacks.put(messageId, callback);
+        callbacks.put(messageId, callback, DatabaseDescriptor.getMinRpcTimeout(), null);
     }
 
     public CallbackInfo getRegisteredCallback(int messageId)
@@ -843,6 +886,14 @@ public final class MessagingService implements MessagingServiceMBean
         return callbacks.remove(messageId);
     }
 
+    /**
+     * @return the callback together with the verb and time it was registered with, or null if there is none
+     */
+    CallbackMap.Entry removeRegisteredCallbackEntry(int messageId)
+    {
+        return callbacks.removeEntry(messageId);
+    }
+
     /**
      * @return System.nanoTime() when callback was created.
      */
@@ -1102,9 +1153,16 @@ public final class MessagingService implements MessagingServiceMBean
                     logger.trace("Connection version {} from {}", version, socket.getInetAddress());
                     socket.setSoTimeout(0);
 
+                    boolean compressed = MessagingService.getBits(header, 2, 1) == 1;
+                    if (!isStream && InternodeEventLoops.canAccept(socket.getChannel(), version))
+                    {
+                        InternodeEventLoops.accept(socket.getChannel(), version, compressed, connections);
+                        continue;
+                    }
+
                     Thread thread = isStream
                                   ? new IncomingStreamingConnection(version, socket, connections)
-                                  : new IncomingTcpConnection(version, MessagingService.getBits(header, 2, 1) == 1, socket, connections);
+                                  : new IncomingTcpConnection(version, compressed, socket, connections);
                     thread.start();
                     connections.add((Closeable) thread);
                 }
@@ -1244,6 +1302,39 @@ public final class MessagingService implements MessagingServiceMBean
         return droppedTasks;
     }
 
+    public Map<String, Integer> getMutationMessagePendingTasks()
+    {
+        Map<String, Integer> pendingTasks = new HashMap<String, Integer>(connectionManagers.size());
+        for (Map.Entry<InetAddress, OutboundTcpConnectionPool> entry : connectionManagers.entrySet())
+        {
+            if (entry.getValue().mutationMessages != null)
+                pendingTasks.put(entry.getKey().getHostAddress(), entry.getValue().mutationMessages.getPendingMessages());
+        }
+        return pendingTasks;
+    }
+
+    public Map<String, Long> getMutationMessageCompletedTasks()
+    {
+        Map<String, Long> completedTasks = new HashMap<String, Long>(connectionManagers.size());
+        for (Map.Entry<InetAddress, OutboundTcpConnectionPool> entry : connectionManagers.entrySet())
+        {
+            if (entry.getValue().mutationMessages != null)
+                completedTasks.put(entry.getKey().getHostAddress(), entry.getValue().mutationMessages.getCompletedMesssages());
+        }
+        return completedTasks;
+    }
+
+    public Map<String, Long> getMutationMessageDroppedTasks()
+    {
+        Map<String, Long> droppedTasks = new HashMap<String, Long>(connectionManagers.size());
+        for (Map.Entry<InetAddress, OutboundTcpConnectionPool> entry : connectionManagers.entrySet())
+        {
+            if (entry.getValue().mutationMessages != null)
+                droppedTasks.put(entry.getKey().getHostAddress(), entry.getValue().mutationMessages.getDroppedMessages());
+        }
+        return droppedTasks;
+    }
+
     public Map<String, Integer> getDroppedMessages()
     {
         Map<String, Integer> map = new HashMap<>(droppedMessagesMap.size());
@@ -73,6 +73,21 @@ public interface MessagingServiceMBean
      */
     public Map<String, Long> getGossipMessageDroppedTasks();
 
+    /**
+     * Pending tasks for mutation message TCP Connections, empty without internode_traffic_classes
+     */
+    public Map<String, Integer> getMutationMessagePendingTasks();
+
+    /**
+     * Completed tasks for mutation message TCP Connections, empty without internode_traffic_classes
+     */
+    public Map<String, Long> getMutationMessageCompletedTasks();
+
+    /**
+     * Dropped tasks for mutation message TCP Connections, empty without internode_traffic_classes
+     */
+    public Map<String, Long> getMutationMessageDroppedTasks();
+
     /**
      * dropped message counts for server lifetime
      */
@@ -0,0 +1,545 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Checksum;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xerial.snappy.SnappyOutputStream;
+
+import org.apache.cassandraBloomFilters.config.Config;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.io.util.BufferedDataOutputStreamPlus;
+import org.apache.cassandraBloomFilters.io.util.DataOutputStreamPlus;
+import org.apache.cassandraBloomFilters.io.util.WrappedDataOutputStreamPlus;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+import org.apache.cassandraBloomFilters.utils.JVMStabilityInspector;
+import org.apache.cassandraBloomFilters.utils.NanoTimeToCurrentTimeMillis;
+
+/**
+ * An outbound connection of the nio internode transport: the same backlog, handshake and wire format as
+ * OutboundTcpConnection, but written from an event loop shared with other connections instead of from a thread of
+ * its own.
+ *
+ * Enqueuing a message schedules a drain of the backlog on the event loop, which serializes the queued messages into a
+ * single buffer and writes it once. There is no coalescing window: messages enqueued while a drain is pending or the
+ * socket is not writable are simply written together. While the socket is not writable the backlog is left alone, so
+ * messages to a slow peer time out in the queue, within its byte limits, rather than piling up in socket buffers.
+ */
+class NioOutboundTcpConnection extends AbstractOutboundTcpConnection
+{
+    private static final Logger logger = LoggerFactory.getLogger(NioOutboundTcpConnection.class);
+
+    // messages written per drain, so that a busy connection doesn't hold up the others of its event loop
+    private static final int MAX_MESSAGES_PER_DRAIN = 128;
+    private static final int BUFFER_SIZE = 1024 * 64;
+
+    private final EventLoop eventLoop;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drainTask = this::drain;
+
+    // the fields below are only accessed from the event loop
+    private final OutputSink sink = new OutputSink();
+    private Channel channel;
+    private boolean connected;
+    private boolean reconnectScheduled;
+    private boolean terminated;
+    private long connectStartNanos;
+    private DataOutputStreamPlus out;
+    // the messages to retry if the write of the buffer they are in fails
+    private List<QueuedMessage> unflushedRetries;
+
+    NioOutboundTcpConnection(OutboundTcpConnectionPool pool)
+    {
+        super(pool);
+        eventLoop = InternodeEventLoops.next();
+    }
+
+    @Override
+    void startProcessing()
+    {
+        // nothing to do: messages are written from the event loop as they are enqueued
+    }
+
+    @Override
+    public void enqueue(MessageOut<?> message, int id)
+    {
+        super.enqueue(message, id);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain()
+    {
+        if (!drainScheduled.compareAndSet(false, true))
+            return;
+
+        try
+        {
+            eventLoop.execute(drainTask);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // the event loops are shut down with MessagingService: what is enqueued from then on is never sent
+            logger.trace("Not sending to {}, messaging service is shut down", poolReference.endPoint());
+        }
+    }
+
+    private void drain()
+    {
+        // reset first, so that messages enqueued from now on schedule another drain
+        drainScheduled.set(false);
+        if (terminated)
+        {
+            clearBacklog();
+            return;
+        }
+
+        int written = 0;
+        QueuedMessage qm;
+        while ((qm = backlog.peek()) != null)
+        {
+            if (qm.message == CLOSE_SENTINEL)
+            {
+                consume(qm);
+                flush();
+                closeAfterPendingWrites();
+                if (isStopped)
+                {
+                    terminated = true;
+                    clearBacklog();
+                    return;
+                }
+                continue;
+            }
+
+            if (isClearingBacklog())
+            {
+                consume(qm);
+                qm.releasePayload();
+                continue;
+            }
+
+            if (qm.isTimedOut())
+            {
+                consume(qm);
+                qm.releasePayload();
+                recordDrop(DropReason.EXPIRED);
+                continue;
+            }
+
+            if (!connected)
+            {
+                // draining resumes once the handshake is done
+                if (channel == null && !reconnectScheduled)
+                    connect();
+                break;
+            }
+
+            // draining resumes once the socket is writable again, see Handler#channelWritabilityChanged()
+            if (written == MAX_MESSAGES_PER_DRAIN || !channel.isWritable())
+                break;
+
+            consume(qm);
+            if (!write(qm))
+                return;
+            written++;
+        }
+        flush();
+
+        if (written == MAX_MESSAGES_PER_DRAIN)
+            scheduleDrain();
+    }
+
+    // takes the message drain() peeked at off the backlog: we are its only consumer, so it is the one polled
+    private void consume(QueuedMessage qm)
+    {
+        QueuedMessage polled = backlog.poll();
+        assert polled == qm : polled;
+        dequeued(qm);
+    }
+
+    private boolean write(QueuedMessage qm)
+    {
+        try
+        {
+            traceSend(qm);
+            if (compressedFrames != null)
+                compressedFrames.startMessage(qm.message.verb);
+            recordQueueLatency(qm, poolReference.peer());
+            writeInternal(out, qm.message, qm.id, NanoTimeToCurrentTimeMillis.convert(qm.timestampNanos), targetVersion);
+            completed++;
+            if (qm.shouldRetry())
+            {
+                if (unflushedRetries == null)
+                    unflushedRetries = new ArrayList<>();
+                unflushedRetries.add(qm);
+            }
+            return true;
+        }
+        catch (Exception e)
+        {
+            JVMStabilityInspector.inspectThrowable(e);
+            // the message is only partially written to the buffer, which is thrown away with the connection
+            logger.error("error writing to {}", poolReference.endPoint(), e);
+            if (unflushedRetries != null)
+            {
+                for (QueuedMessage retry : unflushedRetries)
+                    add(new RetriedQueuedMessage(retry, targetVersion));
+            }
+            disconnect();
+            scheduleDrain();
+            return false;
+        }
+        finally
+        {
+            // the message is copied to the output buffer, or is to be retried from scratch
+            qm.releasePayload();
+        }
+    }
+
+    private void flush()
+    {
+        if (!connected)
+            return;
+
+        try
+        {
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            // can't happen, we are writing to memory
+            throw new AssertionError(e);
+        }
+
+        ByteBuf buffer = sink.take();
+        if (buffer == null)
+            return;
+
+        List<QueuedMessage> retries = unflushedRetries;
+        unflushedRetries = null;
+        channel.writeAndFlush(buffer).addListener(future -> {
+            if (!future.isSuccess())
+                writeFailed(future.cause(), retries);
+        });
+    }
+
+    private void writeFailed(Throwable cause, List<QueuedMessage> retries)
+    {
+        if (logger.isTraceEnabled())
+            logger.trace("error writing to {}", poolReference.endPoint(), cause);
+
+        // if a message was important, such as a repair acknowledgement, put it back on the queue
+        // to retry after re-connecting.  See CASSANDRA-5393
+        if (retries != null)
+        {
+            for (QueuedMessage qm : retries)
+                add(new RetriedQueuedMessage(qm, targetVersion));
+            scheduleDrain();
+        }
+    }
+
+    private void connect()
+    {
+        InetAddress endpoint = poolReference.endPoint();
+        if (logger.isTraceEnabled())
+            logger.trace("attempting to connect to {}", endpoint);
+
+        if (connectStartNanos == 0)
+            connectStartNanos = System.nanoTime();
+        targetVersion = MessagingService.instance().getVersion(endpoint);
+
+        Bootstrap bootstrap = new Bootstrap().group(eventLoop)
+                                             .channel(NioSocketChannel.class)
+                                             .option(ChannelOption.SO_KEEPALIVE, true)
+                                             .option(ChannelOption.TCP_NODELAY, isLocalDC(endpoint) ? INTRADC_TCP_NODELAY : DatabaseDescriptor.getInterDCTcpNoDelay())
+                                             .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) DatabaseDescriptor.getRpcTimeout())
+                                             .handler(new Handler());
+        if (DatabaseDescriptor.getInternodeSendBufferSize() != null)
+            bootstrap.option(ChannelOption.SO_SNDBUF, DatabaseDescriptor.getInternodeSendBufferSize());
+
+        InetSocketAddress remote = new InetSocketAddress(endpoint, DatabaseDescriptor.getStoragePort());
+        ChannelFuture future = Config.getOutboundBindAny()
+                             ? bootstrap.connect(remote)
+                             : bootstrap.connect(remote, new InetSocketAddress(FBUtilities.getLocalAddress(), 0));
+        Channel ch = channel = future.channel();
+        future.addListener(f -> {
+            if (!f.isSuccess())
+            {
+                connectionFailed(ch, f.cause());
+                return;
+            }
+
+            ByteBuf header = ch.alloc().buffer(8);
+            ByteBufOutputStream headerOut = new ByteBufOutputStream(header);
+            headerOut.writeInt(MessagingService.PROTOCOL_MAGIC);
+            writeHeader(headerOut, targetVersion, shouldCompressConnection());
+            ch.writeAndFlush(header);
+
+            eventLoop.schedule(() -> {
+                if (ch == channel && !connected)
+                {
+                    // no version is returned, so disconnect an try again: we will either get
+                    // a different target version (targetVersion < MessagingService.VERSION_12)
+                    // or if the same version the handshake will finally succeed
+                    logger.trace("No version information yet from {}, will retry", endpoint);
+                    if (DatabaseDescriptor.getSeeds().contains(endpoint))
+                        logger.warn("Seed gossip version is unknown; will not connect with that version");
+                    connectionFailed(ch, null);
+                }
+            }, WAIT_FOR_VERSION_MAX_TIME, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void handshakeReceived(Channel ch, int maxTargetVersion) throws IOException
+    {
+        if (ch != channel || connected)
+            return;
+
+        logger.info("Handshaked version with {}", poolReference.endPoint());
+        MessagingService.instance().setVersion(poolReference.endPoint(), maxTargetVersion);
+
+        if (targetVersion > maxTargetVersion)
+        {
+            logger.trace("Target max version is {}; will reconnect with that version", maxTargetVersion);
+            disconnect();
+            connect();
+            return;
+        }
+
+        if (targetVersion < maxTargetVersion && targetVersion < MessagingService.current_version)
+        {
+            logger.trace("Detected higher max version {} (using {}); will reconnect when queued messages are done",
+                         maxTargetVersion, targetVersion);
+            softCloseSocket();
+        }
+
+        ByteBuf handshake = ch.alloc().buffer(4 + CompactEndpointSerializationHelper.serializedSize(FBUtilities.getBroadcastAddress()));
+        ByteBufOutputStream handshakeOut = new ByteBufOutputStream(handshake);
+        handshakeOut.writeInt(MessagingService.current_version);
+        CompactEndpointSerializationHelper.serialize(FBUtilities.getBroadcastAddress(), handshakeOut);
+        ch.writeAndFlush(handshake);
+
+        out = newOutput();
+        connected = true;
+        connectStartNanos = 0;
+        drain();
+    }
+
+    @SuppressWarnings("resource")
+    private DataOutputStreamPlus newOutput()
+    {
+        if (!shouldCompressConnection())
+            return new BufferedDataOutputStreamPlus(sink, BUFFER_SIZE);
+
+        logger.trace("Upgrading OutputStream to be compressed");
+        if (targetVersion < MessagingService.VERSION_21)
+            return new WrappedDataOutputStreamPlus(new SnappyOutputStream(Channels.newOutputStream(sink)));
+
+        if (DatabaseDescriptor.internodeCompressionFramed())
+        {
+            compressedFrames = new CompressedFrameOutputStream(Channels.newOutputStream(sink),
+                                                               DatabaseDescriptor.getInternodeCompressionMinFrameSize());
+            return new WrappedDataOutputStreamPlus(compressedFrames);
+        }
+
+        LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        Checksum checksum = XXHashFactory.fastestInstance().newStreamingHash32(LZ4_HASH_SEED).asChecksum();
+        return new WrappedDataOutputStreamPlus(new LZ4BlockOutputStream(Channels.newOutputStream(sink),
+                                                                        1 << 14,  // 16k block size
+                                                                        compressor,
+                                                                        checksum,
+                                                                        true)); // flushes write out the current block
+    }
+
+    private void connectionFailed(Channel ch, Throwable cause)
+    {
+        if (ch != channel)
+            return;
+
+        disconnect();
+        if (logger.isTraceEnabled())
+            logger.trace("unable to connect to " + poolReference.endPoint(), cause);
+
+        if (System.nanoTime() - connectStartNanos < TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getRpcTimeout()))
+        {
+            reconnectScheduled = true;
+            eventLoop.schedule(() -> {
+                reconnectScheduled = false;
+                drain();
+            }, OPEN_RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            // clear out the queue, else gossip messages back up.
+            connectStartNanos = 0;
+            clearBacklog();
+        }
+    }
+
+    /**
+     * Disconnects once what has been written so far is sent.
+     */
+    private void closeAfterPendingWrites()
+    {
+        if (channel != null)
+        {
+            channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+            if (logger.isTraceEnabled())
+                logger.trace("Socket to {} closed", poolReference.endPoint());
+            channel = null;
+        }
+        disconnect();
+    }
+
+    private void disconnect()
+    {
+        if (channel != null)
+        {
+            channel.close();
+            if (logger.isTraceEnabled())
+                logger.trace("Socket to {} closed", poolReference.endPoint());
+            channel = null;
+        }
+        connected = false;
+        out = null;
+        compressedFrames = null;
+        unflushedRetries = null;
+        sink.discard();
+    }
+
+    /**
+     * Reads the version returned by the peer, the only thing it ever sends on this connection, and follows the
+     * state of the socket.
+     */
+    private final class Handler extends ByteToMessageDecoder
+    {
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
+        {
+            if (connected || ctx.channel() != channel)
+            {
+                in.skipBytes(in.readableBytes());
+                return;
+            }
+            if (in.readableBytes() >= 4)
+                handshakeReceived(ctx.channel(), in.readInt());
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+        {
+            if (ctx.channel().isWritable())
+                scheduleDrain();
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception
+        {
+            if (ctx.channel() == channel)
+            {
+                if (connected)
+                {
+                    disconnect();
+                    scheduleDrain();
+                }
+                else
+                {
+                    connectionFailed(ctx.channel(), null);
+                }
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+        {
+            if (logger.isTraceEnabled())
+                logger.trace("error on connection to {}", poolReference.endPoint(), cause);
+            ctx.close();
+        }
+    }
+
+    /**
+     * Collects what the output streams write into a buffer that is written to the socket on flush.
+     */
+    private final class OutputSink implements WritableByteChannel
+    {
+        private ByteBuf buffer;
+
+        public int write(ByteBuffer src)
+        {
+            int length = src.remaining();
+            if (buffer == null)
+                buffer = channel.alloc().buffer(length);
+            buffer.writeBytes(src);
+            return length;
+        }
+
+        ByteBuf take()
+        {
+            ByteBuf taken = buffer;
+            buffer = null;
+            return taken;
+        }
+
+        void discard()
+        {
+            if (buffer != null)
+                buffer.release();
+            buffer = null;
+        }
+
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        public void close()
+        {
+        }
+    }
+}
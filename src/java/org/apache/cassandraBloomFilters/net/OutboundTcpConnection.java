@@ -18,21 +18,15 @@
 package org.apache.cassandraBloomFilters.net;
 
 import java.io.DataInputStream;
-import java.io.DataOutput;
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
-import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Checksum;
 
 import javax.net.ssl.SSLHandshakeException;
@@ -48,33 +42,27 @@ import net.jpountz.xxhash.XXHashFactory;
 import org.apache.cassandraBloomFilters.io.util.DataOutputStreamPlus;
 import org.apache.cassandraBloomFilters.io.util.BufferedDataOutputStreamPlus;
 import org.apache.cassandraBloomFilters.io.util.WrappedDataOutputStreamPlus;
-import org.apache.cassandraBloomFilters.tracing.TraceState;
-import org.apache.cassandraBloomFilters.tracing.Tracing;
 import org.apache.cassandraBloomFilters.utils.CoalescingStrategies;
-import org.apache.cassandraBloomFilters.utils.CoalescingStrategies.Coalescable;
 import org.apache.cassandraBloomFilters.utils.CoalescingStrategies.CoalescingStrategy;
 import org.apache.cassandraBloomFilters.utils.FBUtilities;
 import org.apache.cassandraBloomFilters.utils.JVMStabilityInspector;
 import org.apache.cassandraBloomFilters.utils.NanoTimeToCurrentTimeMillis;
-import org.apache.cassandraBloomFilters.utils.UUIDGen;
 import org.xerial.snappy.SnappyOutputStream;
 import org.apache.cassandraBloomFilters.config.Config;
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 
 import com.google.common.util.concurrent.Uninterruptibles;
 
-public class OutboundTcpConnection extends Thread
+/**
+ * An outbound connection of the blocking internode transport, which writes the messages of its backlog from a
+ * thread of its own, coalescing them as configured by otc_coalescing_strategy.
+ */
+public class OutboundTcpConnection extends AbstractOutboundTcpConnection implements Runnable
 {
     private static final Logger logger = LoggerFactory.getLogger(OutboundTcpConnection.class);
 
     private static final String PREFIX = Config.PROPERTY_PREFIX;
 
-    /*
-     * Enabled/disable TCP_NODELAY for intradc connections. Defaults to enabled.
-     */
-    private static final String INTRADC_TCP_NODELAY_PROPERTY = PREFIX + "otc_intradc_tcp_nodelay";
-    private static final boolean INTRADC_TCP_NODELAY = Boolean.valueOf(System.getProperty(INTRADC_TCP_NODELAY_PROPERTY, "true"));
-
     /*
      * Size of buffer in output stream
      */
@@ -115,79 +103,28 @@ public class OutboundTcpConnection extends Thread
                     "Value provided for coalescing window must be greather than 0: " + coalescingWindow);
     }
 
-    private static final MessageOut CLOSE_SENTINEL = new MessageOut(MessagingService.Verb.INTERNAL_RESPONSE);
-    private volatile boolean isStopped = false;
-
-    private static final int OPEN_RETRY_DELAY = 100; // ms between retries
-    public static final int WAIT_FOR_VERSION_MAX_TIME = 5000;
     private static final int NO_VERSION = Integer.MIN_VALUE;
 
-    static final int LZ4_HASH_SEED = 0x9747b28c;
-
-    private final BlockingQueue<QueuedMessage> backlog = new LinkedBlockingQueue<>();
-
-    private final OutboundTcpConnectionPool poolReference;
-
+    private final Thread thread;
     private final CoalescingStrategy cs;
     private DataOutputStreamPlus out;
     private Socket socket;
-    private volatile long completed;
-    private final AtomicLong dropped = new AtomicLong();
     private volatile int currentMsgBufferCount = 0;
-    private volatile int targetVersion;
 
     public OutboundTcpConnection(OutboundTcpConnectionPool pool)
     {
-        super("MessagingService-Outgoing-" + pool.endPoint());
-        this.poolReference = pool;
+        super(pool);
+        thread = new Thread(this, "MessagingService-Outgoing-" + pool.endPoint());
         cs = newCoalescingStrategy(pool.endPoint().getHostAddress());
-
-        // We want to use the most precise version we know because while there is version detection on connect(),
-        // the target version might be accessed by the pool (in getConnection()) before we actually connect (as we
-        // connect when the first message is submitted). Note however that the only case where we'll connect
-        // without knowing the true version of a node is if that node is a seed (otherwise, we can't know a node
-        // unless it has been gossiped to us or it has connected to us and in both case this sets the version) and
-        // in that case we won't rely on that targetVersion before we're actually connected and so the version
-        // detection in connect() will do its job.
-        targetVersion = MessagingService.instance().getVersion(pool.endPoint());
-    }
-
-    private static boolean isLocalDC(InetAddress targetHost)
-    {
-        String remoteDC = DatabaseDescriptor.getEndpointSnitch().getDatacenter(targetHost);
-        String localDC = DatabaseDescriptor.getEndpointSnitch().getDatacenter(FBUtilities.getBroadcastAddress());
-        return remoteDC.equals(localDC);
     }
 
-    public void enqueue(MessageOut<?> message, int id)
-    {
-        if (backlog.size() > 1024)
-            expireMessages();
-        try
-        {
-            backlog.put(new QueuedMessage(message, id));
-        }
-        catch (InterruptedException e)
-        {
-            throw new AssertionError(e);
-        }
-    }
-
-    void closeSocket(boolean destroyThread)
-    {
-        backlog.clear();
-        isStopped = destroyThread; // Exit loop to stop the thread
-        enqueue(CLOSE_SENTINEL, -1);
-    }
-
-    void softCloseSocket()
-    {
-        enqueue(CLOSE_SENTINEL, -1);
-    }
-
-    public int getTargetVersion()
+    /**
+     * Starts sending the enqueued messages, which this implementation does from its own thread.
+     */
+    @Override
+    void startProcessing()
     {
-        return targetVersion;
+        thread.start();
     }
 
     public void run()
@@ -217,6 +154,9 @@ public class OutboundTcpConnection extends Thread
             {
                 try
                 {
+                    if (dequeued(qm))
+                        continue;
+
                     MessageOut<?> m = qm.message;
                     if (m == CLOSE_SENTINEL)
                     {
@@ -227,12 +167,12 @@ public class OutboundTcpConnection extends Thread
                     }
 
                     if (qm.isTimedOut())
-                        dropped.incrementAndGet();
+                        recordDrop(DropReason.EXPIRED);
                     else if (socket != null || connect())
                         writeConnected(qm, count == 1 && backlog.isEmpty());
                     else
                         // clear out the queue, else gossip messages back up.
-                        backlog.clear();
+                        clearBacklog();
                 }
                 catch (Exception e)
                 {
@@ -241,61 +181,33 @@ public class OutboundTcpConnection extends Thread
                     // but we want to catch anything bad we don't drop the messages in the current batch
                     logger.error("error processing a message intended for {}", poolReference.endPoint(), e);
                 }
+                finally
+                {
+                    qm.releasePayload();
+                }
                 currentMsgBufferCount = --count;
             }
             drainedMessages.clear();
         }
     }
 
+    @Override
     public int getPendingMessages()
     {
-        return backlog.size() + currentMsgBufferCount;
-    }
-
-    public long getCompletedMesssages()
-    {
-        return completed;
-    }
-
-    public long getDroppedMessages()
-    {
-        return dropped.get();
-    }
-
-    private boolean shouldCompressConnection()
-    {
-        // assumes version >= 1.2
-        return DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.all
-               || (DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.dc && !isLocalDC(poolReference.endPoint()));
+        return super.getPendingMessages() + currentMsgBufferCount;
     }
 
     private void writeConnected(QueuedMessage qm, boolean flush)
     {
         try
         {
-            byte[] sessionBytes = qm.message.parameters.get(Tracing.TRACE_HEADER);
-            if (sessionBytes != null)
-            {
-                UUID sessionId = UUIDGen.getUUID(ByteBuffer.wrap(sessionBytes));
-                TraceState state = Tracing.instance.get(sessionId);
-                String message = String.format("Sending %s message to %s", qm.message.verb, poolReference.endPoint());
-                // session may have already finished; see CASSANDRA-5668
-                if (state == null)
-                {
-                    byte[] traceTypeBytes = qm.message.parameters.get(Tracing.TRACE_TYPE);
-                    Tracing.TraceType traceType = traceTypeBytes == null ? Tracing.TraceType.QUERY : Tracing.TraceType.deserialize(traceTypeBytes[0]);
-                    Tracing.instance.trace(ByteBuffer.wrap(sessionBytes), message, traceType.getTTL());
-                }
-                else
-                {
-                    state.trace(message);
-                    if (qm.message.verb == MessagingService.Verb.REQUEST_RESPONSE)
-                        Tracing.instance.doneWithNonLocalSession(state);
-                }
-            }
+            traceSend(qm);
+            if (compressedFrames != null)
+                compressedFrames.startMessage(qm.message.verb);
 
+            recordQueueLatency(qm, poolReference.peer());
             long timestampMillis = NanoTimeToCurrentTimeMillis.convert(qm.timestampNanos);
-            writeInternal(qm.message, qm.id, timestampMillis);
+            writeInternal(out, qm.message, qm.id, timestampMillis, targetVersion);
 
             completed++;
             if (flush)
@@ -312,16 +224,7 @@ public class OutboundTcpConnection extends Thread
                 // if the message was important, such as a repair acknowledgement, put it back on the queue
                 // to retry after re-connecting.  See CASSANDRA-5393
                 if (qm.shouldRetry())
-                {
-                    try
-                    {
-                        backlog.put(new RetriedQueuedMessage(qm));
-                    }
-                    catch (InterruptedException e1)
-                    {
-                        throw new AssertionError(e1);
-                    }
-                }
+                    add(new RetriedQueuedMessage(qm, targetVersion));
             }
             else
             {
@@ -331,36 +234,6 @@ public class OutboundTcpConnection extends Thread
         }
     }
 
-    private void writeInternal(MessageOut message, int id, long timestamp) throws IOException
-    {
-        out.writeInt(MessagingService.PROTOCOL_MAGIC);
-
-        if (targetVersion < MessagingService.VERSION_20)
-            out.writeUTF(String.valueOf(id));
-        else
-            out.writeInt(id);
-
-        // int cast cuts off the high-order half of the timestamp, which we can assume remains
-        // the same between now and when the recipient reconstructs it.
-        out.writeInt((int) timestamp);
-        message.serialize(out, targetVersion);
-    }
-
-    private static void writeHeader(DataOutput out, int version, boolean compressionEnabled) throws IOException
-    {
-        // 2 bits: unused.  used to be "serializer type," which was always Binary
-        // 1 bit: compression
-        // 1 bit: streaming mode
-        // 3 bits: unused
-        // 8 bits: version
-        // 15 bits: unused
-        int header = 0;
-        if (compressionEnabled)
-            header |= 4;
-        header |= (version << 8);
-        out.writeInt(header);
-    }
-
     private void disconnect()
     {
         if (socket != null)
@@ -378,6 +251,7 @@ public class OutboundTcpConnection extends Thread
             }
             out = null;
             socket = null;
+            compressedFrames = null;
         }
     }
 
@@ -467,6 +341,12 @@ public class OutboundTcpConnection extends Thread
                         // Snappy is buffered, so no need for extra buffering output stream
                         out = new WrappedDataOutputStreamPlus(new SnappyOutputStream(socket.getOutputStream()));
                     }
+                    else if (DatabaseDescriptor.internodeCompressionFramed())
+                    {
+                        compressedFrames = new CompressedFrameOutputStream(socket.getOutputStream(),
+                                                                           DatabaseDescriptor.getInternodeCompressionMinFrameSize());
+                        out = new WrappedDataOutputStreamPlus(compressedFrames);
+                    }
                     else
                     {
                         // TODO: custom LZ4 OS that supports BB write methods
@@ -540,65 +420,4 @@ public class OutboundTcpConnection extends Thread
         }
         return version.get();
     }
-
-    private void expireMessages()
-    {
-        Iterator<QueuedMessage> iter = backlog.iterator();
-        while (iter.hasNext())
-        {
-            QueuedMessage qm = iter.next();
-            if (!qm.droppable)
-                continue;
-            if (!qm.isTimedOut())
-                return;
-            iter.remove();
-            dropped.incrementAndGet();
-        }
-    }
-
-    /** messages that have not been retried yet */
-    private static class QueuedMessage implements Coalescable
-    {
-        final MessageOut<?> message;
-        final int id;
-        final long timestampNanos;
-        final boolean droppable;
-
-        QueuedMessage(MessageOut<?> message, int id)
-        {
-            this.message = message;
-            this.id = id;
-            this.timestampNanos = System.nanoTime();
-            this.droppable = MessagingService.DROPPABLE_VERBS.contains(message.verb);
-        }
-
-        /** don't drop a non-droppable message just because it's timestamp is expired */
-        boolean isTimedOut()
-        {
-            return droppable && timestampNanos < System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(message.getTimeout());
-        }
-
-        boolean shouldRetry()
-        {
-            return !droppable;
-        }
-
-        public long timestampNanos()
-        {
-            return timestampNanos;
-        }
-    }
-
-    private static class RetriedQueuedMessage extends QueuedMessage
-    {
-        RetriedQueuedMessage(QueuedMessage msg)
-        {
-            super(msg.message, msg.id);
-        }
-
-        boolean shouldRetry()
-        {
-            return false;
-        }
-    }
 }
@@ -42,9 +42,12 @@ public class OutboundTcpConnectionPool
     // pointer for the real Address.
     private final InetAddress id;
     private final CountDownLatch started;
-    public final OutboundTcpConnection smallMessages;
-    public final OutboundTcpConnection largeMessages;
-    public final OutboundTcpConnection gossipMessages;
+    public final AbstractOutboundTcpConnection smallMessages;
+    public final AbstractOutboundTcpConnection largeMessages;
+    public final AbstractOutboundTcpConnection gossipMessages;
+    // only with internode_traffic_classes, null otherwise
+    public final AbstractOutboundTcpConnection mutationMessages;
+    private final AbstractOutboundTcpConnection[] connections;
 
     // pointer to the reset Address.
     private InetAddress resetEndpoint;
@@ -56,33 +59,65 @@ public class OutboundTcpConnectionPool
         resetEndpoint = SystemKeyspace.getPreferredIP(remoteEp);
         started = new CountDownLatch(1);
 
-        smallMessages = new OutboundTcpConnection(this);
-        largeMessages = new OutboundTcpConnection(this);
-        gossipMessages = new OutboundTcpConnection(this);
+        boolean nio = InternodeEventLoops.useForOutbound(remoteEp);
+        smallMessages = newConnection(nio);
+        largeMessages = newConnection(nio);
+        gossipMessages = newConnection(nio);
+        if (DatabaseDescriptor.useInternodeTrafficClasses())
+        {
+            mutationMessages = newConnection(nio);
+            connections = new AbstractOutboundTcpConnection[] { smallMessages, largeMessages, gossipMessages, mutationMessages };
+        }
+        else
+        {
+            mutationMessages = null;
+            connections = new AbstractOutboundTcpConnection[] { smallMessages, largeMessages, gossipMessages };
+        }
+    }
+
+    private AbstractOutboundTcpConnection newConnection(boolean nio)
+    {
+        return nio ? new NioOutboundTcpConnection(this) : new OutboundTcpConnection(this);
     }
 
     /**
      * returns the appropriate connection based on message type.
      * returns null if a connection could not be established.
      */
-    OutboundTcpConnection getConnection(MessageOut msg)
+    AbstractOutboundTcpConnection getConnection(MessageOut msg)
     {
-        if (Stage.GOSSIP == msg.getStage())
-            return gossipMessages;
-        return msg.payloadSize(smallMessages.getTargetVersion()) > LARGE_MESSAGE_THRESHOLD
-               ? largeMessages
-               : smallMessages;
+        if (mutationMessages == null)
+        {
+            if (Stage.GOSSIP == msg.getStage())
+                return gossipMessages;
+            return msg.payloadSize(smallMessages.getTargetVersion()) > LARGE_MESSAGE_THRESHOLD
+                   ? largeMessages
+                   : smallMessages;
+        }
+
+        TrafficClass trafficClass = DatabaseDescriptor.getTrafficClass(msg.verb);
+        switch (trafficClass)
+        {
+            case GOSSIP:
+                return gossipMessages;
+            case BULK:
+                return largeMessages;
+        }
+        // large messages of the other classes still go to the large messages connection
+        if (msg.payloadSize(smallMessages.getTargetVersion()) > LARGE_MESSAGE_THRESHOLD)
+            return largeMessages;
+        return trafficClass == TrafficClass.MUTATION ? mutationMessages : smallMessages;
     }
 
     void reset()
     {
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { smallMessages, largeMessages, gossipMessages })
+        for (AbstractOutboundTcpConnection conn : connections)
             conn.closeSocket(false);
     }
 
     public void resetToNewerVersion(int version)
     {
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { smallMessages, largeMessages, gossipMessages })
+        for (AbstractOutboundTcpConnection conn : connections)
         {
             if (version > conn.getTargetVersion())
                 conn.softCloseSocket();
@@ -98,7 +133,7 @@ public class OutboundTcpConnectionPool
     {
         SystemKeyspace.updatePreferredIP(id, remoteEP);
         resetEndpoint = remoteEP;
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { smallMessages, largeMessages, gossipMessages })
+        for (AbstractOutboundTcpConnection conn : connections)
             conn.softCloseSocket();
 
         // release previous metrics and create new one with reset address
@@ -111,6 +146,25 @@ public class OutboundTcpConnectionPool
        return metrics.timeouts.getCount();
     }
 
+    /**
+     * @return the serialized size of the messages queued for this peer
+     */
+    public long getPendingBytes()
+    {
+        long pendingBytes = 0;
+        for (AbstractOutboundTcpConnection conn : connections)
+            pendingBytes += conn.getPendingBytes();
+        return pendingBytes;
+    }
+
+    public long getDroppedMessages(AbstractOutboundTcpConnection.DropReason reason)
+    {
+        long dropped = 0;
+        for (AbstractOutboundTcpConnection conn : connections)
+            dropped += conn.getDroppedMessages(reason);
+        return dropped;
+    }
+
 
     public void incrementTimeout()
     {
@@ -143,6 +197,14 @@ public class OutboundTcpConnectionPool
         }
     }
 
+    /**
+     * @return the address of the peer, as known to the rest of the cluster
+     */
+    InetAddress peer()
+    {
+        return id;
+    }
+
     public InetAddress endPoint()
     {
         if (id.equals(FBUtilities.getBroadcastAddress()))
@@ -175,9 +237,8 @@ public class OutboundTcpConnectionPool
 
     public void start()
     {
-        smallMessages.start();
-        largeMessages.start();
-        gossipMessages.start();
+        for (AbstractOutboundTcpConnection conn : connections)
+            conn.startProcessing();
 
         metrics = new ConnectionMetrics(id, this);
 
@@ -213,6 +274,8 @@ public class OutboundTcpConnectionPool
             smallMessages.closeSocket(true);
         if (gossipMessages != null)
             gossipMessages.closeSocket(true);
+        if (mutationMessages != null)
+            mutationMessages.closeSocket(true);
 
         metrics.release();
     }
@@ -22,6 +22,8 @@ import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.metrics.MessageLatencyMetrics;
 import org.apache.cassandraBloomFilters.tracing.Tracing;
 
 public class ResponseVerbHandler implements IVerbHandler
@@ -30,9 +32,8 @@ public class ResponseVerbHandler implements IVerbHandler
 
     public void doVerb(MessageIn message, int id)
     {
-        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - MessagingService.instance().getRegisteredCallbackAge(id));
-        CallbackInfo callbackInfo = MessagingService.instance().removeRegisteredCallback(id);
-        if (callbackInfo == null)
+        CallbackMap.Entry callback = MessagingService.instance().removeRegisteredCallbackEntry(id);
+        if (callback == null)
         {
             String msg = "Callback already removed for {} (from {})";
             logger.trace(msg, id, message.from);
@@ -40,8 +41,10 @@ public class ResponseVerbHandler implements IVerbHandler
             return;
         }
 
+        long latencyNanos = System.nanoTime() - callback.createdAt;
+        long latency = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
         Tracing.trace("Processing response from {}", message.from);
-        IAsyncCallback cb = callbackInfo.callback;
+        IAsyncCallback cb = callback.info.callback;
         if (message.isFailureResponse())
         {
             ((IAsyncCallbackWithFailure) cb).onFailure(message.from);
@@ -50,6 +53,8 @@ public class ResponseVerbHandler implements IVerbHandler
         {
             //TODO: Should we add latency only in success cases?
             MessagingService.instance().maybeAddLatency(cb, message.from, latency);
+            if (callback.verb != null && DatabaseDescriptor.internodeLatencyTracing())
+                MessageLatencyMetrics.update(MessageLatencyMetrics.Segment.ROUND_TRIP, callback.verb, message.from, latencyNanos);
             cb.response(message);
         }
     }
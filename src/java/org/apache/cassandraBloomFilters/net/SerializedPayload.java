@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.apache.cassandraBloomFilters.io.IVersionedSerializer;
+import org.apache.cassandraBloomFilters.io.util.DataOutputBufferFixed;
+import org.apache.cassandraBloomFilters.utils.memory.BufferPool;
+
+/**
+ * The payload of a message serialized once, for a given messaging version, into a buffer of the {@link BufferPool},
+ * so that a message sent to several nodes is not serialized again for each of them.
+ *
+ * The buffer is reference counted: it goes back to the pool once its creator and everyone who took a reference
+ * (the connections the message is queued on) have released theirs. Readers must hold a reference while they read.
+ */
+final class SerializedPayload
+{
+    private static final AtomicIntegerFieldUpdater<SerializedPayload> refsUpdater = AtomicIntegerFieldUpdater.newUpdater(SerializedPayload.class, "refs");
+
+    final int version;
+    private final ByteBuffer buffer;
+    // starts with the reference of the creator
+    private volatile int refs = 1;
+
+    private SerializedPayload(int version, ByteBuffer buffer)
+    {
+        this.version = version;
+        this.buffer = buffer;
+    }
+
+    @SuppressWarnings("resource")
+    static <T> SerializedPayload serialize(T payload, IVersionedSerializer<T> serializer, int version, int size)
+    {
+        ByteBuffer buffer = BufferPool.get(size);
+        try
+        {
+            // not closed: closing would free the buffer
+            serializer.serialize(payload, new DataOutputBufferFixed(buffer), version);
+        }
+        catch (IOException e)
+        {
+            // DataOutputBufferFixed is in-memory, doesn't throw IOException
+            throw new AssertionError(e);
+        }
+        buffer.flip();
+        return new SerializedPayload(version, buffer);
+    }
+
+    /**
+     * @return true if a reference was taken, false if the buffer has already been released
+     */
+    boolean ref()
+    {
+        while (true)
+        {
+            int current = refs;
+            if (current == 0)
+                return false;
+            if (refsUpdater.compareAndSet(this, current, current + 1))
+                return true;
+        }
+    }
+
+    void release()
+    {
+        int current = refsUpdater.decrementAndGet(this);
+        assert current >= 0;
+        if (current == 0)
+            BufferPool.put(buffer);
+    }
+
+    /**
+     * @return the serialized payload; only valid while a reference is held
+     */
+    ByteBuffer buffer()
+    {
+        return buffer.duplicate();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
+
+/**
+ * The class of traffic a message belongs to, which decides which connection to a peer it is sent on when
+ * internode_traffic_classes is enabled, so that latency-sensitive messages don't queue behind bulk ones.
+ * Queue latency is measured per class either way.
+ */
+public enum TrafficClass
+{
+    /** reads, responses and anything not listed otherwise, sent on the small messages connection */
+    URGENT,
+    /** writes, sent on their own connection */
+    MUTATION,
+    /** hints, repair, schema and other background traffic, sent on the large messages connection */
+    BULK,
+    /** gossip, sent on the gossip connection */
+    GOSSIP;
+
+    private static final Map<MessagingService.Verb, TrafficClass> defaults = new EnumMap<MessagingService.Verb, TrafficClass>(MessagingService.Verb.class)
+    {{
+        put(MessagingService.Verb.GOSSIP_DIGEST_SYN, GOSSIP);
+        put(MessagingService.Verb.GOSSIP_DIGEST_ACK, GOSSIP);
+        put(MessagingService.Verb.GOSSIP_DIGEST_ACK2, GOSSIP);
+        put(MessagingService.Verb.GOSSIP_SHUTDOWN, GOSSIP);
+        put(MessagingService.Verb.ECHO, GOSSIP);
+
+        put(MessagingService.Verb.MUTATION, MUTATION);
+        put(MessagingService.Verb.COUNTER_MUTATION, MUTATION);
+        put(MessagingService.Verb.READ_REPAIR, MUTATION);
+        put(MessagingService.Verb.BATCH_STORE, MUTATION);
+        put(MessagingService.Verb.BATCH_REMOVE, MUTATION);
+        put(MessagingService.Verb.MUTATION_BATCH, MUTATION);
+
+        put(MessagingService.Verb.HINT, BULK);
+        put(MessagingService.Verb.REPAIR_MESSAGE, BULK);
+        put(MessagingService.Verb.DEFINITIONS_UPDATE, BULK);
+        put(MessagingService.Verb.MIGRATION_REQUEST, BULK);
+        put(MessagingService.Verb.SNAPSHOT, BULK);
+        put(MessagingService.Verb.TRUNCATE, BULK);
+        put(MessagingService.Verb.REPLICATION_FINISHED, BULK);
+    }};
+
+    /**
+     * @return the class of each verb: its class in the provided overrides, from verb name to class name, if any,
+     * or else its default class
+     */
+    public static Map<MessagingService.Verb, TrafficClass> classify(Map<String, String> overrides) throws ConfigurationException
+    {
+        Map<MessagingService.Verb, TrafficClass> classes = new EnumMap<>(MessagingService.Verb.class);
+        for (MessagingService.Verb verb : MessagingService.Verb.values())
+        {
+            TrafficClass trafficClass = defaults.get(verb);
+            classes.put(verb, trafficClass == null ? URGENT : trafficClass);
+        }
+
+        if (overrides != null)
+        {
+            for (Map.Entry<String, String> override : overrides.entrySet())
+            {
+                try
+                {
+                    classes.put(MessagingService.Verb.valueOf(override.getKey().toUpperCase()),
+                                TrafficClass.valueOf(override.getValue().toUpperCase()));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new ConfigurationException(String.format("Invalid internode_traffic_class_overrides entry %s: %s",
+                                                                   override.getKey(), override.getValue()), false);
+                }
+            }
+        }
+        return classes;
+    }
+}
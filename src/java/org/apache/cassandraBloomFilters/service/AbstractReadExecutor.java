@@ -19,15 +19,16 @@ package org.apache.cassandraBloomFilters.service;
 
 import java.net.InetAddress;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandraBloomFilters.concurrent.Stage;
 import org.apache.cassandraBloomFilters.concurrent.StageManager;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.config.ReadRepairDecision;
 import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
 import org.apache.cassandraBloomFilters.db.ConsistencyLevel;
@@ -38,6 +39,8 @@ import org.apache.cassandraBloomFilters.db.partitions.PartitionIterator;
 import org.apache.cassandraBloomFilters.exceptions.ReadFailureException;
 import org.apache.cassandraBloomFilters.exceptions.ReadTimeoutException;
 import org.apache.cassandraBloomFilters.exceptions.UnavailableException;
+import org.apache.cassandraBloomFilters.locator.DynamicEndpointSnitch;
+import org.apache.cassandraBloomFilters.locator.IEndpointSnitch;
 import org.apache.cassandraBloomFilters.metrics.ReadRepairMetrics;
 import org.apache.cassandraBloomFilters.net.MessageOut;
 import org.apache.cassandraBloomFilters.net.MessagingService;
@@ -52,7 +55,7 @@ import org.apache.cassandraBloomFilters.tracing.Tracing;
  * Optionally, may perform additional requests to provide redundancy against replica failure:
  * AlwaysSpeculatingReadExecutor will always send a request to one extra replica, while
  * SpeculatingReadExecutor will wait until it looks like the original request is in danger
- * of timing out before performing extra reads.
+ * of timing out before performing extra reads, possibly several in turn (see max_speculative_read_retries).
  */
 public abstract class AbstractReadExecutor
 {
@@ -180,26 +183,22 @@ public abstract class AbstractReadExecutor
         }
 
         // RRD.NONE or RRD.DC_LOCAL w/ multiple DCs.
-        InetAddress extraReplica = allReplicas.get(targetReplicas.size());
-        // With repair decision DC_LOCAL all replicas/target replicas may be in different order, so
-        // we might have to find a replacement that's not already in targetReplicas.
-        if (repairDecision == ReadRepairDecision.DC_LOCAL && targetReplicas.contains(extraReplica))
+        // Append the extra replicas in the snitch order. With repair decision DC_LOCAL all replicas/target replicas
+        // may be in different order, so we can't just take the replicas following the targets in allReplicas.
+        int maxExtraReplicas = retry.equals(SpeculativeRetryParam.ALWAYS) ? 1 : DatabaseDescriptor.getMaxSpeculativeReadRetries();
+        int initialReplicaCount = targetReplicas.size();
+        for (InetAddress address : allReplicas)
         {
-            for (InetAddress address : allReplicas)
-            {
-                if (!targetReplicas.contains(address))
-                {
-                    extraReplica = address;
-                    break;
-                }
-            }
+            if (targetReplicas.size() - initialReplicaCount == maxExtraReplicas)
+                break;
+            if (!targetReplicas.contains(address))
+                targetReplicas.add(address);
         }
-        targetReplicas.add(extraReplica);
 
         if (retry.equals(SpeculativeRetryParam.ALWAYS))
             return new AlwaysSpeculatingReadExecutor(keyspace, cfs, command, consistencyLevel, targetReplicas);
         else // PERCENTILE or CUSTOM.
-            return new SpeculatingReadExecutor(keyspace, cfs, command, consistencyLevel, targetReplicas);
+            return new SpeculatingReadExecutor(keyspace, cfs, command, consistencyLevel, targetReplicas, initialReplicaCount);
     }
 
     public static class NeverSpeculatingReadExecutor extends AbstractReadExecutor
@@ -227,26 +226,40 @@ public abstract class AbstractReadExecutor
         }
     }
 
+    /**
+     * Speculates on the extra replicas at the end of targetReplicas, one at a time, whenever the replicas contacted
+     * so far are slower than they usually are.
+     *
+     * With a PERCENTILE speculative_retry, what "usually" means is taken from the latencies the dynamic snitch
+     * measured for each of those replicas, so that a replica that is slow compared to its own history is
+     * speculated on early, wherever the table-wide latency stands; replicas the snitch knows too little about fall
+     * back to the table-wide coordinator read latency. A CUSTOM speculative_retry uses its fixed threshold throughout.
+     * No speculation happens once the {@link SpeculationBudget} is spent.
+     */
     private static class SpeculatingReadExecutor extends AbstractReadExecutor
     {
         private final ColumnFamilyStore cfs;
-        private volatile boolean speculated = false;
+        private final long startNanos = System.nanoTime();
+        private volatile int contactedCount;
 
         public SpeculatingReadExecutor(Keyspace keyspace,
                                        ColumnFamilyStore cfs,
                                        ReadCommand command,
                                        ConsistencyLevel consistencyLevel,
-                                       List<InetAddress> targetReplicas)
+                                       List<InetAddress> targetReplicas,
+                                       int initialReplicaCount)
         {
             super(keyspace, command, consistencyLevel, targetReplicas);
             this.cfs = cfs;
+            this.contactedCount = initialReplicaCount;
         }
 
         public void executeAsync()
         {
             // if CL + RR result in covering all replicas, getReadExecutor forces AlwaysSpeculating.  So we know
-            // that the last replica in our list is "extra."
-            List<InetAddress> initialReplicas = targetReplicas.subList(0, targetReplicas.size() - 1);
+            // that the last replicas in our list are "extra."
+            List<InetAddress> initialReplicas = targetReplicas.subList(0, contactedCount);
+            SpeculationBudget.instance.recordRead();
 
             if (handler.blockfor < initialReplicas.size())
             {
@@ -269,34 +282,74 @@ public abstract class AbstractReadExecutor
 
         public void maybeTryAdditionalReplicas()
         {
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(command.getTimeout());
+
             // no latency information, or we're overloaded
-            if (cfs.sampleLatencyNanos > TimeUnit.MILLISECONDS.toNanos(command.getTimeout()))
+            if (cfs.sampleLatencyNanos > timeoutNanos)
                 return;
 
-            if (!handler.await(cfs.sampleLatencyNanos, TimeUnit.NANOSECONDS))
+            long speculateAtNanos = expectedLatencyNanos(targetReplicas.subList(0, contactedCount));
+            while (contactedCount < targetReplicas.size() && speculateAtNanos < timeoutNanos)
             {
+                if (handler.await(speculateAtNanos, TimeUnit.NANOSECONDS))
+                    return;
+
+                if (!SpeculationBudget.instance.tryAcquire())
+                {
+                    if (traceState != null)
+                        traceState.trace("not speculating, the speculative read retry budget is spent");
+                    cfs.metric.speculativeRetriesThrottled.inc();
+                    return;
+                }
+
                 // Could be waiting on the data, or on enough digests.
                 ReadCommand retryCommand = command;
                 if (handler.resolver.isDataPresent())
                     retryCommand = command.copy().setIsDigestQuery(true);
 
-                InetAddress extraReplica = Iterables.getLast(targetReplicas);
+                InetAddress extraReplica = targetReplicas.get(contactedCount);
                 if (traceState != null)
                     traceState.trace("speculating read retry on {}", extraReplica);
                 logger.trace("speculating read retry on {}", extraReplica);
                 int version = MessagingService.instance().getVersion(extraReplica);
                 MessagingService.instance().sendRRWithFailure(retryCommand.createMessage(version), extraReplica, handler);
-                speculated = true;
+                contactedCount++;
 
                 cfs.metric.speculativeRetries.inc();
+
+                // give the replica we just asked its usual time to answer before moving on to the next one
+                long elapsedNanos = System.nanoTime() - startNanos;
+                speculateAtNanos = Math.max(speculateAtNanos, elapsedNanos) + expectedLatencyNanos(Collections.singletonList(extraReplica));
+            }
+        }
+
+        /**
+         * @return how long the slowest of the provided replicas usually takes to answer, as per the table's
+         * speculative_retry.
+         */
+        private long expectedLatencyNanos(List<InetAddress> replicas)
+        {
+            SpeculativeRetryParam retry = cfs.metadata.params.speculativeRetry;
+            IEndpointSnitch snitch = DatabaseDescriptor.getEndpointSnitch();
+            if (retry.kind() != SpeculativeRetryParam.Kind.PERCENTILE || !(snitch instanceof DynamicEndpointSnitch))
+                return cfs.sampleLatencyNanos;
+
+            long latencyNanos = -1;
+            for (InetAddress replica : replicas)
+            {
+                // the snitch only measures remote replicas, and a local read isn't slowed down by the network anyway
+                if (StorageProxy.canDoLocalRequest(replica))
+                    continue;
+
+                long replicaNanos = ((DynamicEndpointSnitch) snitch).getLatencyPercentileNanos(replica, retry.threshold());
+                latencyNanos = Math.max(latencyNanos, replicaNanos < 0 ? cfs.sampleLatencyNanos : replicaNanos);
             }
+            return latencyNanos < 0 ? cfs.sampleLatencyNanos : latencyNanos;
         }
 
         public Collection<InetAddress> getContactedReplicas()
         {
-            return speculated
-                 ? targetReplicas
-                 : targetReplicas.subList(0, targetReplicas.size() - 1);
+            return targetReplicas.subList(0, contactedCount);
         }
     }
 
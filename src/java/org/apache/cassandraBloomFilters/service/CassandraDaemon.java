@@ -372,6 +372,11 @@ public class CassandraDaemon
         // due to scheduling errors or race conditions
         ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(ColumnFamilyStore.getBackgroundCompactionTaskSubmitter(), 5, 1, TimeUnit.MINUTES);
 
+        // schedule periodic tombstone sweeps; set tombstone_sweep_interval_in_minutes to 0 to disable
+        int tombstoneSweepInterval = DatabaseDescriptor.getTombstoneSweepIntervalInMinutes();
+        if (tombstoneSweepInterval > 0)
+            ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(ColumnFamilyStore.getTombstoneSweepSubmitter(), tombstoneSweepInterval, tombstoneSweepInterval, TimeUnit.MINUTES);
+
         // schedule periodic dumps of table size estimates into SystemKeyspace.SIZE_ESTIMATES_CF
         // set cassandra.size_recorder_interval to 0 to disable
         int sizeRecorderInterval = Integer.getInteger("cassandra.size_recorder_interval", 5 * 60);
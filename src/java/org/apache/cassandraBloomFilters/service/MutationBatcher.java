@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.service;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandraBloomFilters.concurrent.ScheduledExecutors;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.db.ConsistencyLevel;
+import org.apache.cassandraBloomFilters.db.IMutation;
+import org.apache.cassandraBloomFilters.db.Mutation;
+import org.apache.cassandraBloomFilters.db.MutationBatch;
+import org.apache.cassandraBloomFilters.gms.ApplicationState;
+import org.apache.cassandraBloomFilters.gms.EndpointState;
+import org.apache.cassandraBloomFilters.gms.Gossiper;
+import org.apache.cassandraBloomFilters.gms.VersionedValue;
+import org.apache.cassandraBloomFilters.net.IAsyncCallbackWithFailure;
+import org.apache.cassandraBloomFilters.net.MessageIn;
+import org.apache.cassandraBloomFilters.net.MessageOut;
+import org.apache.cassandraBloomFilters.net.MessagingService;
+import org.apache.cassandraBloomFilters.tracing.Tracing;
+
+/**
+ * Coalesces the mutations sent to each replica of the local datacenter into MUTATION_BATCH messages.
+ *
+ * The first mutation queued for a replica opens a window of mutation_batch_window_us, after which everything queued
+ * for that replica is sent as a single message; a batch reaching mutation_batch_max_mutations is sent at once. The
+ * replica answers with a single response telling which mutations were applied, which is then fanned out to the
+ * response handler of each mutation. Mutations that were not applied, or whose batch failed or timed out, are hinted
+ * just as if they had been sent on their own.
+ */
+public class MutationBatcher
+{
+    public static final MutationBatcher instance = new MutationBatcher(new MessagingDelivery());
+
+    private final Delivery delivery;
+    private final ConcurrentMap<InetAddress, PendingBatch> pending = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    MutationBatcher(Delivery delivery)
+    {
+        this.delivery = delivery;
+    }
+
+    /**
+     * @return whether mutations to the provided replica should go through the batcher: batching is enabled, the
+     * request is not traced (so that each mutation keeps its own trace events) and the replica knows the verb.
+     */
+    public static boolean shouldBatch(InetAddress replica)
+    {
+        return DatabaseDescriptor.getMutationBatchWindow() > 0
+               && !Tracing.isTracing()
+               && acceptsBatches(replica);
+    }
+
+    /**
+     * MUTATION_BATCH reuses an ordinal that older nodes drop as unknown (so the write would time out), and they share
+     * our messaging version, so only trust replicas that advertise the verb through gossip.
+     */
+    @VisibleForTesting
+    static boolean acceptsBatches(InetAddress replica)
+    {
+        EndpointState state = Gossiper.instance.getEndpointStateForEndpoint(replica);
+        if (state == null)
+            return false;
+        VersionedValue value = state.getApplicationState(ApplicationState.MUTATION_BATCH);
+        return value != null && Boolean.parseBoolean(value.value);
+    }
+
+    public void add(Mutation mutation, InetAddress replica, AbstractWriteResponseHandler<IMutation> handler, boolean allowHints)
+    {
+        pending.computeIfAbsent(replica, PendingBatch::new).add(new Entry(mutation, handler, allowHints));
+    }
+
+    /**
+     * Sends the batches and hints what they failed to deliver; replaced in tests.
+     */
+    @VisibleForTesting
+    interface Delivery
+    {
+        void send(InetAddress replica, List<Entry> entries);
+
+        void maybeHint(Mutation mutation, InetAddress replica);
+    }
+
+    private static final class MessagingDelivery implements Delivery
+    {
+        public void send(InetAddress replica, List<Entry> entries)
+        {
+            if (entries.size() == 1)
+            {
+                // nothing to coalesce with, so don't pay for the batch envelope
+                Entry entry = entries.get(0);
+                MessagingService.instance().sendRR(entry.mutation.createMessage(), replica, entry.handler, entry.allowHints);
+                return;
+            }
+
+            List<Mutation> mutations = new ArrayList<>(entries.size());
+            for (Entry entry : entries)
+                mutations.add(entry.mutation);
+
+            MessageOut<MutationBatch> message = new MutationBatch(mutations).createMessage();
+            MessagingService.instance().sendRR(message, replica, new BatchCallback(entries, this), message.getTimeout(), true);
+        }
+
+        public void maybeHint(Mutation mutation, InetAddress replica)
+        {
+            if (StorageProxy.shouldHint(replica))
+                StorageProxy.submitHint(mutation, replica, null);
+        }
+    }
+
+    @VisibleForTesting
+    static final class Entry
+    {
+        final Mutation mutation;
+        final AbstractWriteResponseHandler<IMutation> handler;
+        final boolean allowHints;
+
+        Entry(Mutation mutation, AbstractWriteResponseHandler<IMutation> handler, boolean allowHints)
+        {
+            this.mutation = mutation;
+            this.handler = handler;
+            this.allowHints = allowHints;
+        }
+
+        /**
+         * Whether the mutation would have been hinted had it timed out on its own (see WriteCallbackInfo).
+         */
+        boolean shouldHint()
+        {
+            return allowHints && handler.consistencyLevel != ConsistencyLevel.ANY;
+        }
+
+        void maybeHint(Delivery delivery, InetAddress replica)
+        {
+            if (shouldHint())
+                delivery.maybeHint(mutation, replica);
+        }
+    }
+
+    private final class PendingBatch
+    {
+        final InetAddress replica;
+
+        // both guarded by this
+        private List<Entry> entries;
+        private ScheduledFuture<?> scheduledFlush;
+
+        PendingBatch(InetAddress replica)
+        {
+            this.replica = replica;
+        }
+
+        void add(Entry entry)
+        {
+            List<Entry> full = null;
+            synchronized (this)
+            {
+                if (entries == null)
+                {
+                    entries = new ArrayList<>();
+                    scheduledFlush = ScheduledExecutors.scheduledFastTasks.schedule(this::flush,
+                                                                                    DatabaseDescriptor.getMutationBatchWindow(),
+                                                                                    TimeUnit.MICROSECONDS);
+                }
+                entries.add(entry);
+
+                if (entries.size() >= DatabaseDescriptor.getMutationBatchMaxMutations())
+                {
+                    scheduledFlush.cancel(false);
+                    full = take();
+                }
+            }
+
+            if (full != null)
+                delivery.send(replica, full);
+        }
+
+        private void flush()
+        {
+            List<Entry> toSend;
+            synchronized (this)
+            {
+                toSend = take();
+            }
+
+            // the batch may have filled up, and been sent, while this flush was waiting for the lock
+            if (toSend != null)
+                delivery.send(replica, toSend);
+        }
+
+        private List<Entry> take()
+        {
+            List<Entry> taken = entries;
+            entries = null;
+            scheduledFlush = null;
+            return taken;
+        }
+    }
+
+    @VisibleForTesting
+    static final class BatchCallback implements IAsyncCallbackWithFailure<MutationBatch.Response>
+    {
+        private final List<Entry> entries;
+        private final Delivery delivery;
+
+        BatchCallback(List<Entry> entries, Delivery delivery)
+        {
+            this.entries = entries;
+            this.delivery = delivery;
+        }
+
+        public void response(MessageIn<MutationBatch.Response> message)
+        {
+            boolean[] applied = message.payload.applied;
+            MessageIn<IMutation> ack = MessageIn.create(message.from,
+                                                        null,
+                                                        message.parameters,
+                                                        MessagingService.Verb.REQUEST_RESPONSE,
+                                                        message.version,
+                                                        message.constructionTime);
+            for (int i = 0; i < entries.size(); i++)
+            {
+                Entry entry = entries.get(i);
+                if (applied[i])
+                {
+                    entry.handler.response(ack);
+                }
+                else
+                {
+                    // the replica would not have answered a lone mutation it failed to apply, so treat it as a timeout
+                    entry.handler.onFailure(message.from);
+                    entry.maybeHint(delivery, message.from);
+                }
+            }
+        }
+
+        public void onFailure(InetAddress from)
+        {
+            for (Entry entry : entries)
+            {
+                entry.handler.onFailure(from);
+                entry.maybeHint(delivery, from);
+            }
+        }
+
+        public boolean isLatencyForSnitch()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandraBloomFilters.concurrent.ScheduledExecutors;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+
+/**
+ * Bounds the extra load speculative reads may put on the cluster.
+ *
+ * Speculation only pays off when a few replicas are slow; when most reads are slow, because the cluster is overloaded,
+ * every extra request makes things worse. So speculative requests are only allowed while they stay below
+ * speculative_read_retry_budget times the reads that could have speculated. Both counts are halved every second so
+ * that the budget follows recent traffic.
+ */
+class SpeculationBudget
+{
+    static final SpeculationBudget instance = new SpeculationBudget(DatabaseDescriptor.getSpeculativeReadRetryBudget());
+
+    private static final long DECAY_INTERVAL_MS = 1000;
+
+    // allowance on top of the budget, so that a lightly loaded node can still speculate at all
+    private static final int BURST = 1;
+
+    private final double ratio;
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong speculations = new AtomicLong();
+
+    static
+    {
+        ScheduledExecutors.scheduledTasks.scheduleWithFixedDelay(instance::decay, DECAY_INTERVAL_MS, DECAY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @VisibleForTesting
+    SpeculationBudget(double ratio)
+    {
+        this.ratio = ratio;
+    }
+
+    void recordRead()
+    {
+        reads.incrementAndGet();
+    }
+
+    /**
+     * @return whether one more speculative request fits in the budget, in which case it is accounted for.
+     */
+    boolean tryAcquire()
+    {
+        while (true)
+        {
+            long spent = speculations.get();
+            if (spent + 1 > BURST + reads.get() * ratio)
+                return false;
+            if (speculations.compareAndSet(spent, spent + 1))
+                return true;
+        }
+    }
+
+    @VisibleForTesting
+    void decay()
+    {
+        // not atomic with respect to concurrent updates, which only costs a little accuracy
+        reads.set(reads.get() / 2);
+        speculations.set(speculations.get() / 2);
+    }
+}
@@ -203,8 +203,8 @@ public class StartupChecks
     {
         // check all directories(data, commitlog, saved cache) for existence and permission
         Iterable<String> dirs = Iterables.concat(Arrays.asList(DatabaseDescriptor.getAllDataFileLocations()),
-                                                 Arrays.asList(DatabaseDescriptor.getCommitLogLocation(),
-                                                               DatabaseDescriptor.getSavedCachesLocation(),
+                                                 Arrays.asList(DatabaseDescriptor.getCommitLogLocations()),
+                                                 Arrays.asList(DatabaseDescriptor.getSavedCachesLocation(),
                                                                DatabaseDescriptor.getHintsDirectory().getAbsolutePath()));
         for (String dataDir : dirs)
         {
@@ -1186,8 +1186,10 @@ public class StorageProxy implements StorageProxyMBean
     {
         // extra-datacenter replicas, grouped by dc
         Map<String, Collection<InetAddress>> dcGroups = null;
-        // only need to create a Message for non-local writes
-        MessageOut<Mutation> message = null;
+        // replicas of the local datacenter, to which the mutation is sent directly
+        List<InetAddress> localDcTargets = null;
+        // replicas of the local datacenter, to which the mutation is sent as part of a MUTATION_BATCH
+        List<InetAddress> batchedTargets = null;
 
         boolean insertLocal = false;
         ArrayList<InetAddress> endpointsToHint = null;
@@ -1205,14 +1207,24 @@ public class StorageProxy implements StorageProxyMBean
                 else
                 {
                     // belongs on a different server
-                    if (message == null)
-                        message = mutation.createMessage();
                     String dc = DatabaseDescriptor.getEndpointSnitch().getDatacenter(destination);
                     // direct writes to local DC or old Cassandra versions
                     // (1.1 knows how to forward old-style String message IDs; updated to int in 2.0)
                     if (localDataCenter.equals(dc))
                     {
-                        MessagingService.instance().sendRR(message, destination, responseHandler, true);
+                        // coalesce with other mutations to the same replica if batching is on
+                        if (MutationBatcher.shouldBatch(destination))
+                        {
+                            if (batchedTargets == null)
+                                batchedTargets = new ArrayList<>(3);
+                            batchedTargets.add(destination);
+                        }
+                        else
+                        {
+                            if (localDcTargets == null)
+                                localDcTargets = new ArrayList<>(3);
+                            localDcTargets.add(destination);
+                        }
                     }
                     else
                     {
@@ -1239,20 +1251,48 @@ public class StorageProxy implements StorageProxyMBean
             }
         }
 
-        if (endpointsToHint != null)
-            submitHint(mutation, endpointsToHint, responseHandler);
-
-        if (insertLocal)
-            performLocally(stage, Optional.of(mutation), mutation::apply, responseHandler);
+        // only need to create a Message for non-local writes
+        MessageOut<Mutation> message = null;
+        if (localDcTargets != null || dcGroups != null)
+        {
+            message = mutation.createMessage();
+            // serialize the mutation once for all the messages it's in, rather than once per connection
+            int messages = (localDcTargets == null ? 0 : localDcTargets.size()) + (dcGroups == null ? 0 : dcGroups.size());
+            if (messages > 1)
+                message = message.withSerializedPayload(MessagingService.current_version);
+        }
 
-        if (dcGroups != null)
+        try
         {
-            // for each datacenter, send the message to one node to relay the write to other replicas
-            if (message == null)
-                message = mutation.createMessage();
+            if (localDcTargets != null)
+            {
+                for (InetAddress destination : localDcTargets)
+                    MessagingService.instance().sendRR(message, destination, responseHandler, true);
+            }
+
+            if (batchedTargets != null)
+            {
+                for (InetAddress destination : batchedTargets)
+                    MutationBatcher.instance.add(mutation, destination, responseHandler, true);
+            }
+
+            if (endpointsToHint != null)
+                submitHint(mutation, endpointsToHint, responseHandler);
 
-            for (Collection<InetAddress> dcTargets : dcGroups.values())
-                sendMessagesToNonlocalDC(message, dcTargets, responseHandler);
+            if (insertLocal)
+                performLocally(stage, Optional.of(mutation), mutation::apply, responseHandler);
+
+            if (dcGroups != null)
+            {
+                // for each datacenter, send the message to one node to relay the write to other replicas
+                for (Collection<InetAddress> dcTargets : dcGroups.values())
+                    sendMessagesToNonlocalDC(message, dcTargets, responseHandler);
+            }
+        }
+        finally
+        {
+            if (message != null)
+                message.releaseSerializedPayload();
         }
     }
 
@@ -41,7 +41,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
@@ -101,6 +103,7 @@ import org.apache.cassandraBloomFilters.db.DefinitionsUpdateVerbHandler;
 import org.apache.cassandraBloomFilters.db.Directories;
 import org.apache.cassandraBloomFilters.db.Keyspace;
 import org.apache.cassandraBloomFilters.db.MigrationRequestVerbHandler;
+import org.apache.cassandraBloomFilters.db.MutationBatchVerbHandler;
 import org.apache.cassandraBloomFilters.db.MutationVerbHandler;
 import org.apache.cassandraBloomFilters.db.PartitionPosition;
 import org.apache.cassandraBloomFilters.db.RangeSliceVerbHandler;
@@ -321,6 +324,7 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
 
         /* register the verb handlers */
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.MUTATION, new MutationVerbHandler());
+        MessagingService.instance().registerVerbHandlers(MessagingService.Verb.MUTATION_BATCH, new MutationBatchVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.READ_REPAIR, new ReadRepairVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.READ, new ReadCommandVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.RANGE_SLICE, new RangeSliceVerbHandler());
@@ -825,6 +829,7 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
             appStates.put(ApplicationState.HOST_ID, valueFactory.hostId(localHostId));
             appStates.put(ApplicationState.RPC_ADDRESS, valueFactory.rpcaddress(DatabaseDescriptor.getBroadcastRpcAddress()));
             appStates.put(ApplicationState.RELEASE_VERSION, valueFactory.releaseVersion());
+            appStates.put(ApplicationState.MUTATION_BATCH, valueFactory.mutationBatch(true));
             logger.info("Starting up server gossip");
             Gossiper.instance.register(this);
             Gossiper.instance.start(SystemKeyspace.incrementAndGetGeneration(), appStates); // needed for node-ring gathering.
@@ -4697,6 +4702,36 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
     }
 
     public static List<PartitionPosition> getDiskBoundaries(ColumnFamilyStore cfs, Directories.DataDirectory[] directories)
+    {
+        List<Range<Token>> localRanges = getLocalRangesForBoundaries(cfs);
+        if (localRanges == null)
+            return null;
+
+        return getDiskBoundaries(localRanges, cfs.getPartitioner(), directories);
+    }
+
+    public static List<PartitionPosition> getDiskBoundaries(ColumnFamilyStore cfs)
+    {
+        return getDiskBoundaries(cfs, cfs.getDirectories().getWriteableLocations());
+    }
+
+    /**
+     * Like getDiskBoundaries(cfs, directories), but with the range of each disk further split into splitsPerDisk
+     * token ranges of roughly equal ownership.
+     *
+     * @return the upper bounds of the token ranges, including every disk boundary, or null if the disk boundaries are
+     * unknown
+     */
+    public static List<PartitionPosition> getTokenRangeBoundaries(ColumnFamilyStore cfs, Directories.DataDirectory[] directories, int splitsPerDisk)
+    {
+        List<Range<Token>> localRanges = getLocalRangesForBoundaries(cfs);
+        if (localRanges == null)
+            return null;
+
+        return getTokenRangeBoundaries(localRanges, cfs.getPartitioner(), directories, splitsPerDisk);
+    }
+
+    private static List<Range<Token>> getLocalRangesForBoundaries(ColumnFamilyStore cfs)
     {
         if (!cfs.getPartitioner().splitter().isPresent())
             return null;
@@ -4718,14 +4753,7 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
 
         if (lr == null || lr.isEmpty())
             return null;
-        List<Range<Token>> localRanges = Range.sort(lr);
-
-        return getDiskBoundaries(localRanges, cfs.getPartitioner(), directories);
-    }
-
-    public static List<PartitionPosition> getDiskBoundaries(ColumnFamilyStore cfs)
-    {
-        return getDiskBoundaries(cfs, cfs.getDirectories().getWriteableLocations());
+        return Range.sort(lr);
     }
 
     /**
@@ -4753,4 +4781,23 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
         diskBoundaries.add(partitioner.getMaximumToken().maxKeyBound());
         return diskBoundaries;
     }
+
+    /**
+     * Returns the disk boundaries, see getDiskBoundaries(localRanges, partitioner, dataDirectories), merged with the
+     * boundaries of splitsPerDisk * dataDirectories.length equally sized token ranges of the owned ranges.
+     *
+     * Unlike the disk boundaries these may fall within a vnode range; a token range never crosses a disk boundary.
+     */
+    public static List<PartitionPosition> getTokenRangeBoundaries(List<Range<Token>> localRanges, IPartitioner partitioner, Directories.DataDirectory[] dataDirectories, int splitsPerDisk)
+    {
+        List<PartitionPosition> diskBoundaries = getDiskBoundaries(localRanges, partitioner, dataDirectories);
+        if (splitsPerDisk <= 1)
+            return diskBoundaries;
+
+        Splitter splitter = partitioner.splitter().get();
+        SortedSet<PartitionPosition> boundaries = new TreeSet<>(diskBoundaries);
+        for (Token token : splitter.splitOwnedRanges(splitsPerDisk * dataDirectories.length, localRanges, false))
+            boundaries.add(token.maxKeyBound());
+        return new ArrayList<>(boundaries);
+    }
 }
@@ -1226,6 +1226,7 @@ public class NodeProbe implements AutoCloseable
                 case "LiveDiskSpaceUsed":
                 case "MemtableSwitchCount":
                 case "SpeculativeRetries":
+                case "SpeculativeRetriesThrottled":
                 case "TotalDiskSpaceUsed":
                 case "WriteTotalLatency":
                 case "ReadTotalLatency":
@@ -1269,6 +1270,31 @@ public class NodeProbe implements AutoCloseable
         }
     }
 
+    /**
+     * Retrieve the latency of a segment of internode messages
+     * @param scope a verb, or the address of a peer
+     * @param segment OutboundQueue, Network, InboundQueue, Execution or RoundTrip
+     * @return the metric, or null if no such latency was recorded
+     */
+    public CassandraMetricsRegistry.JmxTimerMBean getMessageLatencyMetric(String scope, String segment)
+    {
+        try
+        {
+            ObjectName oName = new ObjectName("org.apache.cassandraBloomFilters.metrics:type=MessageLatency,scope=" + scope + ",name=" + segment);
+            if (!mbeanServerConn.isRegistered(oName))
+                return null;
+            return JMX.newMBeanProxy(mbeanServerConn, oName, CassandraMetricsRegistry.JmxTimerMBean.class);
+        }
+        catch (MalformedObjectNameException e)
+        {
+            throw new RuntimeException(e);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Retrieve Proxy metrics
      * @param metricName CompletedTasks, PendingTasks, BytesCompacted or TotalCompactionsCompleted.
@@ -94,6 +94,7 @@ public class NodeTool
                 PauseHandoff.class,
                 ResumeHandoff.class,
                 ProxyHistograms.class,
+                MessageHistograms.class,
                 Rebuild.class,
                 Refresh.class,
                 RemoveNode.class,
@@ -64,7 +64,9 @@ public class CompactionHistory extends NodeToolCmd
                                                                 (Long)value.get(3),
                                                                 (Long)value.get(4),
                                                                 (Long)value.get(5),
-                                                                (String)value.get(6));
+                                                                (String)value.get(6),
+                                                                // older nodes do not report phases
+                                                                value.size() > 7 ? (String)value.get(7) : "");
             chr.add(chc);
         }
         Collections.sort(chr);
@@ -88,8 +90,9 @@ public class CompactionHistory extends NodeToolCmd
         private final long bytesIn;
         private final long bytesOut;
         private final String rowMerged;
+        private final String phaseMicros;
 
-        CompactionHistoryRow(String id, String ksName, String cfName, long compactedAt, long bytesIn, long bytesOut, String rowMerged)
+        CompactionHistoryRow(String id, String ksName, String cfName, long compactedAt, long bytesIn, long bytesOut, String rowMerged, String phaseMicros)
         {
             this.id = id;
             this.ksName = ksName;
@@ -98,6 +101,7 @@ public class CompactionHistory extends NodeToolCmd
             this.bytesIn = bytesIn;
             this.bytesOut = bytesOut;
             this.rowMerged = rowMerged;
+            this.phaseMicros = phaseMicros;
         }
 
         public int compareTo(CompactionHistoryRow chc)
@@ -107,7 +111,7 @@ public class CompactionHistory extends NodeToolCmd
 
         public String[] getAllAsArray()
         {
-            String[] obj = new String[7];
+            String[] obj = new String[8];
             obj[0] = this.id;
             obj[1] = this.ksName;
             obj[2] = this.cfName;
@@ -117,6 +121,7 @@ public class CompactionHistory extends NodeToolCmd
             obj[4] = Long.toString(this.bytesIn);
             obj[5] = Long.toString(this.bytesOut);
             obj[6] = this.rowMerged;
+            obj[7] = this.phaseMicros;
             return obj;
         }
     }
@@ -18,6 +18,7 @@
 package org.apache.cassandraBloomFilters.tools.nodetool;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -25,7 +26,9 @@ import java.util.Map.Entry;
 import io.airlift.command.Command;
 import io.airlift.command.Option;
 
+import org.apache.cassandraBloomFilters.db.compaction.CompactionInfo;
 import org.apache.cassandraBloomFilters.db.compaction.CompactionManagerMBean;
+import org.apache.cassandraBloomFilters.db.compaction.CompactionPhases;
 import org.apache.cassandraBloomFilters.db.compaction.OperationType;
 import org.apache.cassandraBloomFilters.io.util.FileUtils;
 import org.apache.cassandraBloomFilters.tools.NodeProbe;
@@ -42,6 +45,11 @@ public class CompactionStats extends NodeToolCmd
             description = "Display bytes in human readable form, i.e. KB, MB, GB, TB")
     private boolean humanReadable = false;
 
+    @Option(title = "verbose",
+            name = {"-v", "--verbose"},
+            description = "Display the time and bytes of each phase of the compactions")
+    private boolean verbose = false;
+
     @Override
     public void execute(NodeProbe probe)
     {
@@ -92,6 +100,9 @@ public class CompactionStats extends NodeToolCmd
             }
             table.printTo(System.out);
 
+            if (verbose)
+                printPhases(compactions);
+
             String remainingTime = "n/a";
             if (compactionThroughput != 0)
             {
@@ -101,4 +112,42 @@ public class CompactionStats extends NodeToolCmd
             System.out.printf("%25s%10s%n", "Active compaction remaining time : ", remainingTime);
         }
     }
+
+    private void printPhases(List<Map<String, String>> compactions)
+    {
+        TableBuilder table = new TableBuilder();
+        List<String> header = new ArrayList<>();
+        header.add("id");
+        for (CompactionPhases.Phase phase : CompactionPhases.Phase.values())
+            header.add(phase.displayName());
+        table.add(header.toArray(new String[header.size()]));
+
+        boolean any = false;
+        for (Map<String, String> c : compactions)
+        {
+            // operations other than compactions, and older nodes, do not report phases
+            if (!c.containsKey(CompactionInfo.phaseTimeKey(CompactionPhases.Phase.MERGE)))
+                continue;
+
+            List<String> row = new ArrayList<>();
+            row.add(c.get("compactionId"));
+            for (CompactionPhases.Phase phase : CompactionPhases.Phase.values())
+            {
+                long millis = Long.parseLong(c.get(CompactionInfo.phaseTimeKey(phase))) / 1000;
+                long bytes = Long.parseLong(c.get(CompactionInfo.phaseBytesKey(phase)));
+                String bytesStr = humanReadable ? FileUtils.stringifyFileSize(bytes) : Long.toString(bytes);
+                row.add(bytes == 0 ? millis + "ms" : format("%dms (%s)", millis, bytesStr));
+            }
+            table.add(row.toArray(new String[row.size()]));
+            any = true;
+        }
+
+        if (any)
+        {
+            System.out.println();
+            System.out.println("phases:");
+            table.printTo(System.out);
+            System.out.println();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.tools.nodetool;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import io.airlift.command.Arguments;
+import io.airlift.command.Command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandraBloomFilters.metrics.CassandraMetricsRegistry;
+import org.apache.cassandraBloomFilters.metrics.MessageLatencyMetrics;
+import org.apache.cassandraBloomFilters.tools.NodeProbe;
+import org.apache.cassandraBloomFilters.tools.NodeTool.NodeToolCmd;
+
+@Command(name = "messagehistograms", description = "Print statistic histograms for each step of internode messages of a verb or peer (requires internode_latency_tracing)")
+public class MessageHistograms extends NodeToolCmd
+{
+    @Arguments(usage = "<verb> | <peer>", description = "A message verb such as MUTATION, or the address of a peer")
+    private List<String> args = new ArrayList<>();
+
+    @Override
+    public void execute(NodeProbe probe)
+    {
+        checkArgument(args.size() == 1, "messagehistograms requires a verb or peer argument");
+        String scope = args.get(0).contains(".") || args.get(0).contains(":")
+                       ? args.get(0).replace(':', '.') // ipv6 addresses are named with dots, as colons are invalid in JMX names
+                       : args.get(0).toUpperCase();
+
+        String[] percentiles = new String[]{"50%", "75%", "95%", "98%", "99%", "Min", "Max"};
+        MessageLatencyMetrics.Segment[] segments = MessageLatencyMetrics.Segment.values();
+        double[][] latencies = new double[segments.length][];
+        boolean any = false;
+        for (int i = 0; i < segments.length; i++)
+        {
+            CassandraMetricsRegistry.JmxTimerMBean metric = probe.getMessageLatencyMetric(scope, segments[i].metricName);
+            latencies[i] = metric == null ? new double[percentiles.length] : probe.metricPercentilesAsArray(metric);
+            any |= metric != null;
+        }
+        if (!any)
+        {
+            System.out.println("No message latency recorded for " + args.get(0) + ", is internode_latency_tracing enabled?");
+            return;
+        }
+
+        System.out.println(format("message histograms for %s", args.get(0)));
+        StringBuilder header = new StringBuilder(format("%-10s", "Percentile"));
+        StringBuilder units = new StringBuilder(format("%-10s", ""));
+        for (MessageLatencyMetrics.Segment segment : segments)
+        {
+            header.append(format("%15s", segment.metricName));
+            units.append(format("%15s", "(micros)"));
+        }
+        System.out.println(header);
+        System.out.println(units);
+        for (int p = 0; p < percentiles.length; p++)
+        {
+            StringBuilder line = new StringBuilder(format("%-10s", percentiles[p]));
+            for (int i = 0; i < segments.length; i++)
+                line.append(format("%15.2f", latencies[i][p]));
+            System.out.println(line);
+        }
+        System.out.println();
+    }
+}
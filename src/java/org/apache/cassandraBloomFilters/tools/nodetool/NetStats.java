@@ -20,6 +20,7 @@ package org.apache.cassandraBloomFilters.tools.nodetool;
 import io.airlift.command.Command;
 import io.airlift.command.Option;
 
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.cassandraBloomFilters.io.util.FileUtils;
@@ -118,6 +119,19 @@ public class NetStats extends NodeToolCmd
             for (long n : ms.getGossipMessageCompletedTasks().values())
                 completed += n;
             System.out.printf("%-25s%10s%10s%15s%n", "Gossip messages", "n/a", pending, completed);
+
+            // only with internode_traffic_classes
+            Map<String, Integer> mutationPending = ms.getMutationMessagePendingTasks();
+            if (!mutationPending.isEmpty())
+            {
+                pending = 0;
+                for (int n : mutationPending.values())
+                    pending += n;
+                completed = 0;
+                for (long n : ms.getMutationMessageCompletedTasks().values())
+                    completed += n;
+                System.out.printf("%-25s%10s%10s%15s%n", "Mutation messages", "n/a", pending, completed);
+            }
         }
     }
 }
\ No newline at end of file
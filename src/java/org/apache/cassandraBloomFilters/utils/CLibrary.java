@@ -48,6 +48,7 @@ public final class CLibrary
     private static final int F_NOCACHE = 48; /* Mac OS X specific flag, turns cache on/off */
     private static final int O_DIRECT  = 040000; /* fcntl.h */
     private static final int O_RDONLY  = 00000000; /* fcntl.h */
+    private static final int O_WRONLY  = 00000001; /* fcntl.h */
 
     private static final int POSIX_FADV_NORMAL     = 0; /* fadvise.h */
     private static final int POSIX_FADV_RANDOM     = 1; /* fadvise.h */
@@ -87,6 +88,8 @@ public final class CLibrary
     private static native int fcntl(int fd, int command, long flags) throws LastErrorException;
     private static native int posix_fadvise(int fd, long offset, int len, int flag) throws LastErrorException;
     private static native int open(String path, int flags) throws LastErrorException;
+    private static native long pwrite(int fd, Pointer buf, long count, long offset) throws LastErrorException;
+    private static native int posix_fallocate(int fd, long offset, long len);
     private static native int fsync(int fd) throws LastErrorException;
     private static native int close(int fd) throws LastErrorException;
     private static native Pointer strerror(int errnum) throws LastErrorException;
@@ -259,6 +262,86 @@ public final class CLibrary
         return fd;
     }
 
+    /**
+     * Opens an existing file for writing with O_DIRECT, so that writes to it bypass the page cache. Writes to the
+     * returned descriptor must be aligned to the block size of the device, both in memory and in the file.
+     *
+     * @return the file descriptor, or -1 if the file could not be opened with O_DIRECT
+     */
+    public static int tryOpenDirect(String path)
+    {
+        try
+        {
+            return open(path, O_WRONLY | O_DIRECT);
+        }
+        catch (UnsatisfiedLinkError e)
+        {
+            // JNA is unavailable just skipping Direct I/O
+        }
+        catch (RuntimeException e)
+        {
+            if (!(e instanceof LastErrorException))
+                throw e;
+
+            logger.warn(String.format("open(%s, O_WRONLY|O_DIRECT) failed, errno (%d).", path, errno(e)));
+        }
+
+        return -1;
+    }
+
+    /**
+     * Writes {@code length} bytes of native memory starting at {@code address} to the file at {@code offset},
+     * retrying until all of them have been written.
+     */
+    public static void pwriteFully(int fd, long address, long length, long offset) throws IOException
+    {
+        while (length > 0)
+        {
+            long written;
+            try
+            {
+                written = pwrite(fd, new Pointer(address), length, offset);
+            }
+            catch (RuntimeException e)
+            {
+                if (!(e instanceof LastErrorException))
+                    throw e;
+
+                throw new IOException(String.format("pwrite(%d) failed, errno (%d).", fd, errno(e)), e);
+            }
+            address += written;
+            offset += written;
+            length -= written;
+        }
+    }
+
+    /**
+     * Allocates the disk blocks of the given file range, so that later writes to it do not have to.
+     *
+     * @return true if the range was allocated, false if the filesystem or platform does not support it
+     */
+    public static boolean tryFallocate(int fd, long offset, long len)
+    {
+        if (fd == -1)
+            return false;
+
+        try
+        {
+            // posix_fallocate returns the error number rather than setting errno
+            int result = posix_fallocate(fd, offset, len);
+            if (result == 0)
+                return true;
+
+            logger.debug("posix_fallocate({}, {}, {}) failed, errno ({}).", fd, offset, len, result);
+        }
+        catch (UnsatisfiedLinkError e)
+        {
+            // JNA is unavailable just skipping
+        }
+
+        return false;
+    }
+
     public static void trySync(int fd)
     {
         if (fd == -1)
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.utils.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An unbounded, lock-free, multi-producer single-consumer queue whose elements are their own list nodes, so that
+ * enqueuing allocates nothing.
+ *
+ * Producers append with a single atomic swap of the tail (Vyukov's intrusive MPSC algorithm); only one thread at a
+ * time may call the consuming methods (poll, peek, take, drainTo, clear). An element can only be in one queue at
+ * a time, and may only be enqueued again once it has been consumed. A consumer blocked in take() is woken through
+ * a {@link WaitQueue}, which producers only touch when someone is actually waiting.
+ *
+ * Its iterator is weakly consistent and read-only: it may be used by any thread, sees the elements linked when it
+ * reaches them, and does not support remove().
+ *
+ * @param <E> the type of the elements, which must extend {@link Node}
+ */
+public class IntrusiveMpscQueue<E extends IntrusiveMpscQueue.Node> extends AbstractQueue<E> implements BlockingQueue<E>
+{
+    /**
+     * The link embedded in each element.
+     */
+    public static abstract class Node
+    {
+        private volatile Node next;
+    }
+
+    private static final class Stub extends Node
+    {
+    }
+
+    private static final AtomicReferenceFieldUpdater<Node, Node> nextUpdater = AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<IntrusiveMpscQueue, Node> tailUpdater = AtomicReferenceFieldUpdater.newUpdater(IntrusiveMpscQueue.class, Node.class, "tail");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<IntrusiveMpscQueue> sizeUpdater = AtomicIntegerFieldUpdater.newUpdater(IntrusiveMpscQueue.class, "size");
+
+    private final Node stub = new Stub();
+    private final WaitQueue notEmpty = new WaitQueue();
+
+    // only written by the consumer; volatile so that iterators may start from it
+    private volatile Node head = stub;
+    private volatile Node tail = stub;
+    private volatile int size;
+
+    public boolean offer(E e)
+    {
+        sizeUpdater.incrementAndGet(this);
+        push(e);
+        if (notEmpty.hasWaiters())
+            notEmpty.signal();
+        return true;
+    }
+
+    public void put(E e)
+    {
+        offer(e);
+    }
+
+    public boolean offer(E e, long timeout, TimeUnit unit)
+    {
+        return offer(e);
+    }
+
+    private void push(Node node)
+    {
+        nextUpdater.lazySet(node, null);
+        Node prev = tailUpdater.getAndSet(this, node);
+        // between the swap and this write the list is momentarily broken, and the consumer cannot unlink prev; see poll()
+        prev.next = node;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        Node h = head;
+        Node next = h.next;
+        if (h == stub)
+        {
+            if (next == null)
+                return null;
+            head = h = next;
+            next = next.next;
+        }
+
+        if (next == null)
+        {
+            // h is the last linked node: it can only be unlinked once it has a successor, so put the stub back behind
+            // it, unless a producer is already appending to it. Either way some producer has swapped the tail past h
+            // and is about to link it; we wait for that rather than return null, as peek() may have returned h already
+            if (h == tail)
+                push(stub);
+            while ((next = h.next) == null)
+                Thread.yield();
+        }
+
+        head = next;
+        nextUpdater.lazySet(h, null);
+        sizeUpdater.decrementAndGet(this);
+        return (E) h;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek()
+    {
+        Node h = head;
+        if (h == stub)
+        {
+            Node next = h.next;
+            if (next == null)
+                return null;
+            head = h = next;
+        }
+        return (E) h;
+    }
+
+    public E take() throws InterruptedException
+    {
+        while (true)
+        {
+            E e = poll();
+            if (e != null)
+                return e;
+
+            WaitQueue.Signal signal = notEmpty.register();
+            e = poll();
+            if (e != null)
+            {
+                signal.cancel();
+                return e;
+            }
+            signal.await();
+        }
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true)
+        {
+            E e = poll();
+            if (e != null)
+                return e;
+
+            WaitQueue.Signal signal = notEmpty.register();
+            e = poll();
+            if (e != null)
+            {
+                signal.cancel();
+                return e;
+            }
+            if (!signal.awaitUntil(deadline))
+                return poll();
+        }
+    }
+
+    public int drainTo(Collection<? super E> c)
+    {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements)
+    {
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null)
+        {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of elements enqueued but not yet consumed. As elements are counted before they are
+     * linked, this may briefly include elements poll() cannot see yet.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int remainingCapacity()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    public Iterator<E> iterator()
+    {
+        return new Itr();
+    }
+
+    private class Itr implements Iterator<E>
+    {
+        private Node next;
+
+        Itr()
+        {
+            next = skipStub(head);
+        }
+
+        // the head may have been consumed already, in which case its link is cleared and iteration stops early
+        private Node skipStub(Node node)
+        {
+            return node == stub ? stub.next : node;
+        }
+
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next()
+        {
+            Node current = next;
+            if (current == null)
+                throw new NoSuchElementException();
+            next = skipStub(current.next);
+            return (E) current;
+        }
+    }
+
+    public String toString()
+    {
+        return "IntrusiveMpscQueue(size=" + size + ')';
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.test.microbench;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandraBloomFilters.config.Config;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.locator.DynamicEndpointSnitch;
+import org.apache.cassandraBloomFilters.locator.SimpleSnitch;
+import org.apache.cassandraBloomFilters.service.StorageService;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the reservoir and the histogram scoring of the DynamicEndpointSnitch: the cost of recording latencies
+ * from several threads while the scores are being updated, and how quickly a node that becomes slow is sorted last.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512M")
+@State(Scope.Benchmark)
+public class DynamicEndpointSnitchBench
+{
+    @Param({"reservoir", "histogram"})
+    String scoring;
+
+    @Param({"16", "256"})
+    int hostCount;
+
+    private DynamicEndpointSnitch snitch;
+    private List<InetAddress> hosts;
+
+    @Setup
+    public void setup() throws UnknownHostException
+    {
+        DatabaseDescriptor.setDynamicSnitchScoring(Config.DynamicSnitchScoring.valueOf(scoring));
+        StorageService.instance.unsafeInitialize();
+        hosts = hosts(hostCount);
+        snitch = newSnitch(hosts, "bench");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        snitch.unregisterMBean();
+    }
+
+    private static List<InetAddress> hosts(int count) throws UnknownHostException
+    {
+        List<InetAddress> hosts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            hosts.add(InetAddress.getByAddress(new byte[]{ 127, 1, (byte) (i >> 8), (byte) i }));
+        return hosts;
+    }
+
+    private static DynamicEndpointSnitch newSnitch(List<InetAddress> hosts, String instance)
+    {
+        DynamicEndpointSnitch snitch = new DynamicEndpointSnitch(new SimpleSnitch(), instance);
+        for (int i = 0; i < 1000; i++)
+        {
+            for (InetAddress host : hosts)
+                snitch.receiveTiming(host, 10);
+        }
+        snitch.updateScores();
+        return snitch;
+    }
+
+    // the threads handling responses record latencies while the scores are updated; updates are normally 100ms
+    // apart, but running them back to back shows their cost and makes them contend with the recording as much as can be
+    @Benchmark
+    @Group("scoring")
+    @GroupThreads(3)
+    public void receiveTiming()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        snitch.receiveTiming(hosts.get(random.nextInt(hosts.size())), 1 + random.nextInt(20));
+    }
+
+    @Benchmark
+    @Group("scoring")
+    @GroupThreads(1)
+    public void updateScores()
+    {
+        snitch.updateScores();
+    }
+
+    @State(Scope.Thread)
+    public static class SlowNode
+    {
+        private static final int HOSTS = 16;
+
+        private DynamicEndpointSnitch snitch;
+        private List<InetAddress> hosts;
+
+        @Setup(Level.Iteration)
+        public void setup() throws UnknownHostException
+        {
+            // the scoring was set up by the benchmark state
+            hosts = hosts(HOSTS);
+            snitch = newSnitch(hosts, "slownode");
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown()
+        {
+            snitch.unregisterMBean();
+        }
+    }
+
+    /**
+     * The time it takes for the first of 16 nodes answering a request a millisecond each to be sorted last once it
+     * becomes ten times slower than the others, with the scores updated by the snitch itself.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    @Threads(1)
+    public void slowNodeDemotion(SlowNode state) throws InterruptedException
+    {
+        InetAddress self = FBUtilities.getBroadcastAddress();
+        InetAddress slow = state.hosts.get(0);
+        List<InetAddress> sorted = state.snitch.getSortedListByProximity(self, state.hosts);
+        while (!sorted.get(sorted.size() - 1).equals(slow))
+        {
+            for (InetAddress host : state.hosts)
+                state.snitch.receiveTiming(host, host.equals(slow) ? 100 : 10);
+            Thread.sleep(1);
+            sorted = state.snitch.getSortedListByProximity(self, state.hosts);
+        }
+    }
+}
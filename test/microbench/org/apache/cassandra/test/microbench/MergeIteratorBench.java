@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.test.microbench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandraBloomFilters.utils.MergeIterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the binary heap and the tournament tree implementations of the many-to-one MergeIterator, for sources
+ * whose items are randomly interleaved and for sources that do not overlap at all (as in levelled compaction).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class MergeIteratorBench
+{
+    private static final int ITEMS = 64 * 1024;
+
+    @Param({"2", "4", "8", "16", "32", "64"})
+    int sources;
+
+    @Param({"RANDOM", "DISJOINT"})
+    String overlap;
+
+    private List<List<Integer>> lists;
+
+    private final Comparator<Integer> comparator = Comparator.naturalOrder();
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(sources);
+        lists = new ArrayList<>(sources);
+        int perSource = ITEMS / sources;
+        for (int i = 0; i < sources; i++)
+        {
+            List<Integer> list = new ArrayList<>(perSource);
+            for (int j = 0; j < perSource; j++)
+                list.add(overlap.equals("RANDOM") ? random.nextInt() : i * perSource + j);
+            Collections.sort(list);
+            lists.add(list);
+        }
+    }
+
+    private List<Iterator<Integer>> iterators()
+    {
+        List<Iterator<Integer>> iterators = new ArrayList<>(sources);
+        for (List<Integer> list : lists)
+            iterators.add(list.iterator());
+        return iterators;
+    }
+
+    @Benchmark
+    public void heap(Blackhole bh)
+    {
+        drain(new MergeIterator.ManyToOne<>(iterators(), comparator, new Last()), bh);
+    }
+
+    @Benchmark
+    public void tournament(Blackhole bh)
+    {
+        drain(new MergeIterator.Tournament<>(iterators(), comparator, new Last()), bh);
+    }
+
+    private static void drain(MergeIterator<Integer, Integer> iterator, Blackhole bh)
+    {
+        while (iterator.hasNext())
+            bh.consume(iterator.next());
+    }
+
+    private static class Last extends MergeIterator.Reducer<Integer, Integer>
+    {
+        private Integer item;
+
+        public void reduce(int idx, Integer current)
+        {
+            item = current;
+        }
+
+        protected Integer getReduced()
+        {
+            return item;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.test.microbench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandraBloomFilters.config.CFMetaData;
+import org.apache.cassandraBloomFilters.config.ColumnDefinition;
+import org.apache.cassandraBloomFilters.cql3.ColumnIdentifier;
+import org.apache.cassandraBloomFilters.db.*;
+import org.apache.cassandraBloomFilters.db.marshal.Int32Type;
+import org.apache.cassandraBloomFilters.db.marshal.LongType;
+import org.apache.cassandraBloomFilters.db.marshal.UTF8Type;
+import org.apache.cassandraBloomFilters.db.rows.*;
+import org.apache.cassandraBloomFilters.io.util.DataInputBuffer;
+import org.apache.cassandraBloomFilters.io.util.DataOutputBuffer;
+import org.apache.cassandraBloomFilters.net.MessagingService;
+import org.apache.cassandraBloomFilters.utils.ByteBufferUtil;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares rewriting a serialized partition the way compaction does by default, deserializing every row into
+ * objects and serializing them back, with copying its rows through the reusable buffers of SerializedRowCopier.
+ * <p>
+ * Besides the time per partition, each iteration prints the allocation rate of the benchmark thread (measured with
+ * the JVM thread allocation counters, as the JMH gc profiler of this version doesn't report it), which is the point
+ * of the copier: it should be close to zero bytes per row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Thread)
+public class SerializedRowCopyBench
+{
+    private static final int VERSION = MessagingService.current_version;
+
+    @Param({"1", "100", "1000"})
+    int rows;
+
+    @Param({"1", "10"})
+    int columns;
+
+    private SerializationHeader source;
+    private SerializationHeader target;
+    private SerializationHelper helper;
+    private ByteBuffer partition;
+
+    private final DataOutputBuffer output = new DataOutputBuffer();
+    private SerializedRowCopier copier;
+    private final EncodingStats.Collector stats = new EncodingStats.Collector();
+
+    private long allocatedAtStart;
+    private long startNanos;
+    private long rowsProcessed;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        CFMetaData.Builder builder = CFMetaData.Builder.create("bench", "copy")
+                                                       .addPartitionKey("k", Int32Type.instance)
+                                                       .addClusteringColumn("c", LongType.instance);
+        for (int i = 0; i < columns; i++)
+            builder.addRegularColumn("v" + i, i % 2 == 0 ? Int32Type.instance : UTF8Type.instance);
+        CFMetaData metadata = builder.build();
+
+        source = new SerializationHeader(true, metadata, metadata.partitionColumns(), new EncodingStats(1000, Cell.NO_DELETION_TIME, Cell.NO_TTL));
+        target = new SerializationHeader(true, metadata, metadata.partitionColumns(), new EncodingStats(0, Cell.NO_DELETION_TIME, Cell.NO_TTL));
+        helper = new SerializationHelper(metadata, VERSION, SerializationHelper.Flag.LOCAL);
+        copier = new SerializedRowCopier(target, VERSION);
+
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            long previousRowStart = 0;
+            for (int r = 0; r < rows; r++)
+            {
+                Row.Builder row = BTreeRow.sortedBuilder();
+                row.newRow(metadata.comparator.make((long) r));
+                row.addPrimaryKeyLivenessInfo(LivenessInfo.create(1000 + r, FBUtilities.nowInSeconds()));
+                for (int i = 0; i < columns; i++)
+                {
+                    ColumnDefinition column = metadata.getColumnDefinition(new ColumnIdentifier("v" + i, false));
+                    ByteBuffer value = i % 2 == 0 ? ByteBufferUtil.bytes(r) : ByteBufferUtil.bytes("value-" + r);
+                    row.addCell(BufferCell.live(column, 1000 + r + (i % 3), value));
+                }
+
+                long pos = out.position();
+                UnfilteredSerializer.serializer.serialize(row.build(), source, out, pos - previousRowStart, VERSION);
+                previousRowStart = pos;
+            }
+            UnfilteredSerializer.serializer.writeEndOfPartition(out);
+            partition = out.buffer();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration()
+    {
+        rowsProcessed = 0;
+        startNanos = System.nanoTime();
+        allocatedAtStart = allocatedBytes();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration()
+    {
+        long allocated = allocatedBytes() - allocatedAtStart;
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%nAllocation rate: %.1f bytes/row, %.1f MB/s%n",
+                          (double) allocated / Math.max(1, rowsProcessed),
+                          allocated / seconds / (1024 * 1024));
+    }
+
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    public int deserializeAndSerialize() throws IOException
+    {
+        output.clear();
+        DataInputBuffer in = new DataInputBuffer(partition, true);
+        Row.Builder builder = BTreeRow.sortedBuilder();
+        long previousRowStart = 0;
+        Unfiltered unfiltered;
+        while ((unfiltered = UnfilteredSerializer.serializer.deserialize(in, source, helper, builder)) != null)
+        {
+            Rows.collectStats((Row) unfiltered, stats);
+            long pos = output.position();
+            UnfilteredSerializer.serializer.serialize(unfiltered, target, output, pos - previousRowStart, VERSION);
+            previousRowStart = pos;
+            ++rowsProcessed;
+        }
+        return output.getLength();
+    }
+
+    @Benchmark
+    public int copy() throws IOException
+    {
+        output.clear();
+        copier.startPartition(new DataInputBuffer(partition, true), source, stats);
+        long previousRowStart = 0;
+        while (copier.advance())
+        {
+            long pos = output.position();
+            copier.writeTo(output, pos - previousRowStart);
+            previousRowStart = pos;
+            ++rowsProcessed;
+        }
+        return output.getLength();
+    }
+}
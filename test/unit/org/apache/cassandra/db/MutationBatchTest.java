@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.SchemaLoader;
+import org.apache.cassandraBloomFilters.config.CFMetaData;
+import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
+import org.apache.cassandraBloomFilters.io.util.DataInputBuffer;
+import org.apache.cassandraBloomFilters.io.util.DataOutputBuffer;
+import org.apache.cassandraBloomFilters.net.MessagingService;
+import org.apache.cassandraBloomFilters.schema.KeyspaceParams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MutationBatchTest
+{
+    private static final String KEYSPACE1 = "MutationBatchTest";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD1));
+    }
+
+    @Test
+    public void testSerialization() throws IOException
+    {
+        CFMetaData cfm = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1).metadata;
+        List<Mutation> mutations = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            mutations.add(new RowUpdateBuilder(cfm, i, "key" + i)
+                          .clustering("column" + i)
+                          .add("val", "value" + i)
+                          .build());
+        }
+
+        MutationBatch batch = new MutationBatch(mutations);
+        int version = MessagingService.current_version;
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            MutationBatch.serializer.serialize(batch, out, version);
+            assertEquals(MutationBatch.serializer.serializedSize(batch, version), out.getLength());
+
+            try (DataInputBuffer in = new DataInputBuffer(out.buffer(), false))
+            {
+                List<Mutation> deserialized = MutationBatch.serializer.deserialize(in, version).mutations;
+                assertEquals(mutations.size(), deserialized.size());
+                // the mutations come back in order, and as they went
+                for (int i = 0; i < mutations.size(); i++)
+                    assertEquals(mutations.get(i).toString(), deserialized.get(i).toString());
+            }
+        }
+    }
+
+    @Test
+    public void testResponseSerialization() throws IOException
+    {
+        boolean[] applied = new boolean[200];
+        for (int i = 0; i < applied.length; i++)
+            applied[i] = i % 3 != 0;
+
+        MutationBatch.Response response = new MutationBatch.Response(applied);
+        int version = MessagingService.current_version;
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            MutationBatch.Response.serializer.serialize(response, out, version);
+            assertEquals(MutationBatch.Response.serializer.serializedSize(response, version), out.getLength());
+
+            try (DataInputBuffer in = new DataInputBuffer(out.buffer(), false))
+            {
+                assertTrue(Arrays.equals(applied, MutationBatch.Response.serializer.deserialize(in, version).applied));
+            }
+        }
+    }
+}
@@ -79,7 +79,7 @@ public class CommitLogSegmentManagerTest
         });
         dummyThread.start();
 
-        CommitLogSegmentManager clsm = CommitLog.instance.allocator;
+        CommitLogSegmentManager clsm = CommitLog.instance.allocators[0];
 
         //Protect against delay, but still break out as fast as possible
         long start = System.currentTimeMillis();
@@ -22,7 +22,9 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -32,6 +34,7 @@ import org.junit.*;
 
 import org.apache.cassandraBloomFilters.SchemaLoader;
 import org.apache.cassandraBloomFilters.Util;
+import org.apache.cassandraBloomFilters.config.Config;
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.config.ParameterizedClass;
 import org.apache.cassandraBloomFilters.db.*;
@@ -48,6 +51,8 @@ import org.apache.cassandraBloomFilters.io.compress.LZ4Compressor;
 import org.apache.cassandraBloomFilters.io.compress.SnappyCompressor;
 import org.apache.cassandraBloomFilters.io.util.DataInputPlus;
 import org.apache.cassandraBloomFilters.io.util.FastByteArrayInputStream;
+import org.apache.cassandraBloomFilters.io.util.FileUtils;
+import org.apache.cassandraBloomFilters.metrics.CommitLogMetrics;
 import org.apache.cassandraBloomFilters.net.MessagingService;
 import org.apache.cassandraBloomFilters.schema.KeyspaceParams;
 import org.apache.cassandraBloomFilters.security.EncryptionContext;
@@ -57,12 +62,16 @@ import org.apache.cassandraBloomFilters.utils.vint.VIntCoding;
 
 import static org.apache.cassandraBloomFilters.utils.ByteBufferUtil.bytes;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class CommitLogTest
 {
     private static final String KEYSPACE1 = "CommitLogTest";
     private static final String KEYSPACE2 = "CommitLogTestNonDurable";
+    private static final String KEYSPACE3 = "CommitLogTestLanes1";
+    private static final String KEYSPACE4 = "CommitLogTestLanes2";
     private static final String STANDARD1 = "Standard1";
     private static final String STANDARD2 = "Standard2";
 
@@ -80,6 +89,11 @@ public class CommitLogTest
                                     KeyspaceParams.simpleTransient(1),
                                     SchemaLoader.standardCFMD(KEYSPACE1, STANDARD1, 0, AsciiType.instance, BytesType.instance),
                                     SchemaLoader.standardCFMD(KEYSPACE1, STANDARD2, 0, AsciiType.instance, BytesType.instance));
+        for (String keyspace : new String[]{ KEYSPACE3, KEYSPACE4 })
+            SchemaLoader.createKeyspace(keyspace,
+                                        KeyspaceParams.simple(1),
+                                        SchemaLoader.standardCFMD(keyspace, STANDARD1, 0, AsciiType.instance, BytesType.instance),
+                                        SchemaLoader.standardCFMD(keyspace, STANDARD2, 0, AsciiType.instance, BytesType.instance));
         CompactionManager.instance.disableAutoCompaction();
     }
 
@@ -99,6 +113,19 @@ public class CommitLogTest
         }, CommitLogReplayException.class);
     }
 
+    @Test
+    public void testPendingReplaySegmentsAfterFailure() throws Exception
+    {
+        CommitLogMetrics metrics = CommitLog.instance.metrics;
+        long pendingBefore = metrics.pendingReplaySegments.getCount();
+        runExpecting(() -> {
+            CommitLog.instance.recover(tmpFile(CommitLogDescriptor.current_version), tmpFile(CommitLogDescriptor.current_version));
+            return null;
+        }, CommitLogReplayException.class);
+        // the segments left unreplayed by the failure are no longer pending
+        assertEquals(pendingBefore, metrics.pendingReplaySegments.getCount());
+    }
+
     @Test
     public void testRecoveryWithEmptyLog20() throws Exception
     {
@@ -205,7 +232,7 @@ public class CommitLogTest
         assertEquals(2, CommitLog.instance.activeSegments());
 
         UUID cfid2 = m2.getColumnFamilyIds().iterator().next();
-        CommitLog.instance.discardCompletedSegments(cfid2, CommitLog.instance.getContext());
+        CommitLog.instance.discardCompletedSegments(cfid2, CommitLog.instance.getContext(cfs2.metadata));
 
         // Assert we still have both our segments
         assertEquals(2, CommitLog.instance.activeSegments());
@@ -234,7 +261,7 @@ public class CommitLogTest
         // "Flush": this won't delete anything
         UUID cfid1 = rm.getColumnFamilyIds().iterator().next();
         CommitLog.instance.sync(true);
-        CommitLog.instance.discardCompletedSegments(cfid1, CommitLog.instance.getContext());
+        CommitLog.instance.discardCompletedSegments(cfid1, CommitLog.instance.getContext(cfs1.metadata));
 
         assertEquals(1, CommitLog.instance.activeSegments());
 
@@ -254,7 +281,7 @@ public class CommitLogTest
         // didn't write anything on cf1 since last flush (and we flush cf2)
 
         UUID cfid2 = rm2.getColumnFamilyIds().iterator().next();
-        CommitLog.instance.discardCompletedSegments(cfid2, CommitLog.instance.getContext());
+        CommitLog.instance.discardCompletedSegments(cfid2, CommitLog.instance.getContext(cfs2.metadata));
 
         // Assert we still have both our segment
         assertEquals(1, CommitLog.instance.activeSegments());
@@ -315,6 +342,304 @@ public class CommitLogTest
         throw new AssertionError("mutation larger than limit was accepted");
     }
 
+    @Test
+    public void testReplayMetrics() throws Exception
+    {
+        CommitLog.instance.resetUnsafe(true);
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(STANDARD1);
+        for (int i = 0; i < 10; i++)
+            new RowUpdateBuilder(cfs.metadata, 0, "key" + i)
+                .clustering("bytes")
+                .add("val", ByteBuffer.allocate(10))
+                .build()
+                .apply();
+
+        CommitLogMetrics metrics = CommitLog.instance.metrics;
+        long segmentsBefore = metrics.replayedSegments.getCount();
+        long mutationsBefore = metrics.replayedMutations.getCount();
+        int activeSegments = CommitLog.instance.activeSegments();
+
+        cfs.clearUnsafe();
+        CommitLog.instance.resetUnsafe(false);
+
+        assertEquals(activeSegments, metrics.replayedSegments.getCount() - segmentsBefore);
+        assertTrue(metrics.replayedMutations.getCount() - mutationsBefore >= 10);
+        assertEquals(0, metrics.pendingReplaySegments.getCount());
+        assertEquals(10, Util.getAll(Util.cmd(cfs).build()).size());
+    }
+
+    @Test
+    public void testParallelReplayMatchesSerialReplay() throws Exception
+    {
+        File directory = new File(logDirectory, "parallel");
+        FileUtils.deleteRecursive(directory);
+        directory.mkdirs();
+
+        CommitLog commitLog = new CommitLog(directory.getPath(), CommitLogArchiver.disabled()).start();
+        CommitLogReplayer.MutationInitiator originalInitiator = CommitLogReplayer.mutationInitiator;
+        try
+        {
+            // a few mutations per segment, to the same few partitions, so that both order and positions matter
+            ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(STANDARD1);
+            int mutations = 12;
+            for (int i = 0; i < mutations; i++)
+                commitLog.add(new RowUpdateBuilder(cfs.metadata, i, "k" + (i % 3))
+                              .clustering("bytes")
+                              .add("val", ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize() / 5))
+                              .build());
+            commitLog.sync(true);
+
+            List<String> activeSegments = commitLog.getActiveSegmentNames();
+            File[] files = directory.listFiles((file, name) -> activeSegments.contains(name));
+            Arrays.sort(files, new CommitLogSegment.CommitLogSegmentFileComparator());
+            assertTrue(files.length > 2);
+
+            List<String> serial = replayRecording(commitLog, files, 1);
+            List<String> parallel = replayRecording(commitLog, files, 3);
+
+            assertEquals(mutations, serial.size());
+            assertEquals(serial, parallel);
+        }
+        finally
+        {
+            CommitLogReplayer.mutationInitiator = originalInitiator;
+            commitLog.shutdownBlocking();
+        }
+    }
+
+    /**
+     * Replays the given segments without applying anything, and returns the position and content of each mutation
+     * in the order it was initiated, checking that the positions only ever increase.
+     */
+    private static List<String> replayRecording(CommitLog commitLog, File[] files, int readerThreads) throws IOException
+    {
+        List<ReplayPosition> positions = new ArrayList<>();
+        List<String> initiated = new ArrayList<>();
+        CommitLogReplayer.mutationInitiator = new CommitLogReplayer.MutationInitiator()
+        {
+            @Override
+            protected Future<Integer> initiateMutation(Mutation mutation,
+                                                       long segmentId,
+                                                       int serializedSize,
+                                                       long entryLocation,
+                                                       CommitLogReplayer clr)
+            {
+                positions.add(new ReplayPosition(segmentId, (int) entryLocation));
+                initiated.add(segmentId + ":" + entryLocation + ":" + mutation);
+                return CompletableFuture.completedFuture(serializedSize);
+            }
+        };
+
+        CommitLogReplayer replayer = new CommitLogReplayer(commitLog, ReplayPosition.NONE, Collections.emptyMap(), CommitLogReplayer.ReplayFilter.create(), readerThreads);
+        replayer.recover(files);
+
+        for (int i = 1; i < positions.size(); i++)
+            assertTrue(ReplayPosition.comparator.compare(positions.get(i - 1), positions.get(i)) < 0);
+        return initiated;
+    }
+
+    @Test
+    public void testGroupCommitSync() throws Exception
+    {
+        Config.CommitLogSync previous = DatabaseDescriptor.getCommitLogSync();
+        DatabaseDescriptor.setCommitLogSync(Config.CommitLogSync.group);
+        DatabaseDescriptor.setCommitLogSyncGroupWindow(5);
+        CommitLog commitLog = new CommitLog(logDirectory, CommitLogArchiver.disabled()).start();
+        try
+        {
+            assertTrue(commitLog.executors[0] instanceof GroupCommitLogService);
+            long batchesBefore = commitLog.metrics.syncBatchSize.getCount();
+            long writesBefore = commitLog.executors[0].getCompletedTasks();
+
+            ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(STANDARD1);
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+            {
+                Thread writer = new Thread(() -> {
+                    for (int i = 0; i < 25; i++)
+                        commitLog.add(new RowUpdateBuilder(cfs.metadata, 0, "k")
+                                      .clustering("bytes")
+                                      .add("val", ByteBuffer.allocate(10))
+                                      .build());
+                });
+                writers.add(writer);
+                writer.start();
+            }
+            for (Thread writer : writers)
+                writer.join();
+
+            // every add() only returns once its write has been synced, and each sync acknowledges a group of them
+            assertEquals(100, commitLog.executors[0].getCompletedTasks() - writesBefore);
+            long batches = commitLog.metrics.syncBatchSize.getCount() - batchesBefore;
+            assertTrue(batches > 0 && batches <= 100);
+        }
+        finally
+        {
+            commitLog.shutdownBlocking();
+            DatabaseDescriptor.setCommitLogSync(previous);
+        }
+    }
+
+    @Test
+    public void testLanes() throws Exception
+    {
+        String[] locations = { logDirectory + "/lane0", logDirectory + "/lane1" };
+        for (String location : locations)
+            new File(location).mkdirs();
+        CommitLog commitLog = new CommitLog(locations, CommitLogArchiver.disabled()).start();
+        try
+        {
+            // tables are spread over the lanes in the order they are first written to
+            ColumnFamilyStore cfs1 = Keyspace.open(KEYSPACE1).getColumnFamilyStore(STANDARD1);
+            ColumnFamilyStore cfs2 = Keyspace.open(KEYSPACE1).getColumnFamilyStore(STANDARD2);
+            int lane1 = commitLog.laneFor(cfs1.metadata.cfId);
+            int lane2 = commitLog.laneFor(cfs2.metadata.cfId);
+            assertTrue(lane1 != lane2);
+
+            ReplayPosition last = commitLog.getContext(cfs1.metadata);
+            for (int i = 0; i < 10; i++)
+            {
+                ReplayPosition[] positions = commitLog.add(new RowUpdateBuilder(cfs1.metadata, 0, "k")
+                                                           .clustering("bytes")
+                                                           .add("val", ByteBuffer.allocate(10))
+                                                           .build());
+                // all writes to a table go to the same lane, so their positions are totally ordered
+                assertNull(positions[lane2]);
+                assertTrue(positions[lane1].compareTo(last) > 0);
+                last = positions[lane1];
+            }
+            assertTrue(commitLog.getContext(cfs1.metadata).compareTo(last) >= 0);
+
+            // only the table's lane has an active segment, and it lives in that lane's directory
+            assertEquals(1, commitLog.activeSegments());
+            assertTrue(new File(locations[lane1], commitLog.getActiveSegmentNames().get(0)).exists());
+
+            // a mutation of tables on both lanes is logged as one entry per lane
+            Mutation both = new RowUpdateBuilder(cfs1.metadata, 0, "k").clustering("bytes").add("val", ByteBuffer.allocate(10)).build();
+            both.add(new RowUpdateBuilder(cfs2.metadata, 0, "k").clustering("bytes").add("val", ByteBuffer.allocate(10)).buildUpdate());
+            ReplayPosition[] positions = commitLog.add(both);
+            assertTrue(positions[lane1].compareTo(last) > 0);
+            assertNotNull(positions[lane2]);
+            assertEquals(2, commitLog.activeSegments());
+
+            // the lanes share the total commit log space
+            long used = commitLog.allocators[0].onDiskSize() + commitLog.allocators[1].onDiskSize();
+            assertEquals(DatabaseDescriptor.getTotalCommitlogSpaceInMB() * 1024 * 1024 - used, commitLog.unusedCapacity());
+        }
+        finally
+        {
+            commitLog.shutdownBlocking();
+        }
+    }
+
+    @Test
+    public void testLaneReplay() throws Exception
+    {
+        File directory = new File(logDirectory, "lanes");
+        FileUtils.deleteRecursive(directory);
+        String[] locations = { directory + "/lane0", directory + "/lane1" };
+        for (String location : locations)
+            new File(location).mkdirs();
+
+        List<ColumnFamilyStore> tables = new ArrayList<>();
+        for (String keyspace : new String[]{ KEYSPACE3, KEYSPACE4 })
+        {
+            for (String table : new String[]{ STANDARD1, STANDARD2 })
+            {
+                ColumnFamilyStore cfs = Keyspace.open(keyspace).getColumnFamilyStore(table);
+                cfs.clearUnsafe();
+                tables.add(cfs);
+            }
+        }
+
+        // a distinct partition per write, round robin over tables of several keyspaces, with entries large enough
+        // that every lane fills several segments, whose ids interleave with those of the other lane
+        int writes = 40;
+        ColumnFamilyStore flushed = tables.get(0);
+        ReplayPosition flushedPosition = null;
+        Map<UUID, List<String>> written = new HashMap<>();
+        CommitLog commitLog = new CommitLog(locations, CommitLogArchiver.disabled()).start();
+        try
+        {
+            for (int i = 0; i < writes; i++)
+            {
+                ColumnFamilyStore cfs = tables.get(i % tables.size());
+                ReplayPosition position = commitLog.add(new RowUpdateBuilder(cfs.metadata, i, "k" + i)
+                                                        .clustering("bytes")
+                                                        .add("val", ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize() / 10))
+                                                        .build())[commitLog.laneFor(cfs.metadata.cfId)];
+                written.computeIfAbsent(cfs.metadata.cfId, id -> new ArrayList<>()).add("k" + i);
+                // as if the first table had been flushed half way through
+                if (i == writes / 2)
+                {
+                    assertTrue(cfs == flushed);
+                    flushedPosition = position;
+                }
+            }
+            commitLog.sync(true);
+        }
+        finally
+        {
+            commitLog.shutdownBlocking();
+        }
+
+        // restart over the same directories, and replay the segments of both lanes together, as recover() does
+        List<File> segments = new ArrayList<>();
+        for (String location : locations)
+        {
+            File[] laneSegments = new File(location).listFiles((dir, name) -> CommitLogDescriptor.isValid(name));
+            assertTrue(laneSegments.length > 1);
+            segments.addAll(Arrays.asList(laneSegments));
+        }
+        File[] files = segments.toArray(new File[segments.size()]);
+        Arrays.sort(files, new CommitLogSegment.CommitLogSegmentFileComparator());
+
+        Map<UUID, ReplayPosition> cfPositions = new HashMap<>();
+        for (ColumnFamilyStore cfs : tables)
+            cfPositions.put(cfs.metadata.cfId, ReplayPosition.NONE);
+        cfPositions.put(flushed.metadata.cfId, flushedPosition);
+
+        Map<UUID, List<String>> replayed = new HashMap<>();
+        CommitLogReplayer.MutationInitiator originalInitiator = CommitLogReplayer.mutationInitiator;
+        CommitLogReplayer.mutationInitiator = new CommitLogReplayer.MutationInitiator()
+        {
+            @Override
+            protected Future<Integer> initiateMutation(Mutation mutation,
+                                                       long segmentId,
+                                                       int serializedSize,
+                                                       long entryLocation,
+                                                       CommitLogReplayer clr)
+            {
+                for (UUID cfId : mutation.getColumnFamilyIds())
+                    replayed.computeIfAbsent(cfId, id -> new ArrayList<>()).add(AsciiType.instance.getString(mutation.key().getKey()));
+                return super.initiateMutation(mutation, segmentId, serializedSize, entryLocation, clr);
+            }
+        };
+        CommitLog restarted = new CommitLog(locations, CommitLogArchiver.disabled()).start();
+        try
+        {
+            CommitLogReplayer replayer = new CommitLogReplayer(restarted, ReplayPosition.NONE, cfPositions, CommitLogReplayer.ReplayFilter.create());
+            replayer.recover(files);
+            replayer.blockForWrites();
+        }
+        finally
+        {
+            CommitLogReplayer.mutationInitiator = originalInitiator;
+            restarted.shutdownBlocking();
+        }
+
+        for (ColumnFamilyStore cfs : tables)
+        {
+            // every table's entries are read back in the order they were written
+            List<String> keys = written.get(cfs.metadata.cfId);
+            assertEquals(keys, replayed.get(cfs.metadata.cfId));
+
+            // but only those after the table's own replay position are applied
+            int expected = cfs == flushed ? keys.size() - keys.indexOf("k" + writes / 2) - 1 : keys.size();
+            assertEquals(expected, Util.getAll(Util.cmd(cfs).build()).size());
+        }
+    }
+
     protected void testRecoveryWithBadSizeArgument(int size, int dataSize) throws Exception
     {
         Checksum checksum = new CRC32();
@@ -507,7 +832,7 @@ public class CommitLogTest
                 CommitLog.instance.add(m2);
 
             assertEquals(2, CommitLog.instance.activeSegments());
-            ReplayPosition position = CommitLog.instance.getContext();
+            ReplayPosition position = CommitLog.instance.getContext(cfs2.metadata);
             for (Keyspace ks : Keyspace.system())
                 for (ColumnFamilyStore syscfs : ks.getColumnFamilyStores())
                     CommitLog.instance.discardCompletedSegments(syscfs.metadata.cfId, position);
@@ -632,6 +957,89 @@ public class CommitLogTest
         }
     }
 
+    @Test
+    public void replay_DirectIO() throws Exception
+    {
+        // O_DIRECT is not supported by every filesystem the tests may run on, tmpfs in particular
+        boolean supported = DirectIOSegment.isSupported(logDirectory);
+
+        ParameterizedClass originalCompression = DatabaseDescriptor.getCommitLogCompression();
+        EncryptionContext originalEncryptionContext = DatabaseDescriptor.getEncryptionContext();
+        DatabaseDescriptor.setCommitLogCompression(null);
+        DatabaseDescriptor.setEncryptionContext(EncryptionContextGenerator.createDisabledContext());
+        DatabaseDescriptor.setCommitLogDirectIO(true);
+        CommitLog commitLog = new CommitLog(logDirectory, CommitLogArchiver.disabled()).start();
+        try
+        {
+            // without O_DIRECT, segments are memory-mapped rather than failing to be created
+            assertEquals(supported, commitLog.directIO);
+            replaySimple(commitLog);
+            replayWithDiscard(commitLog);
+        }
+        finally
+        {
+            commitLog.shutdownBlocking();
+            DatabaseDescriptor.setCommitLogDirectIO(false);
+            DatabaseDescriptor.setCommitLogCompression(originalCompression);
+            DatabaseDescriptor.setEncryptionContext(originalEncryptionContext);
+        }
+    }
+
+    @Test
+    public void testSegmentRecycling() throws Exception
+    {
+        File directory = new File(logDirectory, "recycle");
+        FileUtils.deleteRecursive(directory);
+        directory.mkdirs();
+
+        ParameterizedClass originalCompression = DatabaseDescriptor.getCommitLogCompression();
+        EncryptionContext originalEncryptionContext = DatabaseDescriptor.getEncryptionContext();
+        DatabaseDescriptor.setCommitLogCompression(null);
+        DatabaseDescriptor.setEncryptionContext(EncryptionContextGenerator.createDisabledContext());
+        DatabaseDescriptor.setCommitLogSegmentPoolSize(2);
+        CommitLog commitLog = new CommitLog(directory.getPath(), CommitLogArchiver.disabled()).start();
+        commitLog.allocators[0].enableReserveSegmentCreation();
+        try
+        {
+            // the manager preallocates the spare files in the background
+            Util.spinAssertEquals(2L, () -> commitLog.metrics.spareSegmentFiles.getValue(), 10);
+            long recycledBefore = commitLog.metrics.recycledSegments.getCount();
+
+            ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(STANDARD1);
+            Mutation m = new RowUpdateBuilder(cfs.metadata, 0, "k")
+                         .clustering("bytes")
+                         .add("val", ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize() / 4))
+                         .build();
+            for (int i = 0 ; i < 5 ; i++)
+                commitLog.add(m);
+            assertEquals(2, commitLog.activeSegments());
+
+            // the later segments were created from spare files
+            assertTrue(commitLog.metrics.recycledSegments.getCount() > recycledBefore);
+
+            // discarding a segment removes its file, either by keeping it as a spare or by deleting it,
+            // and the pool is kept topped up
+            String firstSegment = commitLog.getActiveSegmentNames().get(0);
+            commitLog.discardCompletedSegments(cfs.metadata.cfId, commitLog.getContext(cfs.metadata));
+            commitLog.allocators[0].awaitManagementTasksCompletion();
+            assertTrue(!new File(directory, firstSegment).exists());
+            Util.spinAssertEquals(2L, () -> commitLog.metrics.spareSegmentFiles.getValue(), 10);
+
+            // once the pool is full, discarded files are deleted rather than kept
+            File extra = new File(directory, "extra");
+            assertTrue(extra.createNewFile());
+            assertTrue(!commitLog.allocators[0].maybeRecycleFile(extra));
+            assertTrue(extra.delete());
+        }
+        finally
+        {
+            commitLog.shutdownBlocking();
+            DatabaseDescriptor.setCommitLogSegmentPoolSize(0);
+            DatabaseDescriptor.setCommitLogCompression(originalCompression);
+            DatabaseDescriptor.setEncryptionContext(originalEncryptionContext);
+        }
+    }
+
     private void replaySimple(CommitLog commitLog) throws IOException
     {
         int cellCount = 0;
@@ -656,7 +1064,7 @@ public class CommitLogTest
         List<String> activeSegments = commitLog.getActiveSegmentNames();
         Assert.assertFalse(activeSegments.isEmpty());
 
-        File[] files = new File(commitLog.location).listFiles((file, name) -> activeSegments.contains(name));
+        File[] files = new File(commitLog.locations[0]).listFiles((file, name) -> activeSegments.contains(name));
         replayer.recover(files);
 
         assertEquals(cellCount, replayer.cells);
@@ -676,7 +1084,7 @@ public class CommitLogTest
                                  .clustering("bytes")
                                  .add("val", bytes("this is a string"))
                                  .build();
-            ReplayPosition position = commitLog.add(rm1);
+            ReplayPosition position = commitLog.add(rm1)[0];
 
             if (i == discardPosition)
                 replayPosition = position;
@@ -692,7 +1100,7 @@ public class CommitLogTest
         List<String> activeSegments = commitLog.getActiveSegmentNames();
         Assert.assertFalse(activeSegments.isEmpty());
 
-        File[] files = new File(commitLog.location).listFiles((file, name) -> activeSegments.contains(name));
+        File[] files = new File(commitLog.locations[0]).listFiles((file, name) -> activeSegments.contains(name));
         replayer.recover(files);
 
         assertEquals(cellCount, replayer.cells);
@@ -104,7 +104,7 @@ public class CommitLogUpgradeTestMaker
                           mb(DatabaseDescriptor.getCommitLogSegmentSize()),
                           commitLog.compressor != null ? commitLog.compressor.getClass().getSimpleName() : "none",
                           commitLog.encryptionContext.isEnabled() ? "enabled" : "none",
-                          commitLog.executor.getClass().getSimpleName(),
+                          commitLog.executors[0].getClass().getSimpleName(),
                           randomSize ? "random size" : "");
         final List<CommitlogExecutor> threads = new ArrayList<>();
         ScheduledExecutorService scheduled = startThreads(commitLog, threads);
@@ -248,7 +248,7 @@ public class CommitLogUpgradeTestMaker
                     dataSize += sz;
                 }
 
-                rp = commitLog.add((Mutation)builder.makeMutation());
+                rp = commitLog.add((Mutation)builder.makeMutation())[0];
                 counter.incrementAndGet();
             }
         }
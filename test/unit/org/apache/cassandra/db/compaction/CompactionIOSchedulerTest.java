@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.io.File;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.db.Directories.DataDirectory;
+import org.apache.cassandraBloomFilters.db.compaction.CompactionIOScheduler.Lease;
+import org.apache.cassandraBloomFilters.db.compaction.CompactionIOScheduler.Priority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CompactionIOSchedulerTest
+{
+    private static final double MB = 1024 * 1024;
+    private static final DataDirectory disk1 = new DataDirectory(new File("/disk1"));
+    private static final DataDirectory disk2 = new DataDirectory(new File("/disk2"));
+
+    @Test
+    public void testBudgetsPerDirectoryAndPriority()
+    {
+        CompactionIOScheduler scheduler = new CompactionIOScheduler();
+        scheduler.setThroughput(70 * MB);
+
+        try (Lease background = scheduler.lease(OperationType.COMPACTION, Priority.BACKGROUND))
+        {
+            // alone on its disk, an operation gets the whole budget of the disk
+            assertEquals(70 * MB, background.getRateLimiter(disk1).getRate(), 1);
+
+            try (Lease user = scheduler.lease(OperationType.CLEANUP, Priority.USER);
+                 Lease urgent = scheduler.lease(OperationType.COMPACTION, Priority.URGENT))
+            {
+                // operations join the budgets of a disk when they first read from it
+                RateLimiter userLimiter = user.getRateLimiter(disk1);
+                assertEquals(56 * MB, userLimiter.getRate(), 1);
+                RateLimiter urgentLimiter = urgent.getRateLimiter(disk1);
+
+                assertEquals(40 * MB, userLimiter.getRate(), 1);
+                assertEquals(20 * MB, urgentLimiter.getRate(), 1);
+                assertEquals(10 * MB, scheduler.getRate(disk1, OperationType.COMPACTION, Priority.BACKGROUND), 1);
+
+                // other disks have budgets of their own
+                assertEquals(70 * MB, user.getRateLimiter(disk2).getRate(), 1);
+            }
+
+            assertEquals(70 * MB, scheduler.getRate(disk1, OperationType.COMPACTION, Priority.BACKGROUND), 1);
+
+            scheduler.setThroughput(35 * MB);
+            assertEquals(35 * MB, scheduler.getRate(disk1, OperationType.COMPACTION, Priority.BACKGROUND), 1);
+        }
+    }
+
+    @Test
+    public void testUnthrottled()
+    {
+        CompactionIOScheduler scheduler = new CompactionIOScheduler();
+        scheduler.setThroughput(Double.MAX_VALUE);
+        try (Lease background = scheduler.lease(OperationType.COMPACTION, Priority.BACKGROUND);
+             Lease user = scheduler.lease(OperationType.SCRUB, Priority.USER))
+        {
+            assertEquals(Double.MAX_VALUE, background.getRateLimiter(disk1).getRate(), 0);
+            assertEquals(Double.MAX_VALUE, user.getRateLimiter(disk1).getRate(), 0);
+        }
+    }
+
+    @Test
+    public void testUnscheduledReadsShareTheDirectoryBudget()
+    {
+        CompactionIOScheduler scheduler = new CompactionIOScheduler();
+        scheduler.setThroughput(70 * MB);
+
+        // reads outside of any lease get a background share of the budget of their directory
+        RateLimiter unscheduled = scheduler.getRateLimiter(disk1);
+        assertEquals(70 * MB, unscheduled.getRate(), 1);
+
+        try (Lease user = scheduler.lease(OperationType.CLEANUP, Priority.USER))
+        {
+            RateLimiter userLimiter = user.getRateLimiter(disk1);
+            assertEquals(56 * MB, userLimiter.getRate(), 1);
+            assertEquals(14 * MB, unscheduled.getRate(), 1);
+            assertEquals(14 * MB, scheduler.getRate(disk1, null, Priority.BACKGROUND), 1);
+
+            // but not of the others
+            assertEquals(70 * MB, user.getRateLimiter(disk2).getRate(), 1);
+        }
+    }
+
+    @Test
+    public void testDirectoryOf()
+    {
+        DataDirectory data1 = new DataDirectory(new File("/data1"));
+        DataDirectory data10 = new DataDirectory(new File("/data10"));
+        DataDirectory[] directories = { data1, data10 };
+
+        // sibling directories sharing a prefix are told apart
+        assertSame(data10, CompactionIOScheduler.directoryOf(new File("/data10/ks/table-1"), directories));
+        assertSame(data1, CompactionIOScheduler.directoryOf(new File("/data1/ks/table-1"), directories));
+        assertSame(data1, CompactionIOScheduler.directoryOf(new File("/data1/ks/../ks/table-1"), directories));
+        DataDirectory unknown = CompactionIOScheduler.directoryOf(new File("/data100/ks/table-1"), directories);
+        assertNotSame(data1, unknown);
+        assertNotSame(data10, unknown);
+    }
+
+    @Test
+    public void testCurrentLease()
+    {
+        CompactionIOScheduler scheduler = new CompactionIOScheduler();
+        try (Lease outer = scheduler.lease(OperationType.COMPACTION, Priority.BACKGROUND))
+        {
+            assertEquals(outer, CompactionIOScheduler.current());
+            try (Lease inner = scheduler.lease(OperationType.VALIDATION, Priority.USER))
+            {
+                assertEquals(inner, CompactionIOScheduler.current());
+            }
+            assertEquals(outer, CompactionIOScheduler.current());
+        }
+        assertEquals(null, CompactionIOScheduler.current());
+    }
+
+    @Test
+    public void testBackoffOnReadLatency()
+    {
+        CompactionIOScheduler scheduler = new CompactionIOScheduler();
+        scheduler.setThroughput(16 * MB);
+        try (Lease lease = scheduler.lease(OperationType.COMPACTION, Priority.BACKGROUND))
+        {
+            lease.getRateLimiter(disk1);
+
+            // establish the baseline of 100us per read
+            scheduler.adapt(1000, 1000 * 100);
+            assertEquals(1.0, scheduler.getBackoffFactor(), 0);
+
+            // reads slow down: back off by half each interval, down to the minimum
+            scheduler.adapt(1000, 1000 * 1000);
+            assertEquals(0.5, scheduler.getBackoffFactor(), 0.001);
+            assertEquals(8 * MB, scheduler.getRate(disk1, OperationType.COMPACTION, Priority.BACKGROUND), 1);
+            scheduler.adapt(1000, 1000 * 1000);
+            scheduler.adapt(1000, 1000 * 1000);
+            assertEquals(CompactionIOScheduler.MIN_BACKOFF_FACTOR, scheduler.getBackoffFactor(), 0.001);
+
+            // too few reads to tell: recover step by step
+            scheduler.adapt(10, 10 * 1000);
+            assertEquals(CompactionIOScheduler.MIN_BACKOFF_FACTOR + 0.1, scheduler.getBackoffFactor(), 0.001);
+            for (int i = 0; i < 10; i++)
+                scheduler.adapt(1000, 1000 * 100);
+            assertEquals(1.0, scheduler.getBackoffFactor(), 0);
+            assertEquals(16 * MB, scheduler.getRate(disk1, OperationType.COMPACTION, Priority.BACKGROUND), 1);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.db.compaction.CompactionPhases.Phase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactionPhasesTest
+{
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testTimedSections()
+    {
+        CompactionPhases phases = new CompactionPhases();
+        CompactionPhases previous = CompactionPhases.bind(phases, Phase.MERGE);
+        try
+        {
+            long start = CompactionPhases.start();
+            Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+            CompactionPhases.end(Phase.READ, start, 100);
+
+            // a section opened within another one counts towards the outer one
+            long outer = CompactionPhases.start();
+            long inner = CompactionPhases.start();
+            assertEquals(CompactionPhases.NOT_TIMED, inner);
+            CompactionPhases.end(Phase.WRITE, inner, 5);
+            CompactionPhases.end(Phase.INDEX, outer, 7);
+
+            CompactionPhases.record(Phase.THROTTLE, 3 * MILLIS, 50);
+        }
+        finally
+        {
+            CompactionPhases.unbind(previous);
+        }
+
+        assertTrue(phases.isUsed());
+        assertTrue(phases.getNanos(Phase.READ) >= 10 * MILLIS);
+        assertEquals(100, phases.getBytes(Phase.READ));
+        assertEquals(0, phases.getNanos(Phase.WRITE));
+        assertEquals(0, phases.getBytes(Phase.WRITE));
+        assertEquals(7, phases.getBytes(Phase.INDEX));
+        assertEquals(3 * MILLIS, phases.getNanos(Phase.THROTTLE));
+        assertEquals(50, phases.getBytes(Phase.THROTTLE));
+    }
+
+    @Test
+    public void testResidual()
+    {
+        CompactionPhases phases = new CompactionPhases();
+        long begin = System.nanoTime();
+        CompactionPhases previous = CompactionPhases.bind(phases, Phase.MERGE);
+        try
+        {
+            Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+            long start = CompactionPhases.start();
+            Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+            CompactionPhases.end(Phase.READ, start, 0);
+
+            // the residual time of a binding in progress is visible to progress reports
+            assertTrue(phases.snapshot().getNanos(Phase.MERGE) >= 20 * MILLIS);
+            assertEquals(0, phases.getNanos(Phase.MERGE));
+        }
+        finally
+        {
+            CompactionPhases.unbind(previous);
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        assertTrue(phases.getNanos(Phase.MERGE) >= 20 * MILLIS);
+        assertTrue(phases.getNanos(Phase.MERGE) + phases.getNanos(Phase.READ) <= elapsed);
+
+        // the residual of a later binding goes to its own phase
+        previous = CompactionPhases.bind(phases, Phase.INDEX);
+        Uninterruptibles.sleepUninterruptibly(5, TimeUnit.MILLISECONDS);
+        CompactionPhases.unbind(previous);
+        assertTrue(phases.getNanos(Phase.INDEX) >= 5 * MILLIS);
+    }
+
+    @Test
+    public void testUnbound()
+    {
+        assertEquals(CompactionPhases.NOT_TIMED, CompactionPhases.start());
+        CompactionPhases.end(Phase.READ, CompactionPhases.NOT_TIMED, 10);
+        CompactionPhases.record(Phase.THROTTLE, MILLIS, 10);
+
+        CompactionPhases phases = new CompactionPhases();
+        assertFalse(phases.isUsed());
+        CompactionPhases.unbind(CompactionPhases.bind(phases, Phase.MERGE));
+        // once unbound, sections are no longer timed
+        assertEquals(CompactionPhases.NOT_TIMED, CompactionPhases.start());
+    }
+
+    @Test
+    public void testAdd()
+    {
+        CompactionPhases part1 = new CompactionPhases();
+        CompactionPhases part2 = new CompactionPhases();
+        CompactionPhases previous = CompactionPhases.bind(part1, Phase.MERGE);
+        CompactionPhases.record(Phase.READ, 2 * MILLIS, 10);
+        CompactionPhases.unbind(previous);
+        previous = CompactionPhases.bind(part2, Phase.MERGE);
+        CompactionPhases.record(Phase.READ, 3 * MILLIS, 20);
+        CompactionPhases.unbind(previous);
+
+        CompactionPhases total = new CompactionPhases();
+        total.add(part1);
+        total.add(part2);
+        assertEquals(5 * MILLIS, total.getNanos(Phase.READ));
+        assertEquals(30, total.getBytes(Phase.READ));
+        assertEquals(part1.getNanos(Phase.MERGE) + part2.getNanos(Phase.MERGE), total.getNanos(Phase.MERGE));
+        assertEquals(Long.valueOf(5000), total.micros().get("read"));
+    }
+}
@@ -30,15 +30,22 @@ import org.apache.cassandraBloomFilters.OrderedJUnit4ClassRunner;
 import org.apache.cassandraBloomFilters.SchemaLoader;
 import org.apache.cassandraBloomFilters.Util;
 import org.apache.cassandraBloomFilters.config.CFMetaData;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.db.*;
 import org.apache.cassandraBloomFilters.db.marshal.AsciiType;
+import org.apache.cassandraBloomFilters.db.partitions.PartitionIterator;
+import org.apache.cassandraBloomFilters.db.rows.Row;
+import org.apache.cassandraBloomFilters.db.rows.RowIterator;
+import org.apache.cassandraBloomFilters.db.rows.UnfilteredRowIterator;
 import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
 import org.apache.cassandraBloomFilters.dht.*;
+import org.apache.cassandraBloomFilters.io.sstable.CopyablePartition;
 import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
 import org.apache.cassandraBloomFilters.schema.CompactionParams;
 import org.apache.cassandraBloomFilters.schema.KeyspaceParams;
 import org.apache.cassandraBloomFilters.utils.ByteBufferUtil;
 import org.apache.cassandraBloomFilters.utils.FBUtilities;
+import org.apache.cassandraBloomFilters.utils.UUIDGen;
 
 import static org.junit.Assert.*;
 
@@ -51,6 +58,7 @@ public class CompactionsTest
     private static final String CF_STANDARD2 = "Standard2";
     private static final String CF_STANDARD3 = "Standard3";
     private static final String CF_STANDARD4 = "Standard4";
+    private static final String CF_WIDE = "Wide";
     private static final String CF_SUPER1 = "Super1";
     private static final String CF_SUPER5 = "Super5";
     private static final String CF_SUPERGC = "SuperDirectGC";
@@ -71,6 +79,7 @@ public class CompactionsTest
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD2),
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD3),
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD4),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_WIDE),
                                     SchemaLoader.superCFMD(KEYSPACE1, CF_SUPER1, AsciiType.instance),
                                     SchemaLoader.superCFMD(KEYSPACE1, CF_SUPER5, AsciiType.instance),
                                     SchemaLoader.superCFMD(KEYSPACE1, CF_SUPERGC, AsciiType.instance)
@@ -141,6 +150,48 @@ public class CompactionsTest
         testSingleSSTableCompaction(SizeTieredCompactionStrategy.class.getCanonicalName());
     }
 
+    @Test
+    public void testTombstoneSweep() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore(CF_STANDARD1);
+        store.clearUnsafe();
+        store.metadata.gcGraceSeconds(1);
+        store.metadata.compactionStrategyOptions.put("tombstone_compaction_interval", "1");
+        store.metadata.compactionStrategyOptions.put("unchecked_tombstone_compaction", "false");
+        store.reload();
+        store.setCompactionStrategyClass(SizeTieredCompactionStrategy.class.getName());
+
+        // disable compaction while flushing
+        store.disableAutoCompaction();
+
+        // two sstables with overlapping token ranges, whose tombstones can only be purged together
+        populate(KEYSPACE1, CF_STANDARD1, 0, 9, 3); //ttl=3s
+        store.forceBlockingFlush();
+        long timestamp = populate(KEYSPACE1, CF_STANDARD1, 10, 19, 3); //ttl=3s
+        store.forceBlockingFlush();
+        assertEquals(2, store.getLiveSSTables().size());
+        long originalSize = SSTableReader.getTotalBytes(store.getLiveSSTables());
+        long purged = store.metric.tombstoneSweepTombstonesPurged.getCount();
+
+        // wait for the ttls and gc grace to pass
+        TimeUnit.SECONDS.sleep(5);
+
+        int gcBefore = CompactionManager.getDefaultGcBefore(store, FBUtilities.nowInSeconds());
+        List<TombstoneSweep.Candidate> candidates = TombstoneSweep.getCandidates(store, gcBefore);
+        assertFalse(candidates.isEmpty());
+        assertEquals(store.getLiveSSTables(), candidates.get(0).sstables);
+
+        store.enableAutoCompaction();
+        FBUtilities.waitOnFuture(CompactionManager.instance.submitTombstoneSweep(store));
+
+        assertEquals(1, store.getLiveSSTables().size());
+        long size = SSTableReader.getTotalBytes(store.getLiveSSTables());
+        assertTrue("should be less than " + originalSize + ", but was " + size, size < originalSize);
+        assertTrue(store.metric.tombstoneSweepTombstonesPurged.getCount() > purged);
+        assertMaxTimestamp(store, timestamp);
+    }
+
     /*
     @Test
     public void testSingleSSTableCompactionWithLeveledCompaction() throws Exception
@@ -324,6 +375,45 @@ public class CompactionsTest
         assertEquals(4, Util.getRangeSlice(cfs).size());
     }
 
+    @Test
+    public void testSubRangeCompaction() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore(CF_STANDARD4);
+        store.clearUnsafe();
+        store.disableAutoCompaction();
+
+        // overlapping sstables, each holding all of the keys
+        for (int i = 0; i < 4; i++)
+        {
+            populate(KEYSPACE1, CF_STANDARD4, 0, 99, 0);
+            store.forceBlockingFlush();
+        }
+        assertEquals(4, store.getLiveSSTables().size());
+
+        long minBytes = CompactionTask.subRangeMinBytes;
+        DatabaseDescriptor.setCompactionSubRangeParallelism(4);
+        CompactionTask.subRangeMinBytes = 0;
+        try
+        {
+            CompactionManager.instance.performMaximal(store, false);
+        }
+        finally
+        {
+            DatabaseDescriptor.setCompactionSubRangeParallelism(1);
+            CompactionTask.subRangeMinBytes = minBytes;
+        }
+
+        // one sstable per sub-range, none of which overlap
+        List<SSTableReader> sstables = new ArrayList<>(store.getLiveSSTables());
+        assertTrue(sstables.size() > 1);
+        sstables.sort((a, b) -> a.first.compareTo(b.first));
+        for (int i = 1; i < sstables.size(); i++)
+            assertTrue(sstables.get(i - 1).last.compareTo(sstables.get(i).first) < 0);
+
+        assertEquals(100, Util.getAll(Util.cmd(store).build()).size());
+    }
+
     @Test
     public void testDontPurgeAccidentaly() throws InterruptedException
     {
@@ -447,6 +537,112 @@ public class CompactionsTest
         assertEquals(keys, k);
     }
 
+    @Test
+    public void testWidePartitionCopy() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_WIDE);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        // A partition spanning several index blocks, alone in its sstable so that compaction copies it
+        DecoratedKey wide = Util.dk("wide");
+        long timestamp = System.currentTimeMillis();
+        String value = String.format("%0100d", 0);
+        for (int i = 0; i < 300; i++)
+        {
+            new RowUpdateBuilder(cfs.metadata, timestamp, wide.getKey())
+                .clustering(String.format("%04d", i))
+                .add("val", value)
+                .build()
+                .applyUnsafe();
+        }
+        cfs.forceBlockingFlush();
+        int flushedBlocks = cfs.getLiveSSTables().iterator().next().getPosition(wide, SSTableReader.Operator.EQ).columnsIndex().size();
+        assertTrue(flushedBlocks > 1);
+
+        new RowUpdateBuilder(cfs.metadata, timestamp, "narrow").clustering("0000").add("val", value).build().applyUnsafe();
+        cfs.forceBlockingFlush();
+        Set<SSTableReader> sstables = new HashSet<>(cfs.getLiveSSTables());
+        assertEquals(2, sstables.size());
+
+        int columnIndexSize = DatabaseDescriptor.getColumnIndexSize() / 1024;
+        DatabaseDescriptor.setColumnIndexSize(1);
+        try
+        {
+            int nowInSec = FBUtilities.nowInSeconds();
+            boolean copied = false;
+            try (AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategyManager().getScanners(sstables);
+                 CompactionController controller = new CompactionController(cfs, sstables, cfs.gcBefore(nowInSec));
+                 CompactionIterator ci = new CompactionIterator(OperationType.COMPACTION, scanners.scanners, controller, nowInSec, UUIDGen.getTimeUUID()))
+            {
+                while (ci.hasNext())
+                {
+                    try (UnfilteredRowIterator partition = ci.next())
+                    {
+                        if (partition.partitionKey().equals(wide))
+                            copied = partition instanceof CopyablePartition;
+                    }
+                }
+            }
+            assertTrue(copied);
+
+            // The copied partition is re-indexed with the current, smaller, index block size
+            cfs.forceMajorCompaction();
+            assertEquals(1, cfs.getLiveSSTables().size());
+            int compactedBlocks = cfs.getLiveSSTables().iterator().next().getPosition(wide, SSTableReader.Operator.EQ).columnsIndex().size();
+            assertTrue(compactedBlocks > flushedBlocks);
+        }
+        finally
+        {
+            DatabaseDescriptor.setColumnIndexSize(columnIndexSize);
+        }
+
+        // Slices starting and ending within index blocks, in both directions
+        assertEquals(clusterings(0, 300), readClusterings(Util.cmd(cfs, wide.getKey()).build()));
+        assertEquals(clusterings(37, 251), readClusterings(Util.cmd(cfs, wide.getKey()).fromIncl("0037").toExcl("0251").build()));
+        assertEquals(clusterings(299, 300), readClusterings(Util.cmd(cfs, wide.getKey()).fromIncl("0299").build()));
+        assertEquals(reversed(clusterings(0, 300)), readClusterings(Util.cmd(cfs, wide.getKey()).reverse().build()));
+        assertEquals(reversed(clusterings(37, 251)), readClusterings(Util.cmd(cfs, wide.getKey()).fromIncl("0037").toExcl("0251").reverse().build()));
+        assertEquals(reversed(clusterings(0, 11)), readClusterings(Util.cmd(cfs, wide.getKey()).toIncl("0010").reverse().build()));
+        assertEquals(clusterings(0, 1), readClusterings(Util.cmd(cfs, "narrow").build()));
+    }
+
+    private static List<String> clusterings(int start, int end)
+    {
+        List<String> clusterings = new ArrayList<>();
+        for (int i = start; i < end; i++)
+            clusterings.add(String.format("%04d", i));
+        return clusterings;
+    }
+
+    private static List<String> reversed(List<String> clusterings)
+    {
+        Collections.reverse(clusterings);
+        return clusterings;
+    }
+
+    private static List<String> readClusterings(ReadCommand command)
+    {
+        List<String> clusterings = new ArrayList<>();
+        try (ReadExecutionController executionController = command.executionController();
+             PartitionIterator iterator = command.executeInternal(executionController))
+        {
+            while (iterator.hasNext())
+            {
+                try (RowIterator partition = iterator.next())
+                {
+                    while (partition.hasNext())
+                    {
+                        Row row = partition.next();
+                        clusterings.add(AsciiType.instance.compose(row.clustering().get(0)));
+                    }
+                }
+            }
+        }
+        return clusterings;
+    }
+
     @Test
     public void testCompactionLog() throws Exception
     {
@@ -18,12 +18,15 @@
 package org.apache.cassandraBloomFilters.db.compaction;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 
 import junit.framework.Assert;
@@ -368,4 +371,88 @@ public class LeveledCompactionStrategyTest
         assertTrue(unrepaired.manifest.getLevel(1).contains(sstable2));
         assertFalse(repaired.manifest.getLevel(1).contains(sstable2));
     }
+
+    @Test
+    public void testPromotionWithoutRewrite() throws Exception
+    {
+        cfs.disableAutoCompaction();
+        ByteBuffer value = ByteBuffer.wrap(new byte[100 * 1024]);
+
+        // one partition per sstable, so that no sstables overlap, and more than sstable_size_in_mb in total
+        int rows = 4;
+        int columns = 5;
+        for (int r = 0; r < rows; r++)
+        {
+            UpdateBuilder update = UpdateBuilder.create(cfs.metadata, String.valueOf(r));
+            for (int c = 0; c < columns; c++)
+                update.newRow("column" + c).add("val", value);
+            update.applyUnsafe();
+            cfs.forceBlockingFlush();
+        }
+        Set<SSTableReader> before = new HashSet<>(cfs.getLiveSSTables());
+        assertEquals(rows, before.size());
+
+        long bytes = 0;
+        for (SSTableReader sstable : before)
+            bytes += sstable.onDiskLength();
+
+        LeveledCompactionStrategy strategy = (LeveledCompactionStrategy) cfs.getCompactionStrategyManager().getStrategies().get(1).get(0);
+        long avoidedBefore = cfs.metric.compactionBytesRewriteAvoided.getCount();
+        AbstractCompactionTask task = strategy.getNextBackgroundTask(FBUtilities.nowInSeconds());
+        assertTrue(task instanceof LeveledPromotionTask);
+
+        // the promotion shows in compactionstats like any compaction
+        final List<CompactionInfo> begun = new ArrayList<>();
+        final List<CompactionInfo> finished = new ArrayList<>();
+        task.execute(new CompactionManager.CompactionExecutorStatsCollector()
+        {
+            public void beginCompaction(CompactionInfo.Holder ci)
+            {
+                begun.add(ci.getCompactionInfo());
+            }
+
+            public void finishCompaction(CompactionInfo.Holder ci)
+            {
+                finished.add(ci.getCompactionInfo());
+            }
+        });
+        assertEquals(1, begun.size());
+        assertEquals(bytes, begun.get(0).getTotal());
+        assertEquals(0, begun.get(0).getCompleted());
+        assertEquals(1, finished.size());
+        assertEquals(bytes, finished.get(0).getCompleted());
+
+        // the very same sstables are now in L1
+        assertEquals(before, new HashSet<>(cfs.getLiveSSTables()));
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+            assertEquals(1, sstable.getSSTableLevel());
+        assertEquals(rows, strategy.getLevelSize(1));
+        assertEquals(0, strategy.getLevelSize(0));
+        assertEquals(bytes, cfs.metric.compactionBytesRewriteAvoided.getCount() - avoidedBefore);
+        assertTrue(cfs.getTracker().getCompacting().isEmpty());
+    }
+
+    @Test
+    public void testNoPromotionOfOversizedSSTable() throws Exception
+    {
+        cfs.disableAutoCompaction();
+        Random random = new Random();
+
+        // a single partition of random, so incompressible, data larger than sstable_size_in_mb
+        UpdateBuilder update = UpdateBuilder.create(cfs.metadata, "oversized");
+        for (int c = 0; c < 15; c++)
+        {
+            byte[] value = new byte[100 * 1024];
+            random.nextBytes(value);
+            update.newRow("column" + c).add("val", ByteBuffer.wrap(value));
+        }
+        update.applyUnsafe();
+        cfs.forceBlockingFlush();
+        SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+        assertTrue(sstable.onDiskLength() > 1024 * 1024);
+
+        // it overlaps nothing, but promoting it as is would leave an sstable larger than sstable_size_in_mb in L1
+        LeveledCompactionStrategy strategy = (LeveledCompactionStrategy) cfs.getCompactionStrategyManager().getStrategies().get(1).get(0);
+        assertFalse(strategy.manifest.canPromoteWithoutRewrite(new LeveledManifest.CompactionCandidate(singleton(sstable), 1, 1024 * 1024)));
+    }
 }
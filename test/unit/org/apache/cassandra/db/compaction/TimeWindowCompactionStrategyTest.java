@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+
+import org.apache.cassandraBloomFilters.SchemaLoader;
+import org.apache.cassandraBloomFilters.Util;
+import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
+import org.apache.cassandraBloomFilters.db.DecoratedKey;
+import org.apache.cassandraBloomFilters.db.Keyspace;
+import org.apache.cassandraBloomFilters.db.RowUpdateBuilder;
+import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
+import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
+import org.apache.cassandraBloomFilters.schema.KeyspaceParams;
+import org.apache.cassandraBloomFilters.utils.Pair;
+
+import static org.apache.cassandraBloomFilters.db.compaction.TimeWindowCompactionStrategy.getBuckets;
+import static org.apache.cassandraBloomFilters.db.compaction.TimeWindowCompactionStrategy.getWindowLowerBound;
+import static org.apache.cassandraBloomFilters.db.compaction.TimeWindowCompactionStrategy.newestBucket;
+import static org.apache.cassandraBloomFilters.db.compaction.TimeWindowCompactionStrategy.validateOptions;
+
+import static org.junit.Assert.*;
+
+public class TimeWindowCompactionStrategyTest extends SchemaLoader
+{
+    public static final String KEYSPACE1 = "TimeWindowCompactionStrategyTest";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                KeyspaceParams.simple(1),
+                SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD1));
+    }
+
+    @Test
+    public void testOptionsValidation() throws ConfigurationException
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "30");
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "MINUTES");
+        Map<String, String> unvalidated = validateOptions(options);
+        assertTrue(unvalidated.isEmpty());
+
+        try
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "0");
+            validateOptions(options);
+            fail(String.format("%s == 0 should be rejected", TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "1");
+        }
+
+        try
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "SECONDS");
+            validateOptions(options);
+            fail(String.format("%s SECONDS should be rejected", TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "HOURS");
+        }
+
+        try
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "FORTNIGHTS");
+            validateOptions(options);
+            fail(String.format("Unknown %s should be rejected", TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "DAYS");
+        }
+
+        options.put("bad_option", "1.0");
+        unvalidated = validateOptions(options);
+        assertTrue(unvalidated.containsKey("bad_option"));
+    }
+
+    @Test
+    public void testWindowLowerBound()
+    {
+        long hour = TimeUnit.HOURS.toMillis(1);
+        assertEquals(0, getWindowLowerBound(TimeUnit.HOURS, 1, 0));
+        assertEquals(0, getWindowLowerBound(TimeUnit.HOURS, 1, hour - 1));
+        assertEquals(hour, getWindowLowerBound(TimeUnit.HOURS, 1, hour));
+        assertEquals(6 * hour, getWindowLowerBound(TimeUnit.HOURS, 6, 11 * hour + 59));
+        assertEquals(TimeUnit.DAYS.toMillis(2), getWindowLowerBound(TimeUnit.DAYS, 1, TimeUnit.DAYS.toMillis(2) + hour));
+        assertEquals(-hour, getWindowLowerBound(TimeUnit.HOURS, 1, -1));
+    }
+
+    @Test
+    public void testPrepBucket()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_STANDARD1);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+        long hour = TimeUnit.HOURS.toMillis(1);
+
+        // 3 sstables in the current hour, and 2 in each of the 2 hours before
+        for (int h = 0; h < 3; h++)
+        {
+            for (int r = 0; r < (h == 0 ? 3 : 2); r++)
+            {
+                DecoratedKey key = Util.dk(h + "-" + r);
+                new RowUpdateBuilder(cfs.metadata, 10 * hour - h * hour + r, key.getKey())
+                    .clustering("column")
+                    .add("val", value).build().applyUnsafe();
+                cfs.forceBlockingFlush();
+            }
+        }
+
+        Pair<NavigableMap<Long, List<SSTableReader>>, Long> buckets = getBuckets(cfs.getLiveSSTables(), TimeUnit.HOURS, 1, TimeUnit.MILLISECONDS);
+        assertEquals(3, buckets.left.size());
+        assertEquals(10 * hour, (long) buckets.right);
+        assertEquals(10 * hour, (long) buckets.left.firstKey());
+        assertEquals(3, buckets.left.get(10 * hour).size());
+
+        List<SSTableReader> newBucket = newestBucket(buckets.left, 4, 32, buckets.right, new SizeTieredCompactionStrategyOptions());
+        assertEquals("the closed window before the current one should be compacted", 2, newBucket.size());
+        for (SSTableReader sstable : newBucket)
+            assertEquals(9 * hour, sstable.getMaxTimestamp() - sstable.getMaxTimestamp() % hour);
+
+        newBucket = newestBucket(buckets.left, 3, 32, buckets.right, new SizeTieredCompactionStrategyOptions());
+        assertEquals("the current window should be compacted once it has min_threshold sstables", 3, newBucket.size());
+
+        newBucket = newestBucket(buckets.left, 4, 1, buckets.right, new SizeTieredCompactionStrategyOptions());
+        assertEquals("closed windows should be trimmed to max_threshold", 1, newBucket.size());
+
+        cfs.truncateBlocking();
+    }
+
+    @Test
+    public void testDropExpiredSSTables() throws InterruptedException
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_STANDARD1);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+
+        // create 2 sstables
+        DecoratedKey key = Util.dk(String.valueOf("expired"));
+        new RowUpdateBuilder(cfs.metadata, System.currentTimeMillis(), 1, key.getKey())
+            .clustering("column")
+            .add("val", value).build().applyUnsafe();
+
+        cfs.forceBlockingFlush();
+        SSTableReader expiredSSTable = cfs.getLiveSSTables().iterator().next();
+        Thread.sleep(10);
+
+        key = Util.dk(String.valueOf("nonexpired"));
+        new RowUpdateBuilder(cfs.metadata, System.currentTimeMillis(), key.getKey())
+            .clustering("column")
+            .add("val", value).build().applyUnsafe();
+
+        cfs.forceBlockingFlush();
+        assertEquals(cfs.getLiveSSTables().size(), 2);
+
+        Map<String, String> options = new HashMap<>();
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "30");
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "MINUTES");
+        options.put(TimeWindowCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "MILLISECONDS");
+        options.put(TimeWindowCompactionStrategyOptions.EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY, "0");
+        TimeWindowCompactionStrategy twcs = new TimeWindowCompactionStrategy(cfs, options);
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+            twcs.addSSTable(sstable);
+        twcs.startup();
+        assertNull(twcs.getNextBackgroundTask((int) (System.currentTimeMillis() / 1000)));
+        Thread.sleep(2000);
+        AbstractCompactionTask t = twcs.getNextBackgroundTask((int) (System.currentTimeMillis() / 1000));
+        assertNotNull(t);
+        assertEquals(1, Iterables.size(t.transaction.originals()));
+        SSTableReader sstable = t.transaction.originals().iterator().next();
+        assertEquals(sstable, expiredSSTable);
+        t.transaction.abort();
+        cfs.truncateBlocking();
+    }
+
+    @Test
+    public void testMaximalTask()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_STANDARD1);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+        long now = System.currentTimeMillis();
+        long[] timestamps = { now - TimeUnit.HOURS.toMillis(3), now - TimeUnit.HOURS.toMillis(3), now };
+
+        // 2 sstables in an old window, 1 in the current one
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(i));
+            new RowUpdateBuilder(cfs.metadata, timestamps[i], key.getKey())
+                .clustering("column")
+                .add("val", value).build().applyUnsafe();
+            cfs.forceBlockingFlush();
+        }
+        assertEquals(3, cfs.getLiveSSTables().size());
+
+        Map<String, String> options = new HashMap<>();
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "1");
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "HOURS");
+        options.put(TimeWindowCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "MILLISECONDS");
+        TimeWindowCompactionStrategy twcs = new TimeWindowCompactionStrategy(cfs, options);
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+            twcs.addSSTable(sstable);
+
+        // the window with a single sstable is not compacted
+        int gcBefore = (int) (now / 1000);
+        Collection<AbstractCompactionTask> tasks = twcs.getMaximalTask(gcBefore, false);
+        assertEquals(1, tasks.size());
+        AbstractCompactionTask task = Iterables.getOnlyElement(tasks);
+        assertEquals(2, task.transaction.originals().size());
+        for (SSTableReader sstable : task.transaction.originals())
+            assertEquals(timestamps[0], sstable.getMaxTimestamp());
+        assertFalse(task instanceof SizeTieredCompactionStrategy.SplittingCompactionTask);
+        task.transaction.abort();
+
+        tasks = twcs.getMaximalTask(gcBefore, true);
+        assertEquals(1, tasks.size());
+        task = Iterables.getOnlyElement(tasks);
+        assertTrue(task instanceof SizeTieredCompactionStrategy.SplittingCompactionTask);
+        task.transaction.abort();
+        cfs.truncateBlocking();
+    }
+}
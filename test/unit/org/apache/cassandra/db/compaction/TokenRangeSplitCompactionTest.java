@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.compaction;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.SchemaLoader;
+import org.apache.cassandraBloomFilters.db.ColumnFamilyStore;
+import org.apache.cassandraBloomFilters.db.Keyspace;
+import org.apache.cassandraBloomFilters.db.PartitionPosition;
+import org.apache.cassandraBloomFilters.db.RowUpdateBuilder;
+import org.apache.cassandraBloomFilters.dht.Murmur3Partitioner;
+import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
+import org.apache.cassandraBloomFilters.io.sstable.format.SSTableReader;
+import org.apache.cassandraBloomFilters.schema.CompactionParams;
+import org.apache.cassandraBloomFilters.schema.KeyspaceParams;
+import org.apache.cassandraBloomFilters.service.StorageService;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TokenRangeSplitCompactionTest
+{
+    public static final String KEYSPACE1 = "TokenRangeSplitCompactionTest";
+    private static final String CF_STANDARD1 = "Standard1";
+    private static final int SPLITS = 4;
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        // the token ranges are computed by the partitioner's splitter, which ByteOrderedPartitioner doesn't have
+        StorageService.instance.setPartitionerUnsafe(Murmur3Partitioner.instance);
+        StorageService.instance.getTokenMetadata().updateNormalToken(new Murmur3Partitioner.LongToken(0), FBUtilities.getBroadcastAddress());
+
+        Map<String, String> options = new HashMap<>();
+        options.put(AbstractCompactionStrategy.TOKEN_RANGE_SPLITS_OPTION, Integer.toString(SPLITS));
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD1).compaction(CompactionParams.scts(options)));
+    }
+
+    @Test
+    public void testOutputStaysSplit()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1);
+        cfs.disableAutoCompaction();
+        List<PartitionPosition> boundaries = StorageService.getTokenRangeBoundaries(cfs, cfs.getDirectories().getWriteableLocations(), SPLITS);
+        assertNotNull(boundaries);
+        assertTrue(boundaries.size() > 1);
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+        int flushes = cfs.getMinimumCompactionThreshold();
+        for (int f = 0; f < flushes; f++)
+        {
+            for (int r = 0; r < 200; r++)
+            {
+                new RowUpdateBuilder(cfs.metadata, f, String.valueOf(r))
+                    .clustering("column")
+                    .add("val", value).build().applyUnsafe();
+            }
+            cfs.forceBlockingFlush();
+        }
+
+        AbstractCompactionStrategy strategy = cfs.getCompactionStrategyManager().getStrategies().get(1).get(0);
+        // one background compaction per token range; sstables of different token ranges are never bucketed together
+        for (int compactions = 0; ; compactions++)
+        {
+            AbstractCompactionTask task = strategy.getNextBackgroundTask(FBUtilities.nowInSeconds());
+            if (task == null)
+                break;
+            if (compactions > boundaries.size())
+                fail("the split output of a compaction was compacted again");
+            task.execute(null);
+        }
+
+        // each sstable holds a single token range, and each token range a single sstable
+        boolean[] seen = new boolean[boundaries.size()];
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+        {
+            int range = tokenRangeIndex(boundaries, sstable.first);
+            assertEquals(range, tokenRangeIndex(boundaries, sstable.last));
+            assertTrue(!seen[range]);
+            seen[range] = true;
+        }
+        assertNull(strategy.getNextBackgroundTask(FBUtilities.nowInSeconds()));
+    }
+
+    @Test
+    public void testRejectedByTimeBasedStrategies()
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put(AbstractCompactionStrategy.TOKEN_RANGE_SPLITS_OPTION, Integer.toString(SPLITS));
+        try
+        {
+            TimeWindowCompactionStrategy.validateOptions(options);
+            fail("token_range_splits should be rejected by TimeWindowCompactionStrategy");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+        try
+        {
+            DateTieredCompactionStrategy.validateOptions(options);
+            fail("token_range_splits should be rejected by DateTieredCompactionStrategy");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+        assertTrue(SizeTieredCompactionStrategy.validateOptions(options).isEmpty());
+    }
+
+    private static int tokenRangeIndex(List<PartitionPosition> boundaries, PartitionPosition key)
+    {
+        int index = Collections.binarySearch(boundaries, key);
+        return index < 0 ? -index - 1 : index;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.db.rows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.config.CFMetaData;
+import org.apache.cassandraBloomFilters.config.ColumnDefinition;
+import org.apache.cassandraBloomFilters.cql3.ColumnIdentifier;
+import org.apache.cassandraBloomFilters.db.*;
+import org.apache.cassandraBloomFilters.db.marshal.Int32Type;
+import org.apache.cassandraBloomFilters.db.marshal.MapType;
+import org.apache.cassandraBloomFilters.db.marshal.UTF8Type;
+import org.apache.cassandraBloomFilters.io.util.DataInputBuffer;
+import org.apache.cassandraBloomFilters.io.util.DataOutputBuffer;
+import org.apache.cassandraBloomFilters.net.MessagingService;
+import org.apache.cassandraBloomFilters.utils.ByteBufferUtil;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SerializedRowCopierTest
+{
+    private static final int VERSION = MessagingService.current_version;
+
+    private static final CFMetaData metadata;
+    private static final ColumnDefinition s;
+    private static final ColumnDefinition v;
+    private static final ColumnDefinition t;
+    private static final ColumnDefinition m;
+
+    static
+    {
+        metadata = CFMetaData.Builder.create("copier_test", "copier")
+                                     .addPartitionKey("k", Int32Type.instance)
+                                     .addClusteringColumn("c1", Int32Type.instance)
+                                     .addClusteringColumn("c2", UTF8Type.instance)
+                                     .addStaticColumn("s", UTF8Type.instance)
+                                     .addRegularColumn("v", Int32Type.instance)
+                                     .addRegularColumn("t", UTF8Type.instance)
+                                     .addRegularColumn("m", MapType.getInstance(Int32Type.instance, UTF8Type.instance, true))
+                                     .build();
+
+        s = metadata.getColumnDefinition(new ColumnIdentifier("s", false));
+        v = metadata.getColumnDefinition(new ColumnIdentifier("v", false));
+        t = metadata.getColumnDefinition(new ColumnIdentifier("t", false));
+        m = metadata.getColumnDefinition(new ColumnIdentifier("m", false));
+    }
+
+    private static SerializationHeader header(long minTimestamp)
+    {
+        return new SerializationHeader(true, metadata, metadata.partitionColumns(), new EncodingStats(minTimestamp, Cell.NO_DELETION_TIME, Cell.NO_TTL));
+    }
+
+    private static Row staticRow(long timestamp, String value)
+    {
+        Row.Builder builder = BTreeRow.sortedBuilder();
+        builder.newRow(Clustering.STATIC_CLUSTERING);
+        if (value != null)
+            builder.addCell(BufferCell.live(s, timestamp, ByteBufferUtil.bytes(value)));
+        return builder.build();
+    }
+
+    private static Row row(int c1, String c2, long timestamp, Integer value, String text, int mapEntries)
+    {
+        Row.Builder builder = BTreeRow.sortedBuilder();
+        builder.newRow(metadata.comparator.make(c1, c2));
+        builder.addPrimaryKeyLivenessInfo(LivenessInfo.create(timestamp, FBUtilities.nowInSeconds()));
+        if (value != null)
+            builder.addCell(BufferCell.live(v, timestamp, ByteBufferUtil.bytes(value)));
+        if (text != null)
+            builder.addCell(BufferCell.live(t, timestamp + 1, ByteBufferUtil.bytes(text)));
+        for (int i = 0; i < mapEntries; i++)
+            builder.addCell(BufferCell.live(m, timestamp + 2 + i, ByteBufferUtil.bytes("e" + i), CellPath.create(ByteBufferUtil.bytes(i))));
+        return builder.build();
+    }
+
+    private static ByteBuffer serialize(SerializationHeader header, Row staticRow, List<Row> rows) throws IOException
+    {
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            UnfilteredSerializer.serializer.serializeStaticRow(staticRow, header, out, VERSION);
+            long previousRowStart = 0;
+            for (Row row : rows)
+            {
+                long pos = out.position();
+                UnfilteredSerializer.serializer.serialize(row, header, out, pos - previousRowStart, VERSION);
+                previousRowStart = pos;
+            }
+            UnfilteredSerializer.serializer.writeEndOfPartition(out);
+            return out.buffer();
+        }
+    }
+
+    private static ByteBuffer copy(SerializedRowCopier copier, SerializationHeader source, ByteBuffer serialized, EncodingStats.Collector stats) throws IOException
+    {
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            copier.startPartition(new DataInputBuffer(serialized, true), source, stats);
+            assertTrue(copier.advance());
+            assertTrue(copier.isStatic());
+            copier.writeTo(out, 0);
+
+            long previousRowStart = 0;
+            while (copier.advance())
+            {
+                assertFalse(copier.isStatic());
+                long pos = out.position();
+                copier.writeTo(out, pos - previousRowStart);
+                previousRowStart = pos;
+            }
+            UnfilteredSerializer.serializer.writeEndOfPartition(out);
+            return out.buffer();
+        }
+    }
+
+    @Test
+    public void testCopyIsIdenticalToSerialization() throws IOException
+    {
+        SerializationHeader source = header(1000);
+        SerializationHeader target = header(10);
+
+        Row staticRow = staticRow(1200, "static");
+        List<Row> rows = new ArrayList<>();
+        rows.add(row(1, "a", 1500, 1, "one", 3));
+        rows.add(row(2, "", 1600, null, "two", 0));
+        rows.add(row(3, "c", 1700, 3, null, 1));
+        rows.add(row(4, "d", 1800, null, null, 0));
+
+        EncodingStats.Collector stats = new EncodingStats.Collector();
+        SerializedRowCopier copier = new SerializedRowCopier(target, VERSION);
+        assertTrue(copier.canCopyFrom(source));
+        ByteBuffer copied = copy(copier, source, serialize(source, staticRow, rows), stats);
+
+        // The copy must be byte for byte what serializing the rows with the target header gives
+        assertEquals(serialize(target, staticRow, rows), copied);
+        assertEquals(Clustering.make(ByteBufferUtil.bytes(4), ByteBufferUtil.bytes("d")), copier.clustering());
+        assertEquals(1 + 5 + 1 + 2, copier.cellCount());
+        assertEquals(1200, stats.get().minTimestamp);
+    }
+
+    @Test
+    public void testEmptyStaticRow() throws IOException
+    {
+        SerializationHeader header = header(0);
+        List<Row> rows = new ArrayList<>();
+        rows.add(row(1, "a", 10, 1, null, 0));
+
+        SerializedRowCopier copier = new SerializedRowCopier(header, VERSION);
+        ByteBuffer serialized = serialize(header, Rows.EMPTY_STATIC_ROW, rows);
+        assertEquals(serialized, copy(copier, header, serialized, new EncodingStats.Collector()));
+        assertEquals(1, copier.cellCount());
+    }
+
+    @Test
+    public void testCannotCopyDifferentColumns()
+    {
+        SerializedRowCopier copier = new SerializedRowCopier(header(0), VERSION);
+        SerializationHeader fewerColumns = new SerializationHeader(true,
+                                                                   metadata,
+                                                                   new PartitionColumns(Columns.of(s), Columns.of(v)),
+                                                                   EncodingStats.NO_STATS);
+        assertFalse(copier.canCopyFrom(fewerColumns));
+    }
+
+    @Test
+    public void testCannotCopyTombstones() throws IOException
+    {
+        SerializationHeader header = header(0);
+        Row.Builder builder = BTreeRow.sortedBuilder();
+        builder.newRow(metadata.comparator.make(1, "a"));
+        builder.addCell(BufferCell.tombstone(v, 10, FBUtilities.nowInSeconds()));
+        List<Row> rows = new ArrayList<>();
+        rows.add(builder.build());
+
+        SerializedRowCopier copier = new SerializedRowCopier(header, VERSION);
+        try
+        {
+            copy(copier, header, serialize(header, Rows.EMPTY_STATIC_ROW, rows), new EncodingStats.Collector());
+            fail("Expected tombstones to be rejected");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+}
@@ -130,6 +130,45 @@ public class SSTableReaderTest
         }
     }
 
+    @Test
+    public void testCloneWithNewStartBeyond()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore("Standard2");
+        partitioner = store.getPartitioner();
+
+        // insert data and compact to a single sstable
+        CompactionManager.instance.disableAutoCompaction();
+        for (int j = 0; j < 10; j++)
+        {
+            new RowUpdateBuilder(store.metadata, j, String.valueOf(j))
+                .clustering("0")
+                .add("val", ByteBufferUtil.EMPTY_BYTE_BUFFER)
+                .build()
+                .applyUnsafe();
+        }
+        store.forceBlockingFlush();
+        CompactionManager.instance.performMaximal(store, false);
+
+        // the clone must start where firstKeyBeyond() says, for keys before, within and after the sstable
+        SSTableReader sstable = store.getLiveSSTables().iterator().next();
+        for (int j = -1; j <= 10; j++)
+        {
+            DecoratedKey lowerbound = j < 0 ? sstable.first : k(j);
+            DecoratedKey expected = sstable.firstKeyBeyond(lowerbound);
+            SSTableReader clone = sstable.cloneWithNewStartBeyond(lowerbound, () -> {});
+            if (expected == null)
+            {
+                assertTrue(clone == null);
+                continue;
+            }
+
+            assertEquals(expected, clone.first);
+            assertEquals(sstable.last, clone.last);
+            clone.selfRef().release();
+        }
+    }
+
     @Test
     public void testSpannedIndexPositions() throws IOException
     {
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.locator;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DecayingLatencyHistogramTest
+{
+    @Test
+    public void testEmpty()
+    {
+        Snapshot snapshot = new DecayingLatencyHistogram().decay(0.5);
+        assertEquals(0, snapshot.size());
+        assertEquals(0, snapshot.getMedian(), 0);
+        assertEquals(0, snapshot.getValues().length);
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        DecayingLatencyHistogram histogram = new DecayingLatencyHistogram();
+        for (int latency = 1; latency <= 100; latency++)
+            histogram.update(latency);
+        Snapshot snapshot = histogram.decay(0.9);
+
+        assertEquals(100, snapshot.size());
+        // buckets grow by 20%, so values are only that precise
+        assertEquals(50, snapshot.getMedian(), 10);
+        assertEquals(99, snapshot.getValue(0.99), 20);
+        assertEquals(1, snapshot.getMin());
+        assertEquals(100, snapshot.getMax(), 20);
+        assertEquals(100, snapshot.getValues().length);
+    }
+
+    @Test
+    public void testDecay()
+    {
+        DecayingLatencyHistogram histogram = new DecayingLatencyHistogram();
+        for (int i = 0; i < 100; i++)
+            histogram.update(10);
+        Snapshot snapshot = histogram.decay(0.5);
+        assertEquals(10, snapshot.getMedian(), 0);
+
+        // nothing new: same distribution, with half the weight
+        Snapshot decayed = histogram.decay(0.5);
+        assertEquals(50, decayed.size());
+        assertEquals(10, decayed.getMedian(), 0);
+
+        // newer latencies outweigh older ones
+        for (int i = 0; i < 60; i++)
+            histogram.update(100);
+        snapshot = histogram.decay(0.5);
+        assertEquals(85, snapshot.size());
+        assertEquals(100, snapshot.getMedian(), 20);
+        assertEquals(10, snapshot.getMin());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException
+    {
+        final DecayingLatencyHistogram histogram = new DecayingLatencyHistogram();
+        final int threads = 4, updates = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            new Thread(() -> {
+                for (int i = 0; i < updates; i++)
+                    histogram.update(i % 100);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        assertEquals(threads * updates, histogram.decay(1.0).size());
+    }
+}
@@ -21,14 +21,18 @@ package org.apache.cassandraBloomFilters.locator;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import org.apache.cassandraBloomFilters.config.Config;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
 import org.apache.cassandraBloomFilters.service.StorageService;
 import org.apache.cassandraBloomFilters.utils.FBUtilities;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class DynamicEndpointSnitchTest
 {
@@ -88,4 +92,77 @@ public class DynamicEndpointSnitchTest
         order = Arrays.asList(host1, host3, host2);
         assertEquals(order, dsnitch.getSortedListByProximity(self, Arrays.asList(host1, host2, host3)));
     }
+
+    @Test
+    public void testLatencyPercentile() throws InterruptedException, IOException, ConfigurationException
+    {
+        StorageService.instance.unsafeInitialize();
+        SimpleSnitch ss = new SimpleSnitch();
+        DynamicEndpointSnitch dsnitch = new DynamicEndpointSnitch(ss, String.valueOf(ss.hashCode()));
+        InetAddress host1 = InetAddress.getByName("127.0.0.2");
+        InetAddress host2 = InetAddress.getByName("127.0.0.3");
+
+        for (int latency = 1; latency <= 100; latency++)
+            dsnitch.receiveTiming(host1, latency);
+        // too few samples to tell anything
+        dsnitch.receiveTiming(host2, 10);
+        Thread.sleep(150);
+
+        long median = dsnitch.getLatencyPercentileNanos(host1, 0.5);
+        assertTrue(median >= TimeUnit.MILLISECONDS.toNanos(40) && median <= TimeUnit.MILLISECONDS.toNanos(60));
+        assertTrue(dsnitch.getLatencyPercentileNanos(host1, 0.99) > median);
+        assertEquals(-1, dsnitch.getLatencyPercentileNanos(host2, 0.5));
+        assertEquals(-1, dsnitch.getLatencyPercentileNanos(InetAddress.getByName("127.0.0.4"), 0.5));
+    }
+
+    @Test
+    public void testHistogramScoring() throws InterruptedException, IOException, ConfigurationException
+    {
+        Config.DynamicSnitchScoring scoring = DatabaseDescriptor.getDynamicSnitchScoring();
+        DatabaseDescriptor.setDynamicSnitchScoring(Config.DynamicSnitchScoring.histogram);
+        try
+        {
+            StorageService.instance.unsafeInitialize();
+            SimpleSnitch ss = new SimpleSnitch();
+            DynamicEndpointSnitch dsnitch = new DynamicEndpointSnitch(ss, String.valueOf(ss.hashCode()));
+            InetAddress self = FBUtilities.getBroadcastAddress();
+            InetAddress host1 = InetAddress.getByName("127.0.0.2");
+            InetAddress host2 = InetAddress.getByName("127.0.0.3");
+            InetAddress host3 = InetAddress.getByName("127.0.0.4");
+            List<InetAddress> hosts = Arrays.asList(host1, host2, host3);
+
+            // first, make all hosts equal
+            for (int round = 0; round < 20; round++)
+            {
+                setTimings(dsnitch, 20, hosts, 10, 10, 10);
+                dsnitch.updateScores();
+            }
+            assertEquals(hosts, dsnitch.getSortedListByProximity(self, hosts));
+
+            // then make host1 slow: the older latencies decay away
+            for (int round = 0; round < 50; round++)
+            {
+                setTimings(dsnitch, 20, hosts, 100, 10, 10);
+                dsnitch.updateScores();
+            }
+            assertEquals(Arrays.asList(host2, host3, host1), dsnitch.getSortedListByProximity(self, hosts));
+
+            // buckets grow by 20%, so percentiles are only that precise
+            long median = dsnitch.getLatencyPercentileNanos(host1, 0.5);
+            assertTrue(median >= TimeUnit.MILLISECONDS.toNanos(100) && median <= TimeUnit.MILLISECONDS.toNanos(120));
+        }
+        finally
+        {
+            DatabaseDescriptor.setDynamicSnitchScoring(scoring);
+        }
+    }
+
+    private static void setTimings(DynamicEndpointSnitch dsnitch, int rounds, List<InetAddress> hosts, Integer... latencies)
+    {
+        for (int round = 0; round < rounds; round++)
+        {
+            for (int i = 0; i < hosts.size(); i++)
+                dsnitch.receiveTiming(hosts.get(i), latencies[i]);
+        }
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CallbackMapTest
+{
+    // long enough for the reaper not to expire anything behind the test's back
+    private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    private static CallbackInfo callback() throws Exception
+    {
+        return new CallbackInfo(InetAddress.getByName("127.0.0.2"), null, null, false);
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception
+    {
+        CallbackMap callbacks = new CallbackMap(expired -> {});
+        CallbackInfo first = callback();
+        CallbackInfo second = callback();
+
+        assertNull(callbacks.put(1, first, TIMEOUT, MessagingService.Verb.READ));
+        assertNull(callbacks.put(2, second, TIMEOUT, MessagingService.Verb.MUTATION));
+        assertEquals(2, callbacks.size());
+        assertSame(first, callbacks.get(1));
+
+        assertSame(first, callbacks.remove(1));
+        assertNull(callbacks.remove(1));
+        assertNull(callbacks.get(1));
+        assertEquals(0, callbacks.getAge(1));
+        assertSame(second, callbacks.get(2));
+
+        callbacks.reset();
+        assertEquals(0, callbacks.size());
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        List<CallbackMap.Entry> expired = new ArrayList<>();
+        CallbackMap callbacks = new CallbackMap(expired::addAll);
+
+        long start = System.nanoTime();
+        // spread the timeouts over more than one turn of the wheel, so that some share buckets
+        long turn = TimeUnit.NANOSECONDS.toMillis(CallbackMap.TICK_NANOS * CallbackMap.WHEEL_SIZE);
+        for (int i = 0; i < 1000; i++)
+            callbacks.put(i, callback(), TIMEOUT + (i % 3) * turn + i, MessagingService.Verb.READ);
+        callbacks.remove(10);
+
+        callbacks.expire(start + TimeUnit.MILLISECONDS.toNanos(TIMEOUT - 1));
+        assertEquals(0, expired.size());
+
+        callbacks.expire(start + TimeUnit.MILLISECONDS.toNanos(TIMEOUT + turn));
+        for (CallbackMap.Entry entry : expired)
+        {
+            assertEquals(0, entry.id % 3);
+            assertEquals(MessagingService.Verb.READ, entry.verb);
+            assertNull(callbacks.get(entry.id));
+        }
+        assertEquals(334, expired.size());
+
+        // all are due by then, even though that's several turns of the wheel later
+        callbacks.expire(start + TimeUnit.MILLISECONDS.toNanos(TIMEOUT + 5 * turn));
+        assertEquals(999, expired.size());
+        assertEquals(0, callbacks.size());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.Random;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedFrameOutputStreamTest
+{
+    private static final int TOKEN_OFFSET = 8;
+    private static final int HEADER_LENGTH = 21;
+
+    private static byte[] decompress(byte[] wire, int length) throws Exception
+    {
+        byte[] bytes = new byte[length];
+        try (DataInputStream in = new DataInputStream(new LZ4BlockInputStream(new ByteArrayInputStream(wire),
+                                                                              LZ4Factory.fastestInstance().fastDecompressor())))
+        {
+            in.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Random random = new Random(0);
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        CompressedFrameOutputStream out = new CompressedFrameOutputStream(wire, 512);
+        for (int i = 0; i < 500; i++)
+        {
+            // compressible and incompressible messages, smaller and larger than a frame
+            byte[] message = new byte[random.nextInt(i % 50 == 0 ? 3 * CompressedFrameOutputStream.MAX_FRAME_SIZE : 2000)];
+            if (i % 3 == 0)
+                random.nextBytes(message);
+            out.startMessage(i % 3 == 0 ? MessagingService.Verb.GOSSIP_DIGEST_SYN : MessagingService.Verb.MUTATION);
+            out.write(message);
+            out.write(i);
+            expected.write(message);
+            expected.write(i);
+            if (random.nextInt(3) == 0)
+                out.flush();
+        }
+        out.flush();
+
+        assertTrue(wire.size() < expected.size());
+        assertArrayEquals(expected.toByteArray(), decompress(wire.toByteArray(), expected.size()));
+    }
+
+    @Test
+    public void testSmallFramesAreNotCompressed() throws Exception
+    {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        CompressedFrameOutputStream out = new CompressedFrameOutputStream(wire, 512);
+        long skipped = CompressedFrameOutputStream.metrics(MessagingService.Verb.REQUEST_RESPONSE).skippedBytes.getCount();
+
+        byte[] message = new byte[100];
+        out.startMessage(MessagingService.Verb.REQUEST_RESPONSE);
+        out.write(message);
+        out.flush();
+
+        byte[] bytes = wire.toByteArray();
+        assertEquals(HEADER_LENGTH + message.length, bytes.length);
+        // raw block
+        assertEquals(0x10, bytes[TOKEN_OFFSET] & 0xF0);
+        assertArrayEquals(message, decompress(bytes, message.length));
+        assertEquals(skipped + message.length, CompressedFrameOutputStream.metrics(MessagingService.Verb.REQUEST_RESPONSE).skippedBytes.getCount());
+    }
+
+    @Test
+    public void testIncompressibleVerbsAreNotCompressed() throws Exception
+    {
+        Random random = new Random(0);
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        CompressedFrameOutputStream out = new CompressedFrameOutputStream(wire, 512);
+
+        // enough incompressible frames to learn the ratio of the verb
+        byte[] message = new byte[CompressedFrameOutputStream.MAX_FRAME_SIZE];
+        for (int i = 0; i < 20; i++)
+        {
+            random.nextBytes(message);
+            out.startMessage(MessagingService.Verb.TRUNCATE);
+            out.write(message);
+            out.flush();
+        }
+        assertTrue(CompressedFrameOutputStream.metrics(MessagingService.Verb.TRUNCATE).ratio() >= 1);
+
+        long compressionAttempted = CompressedFrameOutputStream.metrics(MessagingService.Verb.TRUNCATE).uncompressedBytes.getCount();
+        out.startMessage(MessagingService.Verb.TRUNCATE);
+        out.write(message);
+        out.flush();
+        assertEquals(compressionAttempted, CompressedFrameOutputStream.metrics(MessagingService.Verb.TRUNCATE).uncompressedBytes.getCount());
+    }
+}
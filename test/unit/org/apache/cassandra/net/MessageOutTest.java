@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.UUID;
+
+import com.google.common.primitives.Longs;
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.io.util.DataOutputBuffer;
+import org.apache.cassandraBloomFilters.utils.FBUtilities;
+import org.apache.cassandraBloomFilters.utils.UUIDSerializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageOutTest
+{
+    private static byte[] serialize(MessageOut<?> message, int version) throws Exception
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        message.serialize(out, version);
+        assertEquals(message.serializedSize(version), out.getLength());
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSerializedPayload() throws Exception
+    {
+        int version = MessagingService.current_version;
+        MessageOut<UUID> message = new MessageOut<>(InetAddress.getByName("127.0.0.2"),
+                                                    MessagingService.Verb.ECHO,
+                                                    UUID.randomUUID(),
+                                                    UUIDSerializer.serializer,
+                                                    Collections.<String, byte[]>emptyMap());
+        MessageOut<UUID> serialized = message.withSerializedPayload(version);
+        assertArrayEquals(serialize(message, version), serialize(serialized, version));
+
+        // the serialized payload is shared by copies with other parameters
+        MessageOut<UUID> withParameter = serialized.withParameter("a", new byte[3]);
+        assertArrayEquals(serialize(message.withParameter("a", new byte[3]), version), serialize(withParameter, version));
+
+        // other versions are serialized as usual
+        assertArrayEquals(serialize(message, MessagingService.VERSION_22), serialize(serialized, MessagingService.VERSION_22));
+
+        // the buffer stays around as long as someone holds a reference...
+        SerializedPayload payload = withParameter.refSerializedPayload();
+        serialized.releaseSerializedPayload();
+        assertTrue(payload != null);
+        assertArrayEquals(serialize(message, version), serialize(serialized, version));
+
+        // ...and once released, the payload is serialized again
+        payload.release();
+        assertNull(serialized.refSerializedPayload());
+        assertArrayEquals(serialize(message, version), serialize(serialized, version));
+    }
+
+    @Test
+    public void testSentAt() throws Exception
+    {
+        int version = MessagingService.current_version;
+        MessageOut<UUID> message = new MessageOut<>(FBUtilities.getBroadcastAddress(),
+                                                    MessagingService.Verb.ECHO,
+                                                    UUID.randomUUID(),
+                                                    UUIDSerializer.serializer,
+                                                    Collections.<String, byte[]>emptyMap());
+        long sentAt = FBUtilities.timestampMicros();
+        DataOutputBuffer out = new DataOutputBuffer();
+        message.serialize(out, version, sentAt);
+        assertEquals(message.serializedSize(version, true), out.getLength());
+
+        // the send time is written as an additional parameter
+        MessageOut<UUID> withSentAt = message.withParameter(MessagingService.SENT_AT_PARAM, Longs.toByteArray(sentAt));
+        assertArrayEquals(serialize(withSentAt, version), out.toByteArray());
+    }
+}
@@ -1,10 +1,21 @@
 package org.apache.cassandraBloomFilters.net;
 
+import java.net.InetAddress;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.io.util.DataInputBuffer;
+import org.apache.cassandraBloomFilters.io.util.DataOutputBuffer;
+import org.apache.cassandraBloomFilters.metrics.MessageLatencyMetrics;
+
+import static org.apache.cassandraBloomFilters.metrics.MessageLatencyMetrics.Segment.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class MessagingServiceTest
 {
@@ -34,4 +45,78 @@ public class MessagingServiceTest
         assertEquals(7500, (int)messagingService.getDroppedMessages().get(verb.toString()));
     }
 
+    @Test
+    public void testMessageLatencyTracing() throws Exception
+    {
+        InetAddress peer = InetAddress.getByName("127.0.0.3");
+        MessagingService.Verb requestVerb = MessagingService.Verb.ECHO;
+        MessagingService.Verb responseVerb = MessagingService.Verb.REQUEST_RESPONSE;
+        if (MessagingService.instance().getVerbHandler(responseVerb) == null)
+            MessagingService.instance().registerVerbHandlers(responseVerb, new ResponseVerbHandler());
+
+        MessageLatencyMetrics.Segment[] segments = { NETWORK, INBOUND_QUEUE, EXECUTION, ROUND_TRIP };
+        long[] peerCounts = counts(MessageLatencyMetrics.forPeer(peer), segments);
+        long[] requestCounts = counts(MessageLatencyMetrics.forVerb(requestVerb), segments);
+        long[] responseCounts = counts(MessageLatencyMetrics.forVerb(responseVerb), segments);
+
+        DatabaseDescriptor.setInternodeLatencyTracing(true);
+        try
+        {
+            CountDownLatch responded = new CountDownLatch(1);
+            int id = MessagingService.instance().addCallback(new IAsyncCallback<Object>()
+            {
+                public void response(MessageIn<Object> msg)
+                {
+                    responded.countDown();
+                }
+
+                public boolean isLatencyForSnitch()
+                {
+                    return false;
+                }
+            }, new MessageOut<>(requestVerb), peer, DatabaseDescriptor.getMinRpcTimeout(), false);
+
+            // the response as the peer would write it, including the time it is sent at
+            int version = MessagingService.current_version;
+            MessageOut<?> response = new MessageOut<>(peer, responseVerb, null, null, Collections.<String, byte[]>emptyMap());
+            DataOutputBuffer out = new DataOutputBuffer();
+            response.serialize(out, version);
+            assertEquals(response.serializedSize(version), out.getLength());
+
+            MessageIn<?> message = MessageIn.read(new DataInputBuffer(out.getData(), 0, out.getLength()), version, id);
+            assertTrue(message.parameters.containsKey(MessagingService.SENT_AT_PARAM));
+            MessagingService.instance().receive(message, id);
+            assertTrue(responded.await(10, TimeUnit.SECONDS));
+
+            // the execution time is recorded once the verb handler, which runs the callback, returns
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (MessageLatencyMetrics.forPeer(peer).latency(EXECUTION).getCount() == peerCounts[2] && System.nanoTime() < deadline)
+                Thread.sleep(10);
+        }
+        finally
+        {
+            DatabaseDescriptor.setInternodeLatencyTracing(false);
+        }
+
+        // the steps of the response are recorded for its verb, the round trip for the verb of the request...
+        long[] requestDeltas = { 0, 0, 0, 1 };
+        long[] responseDeltas = { 1, 1, 1, 0 };
+        for (int i = 0; i < segments.length; i++)
+        {
+            assertEquals(segments[i].toString(), requestCounts[i] + requestDeltas[i], MessageLatencyMetrics.forVerb(requestVerb).latency(segments[i]).getCount());
+            assertEquals(segments[i].toString(), responseCounts[i] + responseDeltas[i], MessageLatencyMetrics.forVerb(responseVerb).latency(segments[i]).getCount());
+        }
+
+        // ...and all of them for the peer
+        for (int i = 0; i < segments.length; i++)
+            assertEquals(segments[i].toString(), peerCounts[i] + 1, MessageLatencyMetrics.forPeer(peer).latency(segments[i]).getCount());
+    }
+
+    private static long[] counts(MessageLatencyMetrics metrics, MessageLatencyMetrics.Segment[] segments)
+    {
+        long[] counts = new long[segments.length];
+        for (int i = 0; i < segments.length; i++)
+            counts[i] = metrics.latency(segments[i]).getCount();
+        return counts;
+    }
 }
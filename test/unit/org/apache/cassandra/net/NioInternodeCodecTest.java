@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.io.util.DataOutputBuffer;
+import org.apache.cassandraBloomFilters.utils.UUIDSerializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NioInternodeCodecTest
+{
+    @Test
+    public void testMessageSize() throws Exception
+    {
+        MessageOut<UUID> message = new MessageOut<>(InetAddress.getByName("127.0.0.2"),
+                                                    MessagingService.Verb.ECHO,
+                                                    UUID.randomUUID(),
+                                                    UUIDSerializer.serializer,
+                                                    ImmutableMap.of("a", new byte[3], "bc", new byte[0]));
+        DataOutputBuffer out = new DataOutputBuffer();
+        OutboundTcpConnection.writeInternal(out, message, 42, System.currentTimeMillis(), MessagingService.current_version);
+        // a second message, only partially received
+        OutboundTcpConnection.writeInternal(out, message, 43, System.currentTimeMillis(), MessagingService.current_version);
+        byte[] bytes = out.toByteArray();
+        int size = bytes.length / 2;
+
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        assertEquals(size, MessageInDecoder.messageSize(buf, 0));
+        for (int i = size; i < bytes.length; i++)
+            assertEquals(-1, MessageInDecoder.messageSize(buf.slice(0, i), size));
+        assertEquals(size, MessageInDecoder.messageSize(buf, size));
+        for (int i = 0; i < size; i++)
+            assertEquals(-1, MessageInDecoder.messageSize(buf.slice(0, i), 0));
+    }
+
+    @Test
+    public void testLZ4BlockDecoder() throws Exception
+    {
+        Random random = new Random(0);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (LZ4BlockOutputStream out = new LZ4BlockOutputStream(compressed,
+                                                                 1 << 14,
+                                                                 LZ4Factory.fastestInstance().fastCompressor(),
+                                                                 XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum(),
+                                                                 true))
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                // compressible and incompressible data, in chunks smaller and larger than a block
+                byte[] chunk = new byte[random.nextInt(40000)];
+                if (i % 2 == 0)
+                    random.nextBytes(chunk);
+                out.write(chunk);
+                expected.write(chunk);
+                out.flush();
+            }
+        }
+
+        EmbeddedChannel channel = new EmbeddedChannel(new LZ4BlockDecoder());
+        byte[] bytes = compressed.toByteArray();
+        for (int offset = 0; offset < bytes.length; )
+        {
+            int length = Math.min(bytes.length - offset, random.nextInt(5000));
+            channel.writeInbound(Unpooled.wrappedBuffer(bytes, offset, length));
+            offset += length;
+        }
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        ByteBuf block;
+        while ((block = (ByteBuf) channel.readInbound()) != null)
+        {
+            byte[] blockBytes = new byte[block.readableBytes()];
+            block.readBytes(blockBytes);
+            block.release();
+            decompressed.write(blockBytes);
+        }
+        assertArrayEquals(expected.toByteArray(), decompressed.toByteArray());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.SchemaLoader;
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.io.IVersionedSerializer;
+import org.apache.cassandraBloomFilters.io.util.DataInputPlus;
+import org.apache.cassandraBloomFilters.io.util.DataOutputPlus;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class OutboundTcpConnectionPoolTest
+{
+    private static final int SMALL = 100;
+    private static final int LARGE = (int) OutboundTcpConnectionPool.LARGE_MESSAGE_THRESHOLD + 1;
+
+    private static final boolean TRAFFIC_CLASSES = DatabaseDescriptor.useInternodeTrafficClasses();
+
+    @BeforeClass
+    public static void setup()
+    {
+        // the pool looks up the preferred address of its peer in system.peers
+        SchemaLoader.prepareServer();
+    }
+
+    @After
+    public void resetTrafficClasses()
+    {
+        DatabaseDescriptor.setInternodeTrafficClasses(TRAFFIC_CLASSES);
+    }
+
+    @Test
+    public void testRoutingWithoutTrafficClasses() throws UnknownHostException
+    {
+        DatabaseDescriptor.setInternodeTrafficClasses(false);
+        OutboundTcpConnectionPool pool = new OutboundTcpConnectionPool(InetAddress.getByName("127.0.0.2"));
+        assertNull(pool.mutationMessages);
+
+        assertSame(pool.smallMessages, pool.getConnection(message(MessagingService.Verb.MUTATION, SMALL)));
+        assertSame(pool.largeMessages, pool.getConnection(message(MessagingService.Verb.MUTATION, LARGE)));
+        assertSame(pool.smallMessages, pool.getConnection(message(MessagingService.Verb.READ, SMALL)));
+        assertSame(pool.smallMessages, pool.getConnection(message(MessagingService.Verb.REPAIR_MESSAGE, SMALL)));
+        assertSame(pool.gossipMessages, pool.getConnection(message(MessagingService.Verb.GOSSIP_DIGEST_SYN, SMALL)));
+    }
+
+    @Test
+    public void testRoutingWithTrafficClasses() throws UnknownHostException
+    {
+        DatabaseDescriptor.setInternodeTrafficClasses(true);
+        OutboundTcpConnectionPool pool = new OutboundTcpConnectionPool(InetAddress.getByName("127.0.0.3"));
+        assertNotNull(pool.mutationMessages);
+
+        assertSame(pool.mutationMessages, pool.getConnection(message(MessagingService.Verb.MUTATION, SMALL)));
+        // large messages keep their own connection whatever their class, so they don't hold up small ones
+        assertSame(pool.largeMessages, pool.getConnection(message(MessagingService.Verb.MUTATION, LARGE)));
+        assertSame(pool.smallMessages, pool.getConnection(message(MessagingService.Verb.READ, SMALL)));
+        assertSame(pool.largeMessages, pool.getConnection(message(MessagingService.Verb.READ, LARGE)));
+        assertSame(pool.largeMessages, pool.getConnection(message(MessagingService.Verb.REPAIR_MESSAGE, SMALL)));
+        assertSame(pool.gossipMessages, pool.getConnection(message(MessagingService.Verb.GOSSIP_DIGEST_SYN, SMALL)));
+    }
+
+    private static MessageOut<Integer> message(MessagingService.Verb verb, int payloadSize)
+    {
+        return new MessageOut<>(verb, payloadSize, new IVersionedSerializer<Integer>()
+        {
+            public void serialize(Integer size, DataOutputPlus out, int version)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public Integer deserialize(DataInputPlus in, int version)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public long serializedSize(Integer size, int version)
+            {
+                return size;
+            }
+        });
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.net;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.exceptions.ConfigurationException;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrafficClassTest
+{
+    @Test
+    public void testDefaults()
+    {
+        Map<MessagingService.Verb, TrafficClass> classes = TrafficClass.classify(null);
+        assertEquals(MessagingService.Verb.values().length, classes.size());
+        assertEquals(TrafficClass.URGENT, classes.get(MessagingService.Verb.READ));
+        assertEquals(TrafficClass.URGENT, classes.get(MessagingService.Verb.REQUEST_RESPONSE));
+        assertEquals(TrafficClass.MUTATION, classes.get(MessagingService.Verb.MUTATION));
+        assertEquals(TrafficClass.BULK, classes.get(MessagingService.Verb.REPAIR_MESSAGE));
+        assertEquals(TrafficClass.GOSSIP, classes.get(MessagingService.Verb.GOSSIP_DIGEST_SYN));
+    }
+
+    @Test
+    public void testOverrides()
+    {
+        Map<MessagingService.Verb, TrafficClass> classes = TrafficClass.classify(Collections.singletonMap("read_repair", "bulk"));
+        assertEquals(TrafficClass.BULK, classes.get(MessagingService.Verb.READ_REPAIR));
+        assertEquals(TrafficClass.MUTATION, classes.get(MessagingService.Verb.MUTATION));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testInvalidOverride()
+    {
+        TrafficClass.classify(Collections.singletonMap("MUTATION", "fast"));
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.service;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
+import org.apache.cassandraBloomFilters.db.ConsistencyLevel;
+import org.apache.cassandraBloomFilters.db.IMutation;
+import org.apache.cassandraBloomFilters.db.Mutation;
+import org.apache.cassandraBloomFilters.db.MutationBatch;
+import org.apache.cassandraBloomFilters.db.WriteType;
+import org.apache.cassandraBloomFilters.db.monitoring.ConstructionTime;
+import org.apache.cassandraBloomFilters.gms.ApplicationState;
+import org.apache.cassandraBloomFilters.gms.Gossiper;
+import org.apache.cassandraBloomFilters.net.MessageIn;
+import org.apache.cassandraBloomFilters.net.MessagingService;
+import org.apache.cassandraBloomFilters.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MutationBatcherTest
+{
+    private static final int WINDOW = DatabaseDescriptor.getMutationBatchWindow();
+    private static final int MAX_MUTATIONS = DatabaseDescriptor.getMutationBatchMaxMutations();
+
+    private final InetAddress replica1 = InetAddress.getByAddress(new byte[]{ 127, 0, 0, 2 });
+    private final InetAddress replica2 = InetAddress.getByAddress(new byte[]{ 127, 0, 0, 3 });
+    private final RecordingDelivery delivery = new RecordingDelivery();
+    private final MutationBatcher batcher = new MutationBatcher(delivery);
+
+    public MutationBatcherTest() throws Exception
+    {
+    }
+
+    @After
+    public void resetConfig()
+    {
+        DatabaseDescriptor.setMutationBatchWindow(WINDOW);
+        DatabaseDescriptor.setMutationBatchMaxMutations(MAX_MUTATIONS);
+    }
+
+    @Test
+    public void testMaxMutationsFlush() throws InterruptedException
+    {
+        // a window long enough never to close during the test
+        DatabaseDescriptor.setMutationBatchWindow((int) TimeUnit.SECONDS.toMicros(60));
+        DatabaseDescriptor.setMutationBatchMaxMutations(3);
+
+        List<Mutation> mutations = mutations(5);
+        for (int i = 0; i < 3; i++)
+        {
+            assertTrue(delivery.sent.isEmpty());
+            batcher.add(mutations.get(i), replica1, new Handler(ConsistencyLevel.ONE), true);
+        }
+
+        // the full batch is sent right away, by the thread adding the last mutation
+        Sent sent = delivery.sent.poll();
+        assertNotNull(sent);
+        assertEquals(replica1, sent.replica);
+        assertEquals(mutations.subList(0, 3), sent.mutations());
+
+        // and the next mutations open a new batch
+        batcher.add(mutations.get(3), replica1, new Handler(ConsistencyLevel.ONE), true);
+        batcher.add(mutations.get(4), replica1, new Handler(ConsistencyLevel.ONE), true);
+        assertNull(delivery.sent.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testWindowFlush() throws InterruptedException
+    {
+        DatabaseDescriptor.setMutationBatchWindow((int) TimeUnit.MILLISECONDS.toMicros(50));
+        DatabaseDescriptor.setMutationBatchMaxMutations(100);
+
+        List<Mutation> mutations = mutations(4);
+        long start = System.nanoTime();
+        batcher.add(mutations.get(0), replica1, new Handler(ConsistencyLevel.ONE), true);
+        batcher.add(mutations.get(1), replica2, new Handler(ConsistencyLevel.ONE), true);
+        batcher.add(mutations.get(2), replica1, new Handler(ConsistencyLevel.ONE), true);
+        batcher.add(mutations.get(3), replica2, new Handler(ConsistencyLevel.ONE), true);
+
+        // each replica gets its own batch, once the window opened by its first mutation closes
+        List<Sent> sent = new ArrayList<>();
+        for (int i = 0; i < 2; i++)
+        {
+            Sent batch = delivery.sent.poll(10, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            sent.add(batch);
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertNull(delivery.sent.poll(100, TimeUnit.MILLISECONDS));
+
+        for (Sent batch : sent)
+        {
+            if (batch.replica.equals(replica1))
+                assertEquals(Arrays.asList(mutations.get(0), mutations.get(2)), batch.mutations());
+            else
+                assertEquals(Arrays.asList(mutations.get(1), mutations.get(3)), batch.mutations());
+        }
+    }
+
+    @Test
+    public void testResponseFanOut()
+    {
+        List<Mutation> mutations = mutations(4);
+        Handler[] handlers = { new Handler(ConsistencyLevel.ONE),
+                               new Handler(ConsistencyLevel.ONE),
+                               new Handler(ConsistencyLevel.ANY),
+                               new Handler(ConsistencyLevel.ONE) };
+        List<MutationBatcher.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < mutations.size(); i++)
+            entries.add(new MutationBatcher.Entry(mutations.get(i), handlers[i], i != 3));
+
+        MutationBatcher.BatchCallback callback = new MutationBatcher.BatchCallback(entries, delivery);
+        callback.response(response(true, false, false, false));
+
+        // each handler hears about its own mutation only
+        assertEquals(1, handlers[0].acks);
+        assertEquals(0, handlers[0].failures);
+        for (int i = 1; i < handlers.length; i++)
+        {
+            assertEquals(0, handlers[i].acks);
+            assertEquals(1, handlers[i].failures);
+        }
+
+        // mutations not applied are hinted like a lone mutation timing out would be: not at ANY, which already wrote
+        // a hint of its own, nor when hints are not allowed
+        assertEquals(Collections.singletonList(mutations.get(1)), delivery.hinted);
+    }
+
+    @Test
+    public void testFailureFanOut()
+    {
+        List<Mutation> mutations = mutations(3);
+        Handler[] handlers = { new Handler(ConsistencyLevel.ONE),
+                               new Handler(ConsistencyLevel.QUORUM),
+                               new Handler(ConsistencyLevel.ANY) };
+        List<MutationBatcher.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < mutations.size(); i++)
+            entries.add(new MutationBatcher.Entry(mutations.get(i), handlers[i], true));
+
+        // a failed or timed out batch fails every mutation in it
+        new MutationBatcher.BatchCallback(entries, delivery).onFailure(replica1);
+        for (Handler handler : handlers)
+        {
+            assertEquals(0, handler.acks);
+            assertEquals(1, handler.failures);
+        }
+        assertEquals(mutations.subList(0, 2), delivery.hinted);
+    }
+
+    @Test
+    public void testShouldBatchRequiresCapability() throws Exception
+    {
+        DatabaseDescriptor.setMutationBatchWindow((int) TimeUnit.MILLISECONDS.toMicros(1));
+        InetAddress unknown = InetAddress.getByAddress(new byte[]{ 127, 0, 0, 4 });
+        InetAddress older = InetAddress.getByAddress(new byte[]{ 127, 0, 0, 5 });
+
+        // no gossip state at all
+        assertFalse(MutationBatcher.shouldBatch(unknown));
+
+        // a peer that gossips but does not advertise the verb, like a node that predates it
+        Gossiper.instance.initializeNodeUnsafe(older, UUID.randomUUID(), 1);
+        assertFalse(MutationBatcher.shouldBatch(older));
+
+        Gossiper.instance.injectApplicationState(older, ApplicationState.MUTATION_BATCH, StorageService.instance.valueFactory.mutationBatch(true));
+        assertTrue(MutationBatcher.shouldBatch(older));
+
+        // batching disabled locally
+        DatabaseDescriptor.setMutationBatchWindow(0);
+        assertFalse(MutationBatcher.shouldBatch(older));
+    }
+
+    private static List<Mutation> mutations(int count)
+    {
+        List<Mutation> mutations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            mutations.add(new Mutation("ks", DatabaseDescriptor.getPartitioner().decorateKey(ByteBufferUtil.bytes(i))));
+        return mutations;
+    }
+
+    private MessageIn<MutationBatch.Response> response(boolean... applied)
+    {
+        return MessageIn.create(replica1,
+                                new MutationBatch.Response(applied),
+                                Collections.emptyMap(),
+                                MessagingService.Verb.REQUEST_RESPONSE,
+                                MessagingService.current_version,
+                                new ConstructionTime());
+    }
+
+    private static final class Sent
+    {
+        final InetAddress replica;
+        final List<MutationBatcher.Entry> entries;
+
+        Sent(InetAddress replica, List<MutationBatcher.Entry> entries)
+        {
+            this.replica = replica;
+            this.entries = entries;
+        }
+
+        List<Mutation> mutations()
+        {
+            List<Mutation> mutations = new ArrayList<>(entries.size());
+            for (MutationBatcher.Entry entry : entries)
+                mutations.add(entry.mutation);
+            return mutations;
+        }
+    }
+
+    private static final class RecordingDelivery implements MutationBatcher.Delivery
+    {
+        final BlockingQueue<Sent> sent = new LinkedBlockingQueue<>();
+        final List<Mutation> hinted = new ArrayList<>();
+
+        public void send(InetAddress replica, List<MutationBatcher.Entry> entries)
+        {
+            sent.add(new Sent(replica, entries));
+        }
+
+        public void maybeHint(Mutation mutation, InetAddress replica)
+        {
+            hinted.add(mutation);
+        }
+    }
+
+    private static final class Handler extends AbstractWriteResponseHandler<IMutation>
+    {
+        int acks;
+        int failures;
+
+        Handler(ConsistencyLevel consistencyLevel)
+        {
+            super(null, Collections.emptyList(), Collections.emptyList(), consistencyLevel, null, WriteType.SIMPLE);
+        }
+
+        protected int ackCount()
+        {
+            return acks;
+        }
+
+        public void response(MessageIn<IMutation> msg)
+        {
+            assertNull(msg.payload);
+            acks++;
+        }
+
+        @Override
+        public void onFailure(InetAddress from)
+        {
+            failures++;
+        }
+
+        public boolean isLatencyForSnitch()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpeculationBudgetTest
+{
+    @Test
+    public void testBudget()
+    {
+        SpeculationBudget budget = new SpeculationBudget(0.1);
+
+        // the burst allowance lets an idle node speculate once
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        for (int i = 0; i < 100; i++)
+            budget.recordRead();
+        for (int i = 0; i < 10; i++)
+            assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+    }
+
+    @Test
+    public void testDecay()
+    {
+        SpeculationBudget budget = new SpeculationBudget(0.5);
+        for (int i = 0; i < 10; i++)
+            budget.recordRead();
+        for (int i = 0; i < 6; i++)
+            assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        // 5 reads and 3 speculations left: still no room
+        budget.decay();
+        assertFalse(budget.tryAcquire());
+
+        // fresh reads make room again
+        for (int i = 0; i < 2; i++)
+            budget.recordRead();
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+    }
+}
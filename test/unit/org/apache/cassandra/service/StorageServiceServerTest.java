@@ -37,7 +37,9 @@ import org.apache.cassandraBloomFilters.SchemaLoader;
 import org.apache.cassandraBloomFilters.config.DatabaseDescriptor;
 import org.apache.cassandraBloomFilters.schema.KeyspaceMetadata;
 import org.apache.cassandraBloomFilters.config.Schema;
+import org.apache.cassandraBloomFilters.db.Directories;
 import org.apache.cassandraBloomFilters.db.Keyspace;
+import org.apache.cassandraBloomFilters.db.PartitionPosition;
 import org.apache.cassandraBloomFilters.db.WindowsFailedSnapshotTracker;
 import org.apache.cassandraBloomFilters.dht.Murmur3Partitioner;
 import org.apache.cassandraBloomFilters.dht.Murmur3Partitioner.LongToken;
@@ -590,4 +592,24 @@ public class StorageServiceServerTest
         repairRangeFrom = StorageService.instance.createRepairRangeFrom("2000", "2000");
         assert repairRangeFrom.size() == 0;
     }
+
+    @Test
+    public void testTokenRangeBoundaries()
+    {
+        Murmur3Partitioner partitioner = Murmur3Partitioner.instance;
+        List<Range<Token>> localRanges = Arrays.asList(new Range<>(new LongToken(-4000000000000000000L), new LongToken(-1000000000000000000L)),
+                                                       new Range<>(new LongToken(2000000000000000000L), new LongToken(6000000000000000000L)));
+        Directories.DataDirectory[] directories = new Directories.DataDirectory[] { new Directories.DataDirectory(new File("/tmp/1")),
+                                                                                    new Directories.DataDirectory(new File("/tmp/2")) };
+        List<PartitionPosition> diskBoundaries = StorageService.getDiskBoundaries(localRanges, partitioner, directories);
+        assertEquals(diskBoundaries, StorageService.getTokenRangeBoundaries(localRanges, partitioner, directories, 1));
+
+        List<PartitionPosition> boundaries = StorageService.getTokenRangeBoundaries(localRanges, partitioner, directories, 4);
+        // every disk boundary is kept, so no token range spans two disks
+        assertTrue(boundaries.containsAll(diskBoundaries));
+        assertTrue(boundaries.size() >= 8 && boundaries.size() <= 9);
+        for (int i = 1; i < boundaries.size(); i++)
+            assertTrue(boundaries.get(i - 1).compareTo(boundaries.get(i)) < 0);
+        assertEquals(partitioner.getMaximumToken().maxKeyBound(), boundaries.get(boundaries.size() - 1));
+    }
 }
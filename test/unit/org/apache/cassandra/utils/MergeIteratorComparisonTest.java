@@ -473,6 +473,9 @@ public class MergeIteratorComparisonTest
             Object[] basearr = Iterators.toArray(base, Object.class);
             Assert.assertArrayEquals(basearr, Iterators.toArray(tested, Object.class));
             //Assert.assertTrue(Iterators.elementsEqual(base, tested));
+            // check both many-to-one implementations, whichever of them get() picks
+            Assert.assertArrayEquals(basearr, Iterators.toArray(new MergeIterator.ManyToOne<>(closeableIterators(lists), comparator, reducer), Object.class));
+            Assert.assertArrayEquals(basearr, Iterators.toArray(new MergeIterator.Tournament<>(closeableIterators(lists), comparator, reducer), Object.class));
             if (!BENCHMARK)
                 return;
         }
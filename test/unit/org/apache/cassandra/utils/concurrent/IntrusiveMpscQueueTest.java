@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandraBloomFilters.utils.concurrent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IntrusiveMpscQueueTest
+{
+    private static final class Item extends IntrusiveMpscQueue.Node
+    {
+        final int producer;
+        final int sequence;
+
+        Item(int producer, int sequence)
+        {
+            this.producer = producer;
+            this.sequence = sequence;
+        }
+    }
+
+    @Test
+    public void testFifo()
+    {
+        IntrusiveMpscQueue<Item> queue = new IntrusiveMpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+
+        for (int i = 0; i < 10; i++)
+            queue.add(new Item(0, i));
+        assertEquals(10, queue.size());
+        assertEquals(0, queue.peek().sequence);
+
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, queue.poll().sequence);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        // the last element is unlinked by putting the stub back behind it, so go round a few times
+        for (int i = 0; i < 3; i++)
+        {
+            Item item = new Item(0, i);
+            queue.add(item);
+            assertSame(item, queue.peek());
+            assertSame(item, queue.poll());
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void testReuseAfterConsumed()
+    {
+        IntrusiveMpscQueue<Item> queue = new IntrusiveMpscQueue<>();
+        Item a = new Item(0, 0);
+        Item b = new Item(0, 1);
+        queue.add(a);
+        queue.add(b);
+        assertSame(a, queue.poll());
+        queue.add(a);
+        assertSame(b, queue.poll());
+        assertSame(a, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testDrainTo()
+    {
+        IntrusiveMpscQueue<Item> queue = new IntrusiveMpscQueue<>();
+        for (int i = 0; i < 5; i++)
+            queue.add(new Item(0, i));
+
+        List<Item> drained = new ArrayList<>();
+        assertEquals(3, queue.drainTo(drained, 3));
+        assertEquals(2, queue.drainTo(drained));
+        for (int i = 0; i < 5; i++)
+            assertEquals(i, drained.get(i).sequence);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testPollTimeout() throws InterruptedException
+    {
+        IntrusiveMpscQueue<Item> queue = new IntrusiveMpscQueue<>();
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Throwable
+    {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final IntrusiveMpscQueue<Item> queue = new IntrusiveMpscQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        for (int p = 0; p < producers; p++)
+        {
+            final int producer = p;
+            new Thread(() -> {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < perProducer; i++)
+                    queue.add(new Item(producer, i));
+            }).start();
+        }
+        start.countDown();
+
+        // each producer's elements must come out in the order they went in
+        int[] expected = new int[producers];
+        for (int i = 0; i < producers * perProducer; i++)
+        {
+            Item item = queue.poll(10, TimeUnit.SECONDS);
+            assertNotNull(item);
+            assertEquals(expected[item.producer]++, item.sequence);
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testConcurrentPeekAndPoll() throws Throwable
+    {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final IntrusiveMpscQueue<Item> queue = new IntrusiveMpscQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        for (int p = 0; p < producers; p++)
+        {
+            final int producer = p;
+            new Thread(() -> {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < perProducer; i++)
+                    queue.add(new Item(producer, i));
+            }).start();
+        }
+        start.countDown();
+
+        // the consumer peeks before polling, as the nio outbound connection does: whatever peek() returns, poll()
+        // must return too, even while producers are appending behind it
+        int[] expected = new int[producers];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (int i = 0; i < producers * perProducer; i++)
+        {
+            Item peeked;
+            while ((peeked = queue.peek()) == null)
+                assertTrue(System.nanoTime() < deadline);
+            assertSame(peeked, queue.poll());
+            assertEquals(expected[peeked.producer]++, peeked.sequence);
+        }
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testIterator()
+    {
+        IntrusiveMpscQueue<Item> queue = new IntrusiveMpscQueue<>();
+        assertFalse(queue.iterator().hasNext());
+
+        for (int i = 0; i < 5; i++)
+            queue.add(new Item(0, i));
+        assertEquals(0, queue.poll().sequence);
+
+        Iterator<Item> iter = queue.iterator();
+        for (int i = 1; i < 5; i++)
+        {
+            assertTrue(iter.hasNext());
+            assertEquals(i, iter.next().sequence);
+        }
+        assertFalse(iter.hasNext());
+        try
+        {
+            iter.next();
+            fail();
+        }
+        catch (NoSuchElementException e)
+        {
+            // expected
+        }
+
+        // iterating leaves the queue untouched
+        assertEquals(4, queue.size());
+        assertTrue(queue.contains(queue.peek()));
+        for (int i = 1; i < 5; i++)
+            assertEquals(i, queue.poll().sequence);
+        assertFalse(queue.iterator().hasNext());
+    }
+}